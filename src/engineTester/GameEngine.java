@@ -1,6 +1,8 @@
 package engineTester;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import models.RawModel;
@@ -16,14 +18,26 @@ import org.lwjgl.util.vector.Vector4f;
 import particles.ParticleMaster;
 import particles.ParticleSystem;
 import particles.ParticleTexture;
+import renderEngine.AssetPipeline;
+import renderEngine.AssetPipeline.Asset;
 import renderEngine.DisplayManager;
+import renderEngine.GLState;
 import renderEngine.Loader;
 import renderEngine.MasterRenderer;
 import renderEngine.OBJLoader;
+import renderEngine.Scene;
+import renderEngine.TextureArrayPacker;
+import shaders.ShaderProgram;
+import skybox.SkyboxRenderer;
+import terrains.Heightfield;
+import terrains.HeightmapReader;
+import terrains.MappedHeightfield;
 import terrains.Terrain;
+import terrains.TerrainStreamer;
 import textures.ModelTexture;
 import textures.TerrainTexture;
 import textures.TerrainTexturePack;
+import textures.TextureData;
 import entities.Camera;
 import entities.Entity;
 import entities.Light;
@@ -31,48 +45,101 @@ import entities.Player;
 
 public class GameEngine {
 
+	private static final boolean SERIAL_LOADING = Boolean.getBoolean("serialLoading"); //run with -DserialLoading=true to load the assets one after the other on the render thread
+	private static final String WORLD_FILE = "world"; //heightfield of a big world, put in the res folder by the user, and never written by the game
+	private static final String HEIGHTMAP_CACHE_FILE = "heightmap.cache"; //heightfield written from the height map when there is no world file
+	private static final float WORLD_GRID_SQUARE_SIZE = Terrain.SIZE / 256; //a tile of the world is 256 by 256 grid squares
+	private static final int TILE_RADIUS = 1; //tiles loaded on each side of the tile of the player, a tile being bigger than the view distance
+
 	public static void main(String[] args) throws LWJGLException {
 
+		long startTime = System.nanoTime();
 		DisplayManager.createDisplay();
 		Loader loader = new Loader();
 
+		// _____________________LOADING____________________
+		//the files are read and decoded by worker threads, while this thread sends the decoded ones to openGL
+
+		AssetPipeline pipeline = new AssetPipeline(!SERIAL_LOADING);
+		Asset<Integer> backgroundTexture = submitTexture(pipeline, loader, "grassy3");
+		Asset<Integer> rTexture = submitTexture(pipeline, loader, "mud");
+		Asset<Integer> gTexture = submitTexture(pipeline, loader, "grassy2");
+		Asset<Integer> bTexture = submitTexture(pipeline, loader, "path");
+		Asset<Integer> blendMapTexture = submitTexture(pipeline, loader, "blendMap");
+
+		Asset<TextureData> fernTexture = pipeline.submit(() -> Loader.decodeTexture("fernatlas")); //packed with the other entity textures once decoded
+		Asset<RawModel> fernModel = pipeline.submit(() -> OBJLoader.loadMesh("fern"), mesh -> OBJLoader.loadToVAO(mesh, loader));
+		Asset<TextureData> pineTexture = pipeline.submit(() -> Loader.decodeTexture("pine")); //packed with the other entity textures once decoded
+		Asset<RawModel> pineModel = pipeline.submit(() -> OBJFileLoader.loadMesh("pine"), mesh -> OBJFileLoader.loadToVAO(mesh, loader));
+		Asset<TextureData> lampTexture = pipeline.submit(() -> Loader.decodeTexture("lamp")); //packed with the other entity textures once decoded
+		Asset<RawModel> lampModel = pipeline.submit(() -> OBJLoader.loadMesh("lamp"), mesh -> OBJLoader.loadToVAO(mesh, loader));
+		Asset<TextureData> steveTexture = pipeline.submit(() -> Loader.decodeTexture("steve")); //packed with the other entity textures once decoded
+		Asset<RawModel> steveModel = pipeline.submit(() -> OBJLoader.loadMesh("steve"), mesh -> OBJLoader.loadToVAO(mesh, loader));
+
+		Asset<RawModel> barrelModel = submitNormalMappedModel(pipeline, loader, "barrel");
+		Asset<Integer> barrelTexture = submitTexture(pipeline, loader, "barrel");
+		Asset<Integer> barrelNormal = submitTexture(pipeline, loader, "barrelNormal");
+		Asset<RawModel> crateModel = submitNormalMappedModel(pipeline, loader, "crate");
+		Asset<Integer> crateTexture = submitTexture(pipeline, loader, "crate");
+		Asset<Integer> crateNormal = submitTexture(pipeline, loader, "crateNormal");
+		Asset<RawModel> boulderModel = submitNormalMappedModel(pipeline, loader, "boulder");
+		Asset<Integer> boulderTexture = submitTexture(pipeline, loader, "boulder");
+		Asset<Integer> boulderNormal = submitTexture(pipeline, loader, "boulderNormal");
+
+		Asset<Integer> particleTexture = submitTexture(pipeline, loader, "particleAtlas");
+		List<Asset<TextureData>> skyboxFaces = new ArrayList<>();
+		for (String face : SkyboxRenderer.TEXTURE_FILES) {
+			skyboxFaces.add(pipeline.submit(() -> Loader.decodeTexture(face))); //the faces are uploaded together once they are all decoded
+		}
+		pipeline.finish(); //the workers are kept to build the terrain tiles while the game runs
+		reportMemory("fern", fernModel.get());
+		reportMemory("pine", pineModel.get());
+		reportMemory("lamp", lampModel.get());
+		reportMemory("steve", steveModel.get());
+		reportMemory("barrel", barrelModel.get());
+		reportMemory("crate", crateModel.get());
+		reportMemory("boulder", boulderModel.get());
+
+		Map<String, ModelTexture> entityTextures = packEntityTextures(loader, fernTexture, pineTexture, lampTexture,
+				steveTexture);
+
 		// _____________________TERRAIN____________________
 
-		TerrainTexturePack texturePack = generateTerrainTexture(loader);
-		TerrainTexture blendMap = new TerrainTexture(loader.loadTexture("blendMap"));
-		Terrain terrain = new Terrain(0, -1, loader, texturePack, blendMap, "heightmap");
-		List<Terrain> terrains = new ArrayList<>();
-		terrains.add(terrain);
+		TerrainTexturePack texturePack = generateTerrainTexture(backgroundTexture, rTexture, gTexture, bTexture);
+		TerrainTexture blendMap = new TerrainTexture(blendMapTexture.get());
+		TerrainStreamer terrain = new TerrainStreamer(openWorld(), TILE_RADIUS, loader, pipeline, texturePack, blendMap);
+		Vector3f startPosition = new Vector3f(75, 5, -75);
+		terrain.update(startPosition);
+		pipeline.finish(); //the tiles around the player are loaded before the first frame
 
 		// ________________MODELS_________________________
 
-		ModelTexture fernTextureAtlas = new ModelTexture(loader.loadTexture("fernatlas"));
+		ModelTexture fernTextureAtlas = entityTextures.get("fernatlas");
 		fernTextureAtlas.setNumberOfRows(2);
-		RawModel fernModel = OBJLoader.loadObjModel("fern", loader);
-		TexturedModel fern = new TexturedModel(fernModel, fernTextureAtlas);
+		TexturedModel fern = new TexturedModel(fernModel.get(), fernTextureAtlas);
 		fern.getTexture().setHasTransparency(true);
 		fern.getTexture().setUseFakeLighting(true);
 
-		TexturedModel pine = generateTransparentModels("pine", new ModelTexture(loader.loadTexture("pine")), loader);
-		TexturedModel lamp = new TexturedModel(OBJLoader.loadObjModel("lamp", loader), new ModelTexture(loader.loadTexture("lamp")));
+		TexturedModel pine = generateTransparentModels(pineModel.get(), entityTextures.get("pine"));
+		TexturedModel lamp = new TexturedModel(lampModel.get(), entityTextures.get("lamp"));
 		lamp.getTexture().setUseFakeLighting(true);
 
-		TexturedModel mainCharacter = new TexturedModel(OBJLoader.loadObjModel("steve", loader), new ModelTexture(loader.loadTexture("steve")));
+		TexturedModel mainCharacter = new TexturedModel(steveModel.get(), entityTextures.get("steve"));
 
 		//__________________NORMAL MAP MODELS____________________
 
-		TexturedModel barrelModel = generateNormalModel("barrel", loader, "barrelNormal");
-		TexturedModel crateModel = generateNormalModel("crate", loader, "crateNormal");
-		TexturedModel boulderModel = generateNormalModel("boulder", loader, "boulderNormal");
+		TexturedModel barrel = generateNormalModel(barrelModel.get(), barrelTexture.get(), barrelNormal.get());
+		TexturedModel crate = generateNormalModel(crateModel.get(), crateTexture.get(), crateNormal.get());
+		TexturedModel boulder = generateNormalModel(boulderModel.get(), boulderTexture.get(), boulderNormal.get());
 
 		//___________________ENTITIES___________________________
 
 		List<Entity> entities = new ArrayList<>();
 		List<Entity> normalEntities = new ArrayList<>();
 
-		placeNormalEntitiesOnTerrain(terrain, barrelModel, crateModel, boulderModel, normalEntities);
+		placeNormalEntitiesOnTerrain(terrain, barrel, crate, boulder, normalEntities);
 		placeEntitiesOnTerrain(terrain, fern, pine, entities);
-		Player player = new Player(mainCharacter, new Vector3f(75, 5, -75), 0, 100, 0, 10f);
+		Player player = new Player(mainCharacter, startPosition, 0, 100, 0, 10f);
 		entities.add(player);
 
 		//_______________________LIGHTS__________________________
@@ -82,41 +149,179 @@ public class GameEngine {
 
 		//_____________________PARTICLES_____________________
 
-		MasterRenderer renderer = new MasterRenderer(loader);
-		ParticleSystem particleSystem = generateParticles(loader, renderer);
+		TextureData[] faces = new TextureData[skyboxFaces.size()];
+		for (int i = 0; i < faces.length; i++) {
+			faces[i] = skyboxFaces.get(i).get();
+		}
+		MasterRenderer renderer = new MasterRenderer(loader, loader.loadCubeMap(faces));
+		reportTextures();
+		Loader.trimStagingBuffers(); //the faces of the skybox were the last textures to use them
+		renderer.submitShaders(entities, normalEntities, lights);
+		ParticleSystem particleSystem = generateParticles(loader, particleTexture.get());
+
+		Scene scene = new Scene(); //the entities are registered once, only the player is updated at every frame
+		Scene.Handle playerHandle = null;
+		for (Entity entity : entities) {
+			Scene.Handle handle = scene.add(entity);
+			if (entity == player) {
+				playerHandle = handle;
+			}
+		}
+		for (Entity entity : normalEntities) {
+			scene.addNormalMapped(entity);
+		}
 
 		//_____________________CAMERA____________________
 		Camera camera = new Camera(player);
 
 		//_________________________GAME LOOP__________________________
 
+		boolean firstFrame = true;
 		while (!Display.isCloseRequested()) {
-			renderAndDisplay(terrain, terrains, entities, normalEntities, player, lights, renderer, particleSystem, camera);
+			renderAndDisplay(terrain, scene, playerHandle, player, lights, renderer, particleSystem, camera);
+			if (firstFrame) {
+				firstFrame = false;
+				System.out.println("Time to first frame: " + (System.nanoTime() - startTime) / 1000000 + " ms ("
+						+ (pipeline.isParallel() ? "parallel" : "serial") + " loading)");
+				System.out.printf("Shaders: %d compiled, %d from the binary cache, the slowest ready %.1f ms after being submitted%n",
+						ShaderProgram.getCompiledPrograms(), ShaderProgram.getCachedPrograms(),
+						ShaderProgram.getLongestReadyTime() / 1e6);
+			}
 		}
 
+		int fullDetailTriangles = 0;
+		for (Terrain tile : terrain.getTerrains()) {
+			fullDetailTriangles += tile.getFullDetailTriangles();
+		}
+		System.out.printf("Terrain: %d triangles in %d chunks of %d tiles during the last frame, %d at full detail%n",
+				renderer.getDrawnTerrainTriangles(), renderer.getDrawnTerrainChunks(), terrain.getTerrains().size(),
+				fullDetailTriangles);
+		System.out.printf("Terrain tiles: %d built, %.1f ms per mesh on average%n", terrain.getBuiltTiles(),
+				terrain.getBuildTime() / 1e6 / Math.max(1, terrain.getBuiltTiles()));
+		long issuedUploads = ShaderProgram.getIssuedUploads();
+		long skippedUploads = ShaderProgram.getSkippedUploads();
+		System.out.printf("Uniform uploads: %d sent, %d skipped because the uniform already held the value (%.0f%%)%n",
+				issuedUploads, skippedUploads, 100.0 * skippedUploads / Math.max(1, issuedUploads + skippedUploads));
+		long issuedCalls = GLState.getIssuedCalls();
+		long skippedCalls = GLState.getSkippedCalls();
+		System.out.printf("GL state changes: %d sent, %d skipped because openGL was already in that state (%.0f%%)%n",
+				issuedCalls, skippedCalls, 100.0 * skippedCalls / Math.max(1, issuedCalls + skippedCalls));
+		terrain.cleanUp();
+		pipeline.cleanUp();
 		cleanup(loader, renderer);
 	}
 
+	/**
+	 * Method that opens the heightfield of the world: the world file if one was put in the res folder, otherwise a
+	 * world of a single tile made from the height map. That one is cached in its own file, written the first time and
+	 * again whenever a file of the height map (.raw, .pgm or .png) is newer than it; the world file is never written.
+	 * @return the heightfield of the world, whose first tile is where the terrain used to be
+	 */
+	private static MappedHeightfield openWorld() {
+		if (new File("res/" + WORLD_FILE + ".raw").exists()) {
+			return new MappedHeightfield(WORLD_FILE, 0, -Terrain.SIZE, WORLD_GRID_SQUARE_SIZE);
+		}
+		File cache = new File("res/" + HEIGHTMAP_CACHE_FILE + ".raw");
+		long heightMapTime = 0;
+		for (String extension : new String[] {".raw", ".pgm", ".png"}) {
+			heightMapTime = Math.max(heightMapTime, new File("res/heightmap" + extension).lastModified()); //0 if the file doesn't exist
+		}
+		if (!cache.exists() || cache.lastModified() < heightMapTime) {
+			float[] heights = HeightmapReader.read("heightmap");
+			MappedHeightfield.write(HEIGHTMAP_CACHE_FILE, heights, (int) Math.sqrt(heights.length));
+		}
+		return new MappedHeightfield(HEIGHTMAP_CACHE_FILE, 0, -Terrain.SIZE, WORLD_GRID_SQUARE_SIZE);
+	}
+
+	/**
+	 * Method that adds a texture of the res folder to the assets to load. A texture submitted several times is only
+	 * decoded and uploaded once, the other times only adding a reference to it.
+	 * @param pipeline loading the assets
+	 * @param loader used to send the decoded texture to openGL
+	 * @param fileName of the texture, without extension
+	 * @return the asset that will hold the id of the texture
+	 */
+	private static Asset<Integer> submitTexture(AssetPipeline pipeline, Loader loader, String fileName) {
+		return pipeline.submit(fileName, () -> Loader.decodeTexture(fileName), data -> loader.loadTexture(fileName, data),
+				textureID -> loader.loadTexture(fileName)); //already loaded, the loader gives back the same texture
+	}
+
+	/**
+	 * Method that sends the decoded textures of the entities to openGL, packing the ones of the same size and format
+	 * into texture arrays so that the entity renderer doesn't have to bind a texture for each model.
+	 * @param loader used to create the textures
+	 * @param textures decoded textures of the entities
+	 * @return the texture of each entity, by file name
+	 */
+	@SafeVarargs
+	private static Map<String, ModelTexture> packEntityTextures(Loader loader, Asset<TextureData>... textures) {
+		TextureArrayPacker packer = new TextureArrayPacker();
+		for (Asset<TextureData> texture : textures) {
+			packer.add(texture.get());
+		}
+		return packer.pack(loader);
+	}
+
+	/**
+	 * Method that prints how long each texture took to load and how much memory it took, once they are all loaded.
+	 */
+	private static void reportTextures() {
+		for (Loader.TextureUpload texture : Loader.getTextureUploads()) {
+			System.out.printf("%s: %dx%d %s, decoded in %.1f ms, uploaded in %.1f ms, %d KB of video memory, %d KB staging buffer, staging peak %d KB%n",
+					texture.getName(), texture.getWidth(), texture.getHeight(),
+					texture.isFromContainer() ? "container" : "png", texture.getDecodeTime() / 1e6,
+					texture.getUploadTime() / 1e6, texture.getVideoMemory() / 1024, texture.getStagingBytes() / 1024,
+					texture.getStagingPeakBytes() / 1024);
+		}
+		System.out.println("Texture staging buffers: " + Loader.getStagingAllocatedBytes() / 1024 + " KB allocated, "
+				+ Loader.getStagingPeakBytes() / 1024 + " KB used at most");
+	}
+
+	/**
+	 * Method that prints how much GPU memory the vertices and indices of a model take, compared to how much they would
+	 * take without compression.
+	 * @param name of the model
+	 * @param model loaded to a VAO
+	 */
+	private static void reportMemory(String name, RawModel model) {
+		int saved = 100 - model.getMemorySize() * 100 / Math.max(1, model.getUncompressedMemorySize());
+		System.out.println(name + ": " + model.getUncompressedMemorySize() / 1024 + " KB -> "
+				+ model.getMemorySize() / 1024 + " KB (" + saved + "% saved)");
+	}
+
+	/**
+	 * Method that adds a model needing normal mapping to the assets to load.
+	 * @param pipeline loading the assets
+	 * @param loader used to send the mesh of the model to openGL
+	 * @param modelName name of the .obj file, without extension
+	 * @return the asset that will hold the model
+	 */
+	private static Asset<RawModel> submitNormalMappedModel(AssetPipeline pipeline, Loader loader, String modelName) {
+		return pipeline.submit(() -> NormalMappedObjLoader.loadMesh(modelName),
+				mesh -> NormalMappedObjLoader.loadToVAO(mesh, loader));
+	}
+
 	/**
 	 * Method where all objects are updated at every frame, then rendered
-	 * @param terrain generated terrain on which the player moves. We need to know its height so that the player can stay on the terrain and not go in it
-	 * @param terrains list of terrains that have to be rendered
-	 * @param entities list of entities which
-	 * @param normalEntities list of normal entities (with bump mapping) that have to be rendered
+	 * @param terrain streamed terrain on which the player moves. We need to know its height so that the player can stay on the terrain and not go in it, and its tiles are rendered
+	 * @param scene holding the entities (normal mapped or not) that have to be rendered
+	 * @param playerHandle handle of the player in the scene, updated once the player moved
 	 * @param player main character, player that can be moved on the terrain
 	 * @param lights lights that affect the scene (both the terrain and the player)
 	 * @param renderer responsible for rendering, showing objects on the screen after their position was updated
 	 * @param particleSystem particles that show on the screen. Here, they are generated at the player positions, to give a certain effect when the player moves.
 	 * @param camera camera responsible for how we see the scene. It follows the player and can be turned around him.
 	 */
-	private static void renderAndDisplay(Terrain terrain, List<Terrain> terrains, List<Entity> entities, List<Entity> normalEntities, Player player, List<Light> lights, MasterRenderer renderer, ParticleSystem particleSystem, Camera camera) {
-		player.move(terrain);
+	private static void renderAndDisplay(TerrainStreamer terrain, Scene scene, Scene.Handle playerHandle, Player player, List<Light> lights, MasterRenderer renderer, ParticleSystem particleSystem, Camera camera) {
+		terrain.update(player.getPosition());
+		player.move(terrain); //the height comes from the tile the player is on
+		scene.update(playerHandle);
 		camera.move();
 		particleSystem.generateParticles(player.getPosition());
 		ParticleMaster.update(camera);
 		GL11.glEnable(GL30.GL_CLIP_DISTANCE0); //allows to not render things that are outside of sight. Increases performances
-		renderer.renderScene(entities, normalEntities, terrains, lights, camera, new Vector4f(0, -1, 0, 100000));
-		ParticleMaster.renderParticles(camera);
+		renderer.renderScene(scene, terrain.getTerrains(), lights, camera, new Vector4f(0, -1, 0, 100000));
+		ParticleMaster.renderParticles(renderer.getViewMatrix()); //the view matrix computed for the frame by the renderer
 		DisplayManager.updateDisplay();
 	}
 
@@ -125,13 +330,13 @@ public class GameEngine {
 	 * Method that generates particles on the screen. First, it initializes the particle master, then loads a particle
 	 * texture and determines its parameters (amount of particles per second, their speed, how much they're affected by
 	 * gravity and how long they stay on the screen).
-	 * @param loader object allowing to load textures to be rendered
-	 * @param renderer responsible for showing the particles on the screen
+	 * @param loader object allowing to load the particle quad
+	 * @param texture id of the particle texture atlas
 	 * @return the particle system with a texture and parameters
 	 */
-	private static ParticleSystem generateParticles(Loader loader, MasterRenderer renderer) {
-		ParticleMaster.init(loader, renderer.getProjectionMatrix());
-		ParticleTexture particleTexture = new ParticleTexture(loader.loadTexture("particleAtlas"), 4);
+	private static ParticleSystem generateParticles(Loader loader, int texture) {
+		ParticleMaster.init(loader);
+		ParticleTexture particleTexture = new ParticleTexture(texture, 4);
 		return new ParticleSystem(particleTexture, 50,25, 0.3f, 4);
 	}
 
@@ -148,7 +353,7 @@ public class GameEngine {
 	 * @param colour vector of 3 floats containing the rgb indices for the colour of the light
 	 * @param attenuation vector of 3 floats containing indices of attenuation
 	 */
-	private static void generateLamp(Terrain terrain, int worldX, int worldZ,List<Entity> entities, TexturedModel lamp,List<Light> lights, Vector3f colour, Vector3f attenuation){
+	private static void generateLamp(Heightfield terrain, int worldX, int worldZ,List<Entity> entities, TexturedModel lamp,List<Light> lights, Vector3f colour, Vector3f attenuation){
 		float y;
 		y = terrain.getHeightOfTerrain(worldX,worldZ);
 		entities.add(new Entity(lamp, new Vector3f(worldX,y,worldZ), 0f, 0f, 0f, 1));
@@ -163,7 +368,7 @@ public class GameEngine {
 	 * @param entities list of all the entities in the world
 	 * @param lights list of all the lights in the world
 	 */
-	private static void generateLights(Terrain terrain, TexturedModel lamp, List<Entity> entities, List<Light> lights) {
+	private static void generateLights(Heightfield terrain, TexturedModel lamp, List<Entity> entities, List<Light> lights) {
 		Light sun = new Light(new Vector3f(10000, 10000, -10000), new Vector3f(1.3f, 1.3f, 1.3f));
 		lights.add(sun);
 		generateLamp(terrain, 80,-80, entities, lamp, lights,new Vector3f(2,0,0), new Vector3f(1,0.01f,0.002f));
@@ -180,7 +385,7 @@ public class GameEngine {
 	 * @param pine model used to generate a pine entity
 	 * @param entities list of all the entities in the world
 	 */
-	private static void placeEntitiesOnTerrain(Terrain terrain, TexturedModel fern, TexturedModel pine, List<Entity> entities) {
+	private static void placeEntitiesOnTerrain(Heightfield terrain, TexturedModel fern, TexturedModel pine, List<Entity> entities) {
 		float y;
 		Random random = new Random(5666778);
 		for (int i = 0; i < 60; i++) {
@@ -212,7 +417,7 @@ public class GameEngine {
 	 * @param boulderModel used to create a boulder object
 	 * @param normalMapEntities map that allows to "simulate" the normal vectors of complex entities on entities which have simple surfaces
 	 */
-	private static void placeNormalEntitiesOnTerrain(Terrain terrain, TexturedModel barrelModel, TexturedModel crateModel, TexturedModel boulderModel, List<Entity> normalMapEntities) {
+	private static void placeNormalEntitiesOnTerrain(Heightfield terrain, TexturedModel barrelModel, TexturedModel crateModel, TexturedModel boulderModel, List<Entity> normalMapEntities) {
 		float y = terrain.getHeightOfTerrain(55,-55);
 		Entity barrel = new Entity(barrelModel, new Vector3f(55, y + 5, -55), 0, 90, 90, 1f);
 		y = terrain.getHeightOfTerrain(78,-78);
@@ -241,14 +446,14 @@ public class GameEngine {
 	 * Method that generates normal entities. First, it retrieves the model and the texture, then use a normal map to
 	 * "simulate" the normal vectors of a complex object, then set the shine damper and reflectivity parameters for the
 	 * specular light to hit the object "naturally".
-	 * @param modelName name of the model to use to generate the entity
-	 * @param loader used to load the texture to create the entity
-	 * @param modelNormal model of the normal entity
+	 * @param rawModel model to use to generate the entity
+	 * @param texture id of the texture of the model
+	 * @param normalMap id of the normal map of the model
 	 * @return the model with a normal texture on it
 	 */
-	private static TexturedModel generateNormalModel(String modelName, Loader loader, String modelNormal) {
-		TexturedModel model = new TexturedModel(NormalMappedObjLoader.loadOBJ(modelName, loader), new ModelTexture(loader.loadTexture(modelName)));
-		model.getTexture().setNormalMap(loader.loadTexture(modelNormal));
+	private static TexturedModel generateNormalModel(RawModel rawModel, int texture, int normalMap) {
+		TexturedModel model = new TexturedModel(rawModel, new ModelTexture(texture));
+		model.getTexture().setNormalMap(normalMap);
 		model.getTexture().setShineDamper(10);
 		model.getTexture().setReflectivity(0.5f);
 		return model;
@@ -256,14 +461,17 @@ public class GameEngine {
 
 	/**
 	 * Method that generates a terrain with different textures on it.
-	 * @param loader used to load the multiple textures of the terrain
+	 * @param background loaded texture used where the blend map is black
+	 * @param r loaded texture used where the blend map is red
+	 * @param g loaded texture used where the blend map is green
+	 * @param b loaded texture used where the blend map is blue
 	 * @return the terrain with the multiple textures on it
 	 */
-	private static TerrainTexturePack generateTerrainTexture(Loader loader) {
-		TerrainTexture backgroundTexture = new TerrainTexture(loader.loadTexture("grassy3"));
-		TerrainTexture rTexture = new TerrainTexture(loader.loadTexture("mud"));
-		TerrainTexture gTexture = new TerrainTexture(loader.loadTexture("grassy2"));
-		TerrainTexture bTexture = new TerrainTexture(loader.loadTexture("path"));
+	private static TerrainTexturePack generateTerrainTexture(Asset<Integer> background, Asset<Integer> r, Asset<Integer> g, Asset<Integer> b) {
+		TerrainTexture backgroundTexture = new TerrainTexture(background.get());
+		TerrainTexture rTexture = new TerrainTexture(r.get());
+		TerrainTexture gTexture = new TerrainTexture(g.get());
+		TerrainTexture bTexture = new TerrainTexture(b.get());
 
 		return new TerrainTexturePack(backgroundTexture, rTexture, gTexture, bTexture);
 	}
@@ -271,13 +479,12 @@ public class GameEngine {
 	/**
 	 * Method that generates models requiring transparency. First it generates the model with the texture, then it sets
 	 * its transparency to true.
-	 * @param objFileName name of the 3D model
-	 * @param modelTexture name of the texture to apply to the model
-	 * @param loader used to load a texture
+	 * @param rawModel the 3D model
+	 * @param modelTexture texture to apply to the model
 	 * @return the model with the texture on it
 	 */
-	private static TexturedModel generateTransparentModels(String objFileName, ModelTexture modelTexture, Loader loader){
-		TexturedModel model = new TexturedModel(OBJFileLoader.loadOBJ(objFileName, loader), modelTexture);
+	private static TexturedModel generateTransparentModels(RawModel rawModel, ModelTexture modelTexture){
+		TexturedModel model = new TexturedModel(rawModel, modelTexture);
 		model.getTexture().setHasTransparency(true);
 		return model;
 	}
@@ -0,0 +1,116 @@
+package engineTester;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import objConverter.OBJParser;
+
+/**
+ * Class that measures how fast the .obj files are parsed, in MB/s, with the memory mapped parser and with the old way
+ * of reading them (one String per line, split on spaces and slashes). It doesn't need an openGL context.
+ * Usage: OBJParserBenchmark [file.obj ...]; without arguments, every .obj file of the res folder is used.
+ */
+public class OBJParserBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 20;
+
+	public static void main(String[] args) throws IOException {
+		List<File> files = new ArrayList<>();
+		if (args.length > 0) {
+			for (String arg : args) {
+				files.add(new File(arg));
+			}
+		} else {
+			File[] resources = new File("res").listFiles((dir, name) -> name.endsWith(".obj"));
+			if (resources != null) {
+				for (File file : resources) {
+					files.add(file);
+				}
+			}
+		}
+		if (files.isEmpty()) {
+			System.err.println("No .obj file to parse");
+			System.exit(-1);
+		}
+		long bytes = 0;
+		for (File file : files) {
+			bytes += file.length();
+		}
+		System.out.println("Parsing " + files.size() + " files, " + bytes + " bytes per round");
+		System.out.printf("mapped parser:     %8.1f MB/s%n", measure(files, bytes, true));
+		System.out.printf("line by line:      %8.1f MB/s%n", measure(files, bytes, false));
+	}
+
+	/**
+	 * Method that parses all the files several times, after a few warmup rounds letting the JIT compile the code.
+	 * @param files to parse
+	 * @param bytes total size of the files
+	 * @param mapped true to use the memory mapped parser, false to use the line by line reading
+	 * @return the throughput in MB/s
+	 */
+	private static double measure(List<File> files, long bytes, boolean mapped) throws IOException {
+		long checksum = 0; //used so that the JIT can't remove the parsing
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			checksum += parseAll(files, mapped);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			checksum += parseAll(files, mapped);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		if (checksum == 42) {
+			System.out.println();
+		}
+		return bytes * MEASURED_ROUNDS / seconds / (1024 * 1024);
+	}
+
+	private static long parseAll(List<File> files, boolean mapped) throws IOException {
+		long checksum = 0;
+		for (File file : files) {
+			if (mapped) {
+				OBJParser obj = OBJParser.parse(file);
+				checksum += obj.getPositionCount() + obj.getFaceCount() + Float.floatToIntBits(obj.getPositions()[0]);
+			} else {
+				checksum += parseLineByLine(file);
+			}
+		}
+		return checksum;
+	}
+
+	/**
+	 * Method that reads a file the way the obj loaders used to: every line becomes a String that is split, and every
+	 * number goes through Float.valueOf or Integer.parseInt.
+	 * @param file to parse
+	 * @return a checksum of the parsed values
+	 */
+	private static long parseLineByLine(File file) throws IOException {
+		long checksum = 0;
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("v ") || line.startsWith("vt ") || line.startsWith("vn ")) {
+					String[] currentLine = line.split(" ");
+					for (int i = 1; i < currentLine.length; i++) {
+						checksum += Float.floatToIntBits(Float.valueOf(currentLine[i]));
+					}
+				} else if (line.startsWith("f ")) {
+					String[] currentLine = line.split(" ");
+					for (int i = 1; i < currentLine.length; i++) {
+						for (String index : currentLine[i].split("/")) {
+							if (!index.isEmpty()) {
+								checksum += Integer.parseInt(index);
+							}
+						}
+					}
+				}
+			}
+		}
+		return checksum;
+	}
+
+}
@@ -0,0 +1,131 @@
+package engineTester;
+
+import java.util.Random;
+
+import org.lwjgl.util.vector.Vector2f;
+import org.lwjgl.util.vector.Vector3f;
+
+import terrains.Terrain;
+import terrains.TerrainMesh;
+import toolbox.Maths;
+
+/**
+ * Class that measures how many terrain height queries can be answered per second on one thread: one point at a time
+ * (Terrain.getHeightOfTerrain), a whole array of points at once (Terrain.getHeightsOfTerrain), and the way the terrain
+ * used to do it, creating 4 vectors and calling Maths.barryCentric for every query. It doesn't need an openGL context:
+ * the terrain is generated from a grid of heights and its mesh is never loaded to a VAO.
+ * The queries are made twice: at random points all over the terrain, where most of them miss the caches, and at
+ * points close to each other, like the particles, agents or entities around the player.
+ * Each method is run for a few warmup rounds, so that it is compiled by the JIT, before the rounds that are measured,
+ * and the heights are summed so that the queries can't be optimised away.
+ * Usage: TerrainHeightBenchmark [vertices per side]
+ */
+public class TerrainHeightBenchmark {
+
+	private static final int DEFAULT_VERTEX_COUNT = 1025;
+	private static final float TERRAIN_SIZE = 1600; //same as Terrain.SIZE
+	private static final int QUERY_COUNT = 1 << 20;
+	private static final int WARMUP_ROUNDS = 20;
+	private static final int MEASURED_ROUNDS = 50;
+
+	public static void main(String[] args) {
+		int vertexCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_VERTEX_COUNT;
+		float[] heights = new float[vertexCount * vertexCount];
+		for (int z = 0; z < vertexCount; z++) {
+			for (int x = 0; x < vertexCount; x++) {
+				heights[z * vertexCount + x] = (float) (Math.sin(x * 0.05) * Math.cos(z * 0.03) * 40);
+			}
+		}
+		Terrain terrain = new Terrain(0, 0, TerrainMesh.generate(heights, vertexCount), null, null);
+		Random random = new Random(42);
+		float[] worldX = new float[QUERY_COUNT];
+		float[] worldZ = new float[QUERY_COUNT];
+		for (int i = 0; i < QUERY_COUNT; i++) {
+			worldX[i] = random.nextFloat() * TERRAIN_SIZE;
+			worldZ[i] = random.nextFloat() * TERRAIN_SIZE;
+		}
+		System.out.println(vertexCount + "x" + vertexCount + " terrain, " + QUERY_COUNT + " queries per round");
+		measure("random points", terrain, heights, vertexCount, worldX, worldZ);
+		for (int i = 0; i < QUERY_COUNT; i++) {
+			worldX[i] = 700 + random.nextFloat() * 200; //a 200 by 200 area
+			worldZ[i] = 700 + random.nextFloat() * 200;
+		}
+		measure("nearby points", terrain, heights, vertexCount, worldX, worldZ);
+	}
+
+	private static void measure(String name, Terrain terrain, float[] heights, int vertexCount, float[] worldX,
+			float[] worldZ) {
+		float[] results = new float[QUERY_COUNT];
+		terrain.getHeightsOfTerrain(worldX, worldZ, results, QUERY_COUNT);
+		float error = 0;
+		float bulkError = 0;
+		for (int i = 0; i < QUERY_COUNT; i++) {
+			float reference = getHeightWithVectors(heights, vertexCount, worldX[i], worldZ[i]);
+			error = Math.max(error, Math.abs(reference - terrain.getHeightOfTerrain(worldX[i], worldZ[i])));
+			bulkError = Math.max(bulkError, Math.abs(reference - results[i]));
+		}
+		System.out.printf("%s, largest difference with the vector version: %g (scalar), %g (bulk)%n", name, error,
+				bulkError);
+		for (int method = 0; method < 3; method++) {
+			float checksum = 0;
+			for (int i = 0; i < WARMUP_ROUNDS; i++) {
+				checksum += run(method, terrain, heights, vertexCount, worldX, worldZ, results);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < MEASURED_ROUNDS; i++) {
+				checksum += run(method, terrain, heights, vertexCount, worldX, worldZ, results);
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			String methodName = method == 0 ? "scalar:" : method == 1 ? "bulk:" : "vectors (old):";
+			System.out.printf("  %-15s %8.1f M queries/s   (checksum %.1f)%n", methodName,
+					(double) QUERY_COUNT * MEASURED_ROUNDS / seconds / 1e6, checksum);
+		}
+	}
+
+	/**
+	 * Method that answers every query once with one of the methods.
+	 * @return the sum of the heights, so that the queries can't be skipped
+	 */
+	private static float run(int method, Terrain terrain, float[] heights, int vertexCount, float[] worldX,
+			float[] worldZ, float[] results) {
+		float sum = 0;
+		if (method == 0) {
+			for (int i = 0; i < QUERY_COUNT; i++) {
+				sum += terrain.getHeightOfTerrain(worldX[i], worldZ[i]);
+			}
+		} else if (method == 1) {
+			terrain.getHeightsOfTerrain(worldX, worldZ, results, QUERY_COUNT);
+			for (int i = 0; i < QUERY_COUNT; i++) {
+				sum += results[i];
+			}
+		} else {
+			for (int i = 0; i < QUERY_COUNT; i++) {
+				sum += getHeightWithVectors(heights, vertexCount, worldX[i], worldZ[i]);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Method that finds the height of the terrain the way Terrain.getHeightOfTerrain used to.
+	 */
+	private static float getHeightWithVectors(float[] heights, int vertexCount, float terrainX, float terrainZ) {
+		float gridSquareSize = TERRAIN_SIZE / ((float) vertexCount - 1);
+		int gridX = (int) Math.floor(terrainX / gridSquareSize);
+		int gridZ = (int) Math.floor(terrainZ / gridSquareSize);
+		if (gridX >= vertexCount - 1 || gridZ >= vertexCount - 1 || gridX < 0 || gridZ < 0) {
+			return 0;
+		}
+		float xCoord = (terrainX % gridSquareSize) / gridSquareSize;
+		float zCoord = (terrainZ % gridSquareSize) / gridSquareSize;
+		int topLeft = gridZ * vertexCount + gridX;
+		if (xCoord <= (1 - zCoord)) {
+			return Maths.barryCentric(new Vector3f(0, heights[topLeft], 0), new Vector3f(1, heights[topLeft + 1], 0),
+					new Vector3f(0, heights[topLeft + vertexCount], 1), new Vector2f(xCoord, zCoord));
+		}
+		return Maths.barryCentric(new Vector3f(1, heights[topLeft + 1], 0),
+				new Vector3f(1, heights[topLeft + vertexCount + 1], 1), new Vector3f(0, heights[topLeft + vertexCount], 1),
+				new Vector2f(xCoord, zCoord));
+	}
+
+}
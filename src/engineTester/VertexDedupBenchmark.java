@@ -0,0 +1,167 @@
+package engineTester;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import objConverter.OBJParser;
+import objConverter.VertexIndexMap;
+
+/**
+ * Class that measures how long it takes to give a number to every different vertex of a .obj file, with the hash table
+ * the obj loaders use (VertexIndexMap) and with the chains of duplicate vertices they used to follow. It doesn't need
+ * an openGL context.
+ * Without arguments, it writes a grid of more than a million triangles in a temporary .obj file. Each triangle has one
+ * of a few normals, so most positions are shared by several different vertices, like on a flat shaded model.
+ * Usage: VertexDedupBenchmark [file.obj]
+ */
+public class VertexDedupBenchmark {
+
+	private static final int GRID_SIZE = 725; //2 * 724 * 724 = 1048352 triangles
+	private static final int NORMAL_COUNT = 128;
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 10;
+
+	public static void main(String[] args) throws IOException {
+		File file;
+		if (args.length > 0) {
+			file = new File(args[0]);
+		} else {
+			file = File.createTempFile("dedup", ".obj");
+			file.deleteOnExit();
+			writeGrid(file);
+		}
+		OBJParser obj = OBJParser.parse(file);
+		System.out.println(obj.getFaceCount() + " triangles, " + obj.getPositionCount() + " positions");
+		measure("hash table:", obj, true);
+		measure("duplicate chains:", obj, false);
+	}
+
+	private static void measure(String name, OBJParser obj, boolean hashed) {
+		int vertexCount = 0;
+		try {
+			for (int i = 0; i < WARMUP_ROUNDS; i++) {
+				vertexCount = hashed ? deduplicate(obj) : deduplicateWithChains(obj);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < MEASURED_ROUNDS; i++) {
+				vertexCount = hashed ? deduplicate(obj) : deduplicateWithChains(obj);
+			}
+			double time = (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+			System.out.printf("%-18s %8.1f ms   %d vertices%n", name, time, vertexCount);
+		} catch (StackOverflowError e) {
+			System.out.printf("%-18s stack overflow%n", name);
+		}
+	}
+
+	/**
+	 * Method that numbers the vertices the way the obj loaders do.
+	 * @return the amount of different vertices
+	 */
+	private static int deduplicate(OBJParser obj) {
+		int[] faces = obj.getFaces();
+		VertexIndexMap vertices = new VertexIndexMap(obj.getPositionCount());
+		int[] indices = new int[obj.getFaceCount() * 3];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = vertices.getOrAdd(faces[i * 3], faces[i * 3 + 1], faces[i * 3 + 2]);
+		}
+		return vertices.size();
+	}
+
+	/**
+	 * Method that numbers the vertices the way the obj loaders used to: one object per position, followed by a chain
+	 * of duplicates for the other texture coordinates and normals it is used with, which is followed recursively.
+	 * @return the amount of different vertices
+	 */
+	private static int deduplicateWithChains(OBJParser obj) {
+		int[] faces = obj.getFaces();
+		List<ChainedVertex> vertices = new ArrayList<>(obj.getPositionCount());
+		for (int i = 0; i < obj.getPositionCount(); i++) {
+			vertices.add(new ChainedVertex(i));
+		}
+		List<Integer> indices = new ArrayList<>(obj.getFaceCount() * 3);
+		for (int i = 0; i < obj.getFaceCount() * 3; i++) {
+			ChainedVertex vertex = vertices.get(faces[i * 3]);
+			if (vertex.textureIndex == -1) {
+				vertex.textureIndex = faces[i * 3 + 1];
+				vertex.normalIndex = faces[i * 3 + 2];
+				indices.add(vertex.index);
+			} else {
+				findDuplicate(vertex, faces[i * 3 + 1], faces[i * 3 + 2], indices, vertices);
+			}
+		}
+		return vertices.size();
+	}
+
+	private static void findDuplicate(ChainedVertex vertex, int textureIndex, int normalIndex, List<Integer> indices,
+			List<ChainedVertex> vertices) {
+		if (vertex.textureIndex == textureIndex && vertex.normalIndex == normalIndex) {
+			indices.add(vertex.index);
+		} else if (vertex.duplicate != null) {
+			findDuplicate(vertex.duplicate, textureIndex, normalIndex, indices, vertices);
+		} else {
+			ChainedVertex duplicate = new ChainedVertex(vertices.size());
+			duplicate.textureIndex = textureIndex;
+			duplicate.normalIndex = normalIndex;
+			vertex.duplicate = duplicate;
+			vertices.add(duplicate);
+			indices.add(duplicate.index);
+		}
+	}
+
+	/**
+	 * Method that writes a flat grid: one position and texture coordinate per point of the grid, and a normal chosen
+	 * among a few for each triangle.
+	 */
+	private static void writeGrid(File file) throws IOException {
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+			for (int z = 0; z < GRID_SIZE; z++) {
+				for (int x = 0; x < GRID_SIZE; x++) {
+					writer.write("v " + x + " 0 " + z + "\n");
+				}
+			}
+			for (int z = 0; z < GRID_SIZE; z++) {
+				for (int x = 0; x < GRID_SIZE; x++) {
+					writer.write("vt " + (float) x / GRID_SIZE + " " + (float) z / GRID_SIZE + "\n");
+				}
+			}
+			for (int i = 0; i < NORMAL_COUNT; i++) {
+				double angle = Math.PI * 2 * i / NORMAL_COUNT;
+				writer.write("vn " + (float) Math.cos(angle) * 0.1f + " 1 " + (float) Math.sin(angle) * 0.1f + "\n");
+			}
+			int triangle = 0;
+			for (int z = 0; z < GRID_SIZE - 1; z++) {
+				for (int x = 0; x < GRID_SIZE - 1; x++) {
+					int topLeft = z * GRID_SIZE + x + 1; //indices start at 1 in the obj format
+					int topRight = topLeft + 1;
+					int bottomLeft = topLeft + GRID_SIZE;
+					int bottomRight = bottomLeft + 1;
+					writeFace(writer, topLeft, bottomLeft, topRight, triangle++ % NORMAL_COUNT + 1);
+					writeFace(writer, topRight, bottomLeft, bottomRight, triangle++ % NORMAL_COUNT + 1);
+				}
+			}
+		}
+	}
+
+	private static void writeFace(BufferedWriter writer, int v0, int v1, int v2, int normal) throws IOException {
+		writer.write("f " + v0 + "/" + v0 + "/" + normal + " " + v1 + "/" + v1 + "/" + normal + " " + v2 + "/" + v2
+				+ "/" + normal + "\n");
+	}
+
+	private static class ChainedVertex {
+
+		private final int index;
+		private int textureIndex = -1;
+		private int normalIndex = -1;
+		private ChainedVertex duplicate;
+
+		private ChainedVertex(int index) {
+			this.index = index;
+		}
+
+	}
+
+}
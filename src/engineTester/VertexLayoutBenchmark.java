@@ -0,0 +1,177 @@
+package engineTester;
+
+import java.util.Random;
+
+import models.RawModel;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+import renderEngine.DisplayManager;
+import renderEngine.Loader;
+
+/**
+ * Class that compares the ways Loader can store the vertices of a model: one VBO per attribute, all the attributes
+ * interleaved in a single VBO, or interleaved and compressed. For each layout, it measures how much memory the mesh
+ * takes, how long it takes to upload it, and how long it takes the GPU to fetch its vertices (the mesh is drawn with the
+ * rasterizer disabled, so only the vertex stage runs).
+ * It uses grids of random vertices, like the terrain, with and without tangents, like the normal mapped models.
+ * Usage: VertexLayoutBenchmark [grid size]
+ */
+public class VertexLayoutBenchmark {
+
+	private static final int UPLOAD_ROUNDS = 20;
+	private static final int DRAW_ROUNDS = 200;
+	private static final String[] LAYOUTS = {"separate", "interleaved", "compressed"};
+
+	private static final String VERTEX_SHADER = "#version 150\n"
+			+ "in vec3 position;\n"
+			+ "in vec2 textureCoordinates;\n"
+			+ "in vec3 normal;\n"
+			+ "in vec3 tangent;\n"
+			+ "void main(void){\n"
+			+ "	gl_Position = vec4(position + normal + tangent, textureCoordinates.x + textureCoordinates.y);\n"
+			+ "}\n";
+	private static final String FRAGMENT_SHADER = "#version 150\n"
+			+ "out vec4 out_Colour;\n"
+			+ "void main(void){\n"
+			+ "	out_Colour = vec4(1.0);\n"
+			+ "}\n";
+
+	public static void main(String[] args) {
+		int gridSize = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+		DisplayManager.createDisplay();
+		Loader loader = new Loader();
+		int program = createProgram();
+		Random random = new Random(42);
+		float[] positions = randomArray(random, gridSize * gridSize * 3);
+		float[] textureCoords = randomArray(random, gridSize * gridSize * 2);
+		float[] normals = randomArray(random, gridSize * gridSize * 3);
+		float[] tangents = randomArray(random, gridSize * gridSize * 3);
+		int[] indices = createGridIndices(gridSize);
+		System.out.println(gridSize * gridSize + " vertices, " + indices.length / 3 + " triangles");
+		for (boolean withTangents : new boolean[] {false, true}) {
+			for (String layout : LAYOUTS) {
+				loader.setInterleaved(!layout.equals("separate"));
+				loader.setCompressed(layout.equals("compressed"));
+				float[] modelTangents = withTangents ? tangents : null;
+				loadToVAO(loader, positions, textureCoords, normals, modelTangents, indices); //warmup
+				long start = System.nanoTime();
+				RawModel model = null;
+				for (int i = 0; i < UPLOAD_ROUNDS; i++) {
+					model = loadToVAO(loader, positions, textureCoords, normals, modelTangents, indices);
+				}
+				double uploadTime = (System.nanoTime() - start) / 1e6 / UPLOAD_ROUNDS;
+				double drawTime = measureVertexFetch(program, model, withTangents);
+				System.out.printf("%-12s %-16s memory: %7d KB   upload: %7.2f ms   vertex fetch: %7.3f ms per draw%n",
+						layout, withTangents ? "with tangents" : "without tangents", model.getMemorySize() / 1024,
+						uploadTime, drawTime);
+			}
+		}
+		GL20.glDeleteProgram(program);
+		loader.cleanUp();
+		DisplayManager.closeDisplay();
+	}
+
+	private static RawModel loadToVAO(Loader loader, float[] positions, float[] textureCoords, float[] normals,
+			float[] tangents, int[] indices) {
+		RawModel model = loader.loadToVAO(positions, textureCoords, normals, tangents, indices);
+		GL11.glFinish(); //the upload is only over once openGL has copied the data
+		return model;
+	}
+
+	/**
+	 * Method that draws a model many times with the rasterizer disabled, and measures the average time of a draw.
+	 * @param program reading all the attributes of the vertices
+	 * @param model to draw
+	 * @param withTangents whether the model has tangents
+	 * @return time of a draw, in milliseconds
+	 */
+	private static double measureVertexFetch(int program, RawModel model, boolean withTangents) {
+		GL20.glUseProgram(program);
+		GL30.glBindVertexArray(model.getVaoID());
+		int attributes = withTangents ? 4 : 3;
+		for (int i = 0; i < attributes; i++) {
+			GL20.glEnableVertexAttribArray(i);
+		}
+		GL11.glEnable(GL30.GL_RASTERIZER_DISCARD);
+		GL11.glDrawElements(GL11.GL_TRIANGLES, model.getVertexCount(), model.getIndexType(), 0); //warmup
+		GL11.glFinish();
+		long start = System.nanoTime();
+		for (int i = 0; i < DRAW_ROUNDS; i++) {
+			GL11.glDrawElements(GL11.GL_TRIANGLES, model.getVertexCount(), model.getIndexType(), 0);
+		}
+		GL11.glFinish();
+		double time = (System.nanoTime() - start) / 1e6 / DRAW_ROUNDS;
+		GL11.glDisable(GL30.GL_RASTERIZER_DISCARD);
+		for (int i = 0; i < attributes; i++) {
+			GL20.glDisableVertexAttribArray(i);
+		}
+		GL30.glBindVertexArray(0);
+		GL20.glUseProgram(0);
+		return time;
+	}
+
+	private static int createProgram() {
+		int program = GL20.glCreateProgram();
+		int vertexShader = compileShader(VERTEX_SHADER, GL20.GL_VERTEX_SHADER);
+		int fragmentShader = compileShader(FRAGMENT_SHADER, GL20.GL_FRAGMENT_SHADER);
+		GL20.glAttachShader(program, vertexShader);
+		GL20.glAttachShader(program, fragmentShader);
+		GL20.glBindAttribLocation(program, 0, "position");
+		GL20.glBindAttribLocation(program, 1, "textureCoordinates");
+		GL20.glBindAttribLocation(program, 2, "normal");
+		GL20.glBindAttribLocation(program, 3, "tangent");
+		GL20.glLinkProgram(program);
+		GL20.glDeleteShader(vertexShader);
+		GL20.glDeleteShader(fragmentShader);
+		return program;
+	}
+
+	private static int compileShader(String source, int type) {
+		int shader = GL20.glCreateShader(type);
+		GL20.glShaderSource(shader, source);
+		GL20.glCompileShader(shader);
+		if (GL20.glGetShaderi(shader, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE) {
+			System.out.println(GL20.glGetShaderInfoLog(shader, 500));
+			System.err.println("Could not compile shader!");
+			System.exit(-1);
+		}
+		return shader;
+	}
+
+	private static float[] randomArray(Random random, int length) {
+		float[] array = new float[length];
+		for (int i = 0; i < length; i++) {
+			array[i] = random.nextFloat();
+		}
+		return array;
+	}
+
+	/**
+	 * Method that links the vertices of a grid with two triangles per square, the same way the terrain does.
+	 * @param gridSize amount of vertices on one side of the grid
+	 * @return the indices of the triangles
+	 */
+	private static int[] createGridIndices(int gridSize) {
+		int[] indices = new int[6 * (gridSize - 1) * (gridSize - 1)];
+		int pointer = 0;
+		for (int gz = 0; gz < gridSize - 1; gz++) {
+			for (int gx = 0; gx < gridSize - 1; gx++) {
+				int topLeft = (gz * gridSize) + gx;
+				int topRight = topLeft + 1;
+				int bottomLeft = ((gz + 1) * gridSize) + gx;
+				int bottomRight = bottomLeft + 1;
+				indices[pointer++] = topLeft;
+				indices[pointer++] = bottomLeft;
+				indices[pointer++] = topRight;
+				indices[pointer++] = topRight;
+				indices[pointer++] = bottomLeft;
+				indices[pointer++] = bottomRight;
+			}
+		}
+		return indices;
+	}
+
+}
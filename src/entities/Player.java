@@ -3,7 +3,7 @@ import models.TexturedModel;
 import org.lwjgl.input.Keyboard;
 import org.lwjgl.util.vector.Vector3f;
 import renderEngine.DisplayManager;
-import terrains.Terrain;
+import terrains.Heightfield;
 
 public class Player extends Entity {
 
@@ -39,9 +39,9 @@ public class Player extends Entity {
 	 * the y-axis. Then, it computes jumping, by increasing its position on the y axis overtime, so that the animation
 	 * is shared between several frames. Finally, it makes sure that the player lands on the terrain by retrieving the
 	 * terrain height at the player position.
-	 * @param terrain on which the player jumps
+	 * @param terrain on which the player jumps, held in memory or mapped from a file
 	 */
-	public void move(Terrain terrain) {
+	public void move(Heightfield terrain) {
 		checkInputs();
 		super.increaseRotation(0, turnSpeed * DisplayManager.getFrameTimeSeconds(), 0);
 		float distance = speed * DisplayManager.getFrameTimeSeconds(); 	//it's the turn speed per second, so we have to multiply the speed by the time that has passed. We retrieve it from the display manager
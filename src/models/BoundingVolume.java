@@ -0,0 +1,66 @@
+package models;
+
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * Class representing the space taken by a model, in the model's own coordinates. It keeps an axis aligned bounding box
+ * (the smallest and biggest coordinates on each axis), as well as the radius of a sphere centered on the origin of the
+ * model containing all of its vertices. This sphere doesn't change when the model is rotated, which makes it cheap to
+ * test for entities.
+ */
+public class BoundingVolume {
+
+	private final Vector3f min;
+	private final Vector3f max;
+	private final float radius;
+
+	public BoundingVolume(Vector3f min, Vector3f max, float radius) {
+		this.min = min;
+		this.max = max;
+		this.radius = radius;
+	}
+
+	/**
+	 * Method that computes the bounding volume of a model from the positions of its vertices.
+	 * @param positions of the vertices, 3 floats per vertex
+	 * @return the bounding volume containing all the vertices
+	 */
+	public static BoundingVolume fromPositions(float[] positions) {
+		if (positions.length < 3) {
+			return new BoundingVolume(new Vector3f(), new Vector3f(), 0);
+		}
+		float minX = positions[0], minY = positions[1], minZ = positions[2];
+		float maxX = minX, maxY = minY, maxZ = minZ;
+		float furthestSquared = 0;
+		for (int i = 0; i < positions.length; i += 3) {
+			float x = positions[i];
+			float y = positions[i + 1];
+			float z = positions[i + 2];
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			minZ = Math.min(minZ, z);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+			maxZ = Math.max(maxZ, z);
+			furthestSquared = Math.max(furthestSquared, x * x + y * y + z * z);
+		}
+		return new BoundingVolume(new Vector3f(minX, minY, minZ), new Vector3f(maxX, maxY, maxZ),
+				(float) Math.sqrt(furthestSquared));
+	}
+
+	public Vector3f getMin() {
+		return min;
+	}
+
+	public Vector3f getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the distance from the origin of the model to its furthest vertex
+	 */
+	public float getRadius() {
+		return radius;
+	}
+
+}
@@ -1,19 +1,53 @@
 package models;
 
+import org.lwjgl.opengl.GL11;
+
 /**
  * class representing an untextured 3D model stored in memory. VAOs are numbered lists containing VBOs, which are
  * buffers containing data relative to the 3D models. These data are accessed when showed on the screen.
  * This class contains a VAOID, which is the list where the model is stored. It also has a vertex count, which is the
- * amount of vertexes that have to show in the screen to render the model.
+ * amount of vertexes that have to show in the screen to render the model, and the bounding volume of the model (null
+ * for models that aren't placed in the 3D world, like the particle quads) so that we can skip it when it isn't seen.
+ * The vertices of a model can be compressed (see VertexCompressor), in which case the shaders need the bounding volume
+ * to decode them, and the indices can be stored as unsigned shorts instead of unsigned ints.
  */
 public class RawModel {
 
 	private final int vaoID;
 	private final int vertexCount;
+	private final BoundingVolume bounds;
+	private final boolean compressed;
+	private final int indexType;
+	private final int memorySize;
+	private final int uncompressedMemorySize;
 
 	public RawModel(int vaoID, int vertexCount){
+		this(vaoID, vertexCount, null);
+	}
+
+	public RawModel(int vaoID, int vertexCount, BoundingVolume bounds){
+		this(vaoID, vertexCount, bounds, false, GL11.GL_UNSIGNED_INT, 0, 0);
+	}
+
+	/**
+	 * Constructor used by the loader, which knows how the model is stored.
+	 * @param vaoID id of the VAO of the model
+	 * @param vertexCount amount of indices to draw
+	 * @param bounds of the model
+	 * @param compressed whether the vertices are compressed
+	 * @param indexType GL_UNSIGNED_INT or GL_UNSIGNED_SHORT
+	 * @param memorySize bytes taken by the vertices and indices of the model in video memory
+	 * @param uncompressedMemorySize bytes the vertices and indices would take if they were stored as floats and ints
+	 */
+	public RawModel(int vaoID, int vertexCount, BoundingVolume bounds, boolean compressed, int indexType, int memorySize,
+			int uncompressedMemorySize){
 		this.vaoID = vaoID;
 		this.vertexCount = vertexCount;
+		this.bounds = bounds;
+		this.compressed = compressed;
+		this.indexType = indexType;
+		this.memorySize = memorySize;
+		this.uncompressedMemorySize = uncompressedMemorySize;
 	}
 
 	public int getVaoID() {
@@ -24,6 +58,27 @@ public class RawModel {
 		return vertexCount;
 	}
 
+	public BoundingVolume getBounds() {
+		return bounds;
+	}
 
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * @return the type of the indices, to give to glDrawElements
+	 */
+	public int getIndexType() {
+		return indexType;
+	}
+
+	public int getMemorySize() {
+		return memorySize;
+	}
+
+	public int getUncompressedMemorySize() {
+		return uncompressedMemorySize;
+	}
 
 }
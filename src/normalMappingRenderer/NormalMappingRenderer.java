@@ -1,81 +1,123 @@
 package normalMappingRenderer;
 
-import java.util.List;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
 import org.lwjgl.util.vector.Matrix4f;
-import org.lwjgl.util.vector.Vector4f;
+import org.lwjgl.util.vector.Vector3f;
 
-import entities.Camera;
 import entities.Entity;
-import entities.Light;
 import models.RawModel;
 import models.TexturedModel;
-import renderEngine.MasterRenderer;
+import renderEngine.GLState;
+import renderEngine.RenderQueue;
+import shaders.ShaderPermutations;
 import textures.ModelTexture;
 import toolbox.Maths;
 
 public class NormalMappingRenderer {
 
-	private final NormalMappingShader shader;
+	private final ShaderPermutations<NormalMappingShader> shaders;
+	private NormalMappingShader shader; //variant used by the model being drawn
+	private final Map<TexturedModel, Integer> batchIds = new IdentityHashMap<>(); //batch of each textured model, used in the sort keys
 
-	public NormalMappingRenderer(Matrix4f projectionMatrix) {
-		this.shader = new NormalMappingShader();
-		shader.start();
-		shader.loadProjectionMatrix(projectionMatrix);
-		shader.connectTextureUnits();
-		shader.stop();
+	/**
+	 * The camera and the lights, with their position in eye space, are read by the shaders from the FrameData block
+	 * (see FrameUniformBuffer).
+	 */
+	public NormalMappingRenderer() {
+		shaders = new ShaderPermutations<>(NormalMappingShader::new, NormalMappingShader::connectTextureUnits);
 	}
 
-	public void render(Map<TexturedModel, List<Entity>> entities, Vector4f clipPlane, List<Light> lights, Camera camera) {
-		shader.start();
-		prepare(clipPlane, lights, camera);
-		for (TexturedModel model : entities.keySet()) {
-			prepareTexturedModel(model);
-			List<Entity> batch = entities.get(model);
-			for (Entity entity : batch) {
-				prepareInstance(entity);
-				GL11.glDrawElements(GL11.GL_TRIANGLES, model.getRawModel().getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
+	/**
+	 * @param texture of a model
+	 * @param lightCount amount of lights of the scene
+	 * @return the key of the variant of the shader that draws the model. Only textures with transparency need the
+	 * alpha test; these shaders have no fog.
+	 */
+	private static int getPermutation(ModelTexture texture, int lightCount) {
+		return ShaderPermutations.getKey(lightCount, false, texture.isHasTransparency(), false);
+	}
+
+	/**
+	 * Method that creates the variants of the shader needed to draw some models before the first frame, so that they
+	 * are compiled at the same time as the other shaders.
+	 * @param models that will be drawn
+	 * @param lightCount amount of lights of the scene
+	 */
+	public void submitShaders(Iterable<TexturedModel> models, int lightCount) {
+		for (TexturedModel model : models) {
+			shaders.submit(getPermutation(model.getTexture(), lightCount));
+		}
+	}
+
+	/**
+	 * Method that renders the queued entities one by one. The entities queued without the key of their batch get it,
+	 * then the queue is sorted (see RenderQueue), so that the entities of the same textured model follow each other,
+	 * from the closest one to the furthest one, and the model is only prepared when it changes.
+	 * @param queue of the entities to render
+	 * @param lightCount amount of lights of the scene
+	 * @param cameraPosition position of the camera of the frame
+	 */
+	public void render(RenderQueue queue, int lightCount, Vector3f cameraPosition) {
+		if (!queue.isSorted()) { //a retained scene queues its entities already sorted
+			for (int i = 0; i < queue.size(); i++) {
+				if (queue.getKey(i) == RenderQueue.NO_KEY) {
+					queue.setKey(i, getBatchKey(queue.get(i).getModel(), lightCount));
+				}
+			}
+			queue.setDistances(cameraPosition);
+			queue.sort();
+		}
+		shader = null;
+		TexturedModel model = null;
+		for (int i = 0; i < queue.size(); i++) {
+			Entity entity = queue.get(i);
+			if (entity.getModel() != model) {
+				model = entity.getModel();
+				int permutation = getPermutation(model.getTexture(), lightCount);
+				if (shader != shaders.get(permutation)) {
+					shader = shaders.start(permutation);
+				}
+				prepareTexturedModel(model);
 			}
-			unbindTexturedModel();
+			prepareInstance(entity);
+			GL11.glDrawElements(GL11.GL_TRIANGLES, model.getRawModel().getVertexCount(),
+					model.getRawModel().getIndexType(), 0);
+		}
+	}
+
+	/**
+	 * @param model textured model of an entity
+	 * @param lightCount amount of lights of the scene
+	 * @return the sort key of the batch of the model, without the distance. The batch is the textured model.
+	 */
+	public long getBatchKey(TexturedModel model, int lightCount) {
+		ModelTexture texture = model.getTexture();
+		Integer batch = batchIds.get(model);
+		if (batch == null) {
+			batch = batchIds.size();
+			batchIds.put(model, batch);
 		}
-		shader.stop();
+		return RenderQueue.createKey(texture.isHasTransparency() ? RenderQueue.PASS_ALPHA_TESTED : RenderQueue.PASS_OPAQUE,
+				getPermutation(texture, lightCount), texture.isHasTransparency(), texture.getID(), batch);
 	}
 	
 	public void cleanUp(){
-		shader.cleanUp();
+		shaders.cleanUp();
 	}
 
 	private void prepareTexturedModel(TexturedModel model) {
 		RawModel rawModel = model.getRawModel();
-		GL30.glBindVertexArray(rawModel.getVaoID());
-		GL20.glEnableVertexAttribArray(0);
-		GL20.glEnableVertexAttribArray(1);
-		GL20.glEnableVertexAttribArray(2);
-		GL20.glEnableVertexAttribArray(3);
+		GLState.bindVertexArray(rawModel.getVaoID()); //its attributes are enabled in the VAO by the Loader
+		shader.loadVertexEncoding(rawModel);
 		ModelTexture texture = model.getTexture();
 		shader.loadNumberOfRows(texture.getNumberOfRows());
-		if (texture.isHasTransparency()) {
-			MasterRenderer.disableCulling();
-		}
+		GLState.setCulling(!texture.isHasTransparency());
 		shader.loadShineVariables(texture.getShineDamper(), texture.getReflectivity());
-		GL13.glActiveTexture(GL13.GL_TEXTURE0);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, model.getTexture().getID());
-		GL13.glActiveTexture(GL13.GL_TEXTURE1);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, model.getTexture().getNormalMap());
-	}
-
-	private void unbindTexturedModel() {
-		MasterRenderer.enableCulling();
-		GL20.glDisableVertexAttribArray(0);
-		GL20.glDisableVertexAttribArray(1);
-		GL20.glDisableVertexAttribArray(2);
-		GL20.glDisableVertexAttribArray(3);
-		GL30.glBindVertexArray(0);
+		GLState.bindTexture(0, GL11.GL_TEXTURE_2D, model.getTexture().getID());
+		GLState.bindTexture(1, GL11.GL_TEXTURE_2D, model.getTexture().getNormalMap());
 	}
 
 	private void prepareInstance(Entity entity) {
@@ -85,14 +127,4 @@ public class NormalMappingRenderer {
 		shader.loadOffset(entity.getTextureXOffset(), entity.getTextureYOffset());
 	}
 
-	private void prepare(Vector4f clipPlane, List<Light> lights, Camera camera) {
-		shader.loadClipPlane(clipPlane);
-		//need to be public variables in MasterRenderer
-		shader.loadSkyColour();
-		Matrix4f viewMatrix = Maths.createViewMatrix(camera);
-		
-		shader.loadLights(lights, viewMatrix);
-		shader.loadViewMatrix(viewMatrix);
-	}
-
 }
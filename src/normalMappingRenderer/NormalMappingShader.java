@@ -1,39 +1,31 @@
 package normalMappingRenderer;
 
-import java.util.List;
-
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
-import org.lwjgl.util.vector.Vector4f;
 
-import entities.Light;
+import shaders.ShaderPermutations;
 import shaders.ShaderProgram;
 
 public class NormalMappingShader extends ShaderProgram{
 	
-	private static final int MAX_LIGHTS = 4;
-	
 	private static final String VERTEX_FILE = "src/normalMappingRenderer/normalMapVShader.glsl";
 	private static final String FRAGMENT_FILE = "src/normalMappingRenderer/normalMapFShader.glsl";
 	
 	private int location_transformationMatrix;
-	private int location_projectionMatrix;
-	private int location_viewMatrix;
-	private int[] location_lightPositionEyeSpace;
-	private int[] location_lightColour;
-	private int[] location_attenuation;
 	private int location_shineDamper;
 	private int location_reflectivity;
-	private int location_skyColour;
 	private int location_numberOfRows;
 	private int location_offset;
-	private int location_plane;
 	private int location_modelTexture;
 	private int location_normalMap;
 
-	public NormalMappingShader() {
-		super(VERTEX_FILE, FRAGMENT_FILE);
+	/**
+	 * The camera, lights (with their position in eye space) and clip plane are read from the FrameData block (see
+	 * FrameUniformBuffer).
+	 * @param permutation key of the variant to compile (see ShaderPermutations)
+	 */
+	public NormalMappingShader(int permutation) {
+		super(VERTEX_FILE, FRAGMENT_FILE, ShaderPermutations.getDefines(permutation));
 	}
 
 	@Override
@@ -47,25 +39,12 @@ public class NormalMappingShader extends ShaderProgram{
 	@Override
 	protected void getAllUniformLocations() {
 		location_transformationMatrix = super.getUniformLocation("transformationMatrix");
-		location_projectionMatrix = super.getUniformLocation("projectionMatrix");
-		location_viewMatrix = super.getUniformLocation("viewMatrix");
 		location_shineDamper = super.getUniformLocation("shineDamper");
 		location_reflectivity = super.getUniformLocation("reflectivity");
-		location_skyColour = super.getUniformLocation("skyColour");
 		location_numberOfRows = super.getUniformLocation("numberOfRows");
 		location_offset = super.getUniformLocation("offset");
-		location_plane = super.getUniformLocation("plane");
 		location_modelTexture = super.getUniformLocation("modelTexture");
 		location_normalMap = super.getUniformLocation("normalMap");
-		
-		location_lightPositionEyeSpace = new int[MAX_LIGHTS];
-		location_lightColour = new int[MAX_LIGHTS];
-		location_attenuation = new int[MAX_LIGHTS];
-		for(int i=0;i<MAX_LIGHTS;i++){
-			location_lightPositionEyeSpace[i] = super.getUniformLocation("lightPositionEyeSpace[" + i + "]");
-			location_lightColour[i] = super.getUniformLocation("lightColour[" + i + "]");
-			location_attenuation[i] = super.getUniformLocation("attenuation[" + i + "]");
-		}
 	}
 	
 	protected void connectTextureUnits(){
@@ -73,10 +52,6 @@ public class NormalMappingShader extends ShaderProgram{
 		super.loadInt(location_normalMap, 1);
 	}
 	
-	protected void loadClipPlane(Vector4f plane){
-		super.loadVector(location_plane, plane);
-	}
-	
 	protected void loadNumberOfRows(int numberOfRows){
 		super.loadFloat(location_numberOfRows, numberOfRows);
 	}
@@ -85,10 +60,6 @@ public class NormalMappingShader extends ShaderProgram{
 		super.load2DVector(location_offset, new Vector2f(x,y));
 	}
 	
-	protected void loadSkyColour(){
-		super.loadVector(location_skyColour, new Vector3f(renderEngine.MasterRenderer.RED, renderEngine.MasterRenderer.GREEN, renderEngine.MasterRenderer.BLUE));
-	}
-	
 	protected void loadShineVariables(float damper,float reflectivity){
 		super.loadFloat(location_shineDamper, damper);
 		super.loadFloat(location_reflectivity, reflectivity);
@@ -98,35 +69,6 @@ public class NormalMappingShader extends ShaderProgram{
 		super.loadMatrix(location_transformationMatrix, matrix);
 	}
 	
-	protected void loadLights(List<Light> lights, Matrix4f viewMatrix){
-		for(int i=0;i<MAX_LIGHTS;i++){
-			if(i<lights.size()){
-				super.loadVector(location_lightPositionEyeSpace[i], getEyeSpacePosition(lights.get(i), viewMatrix));
-				super.loadVector(location_lightColour[i], lights.get(i).getColour());
-				super.loadVector(location_attenuation[i], lights.get(i).getAttenuation());
-			}else{
-				super.loadVector(location_lightPositionEyeSpace[i], new Vector3f(0, 0, 0));
-				super.loadVector(location_lightColour[i], new Vector3f(0, 0, 0));
-				super.loadVector(location_attenuation[i], new Vector3f(1, 0, 0));
-			}
-		}
-	}
-	
-	protected void loadViewMatrix(Matrix4f viewMatrix){
-		super.loadMatrix(location_viewMatrix, viewMatrix);
-	}
-	
-	protected void loadProjectionMatrix(Matrix4f projection){
-		super.loadMatrix(location_projectionMatrix, projection);
-	}
-	
-	private Vector3f getEyeSpacePosition(Light light, Matrix4f viewMatrix){
-		Vector3f position = light.getPosition();
-		Vector4f eyeSpacePos = new Vector4f(position.x,position.y, position.z, 1f);
-		Matrix4f.transform(viewMatrix, eyeSpacePos, eyeSpacePos);
-		return new Vector3f(eyeSpacePos);
-	}
-	
 	
 
 }
@@ -1,19 +1,19 @@
 #version 140
 
 in vec2 pass_textureCoordinates;
-in vec3 toLightVector[4];
+in vec3 toLightVector[LIGHT_COUNT];
 in vec3 toCameraVector;
+#ifdef FOG
 in float visibility;
+#endif
 
 out vec4 out_Color;
 
 uniform sampler2D modelTexture;
 uniform sampler2D normalMap;
-uniform vec3 lightColour[4];
-uniform vec3 attenuation[4];
+#include "src/shaders/frameData.glsl"
 uniform float shineDamper;
 uniform float reflectivity;
-uniform vec3 skyColour;
 
 void main(void){
 
@@ -25,7 +25,7 @@ void main(void){
 	vec3 totalDiffuse = vec3(0.0);
 	vec3 totalSpecular = vec3(0.0);
 	
-	for(int i=0;i<4;i++){
+	for(int i=0;i<LIGHT_COUNT;i++){
 		float distance = length(toLightVector[i]);
 		float attFactor = attenuation[i].x + (attenuation[i].y * distance) + (attenuation[i].z * distance * distance);
 		vec3 unitLightVector = normalize(toLightVector[i]);	
@@ -36,17 +36,21 @@ void main(void){
 		float specularFactor = dot(reflectedLightDirection , unitVectorToCamera);
 		specularFactor = max(specularFactor,0.0);
 		float dampedFactor = pow(specularFactor,shineDamper);
-		totalDiffuse = totalDiffuse + (brightness * lightColour[i])/attFactor;
-		totalSpecular = totalSpecular + (dampedFactor * reflectivity * lightColour[i])/attFactor;
+		totalDiffuse = totalDiffuse + (brightness * lightColour[i].rgb)/attFactor;
+		totalSpecular = totalSpecular + (dampedFactor * reflectivity * lightColour[i].rgb)/attFactor;
 	}
 	totalDiffuse = max(totalDiffuse, 0.2);
 	
 	vec4 textureColour = texture(modelTexture,pass_textureCoordinates, -1.0);
+#ifdef ALPHA_TEST
 	if(textureColour.a<0.5){
 		discard;
 	}
+#endif
 
 	out_Color =  vec4(totalDiffuse,1.0) * textureColour + vec4(totalSpecular,1.0);
-	out_Color = mix(vec4(skyColour,1.0),out_Color, visibility);
+#ifdef FOG
+	out_Color = mix(vec4(skyColour.rgb,1.0),out_Color, visibility);
+#endif
 
 }
\ No newline at end of file
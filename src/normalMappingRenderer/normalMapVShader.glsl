@@ -1,19 +1,21 @@
 #version 150
 
+//LIGHT_COUNT is defined by the ShaderProgram, as well as ALPHA_TEST and FOG for the variants that need them (see ShaderPermutations)
+
 in vec3 position;
 in vec2 textureCoordinates;
 in vec3 normal;
 in vec3 tangent;
 
 out vec2 pass_textureCoordinates;
-out vec3 toLightVector[4];
+out vec3 toLightVector[LIGHT_COUNT];
 out vec3 toCameraVector;
+#ifdef FOG
 out float visibility;
+#endif
 
 uniform mat4 transformationMatrix;
-uniform mat4 projectionMatrix;
-uniform mat4 viewMatrix;
-uniform vec3 lightPositionEyeSpace[4];
+#include "src/shaders/frameData.glsl"
 
 uniform float numberOfRows;
 uniform vec2 offset;
@@ -21,22 +23,42 @@ uniform vec2 offset;
 const float density = 0;
 const float gradient = 5.0;
 
-uniform vec4 plane;
+//vertices of compressed models are stored in a smaller format (see VertexCompressor)
+uniform vec3 positionOffset;
+uniform vec3 positionScale;
+uniform float octahedralNormals;
+
+vec3 decodeOctahedral(vec2 e){
+	//unfolds a unit vector stored on an octahedron: the lower half of the octahedron was folded over the corners of the upper one
+	vec3 v = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+	if(v.z < 0.0){
+		v.xy = (1.0 - abs(v.yx)) * vec2(v.x >= 0.0 ? 1.0 : -1.0, v.y >= 0.0 ? 1.0 : -1.0);
+	}
+	return normalize(v);
+}
+
+vec3 decodeDirection(vec3 direction){
+	if(octahedralNormals > 0.5){
+		return decodeOctahedral(direction.xy);
+	}
+	return direction;
+}
 
 void main(void){
 
-	vec4 worldPosition = transformationMatrix * vec4(position,1.0);
+	vec3 modelPosition = positionOffset + position * positionScale;
+	vec4 worldPosition = transformationMatrix * vec4(modelPosition,1.0);
 	gl_ClipDistance[0] = dot(worldPosition, plane);
 	mat4 modelViewMatrix = viewMatrix * transformationMatrix;
-	vec4 positionRelativeToCam = modelViewMatrix * vec4(position,1.0);
+	vec4 positionRelativeToCam = modelViewMatrix * vec4(modelPosition,1.0);
 	gl_Position = projectionMatrix * positionRelativeToCam;
 	
 	pass_textureCoordinates = (textureCoordinates/numberOfRows) + offset;
 	
-	vec3 surfaceNormal = (modelViewMatrix * vec4(normal,0.0)).xyz;
+	vec3 surfaceNormal = (modelViewMatrix * vec4(decodeDirection(normal),0.0)).xyz;
 	
 	vec3 norm = normalize(surfaceNormal);
-	vec3 tang = normalize((modelViewMatrix * vec4(tangent, 0.0)).xyz);
+	vec3 tang = normalize((modelViewMatrix * vec4(decodeDirection(tangent), 0.0)).xyz);
 	vec3 bitang = normalize(cross(norm, tang));
 	
 	mat3 toTangentSpace = mat3(
@@ -45,13 +67,15 @@ void main(void){
 		tang.z, bitang.z, norm.z
 	);
 	
-	for(int i=0;i<4;i++){
-		toLightVector[i] = toTangentSpace * (lightPositionEyeSpace[i] - positionRelativeToCam.xyz);
+	for(int i=0;i<LIGHT_COUNT;i++){
+		toLightVector[i] = toTangentSpace * (lightPositionEyeSpace[i].xyz - positionRelativeToCam.xyz);
 	}
 	toCameraVector = toTangentSpace * (-positionRelativeToCam.xyz);
 	
+#ifdef FOG
 	float distance = length(positionRelativeToCam.xyz);
 	visibility = exp(-pow((distance*density),gradient));
 	visibility = clamp(visibility,0.0,1.0);
+#endif
 	
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package objConverter;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+
+import renderEngine.OBJLoader;
+
+/**
+ * Class that converts the .obj files of the res folder into mesh files ahead of time, instead of when the game first
+ * loads them, so that the MeshOptimizer's work happens offline. The ACMR of each mesh is printed before and after
+ * the optimisation. Existing mesh files are converted again.
+ * Usage: MeshConverter [names of the .obj files, without extension] (all the .obj files of res if there are none)
+ */
+public class MeshConverter {
+
+	private static final String RES_LOC = "res/";
+
+	public static void main(String[] args) {
+		String[] names = args;
+		if (names.length == 0) {
+			File[] objFiles = new File(RES_LOC).listFiles((directory, name) -> name.endsWith(".obj"));
+			if (objFiles == null) {
+				System.err.println("Couldn't find the res folder");
+				System.exit(-1);
+			}
+			names = new String[objFiles.length];
+			for (int i = 0; i < objFiles.length; i++) {
+				names[i] = objFiles[i].getName().substring(0, objFiles[i].getName().length() - 4);
+			}
+		}
+		if (!MeshOptimizer.isEnabled()) {
+			System.out.println("The meshes won't be optimised (-DoptimizeMeshes=false)");
+		}
+		for (String name : names) {
+			File objFile = new File(RES_LOC + name + ".obj");
+			MeshFile.getFile(objFile, OBJFileLoader.MESH_VARIANT).delete();
+			MeshFile.getFile(objFile, OBJLoader.MESH_VARIANT).delete();
+			try {
+				report(name, OBJFileLoader.loadMesh(name)); //also used by the NormalMappedObjLoader
+				report(name + OBJLoader.MESH_VARIANT, OBJLoader.loadMesh(name));
+			} catch (UncheckedIOException e) {
+				System.err.println(e.getMessage()); //the other files are still converted
+				e.getCause().printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Method that prints the ACMR of a converted mesh before and after the optimisation (see MeshOptimizer).
+	 * @param name of the mesh
+	 * @param mesh converted from the .obj file
+	 */
+	private static void report(String name, MeshFile mesh) {
+		IntBuffer buffer = mesh.getIndices().duplicate();
+		int[] indices = new int[buffer.remaining()];
+		buffer.get(indices);
+		System.out.printf("%s: ACMR %.3f -> %.3f (%d triangles)%n", name, mesh.getSourceCacheMissRatio(),
+				MeshOptimizer.averageCacheMissRatio(indices, MeshOptimizer.SIMULATED_CACHE_SIZE), indices.length / 3);
+	}
+
+}
@@ -0,0 +1,243 @@
+package objConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import models.BoundingVolume;
+import renderEngine.Loader;
+
+/**
+ * Class representing a mesh stored in our own binary format, written next to the .obj file it was made from. Once the
+ * .obj file has been parsed (and its vertices deduplicated and its tangents computed), the result is saved in this
+ * format, so that the next time the program starts, the mesh can be loaded without parsing the .obj file again.
+ * The file is memory mapped, and the buffers we get from it can be given to openGL as they are.
+ * The file starts with a 64 bytes header, followed by the vertices and the indices, all stored in the byte order of
+ * the machine that wrote the file. The vertices are interleaved the way Loader stores them in a VBO: position, texture
+ * coordinates, normal and tangent (if there are any) of the first vertex, then of the second one, and so on.
+ * Unless it is disabled, the MeshOptimizer reorders the mesh before it is written.
+ */
+public class MeshFile {
+
+	public static final String EXTENSION = ".mesh";
+
+	private static final int MAGIC = 0x4D455348; //"MESH". If the file was written with another byte order, it won't match
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+	private static final int FLAG_TANGENTS = 1;
+	private static final int FLAG_OPTIMIZED = 2; //the triangles and vertices were reordered by the MeshOptimizer
+
+	private final FloatBuffer vertices;
+	private final boolean hasTangents;
+	private final IntBuffer indices;
+	private final BoundingVolume bounds;
+	private float sourceCacheMissRatio = Float.NaN; //ACMR of the triangles in the order of the .obj file, only known when the mesh is written
+
+	private MeshFile(FloatBuffer vertices, boolean hasTangents, IntBuffer indices, BoundingVolume bounds) {
+		this.vertices = vertices;
+		this.hasTangents = hasTangents;
+		this.indices = indices;
+		this.bounds = bounds;
+	}
+
+	/**
+	 * Method that gives the file in which the mesh made from a .obj file is stored.
+	 * @param objFile the mesh is made from
+	 * @param variant name telling apart the different meshes that can be made from the same .obj file
+	 * @return the mesh file, next to the .obj file
+	 */
+	public static File getFile(File objFile, String variant) {
+		String name = objFile.getName();
+		if (name.endsWith(".obj")) {
+			name = name.substring(0, name.length() - 4);
+		}
+		return new File(objFile.getParentFile(), name + variant + EXTENSION);
+	}
+
+	/**
+	 * Method that maps the mesh made from a .obj file, if it has already been written. The mesh is only used if it was
+	 * written from the current version of the .obj file (same size and same modification date), with the same version
+	 * of the format and the same byte order.
+	 * @param objFile the mesh is made from
+	 * @param variant name telling apart the different meshes that can be made from the same .obj file
+	 * @return the mapped mesh, or null if there is no valid mesh file
+	 */
+	public static MeshFile map(File objFile, String variant) {
+		File file = getFile(objFile, variant);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+			if (channel.size() < HEADER_SIZE) {
+				return null;
+			}
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(data, objFile);
+		} catch (IOException e) {
+			System.err.println("Couldn't read " + file + ", the .obj file will be parsed again");
+			return null;
+		}
+	}
+
+	/**
+	 * Method that reads the header of a mesh stored in a buffer, and slices the buffer into the data of the mesh.
+	 * @param data in which the mesh is stored
+	 * @param objFile the mesh is made from
+	 * @return the mesh, or null if the header doesn't match the .obj file or the size of the buffer
+	 */
+	private static MeshFile read(ByteBuffer data, File objFile) {
+		data.order(ByteOrder.nativeOrder());
+		if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION || data.getLong(8) != objFile.length()
+				|| data.getLong(16) != objFile.lastModified()) {
+			return null;
+		}
+		boolean hasTangents = (data.getInt(24) & FLAG_TANGENTS) != 0;
+		if (((data.getInt(24) & FLAG_OPTIMIZED) != 0) != MeshOptimizer.isEnabled()) {
+			return null; //converted with another setting of the optimizer
+		}
+		int vertexCount = data.getInt(28);
+		int indexCount = data.getInt(32);
+		int vertexSize = hasTangents ? Loader.VERTEX_SIZE_WITH_TANGENTS : Loader.VERTEX_SIZE;
+		long expectedSize = HEADER_SIZE + 4L * ((long) vertexCount * vertexSize + indexCount);
+		if (vertexCount < 0 || indexCount < 0 || data.capacity() != expectedSize) {
+			return null;
+		}
+		BoundingVolume bounds = new BoundingVolume(
+				new Vector3f(data.getFloat(36), data.getFloat(40), data.getFloat(44)),
+				new Vector3f(data.getFloat(48), data.getFloat(52), data.getFloat(56)), data.getFloat(60));
+		FloatBuffer vertices = floatSlice(data, HEADER_SIZE, vertexCount * vertexSize);
+		data.position(HEADER_SIZE + vertexCount * vertexSize * 4);
+		IntBuffer indices = data.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+		return new MeshFile(vertices, hasTangents, indices, bounds);
+	}
+
+	/**
+	 * Method that writes the mesh made from a .obj file next to it. The file is first written under a temporary name,
+	 * then renamed, so that a file that was only partly written is never used. Each writer gets its own temporary file,
+	 * as two workers can convert the same .obj file at the same time. If the file can't be written, the mesh
+	 * will simply be made from the .obj file again the next time. If the MeshOptimizer is enabled, the arrays are
+	 * reordered first.
+	 * @param objFile the mesh is made from
+	 * @param variant name telling apart the different meshes that can be made from the same .obj file
+	 * @param positions of the vertices, 3 floats per vertex
+	 * @param textureCoords of the vertices, 2 floats per vertex
+	 * @param normals of the vertices, 3 floats per vertex
+	 * @param tangents of the vertices, 3 floats per vertex, or null if the mesh has no tangents
+	 * @param indices of the triangles
+	 * @param bounds of the mesh
+	 * @return the mesh, stored in the direct buffer that was written to the file
+	 */
+	public static MeshFile write(File objFile, String variant, float[] positions, float[] textureCoords, float[] normals,
+			float[] tangents, int[] indices, BoundingVolume bounds) {
+		File file = getFile(objFile, variant);
+		int flags = tangents != null ? FLAG_TANGENTS : 0;
+		float sourceCacheMissRatio;
+		if (MeshOptimizer.isEnabled()) {
+			sourceCacheMissRatio = MeshOptimizer.optimize(positions, textureCoords, normals, tangents, indices);
+			flags |= FLAG_OPTIMIZED;
+		} else {
+			sourceCacheMissRatio = MeshOptimizer.averageCacheMissRatio(indices, MeshOptimizer.SIMULATED_CACHE_SIZE);
+		}
+		int vertexCount = positions.length / 3;
+		int vertexSize = tangents != null ? Loader.VERTEX_SIZE_WITH_TANGENTS : Loader.VERTEX_SIZE;
+		int size = HEADER_SIZE + 4 * (vertexCount * vertexSize + indices.length);
+		ByteBuffer data = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		data.putInt(MAGIC).putInt(VERSION).putLong(objFile.length()).putLong(objFile.lastModified());
+		data.putInt(flags).putInt(vertexCount).putInt(indices.length);
+		data.putFloat(bounds.getMin().x).putFloat(bounds.getMin().y).putFloat(bounds.getMin().z);
+		data.putFloat(bounds.getMax().x).putFloat(bounds.getMax().y).putFloat(bounds.getMax().z);
+		data.putFloat(bounds.getRadius());
+		FloatBuffer floats = data.asFloatBuffer();
+		for (int i = 0; i < vertexCount; i++) {
+			floats.put(positions, i * 3, 3);
+			floats.put(textureCoords, i * 2, 2);
+			floats.put(normals, i * 3, 3);
+			if (tangents != null) {
+				floats.put(tangents, i * 3, 3);
+			}
+		}
+		data.position(data.position() + floats.position() * 4);
+		data.asIntBuffer().put(indices);
+		data.rewind();
+		save(data, file);
+		MeshFile mesh = read(data, objFile);
+		mesh.sourceCacheMissRatio = sourceCacheMissRatio;
+		return mesh;
+	}
+
+	private static void save(ByteBuffer data, File file) {
+		File temporaryFile = null;
+		try {
+			temporaryFile = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp")
+					.toFile();
+			try (FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.WRITE)) {
+				while (data.hasRemaining()) {
+					channel.write(data);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't write " + file + ": " + e.getMessage());
+			if (temporaryFile != null) {
+				temporaryFile.delete();
+			}
+			return;
+		}
+		try {
+			Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Couldn't write " + file + ": " + e.getMessage());
+			temporaryFile.delete();
+		}
+	}
+
+	private static FloatBuffer floatSlice(ByteBuffer data, int start, int floatCount) {
+		data.position(start);
+		data.limit(start + floatCount * 4);
+		FloatBuffer slice = data.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+		data.limit(data.capacity());
+		return slice;
+	}
+
+	/**
+	 * @return the interleaved vertices of the mesh
+	 */
+	public FloatBuffer getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * @return whether each vertex ends with a tangent
+	 */
+	public boolean hasTangents() {
+		return hasTangents;
+	}
+
+	public IntBuffer getIndices() {
+		return indices;
+	}
+
+	public BoundingVolume getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * @return the ACMR of the triangles in the order of the .obj file, before the MeshOptimizer reordered them, or NaN
+	 * if the mesh was mapped from a file written earlier
+	 */
+	public float getSourceCacheMissRatio() {
+		return sourceCacheMissRatio;
+	}
+
+}
@@ -0,0 +1,381 @@
+package objConverter;
+
+import java.util.Arrays;
+
+/**
+ * Class that reorders the triangles and the vertices of a mesh so that the GPU draws it faster, without changing what
+ * is drawn.
+ * After a vertex has gone through the vertex shader, the GPU keeps the result in a small cache, so a vertex used by
+ * several triangles drawn close to each other is only processed once. The triangles of a .obj file are in the order
+ * they were modelled, which often makes the GPU process the same vertex several times. The triangles are first sorted
+ * with Tom Forsyth's linear-speed vertex cache optimisation, then split in clusters, which are drawn from the ones
+ * facing outwards to the ones facing inwards to reduce overdraw (as in Tipsify). Finally, the vertices are stored in
+ * the order the triangles use them, so that they are read from memory one after the other.
+ * The average cache miss ratio (ACMR) measures how good an order is: the amount of vertices processed per triangle.
+ * It can't be lower than about 0.5 for a regular mesh, and is 3 in the worst case.
+ * The optimisation is done when a .obj file is converted into a mesh file, so it doesn't slow the loading of the game
+ * once the meshes are cached. Run with -DoptimizeMeshes=false to convert the meshes without it.
+ */
+public class MeshOptimizer {
+
+	public static final int SIMULATED_CACHE_SIZE = 16; //size of the FIFO cache used to measure the ACMR, common on GPUs
+
+	private static final int CACHE_SIZE = 32; //size of the LRU cache the Forsyth algorithm optimises for
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRIANGLE_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+	private static final float MAX_OVERDRAW_ACMR_INCREASE = 1.05f; //the overdraw pass is only kept if the ACMR gets at most 5% worse
+
+	private static boolean enabled = !"false".equals(System.getProperty("optimizeMeshes"));
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Method that chooses whether the meshes converted from now on are optimised. Meshes already cached with another
+	 * setting are converted again.
+	 * @param enabled true to optimise the meshes
+	 */
+	public static void setEnabled(boolean enabled) {
+		MeshOptimizer.enabled = enabled;
+	}
+
+	/**
+	 * Method that optimises a mesh. The arrays are modified in place.
+	 * @param positions of the vertices, 3 floats per vertex
+	 * @param textureCoords of the vertices, 2 floats per vertex
+	 * @param normals of the vertices, 3 floats per vertex
+	 * @param tangents of the vertices, 3 floats per vertex, or null if the mesh has no tangents
+	 * @param indices of the triangles
+	 * @return the ACMR of the triangles in the order they were given, before the optimisation
+	 */
+	public static float optimize(float[] positions, float[] textureCoords, float[] normals,
+			float[] tangents, int[] indices) {
+		float originalRatio = averageCacheMissRatio(indices, SIMULATED_CACHE_SIZE);
+		int vertexCount = positions.length / 3;
+		int[] cacheOrder = optimizeVertexCache(indices, vertexCount);
+		int[] overdrawOrder = optimizeOverdraw(cacheOrder, positions);
+		float cacheOrderRatio = averageCacheMissRatio(cacheOrder, SIMULATED_CACHE_SIZE);
+		float overdrawOrderRatio = averageCacheMissRatio(overdrawOrder, SIMULATED_CACHE_SIZE);
+		int[] triangleOrder = overdrawOrderRatio <= cacheOrderRatio * MAX_OVERDRAW_ACMR_INCREASE ? overdrawOrder
+				: cacheOrder;
+		System.arraycopy(triangleOrder, 0, indices, 0, indices.length);
+		int[] newIndices = optimizeVertexFetch(indices, vertexCount);
+		remap(positions, 3, newIndices);
+		remap(textureCoords, 2, newIndices);
+		remap(normals, 3, newIndices);
+		if (tangents != null) {
+			remap(tangents, 3, newIndices);
+		}
+		return originalRatio;
+	}
+
+	/**
+	 * Method that measures the average cache miss ratio of triangles drawn in a given order, by simulating a FIFO cache
+	 * of transformed vertices.
+	 * @param indices of the triangles
+	 * @param cacheSize amount of vertices the cache holds
+	 * @return the amount of vertices that had to be processed, divided by the amount of triangles
+	 */
+	public static float averageCacheMissRatio(int[] indices, int cacheSize) {
+		if (indices.length == 0) {
+			return 0;
+		}
+		int[] cache = new int[cacheSize];
+		Arrays.fill(cache, -1);
+		int next = 0; //position of the oldest vertex of the cache, which is replaced by the next miss
+		int misses = 0;
+		for (int index : indices) {
+			boolean hit = false;
+			for (int cached : cache) {
+				if (cached == index) {
+					hit = true;
+					break;
+				}
+			}
+			if (!hit) {
+				cache[next] = index;
+				next = (next + 1) % cacheSize;
+				misses++;
+			}
+		}
+		return misses / (indices.length / 3f);
+	}
+
+	/**
+	 * Method that sorts the triangles with Tom Forsyth's algorithm. Each vertex gets a score which is higher if it is
+	 * in the cache (the more recently used, the higher) and if few triangles still need it (so that vertices are
+	 * finished and leave the cache). The next triangle is always the one whose vertices have the highest total score.
+	 * Only the triangles using a vertex of the cache are updated after each triangle, which makes the algorithm linear.
+	 * @param indices of the triangles
+	 * @param vertexCount amount of vertices of the mesh
+	 * @return the indices of the triangles in their new order
+	 */
+	public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+		int triangleCount = indices.length / 3;
+		int[] result = new int[triangleCount * 3];
+		if (triangleCount == 0) {
+			return result;
+		}
+		//triangles using each vertex: those of vertex i are stored from vertexTriangleStart[i], the first
+		//activeTriangles[i] ones being the triangles that haven't been drawn yet
+		int[] activeTriangles = new int[vertexCount];
+		for (int i = 0; i < triangleCount * 3; i++) {
+			activeTriangles[indices[i]]++;
+		}
+		int[] vertexTriangleStart = new int[vertexCount + 1];
+		for (int i = 0; i < vertexCount; i++) {
+			vertexTriangleStart[i + 1] = vertexTriangleStart[i] + activeTriangles[i];
+		}
+		int[] vertexTriangles = new int[triangleCount * 3];
+		int[] filled = new int[vertexCount];
+		for (int i = 0; i < triangleCount * 3; i++) {
+			int vertex = indices[i];
+			vertexTriangles[vertexTriangleStart[vertex] + filled[vertex]++] = i / 3;
+		}
+
+		int[] cachePosition = new int[vertexCount];
+		Arrays.fill(cachePosition, -1);
+		float[] vertexScores = new float[vertexCount];
+		for (int i = 0; i < vertexCount; i++) {
+			vertexScores[i] = vertexScore(-1, activeTriangles[i]);
+		}
+		float[] triangleScores = new float[triangleCount];
+		boolean[] drawn = new boolean[triangleCount];
+		int bestTriangle = 0;
+		for (int i = 0; i < triangleCount; i++) {
+			triangleScores[i] = vertexScores[indices[i * 3]] + vertexScores[indices[i * 3 + 1]]
+					+ vertexScores[indices[i * 3 + 2]];
+			if (triangleScores[i] > triangleScores[bestTriangle]) {
+				bestTriangle = i;
+			}
+		}
+
+		int[] cache = new int[CACHE_SIZE + 3];
+		int[] newCache = new int[CACHE_SIZE + 3];
+		int cacheCount = 0;
+		int nextUndrawn = 0; //used when no triangle of the cache is left, to find another one without a full search
+		for (int output = 0; output < triangleCount; output++) {
+			if (bestTriangle < 0) {
+				while (drawn[nextUndrawn]) {
+					nextUndrawn++;
+				}
+				bestTriangle = nextUndrawn;
+			}
+			drawn[bestTriangle] = true;
+			int newCacheCount = 0;
+			for (int corner = 0; corner < 3; corner++) {
+				int vertex = indices[bestTriangle * 3 + corner];
+				result[output * 3 + corner] = vertex;
+				removeTriangle(vertex, bestTriangle, vertexTriangles, vertexTriangleStart, activeTriangles);
+				newCache[newCacheCount++] = vertex; //the vertices of the triangle become the most recently used ones
+			}
+			for (int i = 0; i < cacheCount; i++) {
+				int vertex = cache[i];
+				if (vertex != newCache[0] && vertex != newCache[1] && vertex != newCache[2]) {
+					newCache[newCacheCount++] = vertex;
+				}
+			}
+			int[] swap = cache;
+			cache = newCache;
+			newCache = swap;
+			cacheCount = newCacheCount;
+
+			//the vertices pushed out of the cache keep their position for one more update, so that their triangles
+			//get a lower score
+			for (int i = 0; i < cacheCount; i++) {
+				int vertex = cache[i];
+				cachePosition[vertex] = i < CACHE_SIZE ? i : -1;
+				vertexScores[vertex] = vertexScore(cachePosition[vertex], activeTriangles[vertex]);
+			}
+			bestTriangle = -1;
+			float bestScore = -1;
+			for (int i = 0; i < cacheCount; i++) {
+				int vertex = cache[i];
+				for (int t = vertexTriangleStart[vertex]; t < vertexTriangleStart[vertex] + activeTriangles[vertex]; t++) {
+					int triangle = vertexTriangles[t];
+					float score = vertexScores[indices[triangle * 3]] + vertexScores[indices[triangle * 3 + 1]]
+							+ vertexScores[indices[triangle * 3 + 2]];
+					triangleScores[triangle] = score;
+					if (score > bestScore) {
+						bestScore = score;
+						bestTriangle = triangle;
+					}
+				}
+			}
+			if (cacheCount > CACHE_SIZE) {
+				cacheCount = CACHE_SIZE;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Method that gives the score of a vertex in Tom Forsyth's algorithm.
+	 * @param cachePosition of the vertex in the LRU cache, 0 being the most recently used, or -1 if it isn't in it
+	 * @param activeTriangles amount of triangles using the vertex that haven't been drawn yet
+	 * @return the score of the vertex
+	 */
+	private static float vertexScore(int cachePosition, int activeTriangles) {
+		if (activeTriangles == 0) {
+			return -1; //no triangle needs the vertex anymore
+		}
+		float score = 0;
+		if (cachePosition >= 0) {
+			if (cachePosition < 3) {
+				score = LAST_TRIANGLE_SCORE; //same score for the 3 vertices of the last triangle, whatever their order
+			} else {
+				float scaler = 1.0f / (CACHE_SIZE - 3);
+				score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+			}
+		}
+		score += VALENCE_BOOST_SCALE * (float) Math.pow(activeTriangles, -VALENCE_BOOST_POWER);
+		return score;
+	}
+
+	private static void removeTriangle(int vertex, int triangle, int[] vertexTriangles, int[] vertexTriangleStart,
+			int[] activeTriangles) {
+		int start = vertexTriangleStart[vertex];
+		int last = start + activeTriangles[vertex] - 1;
+		for (int t = start; t <= last; t++) {
+			if (vertexTriangles[t] == triangle) {
+				vertexTriangles[t] = vertexTriangles[last]; //the order of the triangles doesn't matter
+				vertexTriangles[last] = triangle;
+				activeTriangles[vertex]--;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Method that reduces overdraw, the way Tipsify does it. The triangles, already sorted for the vertex cache, are
+	 * split in clusters wherever a triangle shares no vertex with the cache (so moving clusters around barely changes
+	 * the ACMR). Clusters facing away from the centre of the mesh are likely to hide the other ones, whatever the point
+	 * of view, so they are drawn first.
+	 * @param indices of the triangles, sorted for the vertex cache
+	 * @param positions of the vertices, 3 floats per vertex
+	 * @return the indices of the triangles in their new order
+	 */
+	public static int[] optimizeOverdraw(int[] indices, float[] positions) {
+		int triangleCount = indices.length / 3;
+		int[] clusterStarts = new int[triangleCount + 1];
+		int clusterCount = 0;
+		int[] cache = new int[SIMULATED_CACHE_SIZE];
+		Arrays.fill(cache, -1);
+		int next = 0;
+		for (int i = 0; i < triangleCount; i++) {
+			int misses = 0;
+			for (int corner = 0; corner < 3; corner++) {
+				int index = indices[i * 3 + corner];
+				boolean hit = false;
+				for (int cached : cache) {
+					if (cached == index) {
+						hit = true;
+						break;
+					}
+				}
+				if (!hit) {
+					cache[next] = index;
+					next = (next + 1) % SIMULATED_CACHE_SIZE;
+					misses++;
+				}
+			}
+			if (i == 0 || misses == 3) {
+				clusterStarts[clusterCount++] = i;
+			}
+		}
+		clusterStarts[clusterCount] = triangleCount;
+
+		float[] meshCentre = new float[3];
+		for (int i = 0; i < indices.length; i++) {
+			for (int axis = 0; axis < 3; axis++) {
+				meshCentre[axis] += positions[indices[i] * 3 + axis] / indices.length;
+			}
+		}
+		float[] keys = new float[clusterCount];
+		Integer[] clusters = new Integer[clusterCount];
+		for (int c = 0; c < clusterCount; c++) {
+			clusters[c] = c;
+			keys[c] = clusterKey(indices, positions, clusterStarts[c], clusterStarts[c + 1], meshCentre);
+		}
+		Arrays.sort(clusters, (a, b) -> Float.compare(keys[b], keys[a]));
+		int[] result = new int[triangleCount * 3];
+		int pointer = 0;
+		for (int cluster : clusters) {
+			int start = clusterStarts[cluster] * 3;
+			int length = clusterStarts[cluster + 1] * 3 - start;
+			System.arraycopy(indices, start, result, pointer, length);
+			pointer += length;
+		}
+		return result;
+	}
+
+	/**
+	 * Method that computes how much a cluster faces away from the centre of the mesh: the dot product between its
+	 * average normal (weighted by the area of its triangles) and the vector going from the centre of the mesh to the
+	 * centre of the cluster.
+	 */
+	private static float clusterKey(int[] indices, float[] positions, int firstTriangle, int endTriangle,
+			float[] meshCentre) {
+		float centreX = 0, centreY = 0, centreZ = 0;
+		float normalX = 0, normalY = 0, normalZ = 0;
+		for (int i = firstTriangle; i < endTriangle; i++) {
+			int v0 = indices[i * 3] * 3, v1 = indices[i * 3 + 1] * 3, v2 = indices[i * 3 + 2] * 3;
+			float e1x = positions[v1] - positions[v0], e1y = positions[v1 + 1] - positions[v0 + 1];
+			float e1z = positions[v1 + 2] - positions[v0 + 2];
+			float e2x = positions[v2] - positions[v0], e2y = positions[v2 + 1] - positions[v0 + 1];
+			float e2z = positions[v2 + 2] - positions[v0 + 2];
+			normalX += e1y * e2z - e1z * e2y; //the cross product is as long as twice the area of the triangle
+			normalY += e1z * e2x - e1x * e2z;
+			normalZ += e1x * e2y - e1y * e2x;
+			centreX += positions[v0] + positions[v1] + positions[v2];
+			centreY += positions[v0 + 1] + positions[v1 + 1] + positions[v2 + 1];
+			centreZ += positions[v0 + 2] + positions[v1 + 2] + positions[v2 + 2];
+		}
+		float count = (endTriangle - firstTriangle) * 3;
+		return (centreX / count - meshCentre[0]) * normalX + (centreY / count - meshCentre[1]) * normalY
+				+ (centreZ / count - meshCentre[2]) * normalZ;
+	}
+
+	/**
+	 * Method that numbers the vertices in the order the triangles first use them, so that the GPU reads them from
+	 * memory one after the other. Vertices that no triangle uses are put at the end.
+	 * @param indices of the triangles, which are changed to the new numbers of the vertices
+	 * @param vertexCount amount of vertices of the mesh
+	 * @return the new number of each vertex
+	 */
+	public static int[] optimizeVertexFetch(int[] indices, int vertexCount) {
+		int[] newIndices = new int[vertexCount];
+		Arrays.fill(newIndices, -1);
+		int next = 0;
+		for (int i = 0; i < indices.length; i++) {
+			int vertex = indices[i];
+			if (newIndices[vertex] < 0) {
+				newIndices[vertex] = next++;
+			}
+			indices[i] = newIndices[vertex];
+		}
+		for (int i = 0; i < vertexCount; i++) {
+			if (newIndices[i] < 0) {
+				newIndices[i] = next++;
+			}
+		}
+		return newIndices;
+	}
+
+	/**
+	 * Method that moves the attributes of the vertices to their new number.
+	 * @param data of the vertices
+	 * @param size amount of floats per vertex
+	 * @param newIndices new number of each vertex
+	 */
+	private static void remap(float[] data, int size, int[] newIndices) {
+		float[] copy = data.clone();
+		for (int i = 0; i < newIndices.length; i++) {
+			System.arraycopy(copy, i * size, data, newIndices[i] * size, size);
+		}
+	}
+
+}
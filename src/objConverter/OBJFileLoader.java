@@ -4,17 +4,11 @@
  */
 package objConverter;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-
-import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
+import java.io.UncheckedIOException;
 
+import models.BoundingVolume;
 import models.RawModel;
 import renderEngine.Loader;
 
@@ -24,178 +18,128 @@ import renderEngine.Loader;
 public class OBJFileLoader {
 
 	private static final String RES_LOC = "res/";
+	static final String MESH_VARIANT = ""; //same mesh file as the NormalMappedObjLoader, which needs the tangents we compute as well
 
 	public static RawModel loadOBJ(String objFileName, Loader loader) {
-		FileReader isr = null;
+		return loadToVAO(loadMesh(objFileName), loader);
+	}
+
+	/**
+	 * Method that sends a mesh made by loadMesh to openGL, without its tangents, which only the normal mapped models
+	 * use. It has to be called from the render thread.
+	 * @param mesh to load
+	 * @param loader used to load the mesh in a VAO
+	 * @return the loaded model
+	 */
+	public static RawModel loadToVAO(MeshFile mesh, Loader loader) {
+		return loader.loadToVAO(mesh.getVertices(), mesh.getIndices(), mesh.hasTangents(), false, mesh.getBounds());
+	}
+
+	/**
+	 * Method that makes the mesh of a .obj file, without using openGL, so that it can be called from any thread. If the
+	 * .obj file has already been converted, the mesh file is mapped, otherwise the .obj file is parsed and converted.
+	 * @param objFileName name of the .obj file in the res folder, without extension
+	 * @return the mesh
+	 * @throws UncheckedIOException if the .obj file couldn't be read
+	 */
+	public static MeshFile loadMesh(String objFileName) {
 		File objFile = new File(RES_LOC + objFileName + ".obj");
-		try {
-			isr = new FileReader(objFile);
-		} catch (FileNotFoundException e) {
-			System.err.println("File not found in res; don't use any extention");
+		MeshFile mesh = MeshFile.map(objFile, MESH_VARIANT);
+		if (mesh != null) {
+			return mesh; //the .obj file has already been converted, no need to parse it again
 		}
-		BufferedReader reader = new BufferedReader(isr);
-		String line;
-		List<Vertex> vertices = new ArrayList<Vertex>();
-		List<Vector2f> textures = new ArrayList<Vector2f>();
-		List<Vector3f> normals = new ArrayList<Vector3f>();
-		List<Integer> indices = new ArrayList<Integer>();
+		OBJParser obj;
 		try {
-			while (true) {
-				line = reader.readLine();
-				if (line.startsWith("v ")) {
-					String[] currentLine = line.split(" ");
-					Vector3f vertex = new Vector3f((float) Float.valueOf(currentLine[1]),
-							(float) Float.valueOf(currentLine[2]),
-							(float) Float.valueOf(currentLine[3]));
-					Vertex newVertex = new Vertex(vertices.size(), vertex);
-					vertices.add(newVertex);
-
-				} else if (line.startsWith("vt ")) {
-					String[] currentLine = line.split(" ");
-					Vector2f texture = new Vector2f((float) Float.valueOf(currentLine[1]),
-							(float) Float.valueOf(currentLine[2]));
-					textures.add(texture);
-				} else if (line.startsWith("vn ")) {
-					String[] currentLine = line.split(" ");
-					Vector3f normal = new Vector3f((float) Float.valueOf(currentLine[1]),
-							(float) Float.valueOf(currentLine[2]),
-							(float) Float.valueOf(currentLine[3]));
-					normals.add(normal);
-				} else if (line.startsWith("f ")) {
-					break;
-				}
-			}
-			while (line != null && line.startsWith("f ")) {
-				String[] currentLine = line.split(" ");
-				String[] vertex1 = currentLine[1].split("/");
-				String[] vertex2 = currentLine[2].split("/");
-				String[] vertex3 = currentLine[3].split("/");
-				Vertex v0 = processVertex(vertex1, vertices, indices);
-				Vertex v1 = processVertex(vertex2, vertices, indices);
-				Vertex v2 = processVertex(vertex3, vertices, indices);
-				calculateTangents(v0, v1, v2, textures);
-				line = reader.readLine();
-			}
-			reader.close();
+			obj = OBJParser.parse(objFile);
 		} catch (IOException e) {
-			System.err.println("Error reading the file");
+			throw new UncheckedIOException("File " + objFileName + " not found in res; don't use any extention", e);
+		}
+		float[] positions = obj.getPositions();
+		float[] textures = obj.getTextureCoords();
+		float[] normals = obj.getNormals();
+		int[] faces = obj.getFaces();
+		VertexIndexMap vertices = new VertexIndexMap(obj.getPositionCount());
+		int[] indicesArray = new int[obj.getFaceCount() * 3];
+		for (int i = 0; i < indicesArray.length; i++) {
+			indicesArray[i] = vertices.getOrAdd(faces[i * 3], faces[i * 3 + 1], faces[i * 3 + 2]);
 		}
-		removeUnusedVertices(vertices);
 		float[] verticesArray = new float[vertices.size() * 3];
 		float[] texturesArray = new float[vertices.size() * 2];
 		float[] normalsArray = new float[vertices.size() * 3];
 		float[] tangentsArray = new float[vertices.size() * 3];
-		float furthest = convertDataToArrays(vertices, textures, normals, verticesArray,
-				texturesArray, normalsArray, tangentsArray);
-		int[] indicesArray = convertIndicesListToArray(indices);
-		return loader.loadToVAO(verticesArray, texturesArray, normalsArray, indicesArray);
-	}
-
-	private static void calculateTangents(Vertex v0, Vertex v1, Vertex v2,
-			List<Vector2f> textures) {
-		Vector3f delatPos1 = Vector3f.sub(v1.getPosition(), v0.getPosition(), null);
-		Vector3f delatPos2 = Vector3f.sub(v2.getPosition(), v0.getPosition(), null);
-		Vector2f uv0 = textures.get(v0.getTextureIndex());
-		Vector2f uv1 = textures.get(v1.getTextureIndex());
-		Vector2f uv2 = textures.get(v2.getTextureIndex());
-		Vector2f deltaUv1 = Vector2f.sub(uv1, uv0, null);
-		Vector2f deltaUv2 = Vector2f.sub(uv2, uv0, null);
-
-		float r = 1.0f / (deltaUv1.x * deltaUv2.y - deltaUv1.y * deltaUv2.x);
-		delatPos1.scale(deltaUv2.y);
-		delatPos2.scale(deltaUv1.y);
-		Vector3f tangent = Vector3f.sub(delatPos1, delatPos2, null);
-		tangent.scale(r);
-		v0.addTangent(tangent);
-		v1.addTangent(tangent);
-		v2.addTangent(tangent);
+		convertDataToArrays(vertices, positions, textures, normals, verticesArray, texturesArray, normalsArray);
+		calculateTangents(indicesArray, verticesArray, texturesArray, tangentsArray);
+		return MeshFile.write(objFile, MESH_VARIANT, verticesArray, texturesArray, normalsArray, tangentsArray,
+				indicesArray, BoundingVolume.fromPositions(verticesArray));
 	}
 
-	private static Vertex processVertex(String[] vertex, List<Vertex> vertices,
-			List<Integer> indices) {
-		int index = Integer.parseInt(vertex[0]) - 1;
-		Vertex currentVertex = vertices.get(index);
-		int textureIndex = Integer.parseInt(vertex[1]) - 1;
-		int normalIndex = Integer.parseInt(vertex[2]) - 1;
-		if (currentVertex.isSet()) {
-			currentVertex.setTextureIndex(textureIndex);
-			currentVertex.setNormalIndex(normalIndex);
-			indices.add(index);
-			return currentVertex;
-		} else {
-			return dealWithAlreadyProcessedVertex(currentVertex, textureIndex, normalIndex, indices,
-					vertices);
-		}
-	}
-
-	private static int[] convertIndicesListToArray(List<Integer> indices) {
-		int[] indicesArray = new int[indices.size()];
-		for (int i = 0; i < indicesArray.length; i++) {
-			indicesArray[i] = indices.get(i);
-		}
-		return indicesArray;
-	}
-
-	private static float convertDataToArrays(List<Vertex> vertices, List<Vector2f> textures,
-			List<Vector3f> normals, float[] verticesArray, float[] texturesArray,
-			float[] normalsArray, float[] tangentsArray) {
-		float furthestPoint = 0;
-		for (int i = 0; i < vertices.size(); i++) {
-			Vertex currentVertex = vertices.get(i);
-			if (currentVertex.getLength() > furthestPoint) {
-				furthestPoint = currentVertex.getLength();
+	/**
+	 * Method that computes the tangent of each vertex: the average of the tangents of the triangles using it.
+	 * @param indices of the triangles
+	 * @param positions of the vertices
+	 * @param textures coordinates of the vertices
+	 * @param tangents array in which the tangents are stored
+	 */
+	private static void calculateTangents(int[] indices, float[] positions, float[] textures, float[] tangents) {
+		for (int i = 0; i < indices.length; i += 3) {
+			int v0 = indices[i], v1 = indices[i + 1], v2 = indices[i + 2];
+			float delatPos1x = positions[v1 * 3] - positions[v0 * 3];
+			float delatPos1y = positions[v1 * 3 + 1] - positions[v0 * 3 + 1];
+			float delatPos1z = positions[v1 * 3 + 2] - positions[v0 * 3 + 2];
+			float delatPos2x = positions[v2 * 3] - positions[v0 * 3];
+			float delatPos2y = positions[v2 * 3 + 1] - positions[v0 * 3 + 1];
+			float delatPos2z = positions[v2 * 3 + 2] - positions[v0 * 3 + 2];
+			//the v coordinates were flipped when they were stored, so they are flipped back
+			float deltaUv1x = textures[v1 * 2] - textures[v0 * 2];
+			float deltaUv1y = textures[v0 * 2 + 1] - textures[v1 * 2 + 1];
+			float deltaUv2x = textures[v2 * 2] - textures[v0 * 2];
+			float deltaUv2y = textures[v0 * 2 + 1] - textures[v2 * 2 + 1];
+
+			float r = 1.0f / (deltaUv1x * deltaUv2y - deltaUv1y * deltaUv2x);
+			float tangentX = (delatPos1x * deltaUv2y - delatPos2x * deltaUv1y) * r;
+			float tangentY = (delatPos1y * deltaUv2y - delatPos2y * deltaUv1y) * r;
+			float tangentZ = (delatPos1z * deltaUv2y - delatPos2z * deltaUv1y) * r;
+			for (int corner = 0; corner < 3; corner++) {
+				int tangent = indices[i + corner] * 3;
+				tangents[tangent] += tangentX;
+				tangents[tangent + 1] += tangentY;
+				tangents[tangent + 2] += tangentZ;
 			}
-			Vector3f position = currentVertex.getPosition();
-			Vector2f textureCoord = textures.get(currentVertex.getTextureIndex());
-			Vector3f normalVector = normals.get(currentVertex.getNormalIndex());
-			Vector3f tangent = currentVertex.getAverageTangent();
-			verticesArray[i * 3] = position.x;
-			verticesArray[i * 3 + 1] = position.y;
-			verticesArray[i * 3 + 2] = position.z;
-			texturesArray[i * 2] = textureCoord.x;
-			texturesArray[i * 2 + 1] = 1 - textureCoord.y;
-			normalsArray[i * 3] = normalVector.x;
-			normalsArray[i * 3 + 1] = normalVector.y;
-			normalsArray[i * 3 + 2] = normalVector.z;
-			tangentsArray[i * 3] = tangent.x;
-			tangentsArray[i * 3 + 1] = tangent.y;
-			tangentsArray[i * 3 + 2] = tangent.z;
-
 		}
-		return furthestPoint;
-	}
-
-	private static Vertex dealWithAlreadyProcessedVertex(Vertex previousVertex, int newTextureIndex,
-			int newNormalIndex, List<Integer> indices, List<Vertex> vertices) {
-		if (previousVertex.hasSameTextureAndNormal(newTextureIndex, newNormalIndex)) {
-			indices.add(previousVertex.getIndex());
-			return previousVertex;
-		} else {
-			Vertex anotherVertex = previousVertex.getDuplicateVertex();
-			if (anotherVertex != null) {
-				return dealWithAlreadyProcessedVertex(anotherVertex, newTextureIndex,
-						newNormalIndex, indices, vertices);
-			} else {
-				Vertex duplicateVertex = new Vertex(vertices.size(), previousVertex.getPosition());
-				duplicateVertex.setTextureIndex(newTextureIndex);
-				duplicateVertex.setNormalIndex(newNormalIndex);
-				previousVertex.setDuplicateVertex(duplicateVertex);
-				vertices.add(duplicateVertex);
-				indices.add(duplicateVertex.getIndex());
-				return duplicateVertex;
+		for (int i = 0; i < tangents.length; i += 3) {
+			float length = (float) Math.sqrt(tangents[i] * tangents[i] + tangents[i + 1] * tangents[i + 1]
+					+ tangents[i + 2] * tangents[i + 2]);
+			if (length > 0) {
+				tangents[i] /= length;
+				tangents[i + 1] /= length;
+				tangents[i + 2] /= length;
 			}
-
 		}
 	}
 
-	private static void removeUnusedVertices(List<Vertex> vertices) {
-		for (Vertex vertex : vertices) {
-			vertex.averageTangents();
-			if (vertex.isSet()) {
-				vertex.setTextureIndex(0);
-				vertex.setNormalIndex(0);
+	/**
+	 * Method that copies the position, texture coordinates and normal of every vertex found in the faces. A missing
+	 * index (-1) gives zeros.
+	 */
+	private static void convertDataToArrays(VertexIndexMap vertices, float[] positions, float[] textures,
+			float[] normals, float[] verticesArray, float[] texturesArray, float[] normalsArray) {
+		for (int i = 0; i < vertices.size(); i++) {
+			int positionIndex = vertices.getPositionIndex(i) * 3;
+			int textureIndex = vertices.getTextureIndex(i) * 2;
+			int normalIndex = vertices.getNormalIndex(i) * 3;
+			verticesArray[i * 3] = positions[positionIndex];
+			verticesArray[i * 3 + 1] = positions[positionIndex + 1];
+			verticesArray[i * 3 + 2] = positions[positionIndex + 2];
+			if (textureIndex >= 0) {
+				texturesArray[i * 2] = textures[textureIndex];
+				texturesArray[i * 2 + 1] = 1 - textures[textureIndex + 1];
+			}
+			if (normalIndex >= 0) {
+				normalsArray[i * 3] = normals[normalIndex];
+				normalsArray[i * 3 + 1] = normals[normalIndex + 1];
+				normalsArray[i * 3 + 2] = normals[normalIndex + 2];
 			}
 		}
 	}
 
-}
\ No newline at end of file
+}
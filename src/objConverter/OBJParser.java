@@ -0,0 +1,269 @@
+package objConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Class that reads the raw content of a .obj file: the vertex positions, texture coordinates, normals and the faces.
+ * The file is memory mapped and the numbers are parsed straight from its bytes into primitive arrays, so that no
+ * string or object is created per line. The three obj loaders use it, then rearrange the data the way they need it.
+ */
+public class OBJParser {
+
+	private static final int FAST_MANTISSA_LIMIT = 1 << 24; //every integer up to 2^24 is exactly representable as a float
+	private static final int FAST_EXPONENT_LIMIT = 10; //every power of 10 up to 10^10 is exactly representable as a float
+	private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+	private float[] positions = new float[3 * 1024];
+	private float[] textureCoords = new float[2 * 1024];
+	private float[] normals = new float[3 * 1024];
+	private int[] faces = new int[9 * 1024]; //for each corner of each triangle: position, texture and normal index
+	private int positionCount;
+	private int textureCount;
+	private int normalCount;
+	private int faceCount;
+
+	private MappedByteBuffer data;
+	private int pointer;
+	private int end;
+
+	private OBJParser() {
+	}
+
+	/**
+	 * Method that reads a whole .obj file. Only the "v", "vt", "vn" and "f" lines are used. Faces are expected to be
+	 * triangles; if a face has more corners, only the first three are kept. The indices of the faces are converted
+	 * so that they start at 0 (in the obj format, they start at 1), a missing index is stored as -1.
+	 * @param file .obj file to read
+	 * @return the parser, containing the data of the file
+	 * @throws IOException if the file couldn't be read
+	 */
+	public static OBJParser parse(File file) throws IOException {
+		OBJParser parser = new OBJParser();
+		try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+			parser.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			parser.end = (int) channel.size();
+			parser.parseLines();
+		}
+		parser.data = null;
+		return parser;
+	}
+
+	public float[] getPositions() {
+		return positions;
+	}
+
+	public float[] getTextureCoords() {
+		return textureCoords;
+	}
+
+	public float[] getNormals() {
+		return normals;
+	}
+
+	public int[] getFaces() {
+		return faces;
+	}
+
+	public int getPositionCount() {
+		return positionCount;
+	}
+
+	public int getTextureCount() {
+		return textureCount;
+	}
+
+	public int getNormalCount() {
+		return normalCount;
+	}
+
+	/**
+	 * @return amount of triangles in the file. The faces array holds 9 indices per triangle.
+	 */
+	public int getFaceCount() {
+		return faceCount;
+	}
+
+	/**
+	 * Method that goes through the file line by line, and looks at the first characters of each line to know what kind
+	 * of data it contains.
+	 */
+	private void parseLines() {
+		while (pointer < end) {
+			byte first = data.get(pointer);
+			byte second = pointer + 1 < end ? data.get(pointer + 1) : 0;
+			byte third = pointer + 2 < end ? data.get(pointer + 2) : 0;
+			if (first == 'v' && second == ' ') {
+				pointer += 2;
+				positions = ensureCapacity(positions, positionCount * 3 + 3);
+				positions[positionCount * 3] = parseFloat();
+				positions[positionCount * 3 + 1] = parseFloat();
+				positions[positionCount * 3 + 2] = parseFloat();
+				positionCount++;
+			} else if (first == 'v' && second == 't' && third == ' ') {
+				pointer += 3;
+				textureCoords = ensureCapacity(textureCoords, textureCount * 2 + 2);
+				textureCoords[textureCount * 2] = parseFloat();
+				textureCoords[textureCount * 2 + 1] = parseFloat();
+				textureCount++;
+			} else if (first == 'v' && second == 'n' && third == ' ') {
+				pointer += 3;
+				normals = ensureCapacity(normals, normalCount * 3 + 3);
+				normals[normalCount * 3] = parseFloat();
+				normals[normalCount * 3 + 1] = parseFloat();
+				normals[normalCount * 3 + 2] = parseFloat();
+				normalCount++;
+			} else if (first == 'f' && second == ' ') {
+				pointer += 2;
+				faces = ensureCapacity(faces, faceCount * 9 + 9);
+				for (int corner = 0; corner < 3; corner++) {
+					int base = faceCount * 9 + corner * 3;
+					faces[base] = parseIndex(positionCount);
+					faces[base + 1] = parseIndexAfterSlash(textureCount);
+					faces[base + 2] = parseIndexAfterSlash(normalCount);
+				}
+				faceCount++;
+			}
+			skipLine();
+		}
+	}
+
+	/**
+	 * Method that parses a decimal number starting at the current position. Numbers with few enough digits (which is
+	 * the case of nearly all numbers written by modelling tools) are computed with a single float multiplication or
+	 * division of exact values, which gives the same result as Float.parseFloat. Other numbers fall back on
+	 * Float.parseFloat.
+	 * @return the parsed number
+	 */
+	private float parseFloat() {
+		skipSpaces();
+		int start = pointer;
+		boolean negative = false;
+		if (pointer < end && (data.get(pointer) == '-' || data.get(pointer) == '+')) {
+			negative = data.get(pointer) == '-';
+			pointer++;
+		}
+		long mantissa = 0;
+		int exponent = 0;
+		boolean exact = true;
+		byte c;
+		while (pointer < end && (c = data.get(pointer)) >= '0' && c <= '9') {
+			mantissa = mantissa * 10 + (c - '0');
+			exact &= mantissa <= FAST_MANTISSA_LIMIT;
+			pointer++;
+		}
+		if (pointer < end && data.get(pointer) == '.') {
+			pointer++;
+			while (pointer < end && (c = data.get(pointer)) >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				exact &= mantissa <= FAST_MANTISSA_LIMIT;
+				exponent--;
+				pointer++;
+			}
+		}
+		if (pointer < end && (data.get(pointer) == 'e' || data.get(pointer) == 'E')) {
+			pointer++;
+			boolean negativeExponent = false;
+			if (pointer < end && (data.get(pointer) == '-' || data.get(pointer) == '+')) {
+				negativeExponent = data.get(pointer) == '-';
+				pointer++;
+			}
+			int value = 0;
+			while (pointer < end && (c = data.get(pointer)) >= '0' && c <= '9') {
+				value = Math.min(value * 10 + (c - '0'), 1000);
+				pointer++;
+			}
+			exponent += negativeExponent ? -value : value;
+		}
+		if (!exact || exponent > FAST_EXPONENT_LIMIT || exponent < -FAST_EXPONENT_LIMIT) {
+			return parseFloatSlow(start);
+		}
+		float value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Method that parses the number between the start position and the current position with Float.parseFloat. Only
+	 * used for the rare numbers that can't be computed exactly by the fast path.
+	 * @param start position of the first character of the number
+	 * @return the parsed number
+	 */
+	private float parseFloatSlow(int start) {
+		char[] chars = new char[pointer - start];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) data.get(start + i);
+		}
+		return Float.parseFloat(new String(chars));
+	}
+
+	/**
+	 * Method that parses an index of a face. Negative indices are relative to the amount of elements read so far, as
+	 * defined by the obj format.
+	 * @param count amount of elements of this kind read so far
+	 * @return the index starting at 0, or -1 if there is no index at the current position
+	 */
+	private int parseIndex(int count) {
+		skipSpaces();
+		return parseDigits(count);
+	}
+
+	/**
+	 * Method that parses the texture or normal index following a slash. There is no index if the slash is directly
+	 * followed by another slash or a space ("1//3" or "1/2").
+	 * @param count amount of elements of this kind read so far
+	 * @return the index starting at 0, or -1 if there is no index
+	 */
+	private int parseIndexAfterSlash(int count) {
+		if (pointer < end && data.get(pointer) == '/') {
+			pointer++;
+			return parseDigits(count);
+		}
+		return -1;
+	}
+
+	private int parseDigits(int count) {
+		boolean negative = false;
+		if (pointer < end && data.get(pointer) == '-') {
+			negative = true;
+			pointer++;
+		}
+		int value = 0;
+		boolean found = false;
+		byte c;
+		while (pointer < end && (c = data.get(pointer)) >= '0' && c <= '9') {
+			value = value * 10 + (c - '0');
+			found = true;
+			pointer++;
+		}
+		if (!found) {
+			return -1;
+		}
+		return negative ? count - value : value - 1;
+	}
+
+	private void skipSpaces() {
+		while (pointer < end && (data.get(pointer) == ' ' || data.get(pointer) == '\t')) {
+			pointer++;
+		}
+	}
+
+	private void skipLine() {
+		while (pointer < end && data.get(pointer) != '\n') {
+			pointer++;
+		}
+		pointer++;
+	}
+
+	private static float[] ensureCapacity(float[] array, int size) {
+		return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+	}
+
+	private static int[] ensureCapacity(int[] array, int size) {
+		return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+	}
+
+}
@@ -0,0 +1,119 @@
+package objConverter;
+
+import java.util.Arrays;
+
+/**
+ * Class that gives a number to every different vertex of a .obj file. In the obj format, each corner of a face
+ * references a position, texture coordinates and a normal separately, while openGL needs one index per vertex: two
+ * corners can only share a vertex if they reference the same three things.
+ * The vertices are stored in a hash table with open addressing (linear probing) in primitive arrays, so finding a
+ * vertex takes constant time and creates no object.
+ */
+public class VertexIndexMap {
+
+	private static final int EMPTY = -1;
+	private static final float MAX_LOAD_FACTOR = 0.5f;
+
+	private int[] table; //number of the vertex stored in each slot, or EMPTY
+	private int mask;
+
+	private int[] positionIndices; //position, texture and normal index of each vertex, in the order they were added
+	private int[] textureIndices;
+	private int[] normalIndices;
+	private int size;
+
+	/**
+	 * @param expectedVertices amount of vertices the map is sized for; it grows if there are more
+	 */
+	public VertexIndexMap(int expectedVertices) {
+		int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedVertices / MAX_LOAD_FACTOR)) - 1) << 1;
+		table = new int[capacity];
+		Arrays.fill(table, EMPTY);
+		mask = capacity - 1;
+		positionIndices = new int[Math.max(16, expectedVertices)];
+		textureIndices = new int[positionIndices.length];
+		normalIndices = new int[positionIndices.length];
+	}
+
+	/**
+	 * Method that finds the vertex made of a position, texture coordinates and normal, and adds it if it doesn't exist
+	 * yet.
+	 * @param positionIndex index of the position in the .obj file
+	 * @param textureIndex index of the texture coordinates in the .obj file
+	 * @param normalIndex index of the normal in the .obj file
+	 * @return the number of the vertex
+	 */
+	public int getOrAdd(int positionIndex, int textureIndex, int normalIndex) {
+		int slot = hash(positionIndex, textureIndex, normalIndex) & mask;
+		while (true) {
+			int vertex = table[slot];
+			if (vertex == EMPTY) {
+				break;
+			}
+			if (positionIndices[vertex] == positionIndex && textureIndices[vertex] == textureIndex
+					&& normalIndices[vertex] == normalIndex) {
+				return vertex;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (size == positionIndices.length) {
+			positionIndices = Arrays.copyOf(positionIndices, size * 2);
+			textureIndices = Arrays.copyOf(textureIndices, size * 2);
+			normalIndices = Arrays.copyOf(normalIndices, size * 2);
+		}
+		int vertex = size++;
+		positionIndices[vertex] = positionIndex;
+		textureIndices[vertex] = textureIndex;
+		normalIndices[vertex] = normalIndex;
+		table[slot] = vertex;
+		if (size > table.length * MAX_LOAD_FACTOR) {
+			grow();
+		}
+		return vertex;
+	}
+
+	/**
+	 * Method that doubles the size of the table and puts every vertex back in it.
+	 */
+	private void grow() {
+		table = new int[table.length * 2];
+		Arrays.fill(table, EMPTY);
+		mask = table.length - 1;
+		for (int vertex = 0; vertex < size; vertex++) {
+			int slot = hash(positionIndices[vertex], textureIndices[vertex], normalIndices[vertex]) & mask;
+			while (table[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = vertex;
+		}
+	}
+
+	/**
+	 * Method that mixes the three indices, so that vertices close to each other in the file don't end up in
+	 * neighbouring slots, which would make the probing sequences long.
+	 */
+	private static int hash(int positionIndex, int textureIndex, int normalIndex) {
+		int hash = positionIndex * 0x9E3779B1 + textureIndex * 0x85EBCA77 + normalIndex * 0xC2B2AE3D;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * @return the amount of different vertices
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getPositionIndex(int vertex) {
+		return positionIndices[vertex];
+	}
+
+	public int getTextureIndex(int vertex) {
+		return textureIndices[vertex];
+	}
+
+	public int getNormalIndex(int vertex) {
+		return normalIndices[vertex];
+	}
+
+}
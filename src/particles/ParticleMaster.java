@@ -15,8 +15,8 @@ public class ParticleMaster {
     private static final Map<ParticleTexture, List<Particle>> particles = new HashMap<>();
     private static ParticleRenderer renderer;
 
-    public static void init(Loader loader, Matrix4f projectionMatrix){
-        renderer = new ParticleRenderer(loader, projectionMatrix);
+    public static void init(Loader loader){
+        renderer = new ParticleRenderer(loader);
     }
 
     /**
@@ -45,8 +45,11 @@ public class ParticleMaster {
         }
     }
 
-    public static void renderParticles(Camera camera){
-        renderer.render(particles, camera);
+    /**
+     * @param viewMatrix of the frame, computed by the MasterRenderer (see MasterRenderer.getViewMatrix)
+     */
+    public static void renderParticles(Matrix4f viewMatrix){
+        renderer.render(particles, viewMatrix);
     }
 
     public static void cleanup(){
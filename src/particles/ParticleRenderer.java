@@ -4,16 +4,12 @@ import java.util.List;
 import java.util.Map;
 
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
-import entities.Camera;
 import models.RawModel;
+import renderEngine.GLState;
 import renderEngine.Loader;
-import toolbox.Maths;
 
 /**
  * Class responsible for showing particles on the screen. Every particle have the same vertices. Moreover, we set a quad
@@ -27,13 +23,13 @@ public class ParticleRenderer {
 	private final RawModel quad;
 	private final ParticleShader shader;
 	
-	protected ParticleRenderer(Loader loader, Matrix4f projectionMatrix){
+	/**
+	 * The particles are projected on the screen with the projection matrix of the FrameData block.
+	 * @param loader used to load the quad
+	 */
+	protected ParticleRenderer(Loader loader){
 		quad = loader.loadToVAO(VERTICES, 2);
 		shader = new ParticleShader();
-		shader.start();
-		shader.loadProjectionMatrix(projectionMatrix); //the particles are projected on the screen
-		shader.stop();
-
 	}
 
 	/**
@@ -41,24 +37,21 @@ public class ParticleRenderer {
 	 * along the animation. Then, updates the viewmatrix to update the positions of the particles. Finally, draws the
 	 * particles on the screen.
 	 * @param particles to render
-	 * @param camera: the particles have to face the camera
+	 * @param viewMatrix of the frame: the particles have to face the camera
 	 */
-	protected void render(Map<ParticleTexture, List<Particle>> particles, Camera camera){
-		Matrix4f viewMatrix = Maths.createViewMatrix(camera);
+	protected void render(Map<ParticleTexture, List<Particle>> particles, Matrix4f viewMatrix){
 		prepare();
 		for(ParticleTexture texture : particles.keySet()){
 			//loops through all the textures. for each texture, binds the texture and renders all the particles
-			GL13.glActiveTexture(GL13.GL_TEXTURE0);
-			GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getTextureId());
+			GLState.bindTexture(0, GL11.GL_TEXTURE_2D, texture.getTextureId());
 			for(Particle particle : particles.get(texture)){
 				//render the particles individually
 				updateModelViewmatrix(particle.getPosition(), particle.getRotation(), particle.getScale(), viewMatrix);
 				shader.loadTextureCoordInfo(particle.getTextOffset1(), particle.getTexOffset2(), texture.getNumberOfRows(), particle.getBlend());
 				GL11.glDrawArrays(GL11.GL_TRIANGLE_STRIP, 0, quad.getVertexCount()); //triangle strip allows to render 2D objects
 			}
-			finishRendering();
 		}
-
+		finishRendering();
 	}
 
 
@@ -98,24 +91,20 @@ public class ParticleRenderer {
 	 */
 	private void prepare(){
 		shader.start();
-		GL30.glBindVertexArray(quad.getVaoID());
-		GL20.glEnableVertexAttribArray(0);
-		GL11.glEnable(GL11.GL_BLEND);
-		GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
-		GL11.glDepthMask(false);
-
+		GLState.bindVertexArray(quad.getVaoID());
+		GLState.setBlending(true);
+		GLState.blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+		GLState.setDepthMask(false);
 	}
 
 	/**
-	 * Method that is called when the rendering is finished. It unsets parameters and unbinds used VAOs, as well as
-	 * stopping the shaders.
+	 * Method that is called once every particle is rendered. It puts back the depth mask and disables blending, for
+	 * the opaque models of the next frame. The VAO and the shader are left as they are: the next renderer binds its
+	 * own.
 	 */
 	private void finishRendering(){
-		GL11.glDepthMask(true);
-		GL11.glDisable(GL11.GL_BLEND);
-		GL20.glDisableVertexAttribArray(0);
-		GL30.glBindVertexArray(0);
-		shader.stop();
+		GLState.setDepthMask(true);
+		GLState.setBlending(false);
 	}
 
 }
@@ -14,7 +14,6 @@ public class ParticleShader extends ShaderProgram {
 	private static final String FRAGMENT_FILE = "src/particles/particleFShader.glsl";
 
 	private int location_modelViewMatrix;
-	private int location_projectionMatrix;
 	private int location_texOffset1;
 	private int location_texOffset2;
 	private int location_texCoordInfo;
@@ -30,7 +29,6 @@ public class ParticleShader extends ShaderProgram {
 	@Override
 	protected void getAllUniformLocations() {
 		location_modelViewMatrix = super.getUniformLocation("modelViewMatrix");
-		location_projectionMatrix = super.getUniformLocation("projectionMatrix");
 		location_texOffset1 = super.getUniformLocation("texOffset1");
 		location_texOffset2 = super.getUniformLocation("texOffset2");
 		location_texCoordInfo = super.getUniformLocation("texCoordInfo");
@@ -65,12 +63,4 @@ public class ParticleShader extends ShaderProgram {
 		super.loadMatrix(location_modelViewMatrix, modelViewMatrix);
 	}
 
-	/**
-	 * Method that sends the projection matrix to the shader
-	 * @param projectionMatrix matrix to send to the shader
-	 */
-	protected void loadProjectionMatrix(Matrix4f projectionMatrix) {
-		super.loadMatrix(location_projectionMatrix, projectionMatrix);
-	}
-
 }
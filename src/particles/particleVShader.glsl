@@ -6,7 +6,7 @@ out vec2 textureCoords1;
 out vec2 textureCoords2;
 out float blend;
 
-uniform mat4 projectionMatrix;
+#include "src/shaders/frameData.glsl"
 uniform mat4 modelViewMatrix;
 
 uniform vec2 texOffset1;
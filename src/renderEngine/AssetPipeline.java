@@ -0,0 +1,201 @@
+package renderEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+/**
+ * Class that loads the assets of the game in two stages. The first stage (reading and decoding files, building meshes)
+ * doesn't need openGL, so it is done by worker threads, in parallel. Once an asset is decoded, its second stage
+ * (sending the data to openGL) is put in a queue, which the render thread empties: openGL can only be used from the
+ * thread that created the display.
+ * If the pipeline isn't parallel, both stages are done straight away on the calling thread, one asset after the other,
+ * which is how the assets used to be loaded.
+ * Assets can be submitted under a name, like the file they are loaded from: an asset submitted again under the same
+ * name, while the first one is still pending or once it is loaded, isn't decoded nor uploaded again, but shares the
+ * first one.
+ */
+public class AssetPipeline {
+
+	private final ExecutorService workers;
+	private final BlockingQueue<Runnable> uploads = new LinkedBlockingQueue<>(); //uploads ready to be done on the render thread
+	private int pendingUploads;
+	private final Map<String, Asset<?>> namedAssets = new HashMap<>(); //assets submitted under a name, only used by the thread submitting them
+
+	/**
+	 * Constructor that starts one worker thread per processor if the pipeline is parallel.
+	 * @param parallel false to load the assets one after the other on the calling thread
+	 */
+	public AssetPipeline(boolean parallel) {
+		if (parallel) {
+			workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+				Thread thread = new Thread(runnable, "Asset loader");
+				thread.setDaemon(true); //the workers shouldn't keep the program running once the window is closed
+				return thread;
+			});
+		} else {
+			workers = null;
+		}
+	}
+
+	public boolean isParallel() {
+		return workers != null;
+	}
+
+	/**
+	 * Method that adds an asset to load. The decode stage is run by a worker thread, the upload stage by the render
+	 * thread, when it calls finish().
+	 * @param decode stage, which mustn't use openGL
+	 * @param upload stage, which receives the result of the decode stage and sends it to openGL
+	 * @return the asset, whose value can be used once finish() has been called
+	 */
+	public <T, R> Asset<R> submit(Callable<T> decode, Function<T, R> upload) {
+		Asset<R> asset = new Asset<>();
+		if (workers == null) {
+			asset.set(upload.apply(decode(decode)));
+			return asset;
+		}
+		pendingUploads++;
+		workers.execute(() -> {
+			T data = decode(decode);
+			uploads.add(() -> asset.set(upload.apply(data)));
+		});
+		return asset;
+	}
+
+	/**
+	 * Method that adds an asset loaded from a file, which is only decoded and uploaded once however many times it
+	 * is submitted: if an asset was already submitted under the same name, the share stage is run on the value of the
+	 * first one instead, on the render thread once the first one is uploaded (for example to add a reference to a
+	 * texture).
+	 * @param name of the asset, like the file it is loaded from
+	 * @param decode stage, which mustn't use openGL
+	 * @param upload stage, which receives the result of the decode stage and sends it to openGL
+	 * @param share stage of the assets submitted again under the same name, which receives the value of the first one
+	 * @return the asset, whose value can be used once finish() has been called
+	 */
+	@SuppressWarnings("unchecked")
+	public <T, R> Asset<R> submit(String name, Callable<T> decode, Function<T, R> upload, Function<R, R> share) {
+		Asset<R> first = (Asset<R>) namedAssets.get(name);
+		if (first == null) {
+			first = submit(decode, upload);
+			namedAssets.put(name, first);
+			return first;
+		}
+		Asset<R> asset = new Asset<>();
+		if (first.loaded) {
+			asset.set(share.apply(first.value));
+			return asset;
+		}
+		pendingUploads++;
+		Asset<R> shared = first;
+		first.followers.add(() -> {
+			asset.set(share.apply(shared.value));
+			pendingUploads--;
+		});
+		return asset;
+	}
+
+	/**
+	 * Method that adds an asset that only has a decode stage (for example a texture that will be uploaded together with
+	 * other ones).
+	 * @param decode stage, which mustn't use openGL
+	 * @return the asset, whose value can be used once finish() has been called
+	 */
+	public <T> Asset<T> submit(Callable<T> decode) {
+		return submit(decode, data -> data);
+	}
+
+	/**
+	 * Method called by the render thread, which uploads the assets as soon as they are decoded, until every asset that
+	 * was submitted is loaded.
+	 */
+	public void finish() {
+		while (pendingUploads > 0) {
+			try {
+				uploads.take().run();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				System.err.println("Interrupted while loading the assets");
+				System.exit(-1);
+			}
+			pendingUploads--;
+		}
+	}
+
+	/**
+	 * Method called by the render thread at every frame once the game is running, for the assets submitted while it
+	 * runs (like the terrain tiles coming into range): it only uploads the assets that are already decoded, without
+	 * waiting for the others, so that a frame isn't held up by a worker.
+	 * @param maxUploads largest amount of assets uploaded during this call, to spread the uploads over several frames
+	 */
+	public void update(int maxUploads) {
+		for (int i = 0; i < maxUploads; i++) {
+			Runnable upload = uploads.poll();
+			if (upload == null) {
+				return;
+			}
+			upload.run();
+			pendingUploads--;
+		}
+	}
+
+	/**
+	 * Method that stops the worker threads once there is nothing left to load.
+	 */
+	public void cleanUp() {
+		if (workers != null) {
+			workers.shutdown();
+		}
+	}
+
+	private static <T> T decode(Callable<T> decode) {
+		try {
+			return decode.call();
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.err.println("Couldn't load an asset");
+			System.exit(-1);
+			return null;
+		}
+	}
+
+	/**
+	 * Class that holds the result of an asset once it has been loaded.
+	 */
+	public static class Asset<T> {
+
+		private T value;
+		private boolean loaded;
+		private final List<Runnable> followers = new ArrayList<>(); //share stages of the assets submitted again under the same name
+
+		private void set(T value) {
+			this.value = value;
+			this.loaded = true;
+			for (Runnable follower : followers) {
+				follower.run();
+			}
+			followers.clear();
+		}
+
+		/**
+		 * @return the loaded asset
+		 * @throws IllegalStateException if the asset hasn't been loaded yet
+		 */
+		public T get() {
+			if (!loaded) {
+				throw new IllegalStateException("The asset isn't loaded yet, the pipeline has to be finished first");
+			}
+			return value;
+		}
+
+	}
+
+}
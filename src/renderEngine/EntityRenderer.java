@@ -1,105 +1,291 @@
 package renderEngine;
 
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import models.RawModel;
 import models.TexturedModel;
 
+import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
 import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
 
+import shaders.ShaderPermutations;
 import shaders.StaticShader;
 import textures.ModelTexture;
 import toolbox.Maths;
 import entities.Entity;
 
 /**
- * Class that renders a models from vaos.
+ * Class that renders a models from vaos. All the entities sharing a textured model are drawn with a single instanced
+ * draw call: their transformation matrix, texture atlas offset and texture array layer are streamed into an instance
+ * VBO. Textured models that only differ by their layer of a texture array share the same draw call. The entities come
+ * from a RenderQueue, sorted so that batches using the same shader, culling and texture follow each other, and that
+ * the entities of a batch are drawn from the closest one to the furthest one.
  */
 public class EntityRenderer {
 
-	private final StaticShader shader;
+	private static final int MAX_INSTANCES = 10000;
+	private static final int INSTANCE_DATA_LENGTH = 19; //16 floats for the transformation matrix, 2 for the texture offset, 1 for the texture array layer
+
+	private final ShaderPermutations<StaticShader> shaders;
+	private StaticShader shader; //variant used by the models being drawn
+	private final Loader loader;
+
+	private final int instanceVbo;
+	private final FloatBuffer instanceBuffer = BufferUtils.createFloatBuffer(MAX_INSTANCES * INSTANCE_DATA_LENGTH);
+	private final float[] instanceData = new float[MAX_INSTANCES * INSTANCE_DATA_LENGTH];
+	private final Set<Integer> instancedVaos = new HashSet<>(); //vaos to which the instance attributes were already added, forgotten once deleted as their id can be given to a new vao
+	private final Matrix4f transformationMatrix = new Matrix4f();
+	private final Map<TexturedModel, Integer> batchIds = new IdentityHashMap<>(); //batch of each textured model, used in the sort keys
+	private final List<TexturedModel> batchModels = new ArrayList<>(); //first textured model of each batch
+
+	/**
+	 * Constructor that creates the VBO in which the per-instance data is streamed every frame. The variants of the
+	 * shader are created when they are first needed, and their texture units are connected straight up. The camera and
+	 * the lights are read by the shaders from the FrameData block (see FrameUniformBuffer).
+	 * @param loader used to create the instance VBO, which tells the renderer when a VAO is deleted
+	 */
+	public EntityRenderer(Loader loader) {
+		this.loader = loader;
+		this.instanceVbo = loader.createEmptyVbo(MAX_INSTANCES * INSTANCE_DATA_LENGTH);
+		loader.addVaoDeletionListener(vao -> instancedVaos.remove(vao));
+		this.shaders = new ShaderPermutations<>(StaticShader::new, StaticShader::connectTextureUnits);
+	}
 
 	/**
-	 * Constructor that allows loading the projection matrix straight up to the shader
-	 * @param shader in question
-	 * @param projectionMatrix in question
+	 * @param texture of a model
+	 * @param lightCount amount of lights of the scene
+	 * @return the key of the variant of the shader that draws the model: the alpha test is only done for textures with
+	 * transparency, and normals only point up for models with fake lighting
 	 */
-	public EntityRenderer(StaticShader shader,Matrix4f projectionMatrix) {
-		this.shader = shader;
-		shader.start();
-		shader.loadProjectionMatrix(projectionMatrix);
-		shader.stop();
+	private static int getPermutation(ModelTexture texture, int lightCount) {
+		return ShaderPermutations.getKey(lightCount, texture.isUseFakeLighting(), texture.isHasTransparency(), true);
+	}
+
+	/**
+	 * Method that creates the variants of the shader needed to draw some models, before the first frame, so that they
+	 * are compiled at the same time.
+	 * @param models that will be drawn
+	 * @param lightCount amount of lights of the scene
+	 */
+	public void submitShaders(Iterable<TexturedModel> models, int lightCount) {
+		for (TexturedModel model : models) {
+			shaders.submit(getPermutation(model.getTexture(), lightCount));
+		}
 	}
 
 	/**
 	 * Method that renders models and takes in parameter shader so that it can apply the transformation to the entity to
-	 * render. First, we prepare texture models (that can be shared between entities), then we prepare such entities,
-	 * and finally, we draw them on the screen.
-	 * @param entities to be shown on the screen
+	 * render. The key of each queued entity is made of the key of its batch, computed from its model unless it was
+	 * queued with it, and of its distance to the camera, and the queue is sorted: the entities that can be drawn together then follow each other, models sharing their raw model and
+	 * material, whose textures are layers of the same texture array, only differing by the layer each instance reads.
+	 * For each run of such entities, we prepare the model of the first one, then we store the data of every entity in
+	 * the instance VBO, and finally, we draw them all at once on the screen.
+	 * @param queue of the entities to be shown on the screen
+	 * @param lightCount amount of lights of the scene, which chooses the variants of the shader
+	 * @param cameraPosition position of the camera of the frame
 	 */
-	public void render(Map<TexturedModel, List<Entity>> entities) {
-		for (TexturedModel model : entities.keySet()) {
+	public void render(RenderQueue queue, int lightCount, Vector3f cameraPosition) {
+		if (!queue.isSorted()) { //a retained scene queues its entities already sorted
+			for (int i = 0; i < queue.size(); i++) {
+				if (queue.getKey(i) == RenderQueue.NO_KEY) {
+					queue.setKey(i, getBatchKey(queue.get(i).getModel(), lightCount));
+				}
+			}
+			queue.setDistances(cameraPosition);
+			queue.sort();
+		}
+		shader = null;
+		int first = 0;
+		while (first < queue.size()) {
+			TexturedModel model = queue.get(first).getModel();
+			long batch = RenderQueue.getBatch(queue.getKey(first));
+			useShader(model.getTexture(), lightCount);
 			prepareTexturedModel(model);
-			List<Entity> batch = entities.get(model);
-			for (Entity entity : batch) {
-				prepareInstance(entity);
-				GL11.glDrawElements(GL11.GL_TRIANGLES, model.getRawModel().getVertexCount(),
-						GL11.GL_UNSIGNED_INT, 0);
+			int count = 0;
+			int pointer = 0;
+			int end = first;
+			while (end < queue.size() && RenderQueue.getBatch(queue.getKey(end)) == batch
+					&& canShareDraw(model, queue.get(end).getModel())) {
+				if (count == MAX_INSTANCES) {
+					drawInstances(model.getRawModel(), pointer, count);
+					count = 0;
+					pointer = 0;
+				}
+				pointer = storeInstanceData(queue.get(end), pointer);
+				count++;
+				end++;
+			}
+			drawInstances(model.getRawModel(), pointer, count);
+			first = end;
+		}
+	}
+
+	/**
+	 * @param model textured model of an entity
+	 * @param lightCount amount of lights of the scene
+	 * @return the sort key of the batch of the model, without the distance (see RenderQueue). It stays the same as
+	 * long as the model and the amount of lights don't change.
+	 */
+	public long getBatchKey(TexturedModel model, int lightCount) {
+		ModelTexture texture = model.getTexture();
+		return RenderQueue.createKey(texture.isHasTransparency() ? RenderQueue.PASS_ALPHA_TESTED : RenderQueue.PASS_OPAQUE,
+				getPermutation(texture, lightCount), texture.isHasTransparency(), texture.getID(), getBatchId(model));
+	}
+
+	/**
+	 * @param model textured model of an entity
+	 * @return the id of the batch of the model: textured models that can share a draw call have the same one
+	 */
+	private int getBatchId(TexturedModel model) {
+		Integer id = batchIds.get(model);
+		if (id == null) {
+			id = batchModels.size();
+			for (int i = 0; i < batchModels.size(); i++) {
+				if (canShareDraw(batchModels.get(i), model)) {
+					id = i;
+					break;
+				}
+			}
+			if (id == batchModels.size()) {
+				batchModels.add(model);
 			}
-			unbindTexturedModel();
+			batchIds.put(model, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Method that starts the variant of the shader a texture needs, if it isn't already the one in use.
+	 * @param texture of the models about to be drawn
+	 * @param lightCount amount of lights of the scene
+	 */
+	private void useShader(ModelTexture texture, int lightCount) {
+		int permutation = getPermutation(texture, lightCount);
+		if (shader != shaders.get(permutation)) {
+			shader = shaders.start(permutation);
 		}
 	}
 
+	public void cleanUp() {
+		shaders.cleanUp();
+	}
+
 	/**
-	 * Method that retrieves the raw model out of a textured model, to bind its vertexes to a VAO. Then, we load
-	 * textures (they can be texture atlases). If the texture needs transparency, we disable culling. If fake lighting
-	 * is required, we enable it. Finally, we tell openGL which textures we want to render.
+	 * Method that sends the instance data stored so far to the instance VBO, and draws that many instances of a model.
+	 * @param rawModel of the instances, whose VAO is bound
+	 * @param floatCount amount of floats of the instance data that are used
+	 * @param count amount of instances
+	 */
+	private void drawInstances(RawModel rawModel, int floatCount, int count) {
+		loader.updateVbo(instanceVbo, instanceData, floatCount, instanceBuffer);
+		GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, rawModel.getVertexCount(), rawModel.getIndexType(), 0, count);
+	}
+
+	/**
+	 * @param model drawn first
+	 * @param other model of an entity that follows it in the queue
+	 * @return whether the entities of both models can be drawn by the same draw call: they share their raw model,
+	 * their texture (or texture array) and their material
+	 */
+	private static boolean canShareDraw(TexturedModel model, TexturedModel other) {
+		if (model == other) {
+			return true;
+		}
+		ModelTexture texture = model.getTexture();
+		ModelTexture otherTexture = other.getTexture();
+		return model.getRawModel() == other.getRawModel() && texture.getID() == otherTexture.getID()
+				&& texture.isInTextureArray() == otherTexture.isInTextureArray()
+				&& texture.isHasTransparency() == otherTexture.isHasTransparency()
+				&& texture.isUseFakeLighting() == otherTexture.isUseFakeLighting()
+				&& texture.getNumberOfRows() == otherTexture.getNumberOfRows()
+				&& texture.getShineDamper() == otherTexture.getShineDamper()
+				&& texture.getReflectivity() == otherTexture.getReflectivity();
+	}
+
+	/**
+	 * Method that retrieves the raw model out of a textured model, to bind its vertexes to a VAO (its attributes, and
+	 * the per-instance ones, are enabled in the VAO once and for all by the Loader). Then, we load textures (they can
+	 * be texture atlases). Culling is only enabled for textures without transparency (fake lighting and the alpha test
+	 * are handled by the variant of the shader). Finally, we tell openGL which textures we want to render. Everything
+	 * goes through the GLState, so a VAO, texture or culling state shared with the previous model isn't set again: a
+	 * texture array is bound once for all the models using its layers.
 	 * @param model to render
 	 */
 	private void prepareTexturedModel(TexturedModel model) {
 		RawModel rawModel = model.getRawModel();
-		GL30.glBindVertexArray(rawModel.getVaoID()); //to render or process any vao, we have to bind it first
-		GL20.glEnableVertexAttribArray(0); //we also need to enable the attribute array our data is in
-		GL20.glEnableVertexAttribArray(1);
-		GL20.glEnableVertexAttribArray(2);
+		if (instancedVaos.add(rawModel.getVaoID())) {
+			addInstanceAttributes(rawModel.getVaoID());
+		}
+		GLState.bindVertexArray(rawModel.getVaoID()); //to render or process any vao, we have to bind it first
+		shader.loadVertexEncoding(rawModel);
 		ModelTexture texture = model.getTexture();
 		shader.loadNumberOfRows(texture.getNumberOfRows());
-		if(texture.isHasTransparency()){
-			//we disable culling whenever dealing with textures with transparency
-			MasterRenderer.disableCulling();
-		}
-		shader.loadFakeLightingVariable(texture.isUseFakeLighting());
+		GLState.setCulling(!texture.isHasTransparency()); //we disable culling whenever dealing with textures with transparency
 		shader.loadShineVariables(texture.getShineDamper(), texture.getReflectivity());
-		GL13.glActiveTexture(GL13.GL_TEXTURE0); //we tell openGL which texture we want to render //sampler2D uses by default texture0
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, model.getTexture().getID()); //binds a 2D texture on an object
+		shader.loadUseTextureArray(texture.isInTextureArray());
+		if (texture.isInTextureArray()) {
+			GLState.bindTexture(1, GL30.GL_TEXTURE_2D_ARRAY, texture.getID()); //texture arrays use the texture unit 1, see StaticShader.connectTextureUnits
+		} else {
+			GLState.bindTexture(0, GL11.GL_TEXTURE_2D, texture.getID()); //we tell openGL which texture we want to render
+		}
 	}
 
 	/**
-	 * Method that unbinds texture model, so that it doesn't duplicate to infinite and saves some processing.
+	 * Method that links the instance VBO to the attributes 3 to 7 of a model's VAO. A matrix takes 4 attributes (one
+	 * per column), the texture offset and the texture array layer share the last one.
+	 * @param vao of the model
 	 */
-	private void unbindTexturedModel() {
-		MasterRenderer.enableCulling();//enable culling again so that it's available for the next model
-		GL20.glDisableVertexAttribArray(0);
-		GL20.glDisableVertexAttribArray(1);
-		GL20.glDisableVertexAttribArray(2);
-		GL30.glBindVertexArray(0);
+	private void addInstanceAttributes(int vao) {
+		loader.addInstancedAttribute(vao, instanceVbo, 3, 4, INSTANCE_DATA_LENGTH, 0);
+		loader.addInstancedAttribute(vao, instanceVbo, 4, 4, INSTANCE_DATA_LENGTH, 4);
+		loader.addInstancedAttribute(vao, instanceVbo, 5, 4, INSTANCE_DATA_LENGTH, 8);
+		loader.addInstancedAttribute(vao, instanceVbo, 6, 4, INSTANCE_DATA_LENGTH, 12);
+		loader.addInstancedAttribute(vao, instanceVbo, 7, 3, INSTANCE_DATA_LENGTH, 16);
 	}
 
 	/**
-	 * Method that is called after preparing the texture models, to prepare all the entities. For each entity, we
-	 * load theur transformation matrix to the shader so that it shows them correctly.
+	 * Method that is called for every entity of a batch. It computes the transformation matrix of the entity and
+	 * stores it in the instance data, followed by the offset of its texture in the texture atlas (it could be
+	 * different for each entity, as not every entity uses the same texture of the atlas) and the layer of its texture
+	 * in the bound texture array (different for entities of models drawn together).
 	 * @param entity to be rendered
+	 * @param pointer position in the instance data where the entity has to be stored
+	 * @return the position where the next entity has to be stored
 	 */
-	private void prepareInstance(Entity entity) {
-
-		Matrix4f transformationMatrix = Maths.createTransformationMatrix(entity.getPosition(), entity.getRotationX(), entity.getRotationY(), entity.getRotationZ(), entity.getScale());//send the transformation matrix to the shader so that it transforms the entity in the view and moves where the model is rendered on the screen
-		shader.loadTransformationMatrix(transformationMatrix);
-		shader.loadOffset(entity.getTextureXOffset(), entity.getTextureYOffset());//we have to do this per entity because it could be different for each entity (not every entity uses the same texture on the texture atlas)
+	private int storeInstanceData(Entity entity, int pointer) {
+		Matrix4f matrix = Maths.createTransformationMatrix(entity.getPosition(), entity.getRotationX(), entity.getRotationY(),
+				entity.getRotationZ(), entity.getScale(), transformationMatrix);
+		float[] data = instanceData;
+		data[pointer++] = matrix.m00; //same order as Matrix4f.store, one column after the other
+		data[pointer++] = matrix.m01;
+		data[pointer++] = matrix.m02;
+		data[pointer++] = matrix.m03;
+		data[pointer++] = matrix.m10;
+		data[pointer++] = matrix.m11;
+		data[pointer++] = matrix.m12;
+		data[pointer++] = matrix.m13;
+		data[pointer++] = matrix.m20;
+		data[pointer++] = matrix.m21;
+		data[pointer++] = matrix.m22;
+		data[pointer++] = matrix.m23;
+		data[pointer++] = matrix.m30;
+		data[pointer++] = matrix.m31;
+		data[pointer++] = matrix.m32;
+		data[pointer++] = matrix.m33;
+		data[pointer++] = entity.getTextureXOffset();
+		data[pointer++] = entity.getTextureYOffset();
+		data[pointer++] = entity.getModel().getTexture().getLayer();
+		return pointer;
 	}
 
 }
@@ -0,0 +1,123 @@
+package renderEngine;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
+import entities.Camera;
+import entities.Light;
+import shaders.ShaderPermutations;
+import shaders.ShaderProgram;
+import toolbox.Maths;
+
+/**
+ * Class that holds the uniform buffer of the FrameData block (see frameData.glsl): the projection and view matrices,
+ * the position of the camera, the sky colour, the clip plane and the lights. These are the same for every program
+ * during a frame, so instead of loading them into each variant of each shader, they are written once per frame into
+ * this buffer, which stays bound to the binding point every program reads the block from.
+ * The buffer follows the std140 layout: every vec3 of the block takes the room of a vec4, so it is stored as one.
+ */
+public class FrameUniformBuffer {
+
+	private static final int MAX_LIGHTS = ShaderPermutations.MAX_LIGHTS;
+	private static final int SIZE = 16 + 16 + 4 + 4 + 4 + 4 * 4 * MAX_LIGHTS; //floats: 2 matrices, 3 vectors, 4 vectors per light
+
+	private final int ubo;
+	private final FloatBuffer buffer = BufferUtils.createFloatBuffer(SIZE);
+	private final Matrix4f projectionMatrix;
+	private Matrix4f viewMatrix = new Matrix4f();
+	private final Vector4f eyeSpacePosition = new Vector4f();
+
+	/**
+	 * Constructor that creates the uniform buffer and binds it to the binding point of the FrameData block.
+	 * @param projectionMatrix written every frame, so that changes made to it are seen by the shaders
+	 */
+	public FrameUniformBuffer(Matrix4f projectionMatrix) {
+		this.projectionMatrix = projectionMatrix;
+		ubo = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, ubo);
+		GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, SIZE * 4, GL15.GL_DYNAMIC_DRAW);
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+		GL30.glBindBufferBase(GL31.GL_UNIFORM_BUFFER, ShaderProgram.FRAME_DATA_BINDING, ubo);
+	}
+
+	/**
+	 * Method called at the start of each frame, which computes the view matrix and writes the whole block. Lights
+	 * after the MAX_LIGHTS first ones are ignored, and missing lights are black, so that the variants of the shaders
+	 * can read as many lights as they add up.
+	 * @param camera watching the scene
+	 * @param lights lighting the scene
+	 * @param clipPlane used to not render the things that are outside of sight
+	 * @param r value of the sky colour
+	 * @param g value of the sky colour
+	 * @param b value of the sky colour
+	 */
+	public void update(Camera camera, List<Light> lights, Vector4f clipPlane, float r, float g, float b) {
+		viewMatrix = Maths.createViewMatrix(camera);
+		buffer.clear();
+		projectionMatrix.store(buffer);
+		viewMatrix.store(buffer);
+		Vector3f cameraPosition = camera.getPosition();
+		buffer.put(cameraPosition.x).put(cameraPosition.y).put(cameraPosition.z).put(1);
+		buffer.put(r).put(g).put(b).put(1);
+		buffer.put(clipPlane.x).put(clipPlane.y).put(clipPlane.z).put(clipPlane.w);
+		for (int i = 0; i < MAX_LIGHTS; i++) {
+			if (i < lights.size()) {
+				Vector3f position = lights.get(i).getPosition();
+				buffer.put(position.x).put(position.y).put(position.z).put(1);
+			} else {
+				buffer.put(0).put(0).put(0).put(1);
+			}
+		}
+		for (int i = 0; i < MAX_LIGHTS; i++) {
+			if (i < lights.size()) {
+				Vector3f position = lights.get(i).getPosition();
+				eyeSpacePosition.set(position.x, position.y, position.z, 1);
+				Matrix4f.transform(viewMatrix, eyeSpacePosition, eyeSpacePosition); //the normal mapping shader lights in eye space
+				buffer.put(eyeSpacePosition.x).put(eyeSpacePosition.y).put(eyeSpacePosition.z).put(1);
+			} else {
+				buffer.put(0).put(0).put(0).put(1);
+			}
+		}
+		for (int i = 0; i < MAX_LIGHTS; i++) {
+			if (i < lights.size()) {
+				Vector3f colour = lights.get(i).getColour();
+				buffer.put(colour.x).put(colour.y).put(colour.z).put(0);
+			} else {
+				buffer.put(0).put(0).put(0).put(0);
+			}
+		}
+		for (int i = 0; i < MAX_LIGHTS; i++) {
+			if (i < lights.size()) {
+				Vector3f attenuation = lights.get(i).getAttenuation();
+				buffer.put(attenuation.x).put(attenuation.y).put(attenuation.z).put(0);
+			} else {
+				buffer.put(1).put(0).put(0).put(0); //no attenuation, so that a missing light doesn't divide by 0
+			}
+		}
+		buffer.flip();
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, ubo);
+		GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, SIZE * 4, GL15.GL_DYNAMIC_DRAW); //orphans the storage the last frame may still be reading
+		GL15.glBufferSubData(GL31.GL_UNIFORM_BUFFER, 0, buffer);
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+	}
+
+	/**
+	 * @return the view matrix of the current frame, computed by update
+	 */
+	public Matrix4f getViewMatrix() {
+		return viewMatrix;
+	}
+
+	public void cleanUp() {
+		GL15.glDeleteBuffers(ubo);
+	}
+
+}
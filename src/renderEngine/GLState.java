@@ -0,0 +1,210 @@
+package renderEngine;
+
+import java.util.Arrays;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+/**
+ * Class that keeps a copy of the openGL state the renderers change: the program in use, the bound VAO, the texture
+ * bound to each texture unit, face culling, blending, the depth mask and the depth test. Every renderer (and the
+ * Loader) goes through it instead of calling openGL directly, so that a call that wouldn't change anything is skipped:
+ * models that follow each other often use the same program, VAO, textures and culling, and nothing has to be unbound
+ * after a draw.
+ * A value that isn't known yet (-1) is always sent. Objects that are deleted have to be forgotten (see the deleted
+ * methods), as openGL unbinds them and may give their id to a new object.
+ */
+public class GLState {
+
+	private static final int UNKNOWN = -1;
+	private static final int MAX_TEXTURE_UNITS = 16; //the smallest amount of fragment shader texture units openGL 3 allows
+
+	private static int program = UNKNOWN;
+	private static int vao = UNKNOWN;
+	private static int activeTextureUnit = UNKNOWN;
+	private static final int[] textureTargets = new int[MAX_TEXTURE_UNITS]; //target of the last texture bound to each unit
+	private static final int[] textures = new int[MAX_TEXTURE_UNITS];
+	private static int culling = UNKNOWN; //1 when enabled, 0 when disabled
+	private static int blending = UNKNOWN;
+	private static int blendSource = UNKNOWN;
+	private static int blendDestination = UNKNOWN;
+	private static int depthMask = UNKNOWN;
+	private static int depthTest = UNKNOWN;
+
+	private static long issuedCalls;
+	private static long skippedCalls;
+
+	static {
+		invalidate();
+	}
+
+	public static void useProgram(int programID) {
+		if (program == programID) {
+			skippedCalls++;
+			return;
+		}
+		GL20.glUseProgram(programID);
+		program = programID;
+		issuedCalls++;
+	}
+
+	public static void bindVertexArray(int vaoID) {
+		if (vao == vaoID) {
+			skippedCalls++;
+			return;
+		}
+		GL30.glBindVertexArray(vaoID);
+		vao = vaoID;
+		issuedCalls++;
+	}
+
+	/**
+	 * Method that binds a texture to a texture unit. The unit is only made active when the texture has to be bound.
+	 * @param unit number of the texture unit, from 0
+	 * @param target of the texture (GL_TEXTURE_2D, GL_TEXTURE_2D_ARRAY, GL_TEXTURE_CUBE_MAP)
+	 * @param textureID of the texture, or 0 to unbind the texture of this target
+	 */
+	public static void bindTexture(int unit, int target, int textureID) {
+		if (textureTargets[unit] == target && textures[unit] == textureID) {
+			skippedCalls++;
+			return;
+		}
+		if (activeTextureUnit != unit) {
+			GL13.glActiveTexture(GL13.GL_TEXTURE0 + unit);
+			activeTextureUnit = unit;
+			issuedCalls++;
+		}
+		GL11.glBindTexture(target, textureID);
+		textureTargets[unit] = target; //a unit holds a texture per target, only the last one is remembered
+		textures[unit] = textureID;
+		issuedCalls++;
+	}
+
+	public static void setCulling(boolean enabled) {
+		culling = setCapability(GL11.GL_CULL_FACE, culling, enabled);
+	}
+
+	public static void setBlending(boolean enabled) {
+		blending = setCapability(GL11.GL_BLEND, blending, enabled);
+	}
+
+	public static void setDepthTest(boolean enabled) {
+		depthTest = setCapability(GL11.GL_DEPTH_TEST, depthTest, enabled);
+	}
+
+	public static void blendFunc(int source, int destination) {
+		if (blendSource == source && blendDestination == destination) {
+			skippedCalls++;
+			return;
+		}
+		GL11.glBlendFunc(source, destination);
+		blendSource = source;
+		blendDestination = destination;
+		issuedCalls++;
+	}
+
+	public static void setDepthMask(boolean enabled) {
+		int value = enabled ? 1 : 0;
+		if (depthMask == value) {
+			skippedCalls++;
+			return;
+		}
+		GL11.glDepthMask(enabled);
+		depthMask = value;
+		issuedCalls++;
+	}
+
+	/**
+	 * Method called when a program is deleted: openGL doesn't use it anymore once it's no longer current.
+	 * @param programID of the deleted program
+	 */
+	public static void programDeleted(int programID) {
+		if (program == programID) {
+			program = UNKNOWN;
+		}
+	}
+
+	/**
+	 * Method called when a VAO is deleted: openGL unbinds it, and its id can be given to a new VAO.
+	 * @param vaoID of the deleted VAO
+	 */
+	public static void vertexArrayDeleted(int vaoID) {
+		if (vao == vaoID) {
+			vao = 0;
+		}
+	}
+
+	/**
+	 * Method called when a texture is deleted: openGL unbinds it from every unit, and its id can be given to a new
+	 * texture.
+	 * @param textureID of the deleted texture
+	 */
+	public static void textureDeleted(int textureID) {
+		for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+			if (textures[unit] == textureID) {
+				textures[unit] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Method that forgets the whole state, so that every value is sent again. To call after openGL was used without
+	 * going through this class.
+	 */
+	public static void invalidate() {
+		program = UNKNOWN;
+		vao = UNKNOWN;
+		activeTextureUnit = UNKNOWN;
+		Arrays.fill(textureTargets, UNKNOWN);
+		Arrays.fill(textures, UNKNOWN);
+		culling = UNKNOWN;
+		blending = UNKNOWN;
+		blendSource = UNKNOWN;
+		blendDestination = UNKNOWN;
+		depthMask = UNKNOWN;
+		depthTest = UNKNOWN;
+	}
+
+	/**
+	 * @return how many state changes were sent to openGL since the last reset
+	 */
+	public static long getIssuedCalls() {
+		return issuedCalls;
+	}
+
+	/**
+	 * @return how many state changes were skipped since the last reset, because openGL was already in that state
+	 */
+	public static long getSkippedCalls() {
+		return skippedCalls;
+	}
+
+	public static void resetCallCounters() {
+		issuedCalls = 0;
+		skippedCalls = 0;
+	}
+
+	/**
+	 * @param capability to enable or disable
+	 * @param current state of the capability
+	 * @param enabled whether the capability has to be enabled
+	 * @return the new state of the capability
+	 */
+	private static int setCapability(int capability, int current, boolean enabled) {
+		int value = enabled ? 1 : 0;
+		if (current == value) {
+			skippedCalls++;
+			return current;
+		}
+		if (enabled) {
+			GL11.glEnable(capability);
+		} else {
+			GL11.glDisable(capability);
+		}
+		issuedCalls++;
+		return value;
+	}
+
+}
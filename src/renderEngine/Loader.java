@@ -1,15 +1,23 @@
 package renderEngine;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
 
+import models.BoundingVolume;
 import models.RawModel;
 
 import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ContextCapabilities;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.GL13;
@@ -17,9 +25,11 @@ import org.lwjgl.opengl.GL14;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
-import org.newdawn.slick.opengl.Texture;
-import org.newdawn.slick.opengl.TextureLoader;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.GLContext;
 
+import textures.BlockCompressor;
+import textures.TextureContainer;
 import textures.TextureData;
 import de.matthiasmann.twl.utils.PNGDecoder;
 import de.matthiasmann.twl.utils.PNGDecoder.Format;
@@ -31,7 +41,47 @@ public class Loader {
 	//memory management: we want to delete all vaos and vbos we created in memory. in this purpose, these lists track all the vaos and vbos we create
 	private final List<Integer> vaos = new ArrayList<>();
 	private final List<Integer> vbos = new ArrayList<>();
-	private final List<Integer> textures = new ArrayList<>(); //list of all the texture IDs. We keep track of them to delete them later once the program stopped
+	private final Map<Integer, List<Integer>> vaoBuffers = new HashMap<>(); //the VBOs created for each VAO, deleted with it
+	private int currentVao; //VAO being created, 0 outside of the creation of a VAO
+	private final List<IntConsumer> vaoDeletionListeners = new ArrayList<>(); //told about every VAO deleted by deleteModel, whose id openGL can give again
+	private static final StagingBufferPool STAGING_BUFFERS = new StagingBufferPool(); //decoded textures are stored in these buffers until they are sent to openGL
+	private static final List<TextureUpload> TEXTURE_UPLOADS = new ArrayList<>(); //every texture sent to openGL, for the statistics
+
+	private final TextureRegistry textures = new TextureRegistry(); //all the texture IDs, with their names and references. We keep track of them to delete them once they aren't used anymore
+
+	public static final int VERTEX_SIZE = 8; //floats of an interleaved vertex: position, texture coordinates and normal
+	public static final int VERTEX_SIZE_WITH_TANGENTS = 11; //same, followed by the tangent
+
+	private boolean interleaved = true;
+	private boolean compressed = true;
+
+	/**
+	 * Method that chooses how the models loaded from arrays are stored. If interleaved (the default), all the
+	 * attributes of a vertex are stored next to each other in a single VBO, so a vertex is fetched from a single place
+	 * in memory. Otherwise, each attribute gets its own VBO.
+	 * @param interleaved true to store the attributes in a single VBO
+	 */
+	public void setInterleaved(boolean interleaved) {
+		this.interleaved = interleaved;
+	}
+
+	public boolean isInterleaved() {
+		return interleaved;
+	}
+
+	/**
+	 * Method that chooses whether the interleaved vertices are compressed before being sent to openGL (see
+	 * VertexCompressor), and whether the indices of models with at most 65536 vertices are stored as unsigned shorts.
+	 * Compressed by default. Models stored with one VBO per attribute are never compressed.
+	 * @param compressed true to compress the vertices and indices
+	 */
+	public void setCompressed(boolean compressed) {
+		this.compressed = compressed;
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
 
 	/**
 	 * Method that takes the positions of the model vertices, load the data into a VAO, and return information
@@ -44,25 +94,167 @@ public class Loader {
 	 */
 	public RawModel loadToVAO(float[] positions, float[] textureCoords, float[] normals,
 			int[] indices) {
-		int vaoID = createVAO();
-		bindIndicesBuffer(indices);
-		storeDataInAttributeList(0, 3, positions);
-		storeDataInAttributeList(1, 2, textureCoords);
-		storeDataInAttributeList(2, 3, normals);
-		unbindVAO();
-		return new RawModel(vaoID, indices.length);
+		return loadToVAO(positions, textureCoords, normals, null, indices);
 	}
-	
+
+	/**
+	 * Same as the method above, for models that also have tangents (the normal mapped ones).
+	 * @param positions of the vertices to load in the VAO
+	 * @param textureCoords of the model to load in the VAO
+	 * @param normals of the model to load in the VAO
+	 * @param tangents of the model to load in the VAO, or null if the model doesn't need them
+	 * @param indices which define how to draw each triangle between each vertex
+	 * @return VAO info as raw model.
+	 */
 	public RawModel loadToVAO(float[] positions, float[] textureCoords, float[] normals, float[] tangents,
 			int[] indices) {
+		BoundingVolume bounds = BoundingVolume.fromPositions(positions);
+		if (interleaved) {
+			return loadToVAO(interleave(positions, textureCoords, normals, tangents), storeDataInIntBuffer(indices),
+					tangents != null, bounds);
+		}
 		int vaoID = createVAO();
 		bindIndicesBuffer(indices);
 		storeDataInAttributeList(0, 3, positions);
 		storeDataInAttributeList(1, 2, textureCoords);
 		storeDataInAttributeList(2, 3, normals);
-		storeDataInAttributeList(3, 3, tangents);
+		int memorySize = (positions.length + textureCoords.length + normals.length + indices.length) * 4;
+		if (tangents != null) {
+			storeDataInAttributeList(3, 3, tangents);
+			memorySize += tangents.length * 4;
+		}
+		unbindVAO();
+		return new RawModel(vaoID, indices.length, bounds, false, GL11.GL_UNSIGNED_INT, memorySize, memorySize);
+	}
+
+	/**
+	 * Method that loads a model whose vertices are already interleaved in a buffer (for example mapped from a mesh
+	 * file) into a VAO. Each vertex is made of its position, texture coordinates, normal and, if there are any,
+	 * tangent. The buffers are given to openGL as they are, without being copied first, and a single VBO holds all the
+	 * attributes: glVertexAttribPointer tells openGL where each attribute starts in a vertex.
+	 * @param vertices interleaved data of the vertices
+	 * @param indices which define how to draw each triangle between each vertex
+	 * @param hasTangents whether each vertex ends with a tangent
+	 * @param bounds of the model
+	 * @return VAO info as raw model.
+	 */
+	public RawModel loadToVAO(FloatBuffer vertices, IntBuffer indices, boolean hasTangents, BoundingVolume bounds) {
+		return loadToVAO(vertices, indices, hasTangents, hasTangents, bounds);
+	}
+
+	/**
+	 * Same as the method above, for vertices that hold tangents the model doesn't use, like the meshes shared by the
+	 * OBJFileLoader and the NormalMappedObjLoader: the tangents are skipped, so the VAO only has the attributes of a
+	 * model that isn't normal mapped. Compressed vertices leave the tangents out, uncompressed ones keep them in the
+	 * VBO but attribute 3 isn't enabled.
+	 * @param vertices interleaved data of the vertices
+	 * @param indices which define how to draw each triangle between each vertex
+	 * @param hasTangents whether each vertex ends with a tangent
+	 * @param useTangents whether the tangents are given to the shaders, only possible if the vertices have some
+	 * @param bounds of the model
+	 * @return VAO info as raw model.
+	 */
+	public RawModel loadToVAO(FloatBuffer vertices, IntBuffer indices, boolean hasTangents, boolean useTangents,
+			BoundingVolume bounds) {
+		int vaoID = createVAO();
+		int indexCount = indices.remaining();
+		int floatSize = hasTangents ? VERTEX_SIZE_WITH_TANGENTS : VERTEX_SIZE;
+		int vertexCount = vertices.remaining() / floatSize;
+		int uncompressedMemorySize = (vertices.remaining() + indexCount) * 4;
+		int memorySize;
+		int indexType = GL11.GL_UNSIGNED_INT;
+		if (compressed && vertexCount <= VertexCompressor.MAX_SHORT_INDEX_VERTICES) {
+			bindIndicesBuffer(VertexCompressor.packIndices(indices));
+			indexType = GL11.GL_UNSIGNED_SHORT;
+			memorySize = indexCount * 2;
+		} else {
+			bindIndicesBuffer(indices);
+			memorySize = indexCount * 4;
+		}
+		memorySize += storeInterleavedVertices(vertices, hasTangents, useTangents && hasTangents, bounds);
+		unbindVAO();
+		return new RawModel(vaoID, indexCount, bounds, compressed, indexType, memorySize, uncompressedMemorySize);
+	}
+
+	/**
+	 * Method that loads interleaved vertices (positions, texture coordinates and normals) into a VAO whose indices are
+	 * an index buffer shared with other models, like the index buffers of the levels of detail of the terrain chunks.
+	 * The draw calls choose which part of the index buffer they read and from which vertex, so the raw model doesn't
+	 * have a vertex count.
+	 * @param vertices interleaved data of the vertices
+	 * @param indicesVbo shared index buffer (see loadIndexBuffer)
+	 * @param indexType type of the indices of the shared buffer
+	 * @param bounds of the model
+	 * @return VAO info as raw model.
+	 */
+	public RawModel loadToVAO(FloatBuffer vertices, int indicesVbo, int indexType, BoundingVolume bounds) {
+		int vaoID = createVAO();
+		int uncompressedMemorySize = vertices.remaining() * 4;
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indicesVbo); //the VAO remembers its index buffer
+		int memorySize = storeInterleavedVertices(vertices, false, false, bounds);
 		unbindVAO();
-		return new RawModel(vaoID, indices.length);
+		return new RawModel(vaoID, 0, bounds, compressed, indexType, memorySize, uncompressedMemorySize);
+	}
+
+	/**
+	 * Method that creates an index buffer that can be shared by several VAOs (see the method above). It is deleted
+	 * with the other VBOs.
+	 * @param indices to store in the buffer
+	 * @return the id of the index buffer
+	 */
+	public int loadIndexBuffer(ShortBuffer indices) {
+		int vboID = createVBO();
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboID);
+		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices, GL15.GL_STATIC_DRAW);
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0); //no VAO is bound, so this doesn't change the indices of any model
+		return vboID;
+	}
+
+	/**
+	 * Method that stores interleaved vertices in a VBO of the bound VAO, compressed if the loader compresses models,
+	 * and tells openGL where each attribute starts in a vertex.
+	 * @param vertices interleaved data of the vertices
+	 * @param hasTangents whether each vertex ends with a tangent
+	 * @param useTangents whether the tangents are stored in attribute 3, false to skip them
+	 * @param bounds of the model, used to compress the positions
+	 * @return the size of the VBO, in bytes
+	 */
+	private int storeInterleavedVertices(FloatBuffer vertices, boolean hasTangents, boolean useTangents,
+			BoundingVolume bounds) {
+		int floatSize = hasTangents ? VERTEX_SIZE_WITH_TANGENTS : VERTEX_SIZE;
+		int memorySize;
+		int vboID = createVBO();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
+		if (compressed) {
+			boolean unitTextureCoords = VertexCompressor.areTextureCoordsInUnitRange(vertices, floatSize);
+			ByteBuffer packed = VertexCompressor.packVertices(vertices, hasTangents, useTangents, bounds, unitTextureCoords);
+			memorySize = packed.remaining();
+			GL15.glBufferData(GL15.GL_ARRAY_BUFFER, packed, GL15.GL_STATIC_DRAW);
+			int stride = useTangents ? VertexCompressor.VERTEX_SIZE_WITH_TANGENTS : VertexCompressor.VERTEX_SIZE;
+			GL20.glVertexAttribPointer(0, 3, GL11.GL_UNSIGNED_SHORT, true, stride, 0); //normalized: openGL turns the shorts into floats between 0 and 1
+			GL20.glVertexAttribPointer(1, 2, unitTextureCoords ? GL11.GL_UNSIGNED_SHORT : GL30.GL_HALF_FLOAT, unitTextureCoords,
+					stride, 8);
+			GL20.glVertexAttribPointer(2, 2, GL11.GL_SHORT, true, stride, 12);
+			if (useTangents) {
+				GL20.glVertexAttribPointer(3, 2, GL11.GL_SHORT, true, stride, 16);
+			}
+		} else {
+			memorySize = vertices.remaining() * 4;
+			GL15.glBufferData(GL15.GL_ARRAY_BUFFER, vertices, GL15.GL_STATIC_DRAW);
+			int stride = floatSize * 4; //distance in bytes between two vertices
+			GL20.glVertexAttribPointer(0, 3, GL11.GL_FLOAT, false, stride, 0);
+			GL20.glVertexAttribPointer(1, 2, GL11.GL_FLOAT, false, stride, 3 * 4);
+			GL20.glVertexAttribPointer(2, 3, GL11.GL_FLOAT, false, stride, 5 * 4);
+			if (useTangents) {
+				GL20.glVertexAttribPointer(3, 3, GL11.GL_FLOAT, false, stride, 8 * 4);
+			}
+		}
+		int attributes = useTangents ? 4 : 3;
+		for (int i = 0; i < attributes; i++) {
+			GL20.glEnableVertexAttribArray(i); //the VAO remembers that its attributes are enabled
+		}
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		return memorySize;
 	}
 
 	public RawModel loadToVAO(float[] positions, int dimensions) {
@@ -74,26 +266,315 @@ public class Loader {
 	}
 
 	/**
-	 * Method that loads texture from a png file. It sets some parameters to increase performance, gets the texture
-	 * ID that identifies the texture and adds it in our list keeping track of all the textures.
+	 * Method that creates an empty VBO big enough to hold the given amount of floats. It is meant to be filled again
+	 * every frame (for example with per-instance data), so we tell openGL it will be used as a stream.
+	 * @param floatCount amount of floats the VBO can hold
+	 * @return the id of the VBO
+	 */
+	public int createEmptyVbo(int floatCount) {
+		int vboID = createVBO();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, floatCount * 4, GL15.GL_STREAM_DRAW);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		return vboID;
+	}
+
+	/**
+	 * Method that links a part of an instance VBO to an attribute of a VAO. The attribute divisor tells openGL to only
+	 * move to the next piece of data once per instance instead of once per vertex.
+	 * @param vao to which the attribute is added
+	 * @param vbo containing the per-instance data
+	 * @param attribute number of the attribute in the VAO
+	 * @param dataSize amount of floats of this attribute (up to 4)
+	 * @param instancedDataLength amount of floats stored for each instance
+	 * @param offset amount of floats before this attribute in the data of an instance
+	 */
+	public void addInstancedAttribute(int vao, int vbo, int attribute, int dataSize, int instancedDataLength, int offset) {
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		GLState.bindVertexArray(vao);
+		GL20.glVertexAttribPointer(attribute, dataSize, GL11.GL_FLOAT, false, instancedDataLength * 4, offset * 4);
+		GL20.glEnableVertexAttribArray(attribute);
+		GL33.glVertexAttribDivisor(attribute, 1);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Method that replaces the content of a stream VBO. The old storage is orphaned first, so that openGL doesn't have
+	 * to wait for the previous draw calls that still read from it.
+	 * @param vbo to update
+	 * @param data to put in the VBO
+	 * @param floatCount amount of floats of the data array that are used
+	 * @param buffer reusable float buffer, big enough to hold the data
+	 */
+	public void updateVbo(int vbo, float[] data, int floatCount, FloatBuffer buffer) {
+		buffer.clear();
+		buffer.put(data, 0, floatCount);
+		buffer.flip();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer.capacity() * 4, GL15.GL_STREAM_DRAW);
+		GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, buffer);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Method that loads texture from a png file, decoding it on the calling thread. It sets some parameters to
+	 * increase performance, gets the texture ID that identifies the texture and adds it in our registry keeping track
+	 * of all the textures. If the file was already loaded, its texture is given back instead, with one more reference.
 	 * @param fileName containing the texture
 	 * @return texture ID
 	 */
 	public int loadTexture(String fileName) {
-		Texture texture = null;
-		try {
-			texture = TextureLoader.getTexture("PNG", new FileInputStream("res/" + fileName
-					+ ".png"));
-			GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D); //generate lower res versions of the textures, and put in the type of the texture
-			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);//Tell openGL to use those lower res images. We put the texture type and define its behavior when the surface is rendered onto a surface with smaller dimensions than the texture. The linear option tells openGL to transition smoothly between different texture res.
-			GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL14.GL_TEXTURE_LOD_BIAS, -0.4f); //Level Of Detail bias. If we put a negative number as the 3rd parameter, it gives us a slightly higher resolution all over. But if too negative: lose the increase in performances.
-		} catch (Exception e) {
-			e.printStackTrace();
-			System.err.println("Tried to load texture " + fileName + ".png , didn't work");
-			System.exit(-1);
+		int loaded = textures.acquire(fileName);
+		if (loaded != -1) {
+			return loaded;
+		}
+		return loadTexture(fileName, decodeTexture(fileName));
+	}
+
+	/**
+	 * Method that decodes a png file of the res folder, or reads the container the TextureConverter made from it if
+	 * there is one. It doesn't use openGL, so it can be called from any thread; the
+	 * decoded texture then has to be sent to openGL with loadTexture(TextureData) on the render thread.
+	 * @param fileName containing the texture, without extension
+	 * @return the decoded texture
+	 */
+	public static TextureData decodeTexture(String fileName) {
+		long start = System.nanoTime();
+		TextureContainer container = TextureContainer.map(new File("res/" + fileName + ".png"));
+		if (container != null) {
+			return new TextureData(fileName, container, System.nanoTime() - start); //already converted, no need to decode the png
+		}
+		return decodeTextureFile("res/" + fileName + ".png", fileName);
+	}
+
+	/**
+	 * Method that lets the garbage collector free the staging buffers that aren't used, once the textures have been
+	 * loaded.
+	 */
+	public static void trimStagingBuffers() {
+		STAGING_BUFFERS.trim();
+	}
+
+	/**
+	 * @return bytes of direct memory allocated for the staging buffers, before they were trimmed
+	 */
+	public static long getStagingAllocatedBytes() {
+		return STAGING_BUFFERS.getAllocatedBytes();
+	}
+
+	/**
+	 * @return the most bytes of staging buffers used at the same time
+	 */
+	public static long getStagingPeakBytes() {
+		return STAGING_BUFFERS.getPeakBytesInUse();
+	}
+
+	/**
+	 * @return the textures (and layers of texture arrays, and faces of cube maps) sent to openGL so far, in the order
+	 * they were sent
+	 */
+	public static List<TextureUpload> getTextureUploads() {
+		return Collections.unmodifiableList(TEXTURE_UPLOADS);
+	}
+
+	/**
+	 * Method that sends a decoded texture to openGL. Like loadTexture(String), it generates the lower resolution
+	 * versions of the texture, and sets the same parameters. The texture has no name, so it is never shared.
+	 * @param data decoded texture
+	 * @return texture ID
+	 */
+	public int loadTexture(TextureData data) {
+		int textureID = uploadTexture(data);
+		textures.register(null, textureID);
+		return textureID;
+	}
+
+	/**
+	 * Method that sends a texture decoded from a file to openGL, and registers it under the name of the file. If the
+	 * file was already loaded (for example by another scene), the decoded data isn't used and the existing texture is
+	 * given back, with one more reference.
+	 * @param fileName the texture was decoded from
+	 * @param data decoded texture
+	 * @return texture ID
+	 */
+	public int loadTexture(String fileName, TextureData data) {
+		int loaded = textures.acquire(fileName);
+		if (loaded != -1) {
+			if (data.getBuffer() != null) {
+				STAGING_BUFFERS.release(data.getBuffer()); //decoded twice before the first upload: the copy isn't used, but its staging buffer goes back to the pool
+			}
+			return loaded;
+		}
+		int textureID = uploadTexture(data);
+		textures.register(fileName, textureID);
+		return textureID;
+	}
+
+	/**
+	 * Method that sends decoded textures to openGL as the layers of a single texture array, so that they can all be
+	 * sampled while it is bound (see TextureArrayPacker). The layers must have the same size, and come either all
+	 * from png files or all from containers of the same format with the same amount of levels. The array is
+	 * registered under a name made from the names of its layers, with one reference per layer, so that every
+	 * ModelTexture using one of them can release its own.
+	 * @param layers decoded textures, in the order of their layer index
+	 * @return texture ID of the array
+	 */
+	public int loadTextureArray(TextureData[] layers) {
+		String[] names = new String[layers.length];
+		for (int i = 0; i < layers.length; i++) {
+			names[i] = layers[i].getName();
+		}
+		String name = "texture array " + String.join(", ", names);
+		int textureID = textures.acquire(name);
+		if (textureID == -1) {
+			textureID = uploadTextureArray(layers);
+			textures.register(name, textureID);
+		} else {
+			for (TextureData layer : layers) {
+				if (layer.getBuffer() != null) {
+					STAGING_BUFFERS.release(layer.getBuffer()); //the decoded data isn't used, but its staging buffer goes back to the pool
+				}
+			}
+		}
+		for (int i = 1; i < layers.length; i++) {
+			textures.acquire(name);
+		}
+		return textureID;
+	}
+
+	private int uploadTextureArray(TextureData[] layers) {
+		long start = System.nanoTime();
+		for (int i = 0; i < layers.length; i++) {
+			if (layers[i].getContainer() != null && !isSupported(layers[i].getContainer())) {
+				System.err.println(layers[i].getName() + ": compressed format not supported, decoding the png instead");
+				layers[i] = decodeTextureFile("res/" + layers[i].getName() + ".png", layers[i].getName());
+			}
+		}
+		int width = layers[0].getWidth();
+		int height = layers[0].getHeight();
+		int textureID = GL11.glGenTextures();
+		GLState.bindTexture(0, GL30.GL_TEXTURE_2D_ARRAY, textureID);
+		TextureContainer container = layers[0].getContainer();
+		if (container == null) {
+			GL12.glTexImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, GL11.GL_RGBA, width, height, layers.length, 0,
+					GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+			for (int i = 0; i < layers.length; i++) {
+				GL12.glTexSubImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, 0, 0, i, width, height, 1, GL11.GL_RGBA,
+						GL11.GL_UNSIGNED_BYTE, layers[i].getBuffer());
+			}
+			GL30.glGenerateMipmap(GL30.GL_TEXTURE_2D_ARRAY);
+		} else {
+			int levels = container.getLevels().length;
+			for (int level = 0; level < levels; level++) {
+				int levelSize = container.getLevels()[level].remaining();
+				ByteBuffer buffer = STAGING_BUFFERS.acquire(levelSize * layers.length); //openGL wants the level of every layer at once
+				for (TextureData layer : layers) {
+					buffer.put(layer.getContainer().getLevels()[level].duplicate());
+				}
+				buffer.flip();
+				int levelWidth = Math.max(1, width >> level);
+				int levelHeight = Math.max(1, height >> level);
+				if (container.isCompressed()) {
+					GL13.glCompressedTexImage3D(GL30.GL_TEXTURE_2D_ARRAY, level, container.getGLFormat(), levelWidth,
+							levelHeight, layers.length, 0, buffer);
+				} else {
+					GL12.glTexImage3D(GL30.GL_TEXTURE_2D_ARRAY, level, GL11.GL_RGBA, levelWidth, levelHeight,
+							layers.length, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, buffer);
+				}
+				STAGING_BUFFERS.release(buffer);
+			}
+			GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL12.GL_TEXTURE_MAX_LEVEL, levels - 1);
+		}
+		GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		GL11.glTexParameterf(GL30.GL_TEXTURE_2D_ARRAY, GL14.GL_TEXTURE_LOD_BIAS, -0.4f);
+		GLState.bindTexture(0, GL30.GL_TEXTURE_2D_ARRAY, 0);
+		for (TextureData layer : layers) {
+			finishUpload(layer, start);
+		}
+		return textureID;
+	}
+
+	/**
+	 * @param fileName of a texture
+	 * @return whether the texture is loaded, in which case loading it again won't read the file
+	 */
+	public boolean isTextureLoaded(String fileName) {
+		return textures.contains(fileName);
+	}
+
+	/**
+	 * Method that removes a reference to a texture, and deletes it once no reference is left. Each call to a
+	 * loadTexture or loadCubeMap method has to be matched by a call to this method to free the texture before
+	 * cleanUp().
+	 * @param textureID of the texture
+	 */
+	public void releaseTexture(int textureID) {
+		if (textures.release(textureID)) {
+			GL11.glDeleteTextures(textureID);
+			GLState.textureDeleted(textureID);
+		}
+	}
+
+	/**
+	 * @param textureID of a texture
+	 * @return how many times the texture was loaded and not released yet, 0 if it was deleted
+	 */
+	public int getTextureReferenceCount(int textureID) {
+		return textures.getReferenceCount(textureID);
+	}
+
+	private int uploadTexture(TextureData data) {
+		long start = System.nanoTime();
+		if (data.getContainer() != null && !isSupported(data.getContainer())) {
+			System.err.println(data.getName() + ": compressed format not supported, decoding the png instead");
+			data = decodeTextureFile("res/" + data.getName() + ".png", data.getName());
+		}
+		int textureID = GL11.glGenTextures();
+		GLState.bindTexture(0, GL11.GL_TEXTURE_2D, textureID);
+		int levels = uploadLevels(GL11.GL_TEXTURE_2D, data);
+		if (data.getContainer() == null) {
+			GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D); //generate lower res versions of the textures on the GPU
+		} else {
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, levels - 1); //the container holds the lower res versions already
+		}
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);//Tell openGL to use those lower res images. The linear option tells openGL to transition smoothly between different texture res.
+		GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL14.GL_TEXTURE_LOD_BIAS, -0.4f); //Level Of Detail bias. A negative number gives us a slightly higher resolution all over. But if too negative: lose the increase in performances.
+		finishUpload(data, start);
+		return textureID;
+	}
+
+	/**
+	 * Method that adds a listener told about the id of every VAO deleted before the game is closed (see deleteModel),
+	 * so that what was kept about the VAO can be forgotten before openGL gives its id to a new one.
+	 * @param listener receiving the id of each deleted VAO
+	 */
+	public void addVaoDeletionListener(IntConsumer listener) {
+		vaoDeletionListeners.add(listener);
+	}
+
+	/**
+	 * Method that deletes a model before the game is closed, like a terrain tile that went out of range: its VAO and
+	 * the VBOs that were created with it. The buffers it shares with other models, like the index buffer of the terrain
+	 * chunks, aren't deleted.
+	 * @param model to delete
+	 */
+	public void deleteModel(RawModel model) {
+		int vaoID = model.getVaoID();
+		List<Integer> buffers = vaoBuffers.remove(vaoID);
+		if (buffers != null) {
+			for (int vbo : buffers) {
+				GL15.glDeleteBuffers(vbo);
+				vbos.remove(Integer.valueOf(vbo));
+			}
+		}
+		GL30.glDeleteVertexArrays(vaoID);
+		GLState.vertexArrayDeleted(vaoID);
+		vaos.remove(Integer.valueOf(vaoID));
+		for (IntConsumer listener : vaoDeletionListeners) {
+			listener.accept(vaoID);
 		}
-		textures.add(texture.getTextureID());
-		return texture.getTextureID();
 	}
 
 	/**
@@ -102,13 +583,16 @@ public class Loader {
 	public void cleanUp() {
 		for (int vao : vaos) {
 			GL30.glDeleteVertexArrays(vao);
+			GLState.vertexArrayDeleted(vao);
 		}
 		for (int vbo : vbos) {
 			GL15.glDeleteBuffers(vbo);
 		}
-		for (int texture : textures) {
+		for (int texture : textures.getTextureIDs()) {
 			GL11.glDeleteTextures(texture);
+			GLState.textureDeleted(texture);
 		}
+		textures.clear();
 	}
 
 	/**
@@ -118,49 +602,231 @@ public class Loader {
 	 * @return id of the texture
 	 */
 	public int loadCubeMap(String[] textureFiles) {
+		String name = "cube map " + String.join(", ", textureFiles);
+		int loaded = textures.acquire(name);
+		if (loaded != -1) {
+			return loaded;
+		}
+		TextureData[] faces = new TextureData[textureFiles.length]; //to decode them in parallel, the caller's pipeline can decode them and call the method below, like GameEngine does
+		for (int i = 0; i < textureFiles.length; i++) {
+			faces[i] = decodeTexture(textureFiles[i]);
+		}
+		int textureId = uploadCubeMap(faces);
+		textures.register(name, textureId);
+		return textureId;
+	}
+
+	/**
+	 * Method that sends the already decoded faces of a cube map to openGL.
+	 * @param faces of the cube map, in the same order as the texture files
+	 * @return id of the texture
+	 */
+	public int loadCubeMap(TextureData[] faces) {
+		int textureId = uploadCubeMap(faces);
+		textures.register(null, textureId);
+		return textureId;
+	}
+
+	private int uploadCubeMap(TextureData[] faces) {
 		int textureId = GL11.glGenTextures();
-		GL13.glActiveTexture(GL13.GL_TEXTURE0);
-		GL11.glBindTexture(GL13.GL_TEXTURE_CUBE_MAP, textureId);
+		GLState.bindTexture(0, GL13.GL_TEXTURE_CUBE_MAP, textureId);
 
-		for (int i = 0; i < textureFiles.length; i++) {
-			TextureData data = decodeTextureFile("res/" + textureFiles[i] + ".png");
-			GL11.glTexImage2D(GL13.GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL11.GL_RGBA, data.getWidth(), data.getHeight(), 0,
-					GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, data.getBuffer());
+		for (int i = 0; i < faces.length; i++) {
+			TextureData data = faces[i];
+			long start = System.nanoTime();
+			if (data.getContainer() != null && !isSupported(data.getContainer())) {
+				data = decodeTextureFile("res/" + data.getName() + ".png", data.getName());
+			}
+			uploadLevels(GL13.GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, data);
+			finishUpload(data, start);
 		}
 		
 		GL11.glTexParameteri(GL13.GL_TEXTURE_CUBE_MAP, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
 		GL11.glTexParameteri(GL13.GL_TEXTURE_CUBE_MAP, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
 		GL11.glTexParameteri(GL13.GL_TEXTURE_CUBE_MAP, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
 		GL11.glTexParameteri(GL13.GL_TEXTURE_CUBE_MAP, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
-		textures.add(textureId);
 		return textureId;
 	}
 
 	/**
-	 * Method that decodes the texture file for the cube map. Gets its wigth, height, retrieves the colours of the
-	 * texture, put them in a buffer, and creates a texturedata object with such data.
+	 * Method that decodes a texture file. Gets its wigth, height, retrieves the colours of the texture, put them in a
+	 * staging buffer of the pool, and creates a texturedata object with such data. The buffer goes back to the pool
+	 * once the texture has been sent to openGL.
 	 * @param fileName containing the texture
+	 * @param name of the texture, used when reporting its loading
 	 * @return texture data object
 	 */
-	private TextureData decodeTextureFile(String fileName) {
-		int width = 0;
-		int height = 0;
+	private static TextureData decodeTextureFile(String fileName, String name) {
+		long start = System.nanoTime();
 		ByteBuffer buffer = null;
-		try {
-			FileInputStream in = new FileInputStream(fileName);
+		try (FileInputStream in = new FileInputStream(fileName)) {
 			PNGDecoder decoder = new PNGDecoder(in);
-			width = decoder.getWidth();
-			height = decoder.getHeight();
-			buffer = ByteBuffer.allocateDirect(4 * width * height);
+			int width = decoder.getWidth();
+			int height = decoder.getHeight();
+			buffer = STAGING_BUFFERS.acquire(4 * width * height);
 			decoder.decode(buffer, width * 4, Format.RGBA);
 			buffer.flip();
-			in.close();
+			return new TextureData(name, buffer, width, height, System.nanoTime() - start);
 		} catch (Exception e) {
+			if (buffer != null) {
+				STAGING_BUFFERS.release(buffer);
+			}
 			e.printStackTrace();
 			System.err.println("Tried to load texture " + fileName + ", didn't work");
 			System.exit(-1);
+			return null;
+		}
+	}
+
+	/**
+	 * Method that sends the pixels of a texture to openGL: its png pixels, or every level of its container.
+	 * @param target of the image (GL_TEXTURE_2D, or a face of a cube map)
+	 * @param data of the texture
+	 * @return the amount of levels sent
+	 */
+	private static int uploadLevels(int target, TextureData data) {
+		TextureContainer container = data.getContainer();
+		if (container == null) {
+			GL11.glTexImage2D(target, 0, GL11.GL_RGBA, data.getWidth(), data.getHeight(), 0, GL11.GL_RGBA,
+					GL11.GL_UNSIGNED_BYTE, data.getBuffer());
+			return 1;
+		}
+		ByteBuffer[] levels = container.getLevels();
+		for (int i = 0; i < levels.length; i++) {
+			int width = Math.max(1, container.getWidth() >> i);
+			int height = Math.max(1, container.getHeight() >> i);
+			if (container.isCompressed()) {
+				GL13.glCompressedTexImage2D(target, i, container.getGLFormat(), width, height, 0, levels[i]); //the GPU samples the blocks as they are
+			} else {
+				GL11.glTexImage2D(target, i, GL11.GL_RGBA, width, height, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE,
+						levels[i]);
+			}
+		}
+		return levels.length;
+	}
+
+	/**
+	 * @param container of a texture
+	 * @return whether the graphics card can read the format of the container
+	 */
+	private static boolean isSupported(TextureContainer container) {
+		ContextCapabilities capabilities = GLContext.getCapabilities();
+		switch (container.getFormat()) {
+		case BlockCompressor.BC1:
+		case BlockCompressor.BC3:
+			return capabilities.GL_EXT_texture_compression_s3tc;
+		case BlockCompressor.BC7:
+			return capabilities.GL_ARB_texture_compression_bptc;
+		default:
+			return true;
 		}
-		return new TextureData(buffer, width, height);
+	}
+
+	/**
+	 * Method called once a texture has been sent to openGL, which gives its staging buffer back to the pool and records
+	 * how long it took to load the texture and how much direct memory it took.
+	 * @param data of the texture
+	 * @param uploadStart time at which the upload started, in nanoseconds
+	 */
+	private static void finishUpload(TextureData data, long uploadStart) {
+		long uploadTime = System.nanoTime() - uploadStart;
+		int stagingBytes = 0;
+		if (data.getBuffer() != null) {
+			stagingBytes = data.getBuffer().capacity();
+			STAGING_BUFFERS.release(data.getBuffer());
+		}
+		if (data.getName() != null) {
+			TEXTURE_UPLOADS.add(new TextureUpload(data, uploadTime, stagingBytes, STAGING_BUFFERS.getPeakBytesInUse()));
+		}
+	}
+
+	/**
+	 * Class that holds how a texture was loaded: how long it took to decode and send it to openGL, and how much memory
+	 * it took.
+	 */
+	public static class TextureUpload {
+
+		private final String name;
+		private final int width;
+		private final int height;
+		private final boolean fromContainer;
+		private final long decodeTime;
+		private final long uploadTime;
+		private final long videoMemory;
+		private final int stagingBytes;
+		private final long stagingPeakBytes;
+
+		private TextureUpload(TextureData data, long uploadTime, int stagingBytes, long stagingPeakBytes) {
+			this.name = data.getName();
+			this.width = data.getWidth();
+			this.height = data.getHeight();
+			this.fromContainer = data.getContainer() != null;
+			this.decodeTime = data.getDecodeTime();
+			this.uploadTime = uploadTime;
+			this.videoMemory = data.getMemorySize();
+			this.stagingBytes = stagingBytes;
+			this.stagingPeakBytes = stagingPeakBytes;
+		}
+
+		/**
+		 * @return name of the file the texture was loaded from
+		 */
+		public String getName() {
+			return name;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		/**
+		 * @return whether the texture was read from a container made by the TextureConverter, instead of a png file
+		 */
+		public boolean isFromContainer() {
+			return fromContainer;
+		}
+
+		/**
+		 * @return time it took to decode the file, in nanoseconds
+		 */
+		public long getDecodeTime() {
+			return decodeTime;
+		}
+
+		/**
+		 * @return time it took to send the texture to openGL, in nanoseconds
+		 */
+		public long getUploadTime() {
+			return uploadTime;
+		}
+
+		/**
+		 * @return how much video memory the texture takes with its mipmaps, in bytes
+		 */
+		public long getVideoMemory() {
+			return videoMemory;
+		}
+
+		/**
+		 * @return direct memory of the staging buffer the texture was decoded in, in bytes, 0 if it was read from a
+		 * container
+		 */
+		public int getStagingBytes() {
+			return stagingBytes;
+		}
+
+		/**
+		 * @return the most direct memory held by the staging buffers at the same time, up to the upload of this
+		 * texture, in bytes
+		 */
+		public long getStagingPeakBytes() {
+			return stagingPeakBytes;
+		}
+
 	}
 
 	/**
@@ -170,10 +836,25 @@ public class Loader {
 	private int createVAO() {
 		int vaoID = GL30.glGenVertexArrays();
 		vaos.add(vaoID); //memory management: track the vaos by adding them to a list to delete them later
-		GL30.glBindVertexArray(vaoID); //activate the vao by binding it. Stays bound until unbound
+		currentVao = vaoID;
+		GLState.bindVertexArray(vaoID); //activate the vao by binding it. Stays bound until unbound
 		return vaoID;
 	}
 
+	/**
+	 * Method that creates an empty VBO, which is deleted with the VAO being created if there is one, or when the game is
+	 * closed.
+	 * @return the id of the VBO
+	 */
+	private int createVBO() {
+		int vboID = GL15.glGenBuffers();
+		vbos.add(vboID); //We keep track of vbos to delete them later
+		if (currentVao != 0) {
+			vaoBuffers.computeIfAbsent(currentVao, vao -> new ArrayList<>()).add(vboID);
+		}
+		return vboID;
+	}
+
 	/**
 	 * Method that loads data in VBOs and loads VBOs into a VAO.
 	 * @param attributeNumber attribute list number in which we want to store the data
@@ -181,20 +862,54 @@ public class Loader {
 	 * @param data to store in the attribute list
 	 */
 	private void storeDataInAttributeList(int attributeNumber, int coordinateSize, float[] data) {
-		int vboID = GL15.glGenBuffers(); //creates empty vbo
-		vbos.add(vboID); //We keep track of vbos to delete them later
+		storeDataInAttributeList(attributeNumber, coordinateSize, storeDataInFloatBuffer(data));
+	}
+
+	/**
+	 * Method that loads data already stored in a float buffer in a VBO and loads the VBO into a VAO.
+	 * @param attributeNumber attribute list number in which we want to store the data
+	 * @param coordinateSize length of vertex. It can be 3 for 3D vector positions, or 2 for textures.
+	 * @param buffer containing the data to store in the attribute list
+	 */
+	private void storeDataInAttributeList(int attributeNumber, int coordinateSize, FloatBuffer buffer) {
+		int vboID = createVBO(); //creates empty vbo
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID); //vbo needs to be bound to store data into it
-		FloatBuffer buffer = storeDataInFloatBuffer(data);
 		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW); //once we get the float buffer with the data in it, we can store it in the vbo. Needs to specify the type of data, the data and what the data will be used for: either static data or editable data
 		GL20.glVertexAttribPointer(attributeNumber, coordinateSize, GL11.GL_FLOAT, false, 0, 0);  //stores vbo into vao. 3rd argument: type of data, 4rth: is the data normalized, 5th:distance between each vertex. is any data between them? 6th: offset. Should it start at the beginning of the data?
+		GL20.glEnableVertexAttribArray(attributeNumber); //the VAO remembers that the attribute is enabled, so the renderers don't have to enable it before every draw
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
 	}
 
+	/**
+	 * Method that puts the attributes of each vertex next to each other in a float buffer.
+	 * @param positions of the vertices, 3 floats per vertex
+	 * @param textureCoords of the vertices, 2 floats per vertex
+	 * @param normals of the vertices, 3 floats per vertex
+	 * @param tangents of the vertices, 3 floats per vertex, or null if there are none
+	 * @return the interleaved data, ready to be read
+	 */
+	private FloatBuffer interleave(float[] positions, float[] textureCoords, float[] normals, float[] tangents) {
+		int vertexCount = positions.length / 3;
+		FloatBuffer buffer = BufferUtils.createFloatBuffer(vertexCount
+				* (tangents != null ? VERTEX_SIZE_WITH_TANGENTS : VERTEX_SIZE));
+		for (int i = 0; i < vertexCount; i++) {
+			buffer.put(positions, i * 3, 3);
+			buffer.put(textureCoords, i * 2, 2);
+			buffer.put(normals, i * 3, 3);
+			if (tangents != null) {
+				buffer.put(tangents, i * 3, 3);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
 	/**
 	 * Method bindinding a VAO once we finish using it.
 	 */
 	private void unbindVAO() {
-		GL30.glBindVertexArray(0);
+		GLState.bindVertexArray(0);
+		currentVao = 0;
 	}
 
 	/**
@@ -203,13 +918,21 @@ public class Loader {
 	 * @param indices indices buffer in question
 	 */
 	private void bindIndicesBuffer(int[] indices) {
-		int vboID = GL15.glGenBuffers();
-		vbos.add(vboID);
+		bindIndicesBuffer(storeDataInIntBuffer(indices));
+	}
+
+	private void bindIndicesBuffer(IntBuffer buffer) {
+		int vboID = createVBO();
 		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboID);
-		IntBuffer buffer = storeDataInIntBuffer(indices);
 		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW); //stores the indices buffer in the vbo
 	}
 
+	private void bindIndicesBuffer(ShortBuffer buffer) {
+		int vboID = createVBO();
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboID);
+		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+	}
+
 	/**
 	 * Method that stores indices of the model array into an int buffer (same concept as float buffer for vbos). We can
 	 * only store int buffers into VBOs, so we have to convert them.
@@ -1,9 +1,9 @@
 package renderEngine;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import org.lwjgl.opengl.Display;
 import org.lwjgl.opengl.GL11;
@@ -13,12 +13,13 @@ import org.lwjgl.util.vector.Vector4f;
 import entities.Camera;
 import entities.Entity;
 import entities.Light;
+import models.BoundingVolume;
 import models.TexturedModel;
 import normalMappingRenderer.NormalMappingRenderer;
-import shaders.StaticShader;
-import shaders.TerrainShader;
 import skybox.SkyboxRenderer;
+import skybox.SkyboxShader;
 import terrains.Terrain;
+import toolbox.Frustum;
 
 /**
  * Class that manages all the other renderers.
@@ -35,31 +36,70 @@ public class MasterRenderer {
 
 	private Matrix4f projectionMatrix;
 
-	private final StaticShader shader = new StaticShader();
 	private final EntityRenderer renderer;
 
 	private final TerrainRenderer terrainRenderer;
-	private final TerrainShader terrainShader = new TerrainShader();
 	
 	private final NormalMappingRenderer normalMapRenderer;
 
 	private final SkyboxRenderer skyboxRenderer;
+	private final SkyboxShader skyboxShader = new SkyboxShader(); //the shaders are created before the renderers use them, so that the driver can compile them at the same time (see submitShaders)
 
-	private final Map<TexturedModel, List<Entity>> entities = new HashMap<>();  //each texture will be mapped to the entities that use that specific texture model. So basically, we have a list of all the entities using that texture model
-	private final Map<TexturedModel, List<Entity>> normalMapEntities = new HashMap<>();
+	private final FrameUniformBuffer frameData; //camera, lights, sky colour and clip plane, shared by every shader
+
+	private final RenderQueue entities = new RenderQueue(); //the entities to draw during the frame, sorted by the renderers before being drawn
+	private final RenderQueue normalMapEntities = new RenderQueue();
 	private final List<Terrain> terrains = new ArrayList<>();
 
+	private final Frustum frustum = new Frustum();
+	private int visibleEntities;
+	private int culledEntities;
+	private int visibleTerrains;
+	private int culledTerrains;
+
 	/**
-	 * Constructor that passes the projection matrix to all the renderers.
+	 * Constructor that creates the renderers, and the uniform buffer through which they all get the projection matrix.
 	 * @param loader needed for the skybox to load to VAOs its vertices
 	 */
 	public MasterRenderer(Loader loader) {
+		this(loader, loader.loadCubeMap(SkyboxRenderer.TEXTURE_FILES));
+	}
+
+	/**
+	 * Constructor used when the cube map of the skybox has already been loaded.
+	 * @param loader needed for the skybox to load to VAOs its vertices
+	 * @param skyboxTexture id of the cube map of the skybox
+	 */
+	public MasterRenderer(Loader loader, int skyboxTexture) {
+		GL11.glCullFace(GL11.GL_BACK);
 		enableCulling();
 		createProjectionMatrix();
-		renderer = new EntityRenderer(shader, projectionMatrix);
-		terrainRenderer = new TerrainRenderer(terrainShader, projectionMatrix);
-		skyboxRenderer = new SkyboxRenderer(loader, projectionMatrix);
-		normalMapRenderer = new NormalMappingRenderer(projectionMatrix);
+		frameData = new FrameUniformBuffer(projectionMatrix);
+		renderer = new EntityRenderer(loader);
+		terrainRenderer = new TerrainRenderer();
+		skyboxRenderer = new SkyboxRenderer(loader, skyboxTexture, skyboxShader);
+		normalMapRenderer = new NormalMappingRenderer();
+	}
+
+	/**
+	 * Method that creates, before the first frame, the variants of the shaders a scene needs (see ShaderPermutations),
+	 * so that the driver can compile them at the same time instead of one after the other when they are first used.
+	 * @param entities of the scene
+	 * @param normalEntities of the scene
+	 * @param lights of the scene
+	 */
+	public void submitShaders(List<Entity> entities, List<Entity> normalEntities, List<Light> lights) {
+		Set<TexturedModel> models = new HashSet<>();
+		for (Entity entity : entities) {
+			models.add(entity.getModel());
+		}
+		renderer.submitShaders(models, lights.size());
+		models.clear();
+		for (Entity entity : normalEntities) {
+			models.add(entity.getModel());
+		}
+		normalMapRenderer.submitShaders(models, lights.size());
+		terrainRenderer.submitShaders(lights.size());
 	}
 
 	public Matrix4f getProjectionMatrix() {
@@ -67,7 +107,16 @@ public class MasterRenderer {
 	}
 
 	/**
-	 * Method that processes all things that need to be processed (added in their respective lists or hashmaps).
+	 * @return the view matrix of the last rendered frame, computed once for every renderer
+	 */
+	public Matrix4f getViewMatrix() {
+		return frameData.getViewMatrix();
+	}
+
+	/**
+	 * Method that processes all things that need to be processed (added in their respective lists or hashmaps). The
+	 * uniforms of the frame and the frustum of the camera are computed once, and everything that is outside of the
+	 * frustum is skipped before being batched.
 	 * @param entities list of entities that have to be processed
 	 * @param normalEntities list of normal entities to be processed
 	 * @param terrains list of terrains to be processed
@@ -77,44 +126,184 @@ public class MasterRenderer {
 	 */
 	public void renderScene(List<Entity> entities, List<Entity> normalEntities, List<Terrain> terrains, List<Light> lights,
 			Camera camera, Vector4f clipPlane) {
+		frameData.update(camera, lights, clipPlane, RED, GREEN, BLUE);
+		frustum.update(projectionMatrix, frameData.getViewMatrix());
+		visibleEntities = 0;
+		culledEntities = 0;
+		visibleTerrains = 0;
+		culledTerrains = 0;
 		for (Terrain terrain : terrains) {
-			processTerrain(terrain);
+			if (isVisible(terrain)) {
+				processTerrain(terrain);
+			}
 		}
 		for (Entity entity : entities) {
-			processEntity(entity);
+			if (isVisible(entity)) {
+				processEntity(entity);
+			}
 		}
 		for(Entity entity : normalEntities){
-			processNormalMapEntity(entity);
+			if (isVisible(entity)) {
+				processNormalMapEntity(entity);
+			}
+		}
+		renderBatches(lights.size(), camera);
+	}
+
+	/**
+	 * Method that renders a retained scene: instead of going through lists of entities, the bounding spheres, batch
+	 * keys and order the scene keeps from a frame to the next are used, so that the entities are culled and queued
+	 * already sorted, without looking at their model. Only the entities the scene marked as changed (new, removed or
+	 * given another model) get their key from the renderers and are sorted again.
+	 * @param scene holding the entities to render
+	 * @param terrains list of terrains to be processed
+	 * @param lights required to render
+	 * @param camera required to render
+	 * @param clipPlane required to render
+	 */
+	public void renderScene(Scene scene, List<Terrain> terrains, List<Light> lights, Camera camera, Vector4f clipPlane) {
+		frameData.update(camera, lights, clipPlane, RED, GREEN, BLUE);
+		frustum.update(projectionMatrix, frameData.getViewMatrix());
+		visibleEntities = 0;
+		culledEntities = 0;
+		visibleTerrains = 0;
+		culledTerrains = 0;
+		for (Terrain terrain : terrains) {
+			if (isVisible(terrain)) {
+				processTerrain(terrain);
+			}
+		}
+		int lightCount = lights.size();
+		scene.setLightCount(lightCount);
+		scene.getEntities().updateOrder(model -> renderer.getBatchKey(model, lightCount));
+		scene.getNormalMapEntities().updateOrder(model -> normalMapRenderer.getBatchKey(model, lightCount));
+		processGroup(scene.getEntities(), entities);
+		processGroup(scene.getNormalMapEntities(), normalMapEntities);
+		renderBatches(lightCount, camera);
+	}
+
+	/**
+	 * Method that queues the entities of a group of a scene that are inside the frustum, in the order the group keeps
+	 * them sorted, with the key of their batch.
+	 * @param group of entities of the scene, whose order is up to date
+	 * @param queue in which the visible entities are added
+	 */
+	private void processGroup(Scene.Group group, RenderQueue queue) {
+		float[] spheres = group.spheres;
+		long[] keys = group.keys;
+		Scene.Handle[] sortedHandles = group.sortedHandles;
+		for (int i = 0; i < group.getSortedSize(); i++) {
+			int slot = Scene.Group.getSlot(sortedHandles[i]);
+			int sphere = slot * 4;
+			if (!frustum.isSphereVisible(spheres[sphere], spheres[sphere + 1], spheres[sphere + 2], spheres[sphere + 3])) {
+				culledEntities++;
+				continue;
+			}
+			visibleEntities++;
+			queue.add(group.entities[slot], keys[slot]);
+		}
+		queue.setSorted();
+	}
+
+	/**
+	 * Method that tests whether an entity can be seen by the camera. The bounding sphere of the model is centered on
+	 * the origin of the model, so it stays valid whatever the rotation of the entity is, we only have to scale it.
+	 * @param entity to test
+	 * @return true if the entity is (at least partly) inside the frustum
+	 */
+	private boolean isVisible(Entity entity) {
+		BoundingVolume bounds = entity.getModel().getRawModel().getBounds();
+		boolean visible = bounds == null || frustum.isSphereVisible(entity.getPosition().x, entity.getPosition().y,
+				entity.getPosition().z, bounds.getRadius() * entity.getScale());
+		if (visible) {
+			visibleEntities++;
+		} else {
+			culledEntities++;
+		}
+		return visible;
+	}
+
+	/**
+	 * Method that tests whether a terrain can be seen by the camera, by moving the bounding box of its model to the
+	 * position of the terrain in the world.
+	 * @param terrain to test
+	 * @return true if the terrain is (at least partly) inside the frustum
+	 */
+	private boolean isVisible(Terrain terrain) {
+		BoundingVolume bounds = terrain.getModel().getBounds();
+		boolean visible = bounds == null || frustum.isBoxVisible(terrain.getX() + bounds.getMin().x, bounds.getMin().y,
+				terrain.getZ() + bounds.getMin().z, terrain.getX() + bounds.getMax().x, bounds.getMax().y,
+				terrain.getZ() + bounds.getMax().z);
+		if (visible) {
+			visibleTerrains++;
+		} else {
+			culledTerrains++;
 		}
-		render(lights, camera, clipPlane);
+		return visible;
+	}
+
+	/**
+	 * @return amount of entities (normal mapped or not) that were inside the frustum during the last frame
+	 */
+	public int getVisibleEntities() {
+		return visibleEntities;
+	}
+
+	/**
+	 * @return amount of entities (normal mapped or not) that were skipped during the last frame
+	 */
+	public int getCulledEntities() {
+		return culledEntities;
+	}
+
+	public int getVisibleTerrains() {
+		return visibleTerrains;
+	}
+
+	public int getCulledTerrains() {
+		return culledTerrains;
+	}
+
+	/**
+	 * @return amount of terrain chunks drawn during the last frame, each one at its own level of detail
+	 */
+	public int getDrawnTerrainChunks() {
+		return terrainRenderer.getDrawnChunks();
 	}
 
 	/**
-	 * Method that renders everything on the screen. First, it loads the plane, lights, sky colour and the view matrix.
-	 * Then, it renders all the entities and normal entities. It does the same for the terrain, then stops the shader
-	 * and clear everything.
+	 * @return amount of terrain triangles drawn during the last frame
+	 */
+	public int getDrawnTerrainTriangles() {
+		return terrainRenderer.getDrawnTriangles();
+	}
+
+	/**
+	 * Method that renders everything on the screen: all the entities and normal entities, then the terrains and the
+	 * skybox. The plane, lights, sky colour and the view matrix are written once into the uniform buffer every shader
+	 * reads them from. Finally, everything is cleared.
 	 * @param lights used to light the scene.
 	 * @param camera used to watch the scene
 	 * @param clipPlane used to not render the things that are outside of sight
 	 */
 	public void render(List<Light> lights, Camera camera, Vector4f clipPlane) {
+		frameData.update(camera, lights, clipPlane, RED, GREEN, BLUE);
+		frustum.update(projectionMatrix, frameData.getViewMatrix()); //the terrain renderer culls the chunks of the terrains
+		renderBatches(lights.size(), camera);
+	}
+
+	/**
+	 * Method that renders what was processed, once the uniforms of the frame are written. The entity renderers sort
+	 * their queue by shader, state, texture and distance to the camera before drawing it.
+	 * @param lightCount amount of lights of the scene, which chooses the variants of the shaders
+	 * @param camera of the frame
+	 */
+	private void renderBatches(int lightCount, Camera camera) {
 		prepare();
-		shader.start();
-		shader.loadClipPlane(clipPlane);
-		shader.loadSkyColour(RED, GREEN, BLUE);
-		shader.loadLights(lights);
-		shader.loadViewMatrix(camera);
-		renderer.render(entities);
-		shader.stop();
-		normalMapRenderer.render(normalMapEntities, clipPlane, lights, camera);
-		terrainShader.start();
-		terrainShader.loadClipPlane(clipPlane);
-		terrainShader.loadSkyColour(RED, GREEN, BLUE);
-		terrainShader.loadLights(lights);
-		terrainShader.loadViewMatrix(camera);
-		terrainRenderer.render(terrains);
-		terrainShader.stop();
-		skyboxRenderer.render(camera, RED, GREEN, BLUE);
+		renderer.render(entities, lightCount, camera.getPosition());
+		normalMapRenderer.render(normalMapEntities, lightCount, camera.getPosition());
+		terrainRenderer.render(terrains, lightCount, frustum, camera.getPosition());
+		skyboxRenderer.render();
 		terrains.clear();
 		entities.clear();
 		normalMapEntities.clear();
@@ -124,8 +313,7 @@ public class MasterRenderer {
 	 * Method that enables culling, which avoids rendering the inside of our objects.
 	 */
 	public static void enableCulling() {
-		GL11.glEnable(GL11.GL_CULL_FACE);
-		GL11.glCullFace(GL11.GL_BACK);
+		GLState.setCulling(true);
 	}
 
 	/**
@@ -133,7 +321,7 @@ public class MasterRenderer {
 	 * disable culling for such models.
 	 */
 	public static void disableCulling() {
-		GL11.glDisable(GL11.GL_CULL_FACE);
+		GLState.setCulling(false);
 	}
 
 	public void processTerrain(Terrain terrain) {
@@ -141,40 +329,28 @@ public class MasterRenderer {
 	}
 
 	/**
-	 * Method that allows to populate the hashmap of entities and their corresponding textures.
-	 * @param entity to add in the hashmap
+	 * Method that adds an entity to the queue of the frame. The entity renderer groups the entities sharing a textured
+	 * model when it sorts the queue.
+	 * @param entity to add in the queue
 	 */
 	public void processEntity(Entity entity) {
-		TexturedModel entityModel = entity.getModel();
-		List<Entity> batch = entities.get(entityModel); // we get the lists that correspond to that entity from the hashmap. The entities retrieved share the same texture.
-		if (batch != null) {  //if a batch already exists for that entity, then we add it to the already existing list of entities
-			batch.add(entity);
-		} else {
-			List<Entity> newBatch = new ArrayList<>();
-			newBatch.add(entity);
-			entities.put(entityModel, newBatch); //otherwise, we create a batch for this entity and add it to the hashmap
-		}
+		entities.add(entity);
 	}
+
 	/**
-	 * Method that allows to populate the hashmap of normal entities and their corresponding textures.
-	 * @param entity to add in the hashmap
+	 * Method that adds a normal mapped entity to the queue of the frame.
+	 * @param entity to add in the queue
 	 */
 	public void processNormalMapEntity(Entity entity) {
-		TexturedModel entityModel = entity.getModel();
-		List<Entity> batch = normalMapEntities.get(entityModel);
-		if (batch != null) {
-			batch.add(entity);
-		} else {
-			List<Entity> newBatch = new ArrayList<>();
-			newBatch.add(entity);
-			normalMapEntities.put(entityModel, newBatch);
-		}
+		normalMapEntities.add(entity);
 	}
 
 	public void cleanUp() {
-		shader.cleanUp();
-		terrainShader.cleanUp();
+		renderer.cleanUp();
+		terrainRenderer.cleanUp();
 		normalMapRenderer.cleanUp();
+		skyboxRenderer.cleanUp();
+		frameData.cleanUp();
 	}
 
 	/**
@@ -182,7 +358,8 @@ public class MasterRenderer {
 	 * is on top another, we have to specify which triangle shows upfront and which triangle is hidden.
 	 */
 	public void prepare() {
-		GL11.glEnable(GL11.GL_DEPTH_TEST); //we do that through this method
+		GLState.setDepthTest(true); //we do that through this method
+		GLState.setDepthMask(true); //the depth buffer is only cleared if it can be written
 		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);//we have to clear the depth buffer every frame
 		GL11.glClearColor(RED, GREEN, BLUE, 1); //will take the new color specified
 	}
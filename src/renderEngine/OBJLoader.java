@@ -1,22 +1,22 @@
 package renderEngine;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 
+import models.BoundingVolume;
 import models.RawModel;
-
-import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
+import objConverter.MeshFile;
+import objConverter.OBJParser;
 
 /**
  * Class used to load .obj data into our program
  */
 public class OBJLoader {
 
+	public static final String MESH_VARIANT = ".simple"; //our meshes have one vertex per position, unlike the ones of the OBJFileLoader
+
 	/**
 	 * Method that loads an obj file data and return it as a raw model
 	 * @param fileName containing the .obj object
@@ -24,116 +24,74 @@ public class OBJLoader {
 	 * @return a raw model containing the obj file data
 	 */
 	public static RawModel loadObjModel(String fileName, Loader loader) {
-		FileReader fr = null;
-		try {
-			fr = new FileReader(new File("res/" + fileName + ".obj"));
-		} catch (FileNotFoundException e) {
-			System.err.println("Couldn't load file!");
-			e.printStackTrace();
-		}
-		BufferedReader reader = new BufferedReader(fr);
-		String line;
-		List<Vector3f> vertices = new ArrayList<Vector3f>();
-		List<Vector2f> textures = new ArrayList<Vector2f>();
-		List<Vector3f> normals = new ArrayList<Vector3f>();
-		List<Integer> indices = new ArrayList<Integer>();
-		float[] verticesArray; //we will need our data to be in arrays because our loader only takes data under this form
-		float[] normalsArray = null;
-		float[] textureArray = null;
-		int[] indicesArray;
-		try {
-
-			while (true) {
-				line = reader.readLine();
-				String[] currentLine = line.split(" ");
-				if (line.startsWith("v ")) {
-					//then it's a vertex position
-					Vector3f vertex = new Vector3f(Float.parseFloat(currentLine[1]),
-							Float.parseFloat(currentLine[2]), Float.parseFloat(currentLine[3]));
-					vertices.add(vertex);
-				} else if (line.startsWith("vt ")) {
-					//then it's a texture coordinate
-					Vector2f texture = new Vector2f(Float.parseFloat(currentLine[1]),
-							Float.parseFloat(currentLine[2]));
-					textures.add(texture);
-				} else if (line.startsWith("vn ")) {
-					//then it's a normal vector
-					Vector3f normal = new Vector3f(Float.parseFloat(currentLine[1]),
-							Float.parseFloat(currentLine[2]), Float.parseFloat(currentLine[3]));
-					normals.add(normal);
-				} else if (line.startsWith("f ")) {
-					//then it's a face: we've read in the data from the vertexes, textcoord and normals, we have all the data we need and can break out of this loop,but we just have to set up the arrays now that we know the sizes of them
-					textureArray = new float[vertices.size() * 2];
-					normalsArray = new float[vertices.size() * 3];
-					break;
-				}
-			}
+		return loadToVAO(loadMesh(fileName), loader);
+	}
 
-			while (line != null) {
-				//while we haven't reached the end of the file,
-				if (!line.startsWith("f ")) {
-					//we first check that the line does start with an f, if it doesn't we go back to the while loop
-					line = reader.readLine();
-					continue;
-				}
-				//if we found one, we divide each line in 3, one part for each vertex
-				String[] currentLine = line.split(" ");
-				String[] vertex1 = currentLine[1].split("/"); //the 1st part will be an f and the next part will be the vertices of the triangle
-				String[] vertex2 = currentLine[2].split("/");
-				String[] vertex3 = currentLine[3].split("/");
-				
-				processVertex(vertex1,indices,textures,normals,textureArray,normalsArray);
-				processVertex(vertex2,indices,textures,normals,textureArray,normalsArray);
-				processVertex(vertex3,indices,textures,normals,textureArray,normalsArray);
-				line = reader.readLine();
-			}
-			reader.close();
+	/**
+	 * Method that sends a mesh made by loadMesh to openGL. It has to be called from the render thread.
+	 * @param mesh to load
+	 * @param loader used to load the mesh in a VAO
+	 * @return a raw model containing the obj file data
+	 */
+	public static RawModel loadToVAO(MeshFile mesh, Loader loader) {
+		return loader.loadToVAO(mesh.getVertices(), mesh.getIndices(), mesh.hasTangents(), mesh.getBounds());
+	}
 
-		} catch (Exception e) {
-			e.printStackTrace();
+	/**
+	 * Method that makes the mesh of an obj file, without using openGL, so that it can be called from any thread. If
+	 * the obj file has already been converted, the mesh file is mapped, otherwise the obj file is parsed.
+	 * @param fileName containing the .obj object
+	 * @return the mesh
+	 * @throws UncheckedIOException if the obj file couldn't be read
+	 */
+	public static MeshFile loadMesh(String fileName) {
+		File objFile = new File("res/" + fileName + ".obj");
+		MeshFile mesh = MeshFile.map(objFile, MESH_VARIANT);
+		if (mesh != null) {
+			return mesh; //the .obj file has already been converted, no need to parse it again
 		}
-		
-		verticesArray = new float[vertices.size()*3]; //we have to convert the vertex list into a vertex array into a new float array. *3 because we put them as floats not vectors, and there's 3 elements in the vector
-		indicesArray = new int[indices.size()]; //same with indices
-
-		//we copy across all the data, loop through list of vertices
-		int vertexPointer = 0;
-		for(Vector3f vertex:vertices){
-			//for each vector in that list of vertices, we need to put each component of each vector into the vertices array
-			verticesArray[vertexPointer++] = vertex.x;
-			verticesArray[vertexPointer++] = vertex.y;
-			verticesArray[vertexPointer++] = vertex.z;
+		OBJParser obj;
+		try {
+			obj = OBJParser.parse(objFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Couldn't load file " + fileName + ".obj", e);
 		}
-		//and then, we just have to copy accross the indices data from the indices list into the indices array
-		for(int i=0;i<indices.size();i++){
-			indicesArray[i] = indices.get(i);
+		float[] verticesArray = Arrays.copyOf(obj.getPositions(), obj.getPositionCount() * 3); //our loader only takes data as arrays of the exact size
+		float[] textureArray = new float[obj.getPositionCount() * 2];
+		float[] normalsArray = new float[obj.getPositionCount() * 3];
+		int[] indicesArray = new int[obj.getFaceCount() * 3];
+		int[] faces = obj.getFaces();
+		for (int i = 0; i < indicesArray.length; i++) {
+			//each corner of each triangle is made of a position, a texture coordinate and a normal index
+			processVertex(faces[i * 3], faces[i * 3 + 1], faces[i * 3 + 2], i, indicesArray, obj.getTextureCoords(),
+					obj.getNormals(), textureArray, normalsArray);
 		}
-		return loader.loadToVAO(verticesArray, textureArray, normalsArray, indicesArray);
+		return MeshFile.write(objFile, MESH_VARIANT, verticesArray, textureArray, normalsArray, null, indicesArray,
+				BoundingVolume.fromPositions(verticesArray));
 
 	}
 
 	/**
 	 * Method that sorts out the texture coordinates and normal vector for the current vertex and put these values into
 	 * the correct position. We call this for every vertex we process of the triangle
-	 * @param vertexData list of the vertexes of the object
+	 * @param currentVertexPointer index of the position of the vertex
+	 * @param textureIndex index of the texture coordinates of the vertex
+	 * @param normalIndex index of the normal of the vertex
+	 * @param indexPointer position of the vertex in the indices array
 	 * @param indices of the object describing how the vertexes should be linked
-	 * @param textures coordinates of the texture of the model
-	 * @param normals of the model
+	 * @param textures coordinates of the texture of the model, 2 floats per coordinate
+	 * @param normals of the model, 3 floats per normal
 	 * @param textureArray array of the texture (rearranged)
 	 * @param normalsArray array of the normals (rearranged)
 	 */
-	private static void processVertex(String[] vertexData, List<Integer> indices,
-			List<Vector2f> textures, List<Vector3f> normals, float[] textureArray,
-			float[] normalsArray) {
-		int currentVertexPointer = Integer.parseInt(vertexData[0]) - 1; //-1 because the obj indices start at 1 and our array start at 0
-		indices.add(currentVertexPointer);
-		Vector2f currentTex = textures.get(Integer.parseInt(vertexData[1])-1);
-		textureArray[currentVertexPointer*2] = currentTex.x;
-		textureArray[currentVertexPointer*2+1] = 1 - currentTex.y; //-1 because openGL starts at the top left of a texture when blender starts from the bottom left
-		Vector3f currentNorm = normals.get(Integer.parseInt(vertexData[2])-1); //we get the normal vector associated with the vertex data
-		normalsArray[currentVertexPointer*3] = currentNorm.x; //and we put it to the current position
-		normalsArray[currentVertexPointer*3+1] = currentNorm.y;
-		normalsArray[currentVertexPointer*3+2] = currentNorm.z;	
+	private static void processVertex(int currentVertexPointer, int textureIndex, int normalIndex, int indexPointer,
+			int[] indices, float[] textures, float[] normals, float[] textureArray, float[] normalsArray) {
+		indices[indexPointer] = currentVertexPointer;
+		textureArray[currentVertexPointer*2] = textures[textureIndex*2];
+		textureArray[currentVertexPointer*2+1] = 1 - textures[textureIndex*2+1]; //-1 because openGL starts at the top left of a texture when blender starts from the bottom left
+		normalsArray[currentVertexPointer*3] = normals[normalIndex*3]; //we get the normal vector associated with the vertex data and we put it to the current position
+		normalsArray[currentVertexPointer*3+1] = normals[normalIndex*3+1];
+		normalsArray[currentVertexPointer*3+2] = normals[normalIndex*3+2];
 	}
 
 }
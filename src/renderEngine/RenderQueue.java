@@ -0,0 +1,232 @@
+package renderEngine;
+
+import java.util.Arrays;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Entity;
+
+/**
+ * Class that holds the entities a renderer has to draw during a frame, each one with a 64-bit sort key, and sorts them
+ * by key. A key packs, from its highest bits to its lowest: the pass (opaque models before alpha tested ones), the
+ * variant of the shader, whether culling is disabled, the texture, the batch (models that can be drawn together) and
+ * the distance to the camera. Sorting the keys puts the entities that use the same shader, state and texture next to
+ * each other, and, within a batch, draws the closest entities first so that the depth test skips the hidden pixels
+ * of the ones behind.
+ * The keys are sorted with a radix sort, one byte at a time, and the arrays are kept from a frame to the next, so
+ * that queuing and sorting the entities doesn't allocate anything once the arrays are big enough.
+ * Everything but the distance only depends on the model of an entity, so an entity can be queued with the key of its
+ * batch already known, and only the distance is added to it every frame. A retained scene goes further and keeps its
+ * entities sorted by batch key, so that they are queued in order and not sorted at all (see Scene).
+ */
+public class RenderQueue {
+
+	public static final int PASS_OPAQUE = 0;
+	public static final int PASS_ALPHA_TESTED = 1;
+
+	private static final int DEPTH_BITS = 24;
+	private static final int BATCH_BITS = 14;
+	private static final int TEXTURE_BITS = 16;
+	private static final int SHADER_BITS = 6; //keys of ShaderPermutations fit in 6 bits
+	private static final int BATCH_SHIFT = DEPTH_BITS;
+	private static final int TEXTURE_SHIFT = BATCH_SHIFT + BATCH_BITS;
+	private static final int NO_CULLING_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+	private static final int SHADER_SHIFT = NO_CULLING_SHIFT + 1;
+	private static final int PASS_SHIFT = SHADER_SHIFT + SHADER_BITS; //the 3 highest bits hold the pass
+	private static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+	private static final float FAR_DISTANCE = 1000; //distances further than this one aren't sorted anymore
+
+	public static final long NO_KEY = -1; //key of an entity queued without the key of its batch, never a real key as the pass only takes 1 bit
+
+	private long[] keys = new long[64];
+	private Entity[] entities = new Entity[64];
+	private long[] sortedKeys = new long[64]; //the radix sort moves the entries from an array to the other at each pass
+	private Entity[] sortedEntities = new Entity[64];
+	private final int[] counts = new int[256];
+	private int size;
+	private boolean sorted; //whether the entities were queued already sorted by a scene, without their distance
+
+	/**
+	 * Method that packs the sort key of a batch, without the distance. Values that don't fit in their bits are cut,
+	 * which only changes the order of the draws: renderers check that the models of a batch can really be drawn
+	 * together.
+	 * @param pass PASS_OPAQUE or PASS_ALPHA_TESTED
+	 * @param shader key of the variant of the shader (see ShaderPermutations)
+	 * @param noCulling whether culling has to be disabled to draw the model
+	 * @param texture id of the texture of the model
+	 * @param batch id of the batch of the model, given by the renderer
+	 * @return the sort key of the batch
+	 */
+	public static long createKey(int pass, int shader, boolean noCulling, int texture, int batch) {
+		return ((long) pass << PASS_SHIFT)
+				| ((long) (shader & ((1 << SHADER_BITS) - 1)) << SHADER_SHIFT)
+				| ((noCulling ? 1L : 0L) << NO_CULLING_SHIFT)
+				| ((long) (texture & ((1 << TEXTURE_BITS) - 1)) << TEXTURE_SHIFT)
+				| ((long) (batch & ((1 << BATCH_BITS) - 1)) << BATCH_SHIFT);
+	}
+
+	/**
+	 * @param key a sort key
+	 * @param distance between the entity and the camera
+	 * @return the key with its distance replaced
+	 */
+	public static long withDistance(long key, float distance) {
+		int depth = (int) (Math.min(1, Math.max(0, distance / FAR_DISTANCE)) * MAX_DEPTH);
+		return (key & ~(long) MAX_DEPTH) | depth;
+	}
+
+	/**
+	 * @param key a sort key
+	 * @return the key without the distance: entities whose keys have the same batch are drawn with the same state
+	 */
+	public static long getBatch(long key) {
+		return key >>> BATCH_SHIFT;
+	}
+
+	/**
+	 * @param key key of a batch, without the distance
+	 * @param index to store in the bits of the distance, lower than 2^24
+	 * @return the key with the index in place of the distance, so that indices can be sorted by key (see Scene)
+	 */
+	static long withIndex(long key, int index) {
+		return (key & ~(long) MAX_DEPTH) | index;
+	}
+
+	/**
+	 * @param key made by withIndex
+	 * @return the index stored in the key
+	 */
+	static int getIndex(long key) {
+		return (int) key & MAX_DEPTH;
+	}
+
+	/**
+	 * Method that adds an entity to the queue, without the key of its batch: the renderer computes it before sorting.
+	 * @param entity to draw
+	 */
+	public void add(Entity entity) {
+		add(entity, NO_KEY);
+	}
+
+	/**
+	 * Method that adds an entity to the queue. The distance is added to its key later, once the camera of the frame is
+	 * known.
+	 * @param entity to draw
+	 * @param batchKey key of the batch of its model, or NO_KEY
+	 */
+	public void add(Entity entity, long batchKey) {
+		if (size == keys.length) {
+			int capacity = keys.length * 2;
+			keys = Arrays.copyOf(keys, capacity);
+			entities = Arrays.copyOf(entities, capacity);
+			sortedKeys = new long[capacity];
+			sortedEntities = new Entity[capacity];
+		}
+		keys[size] = batchKey;
+		entities[size] = entity;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Method called once the entities of the frame were queued in the order of their keys, which a scene keeps from a
+	 * frame to the next (see Scene): the renderer then draws them in that order, without adding their distance to the
+	 * camera to their keys nor sorting them, until the queue is cleared.
+	 */
+	public void setSorted() {
+		sorted = true;
+	}
+
+	/**
+	 * @return whether the entities were queued in the order of their keys, in which case they don't need to be sorted
+	 */
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	public Entity get(int index) {
+		return entities[index];
+	}
+
+	public long getKey(int index) {
+		return keys[index];
+	}
+
+	public void setKey(int index, long key) {
+		keys[index] = key;
+	}
+
+	/**
+	 * Method that puts the distance between each entity and the camera in its key. Every entry needs the key of its
+	 * batch first.
+	 * @param cameraPosition position of the camera of the frame
+	 */
+	public void setDistances(Vector3f cameraPosition) {
+		for (int i = 0; i < size; i++) {
+			Vector3f position = entities[i].getPosition();
+			float dx = position.x - cameraPosition.x;
+			float dy = position.y - cameraPosition.y;
+			float dz = position.z - cameraPosition.z;
+			keys[i] = withDistance(keys[i], (float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+		}
+	}
+
+	/**
+	 * Method that sorts the entries by key, from the lowest to the highest. The sort is stable and moves the entries
+	 * one byte of their key at a time, starting with the lowest byte; bytes that are the same in every key (the pass,
+	 * often) are skipped.
+	 */
+	public void sort() {
+		if (size < 2) {
+			return;
+		}
+		long[] fromKeys = keys;
+		Entity[] fromEntities = entities;
+		long[] toKeys = sortedKeys;
+		Entity[] toEntities = sortedEntities;
+		for (int shift = 0; shift < 64; shift += 8) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < size; i++) {
+				counts[(int) (fromKeys[i] >>> shift) & 0xff]++;
+			}
+			if (counts[(int) (fromKeys[0] >>> shift) & 0xff] == size) {
+				continue; //every key has the same byte here, this pass wouldn't move anything
+			}
+			int total = 0;
+			for (int digit = 0; digit < counts.length; digit++) {
+				int count = counts[digit];
+				counts[digit] = total; //the count becomes the position of the first entry with this byte
+				total += count;
+			}
+			for (int i = 0; i < size; i++) {
+				int position = counts[(int) (fromKeys[i] >>> shift) & 0xff]++;
+				toKeys[position] = fromKeys[i];
+				toEntities[position] = fromEntities[i];
+			}
+			long[] swapKeys = fromKeys;
+			fromKeys = toKeys;
+			toKeys = swapKeys;
+			Entity[] swapEntities = fromEntities;
+			fromEntities = toEntities;
+			toEntities = swapEntities;
+		}
+		keys = fromKeys;
+		entities = fromEntities;
+		sortedKeys = toKeys;
+		sortedEntities = toEntities;
+	}
+
+	/**
+	 * Method that empties the queue, keeping its arrays for the next frame.
+	 */
+	public void clear() {
+		Arrays.fill(entities, 0, size, null); //so that removed entities can be garbage collected
+		Arrays.fill(sortedEntities, 0, size, null);
+		size = 0;
+		sorted = false;
+	}
+
+}
@@ -0,0 +1,328 @@
+package renderEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Entity;
+import models.BoundingVolume;
+import models.TexturedModel;
+
+/**
+ * Class that holds the entities of a scene from a frame to the next, instead of giving the renderer lists of every
+ * entity at each frame. An entity is added once, which gives back a handle, and stays in the scene until the handle is
+ * removed. For each entity, the scene keeps its bounding sphere in the world and the sort key of its batch (see
+ * RenderQueue), and it keeps the entities sorted by key from a frame to the next: the spheres are only computed again
+ * for the entities that moved, and the keys for the entities that changed model, or when the amount of lights changes.
+ * Only the handles that were added, removed or given another model are sorted again, then merged with the entities
+ * that were already sorted, so a frame only has to test the spheres against the frustum and queue the visible entities
+ * in the order they are drawn. As the queue isn't sorted every frame anymore, the entities of a batch aren't ordered by
+ * their distance to the camera.
+ * The entities are stored in arrays without holes: removing an entity moves the last one in its place, and its handle
+ * follows it.
+ */
+public class Scene {
+
+	private final Group entities = new Group();
+	private final Group normalMapEntities = new Group();
+	private int lightCount = -1; //amount of lights the keys were computed for
+
+	/**
+	 * Class that represents an entity added to the scene, to move or remove it later.
+	 */
+	public static class Handle {
+
+		private final Group group;
+		private int slot; //position of the entity in the arrays of its group, -1 once it was removed
+		private boolean dirty; //whether the handle has to be sorted again (or dropped, once removed) at the next frame
+
+		private Handle(Group group, int slot) {
+			this.group = group;
+			this.slot = slot;
+		}
+
+		public Entity getEntity() {
+			return slot == -1 ? null : group.entities[slot];
+		}
+
+		public boolean isRemoved() {
+			return slot == -1;
+		}
+
+	}
+
+	/**
+	 * Method that adds an entity to the scene, drawn by the entity renderer.
+	 * @param entity to add
+	 * @return the handle through which the entity is moved or removed
+	 */
+	public Handle add(Entity entity) {
+		return entities.add(entity);
+	}
+
+	/**
+	 * Method that adds a normal mapped entity to the scene, drawn by the normal mapping renderer.
+	 * @param entity to add
+	 * @return the handle through which the entity is moved or removed
+	 */
+	public Handle addNormalMapped(Entity entity) {
+		return normalMapEntities.add(entity);
+	}
+
+	/**
+	 * Method that removes an entity from the scene. Removing it again does nothing.
+	 * @param handle given when the entity was added
+	 * @throws IllegalArgumentException if the handle was given by another scene
+	 */
+	public void remove(Handle handle) {
+		checkScene(handle);
+		if (handle.slot != -1) {
+			handle.group.remove(handle);
+		}
+	}
+
+	/**
+	 * Method that moves an entity to a new position.
+	 * @param handle of the entity
+	 * @param x new position of the entity
+	 * @param y new position of the entity
+	 * @param z new position of the entity
+	 * @throws IllegalArgumentException if the entity was removed, or the handle was given by another scene
+	 */
+	public void move(Handle handle, float x, float y, float z) {
+		checkHandle(handle);
+		handle.getEntity().getPosition().set(x, y, z);
+		handle.group.updateBounds(handle.slot);
+	}
+
+	/**
+	 * Method to call once an entity was moved or scaled without going through the scene, like the player moving itself.
+	 * @param handle of the entity
+	 * @throws IllegalArgumentException if the entity was removed, or the handle was given by another scene
+	 */
+	public void update(Handle handle) {
+		checkHandle(handle);
+		handle.group.updateBounds(handle.slot);
+	}
+
+	/**
+	 * Method that gives an entity another textured model. The key of its batch is computed again at the next frame,
+	 * and the entity sorted again with it.
+	 * @param handle of the entity
+	 * @param model new model of the entity
+	 * @throws IllegalArgumentException if the entity was removed, or the handle was given by another scene
+	 */
+	public void setModel(Handle handle, TexturedModel model) {
+		checkHandle(handle);
+		handle.getEntity().setModel(model);
+		handle.group.updateBounds(handle.slot);
+		handle.group.keys[handle.slot] = RenderQueue.NO_KEY;
+		handle.group.markDirty(handle);
+	}
+
+	/**
+	 * @return amount of entities (normal mapped or not) in the scene
+	 */
+	public int getEntityCount() {
+		return entities.size + normalMapEntities.size;
+	}
+
+	Group getEntities() {
+		return entities;
+	}
+
+	Group getNormalMapEntities() {
+		return normalMapEntities;
+	}
+
+	/**
+	 * Method that forgets the keys of every entity when the amount of lights, which chooses the variants of the
+	 * shaders, changes, so that the renderers compute them again and every entity is sorted again.
+	 * @param lightCount amount of lights of the frame
+	 */
+	void setLightCount(int lightCount) {
+		if (this.lightCount != lightCount) {
+			this.lightCount = lightCount;
+			entities.forgetKeys();
+			normalMapEntities.forgetKeys();
+		}
+	}
+
+	/**
+	 * @param handle to check
+	 * @throws IllegalArgumentException if the handle was given by another scene
+	 */
+	private void checkScene(Handle handle) {
+		if (handle.group != entities && handle.group != normalMapEntities) {
+			throw new IllegalArgumentException("The handle was given by another scene");
+		}
+	}
+
+	/**
+	 * @param handle to check
+	 * @throws IllegalArgumentException if the entity was removed, or the handle was given by another scene
+	 */
+	private void checkHandle(Handle handle) {
+		checkScene(handle);
+		if (handle.slot == -1) {
+			throw new IllegalArgumentException("The entity was removed from the scene");
+		}
+	}
+
+	/**
+	 * Class that holds the entities drawn by one renderer, with, for each one, its bounding sphere (x, y, z, radius)
+	 * and the key of its batch, or NO_KEY until the renderer gives it. The handles are also kept sorted by key, in the
+	 * order the renderer draws them.
+	 */
+	static class Group {
+
+		Entity[] entities = new Entity[64];
+		float[] spheres = new float[64 * 4];
+		long[] keys = new long[64];
+		private Handle[] handles = new Handle[64];
+		int size;
+		Handle[] sortedHandles = new Handle[64]; //the handles of the entities, sorted by key once updateOrder is called
+		private Handle[] mergedHandles = new Handle[64]; //the merge moves the sorted handles from an array to the other
+		private final List<Handle> dirtyHandles = new ArrayList<>(); //handles added, removed or changed since the last sort
+		private long[] dirtyOrder = new long[16]; //key of each dirty handle, with its index in the list in the bits of the distance
+		private int sortedSize;
+
+		private Handle add(Entity entity) {
+			if (size == entities.length) {
+				int capacity = size * 2;
+				entities = Arrays.copyOf(entities, capacity);
+				spheres = Arrays.copyOf(spheres, capacity * 4);
+				keys = Arrays.copyOf(keys, capacity);
+				handles = Arrays.copyOf(handles, capacity);
+			}
+			Handle handle = new Handle(this, size);
+			entities[size] = entity;
+			keys[size] = RenderQueue.NO_KEY;
+			handles[size] = handle;
+			updateBounds(size);
+			size++;
+			markDirty(handle);
+			return handle;
+		}
+
+		private void remove(Handle handle) {
+			int slot = handle.slot;
+			int last = size - 1;
+			entities[slot] = entities[last];
+			System.arraycopy(spheres, last * 4, spheres, slot * 4, 4);
+			keys[slot] = keys[last];
+			handles[slot] = handles[last];
+			handles[slot].slot = slot;
+			entities[last] = null; //so that the removed entity can be garbage collected
+			handles[last] = null;
+			handle.slot = -1;
+			size = last;
+			markDirty(handle); //dropped from the sorted handles at the next frame
+		}
+
+		private void markDirty(Handle handle) {
+			if (!handle.dirty) {
+				handle.dirty = true;
+				dirtyHandles.add(handle);
+			}
+		}
+
+		private void forgetKeys() {
+			Arrays.fill(keys, RenderQueue.NO_KEY);
+			for (int i = 0; i < size; i++) {
+				markDirty(handles[i]);
+			}
+		}
+
+		/**
+		 * Method called by the renderer before a frame, which gives the dirty handles the key of their batch, sorts
+		 * them, and merges them with the handles that were already sorted. The handles that were removed are dropped.
+		 * Nothing is done if no handle changed since the last frame.
+		 * @param batchKeys gives the key of the batch of a model (see RenderQueue)
+		 */
+		void updateOrder(ToLongFunction<TexturedModel> batchKeys) {
+			if (dirtyHandles.isEmpty()) {
+				return;
+			}
+			int dirtyCount = 0;
+			if (dirtyOrder.length < dirtyHandles.size()) {
+				dirtyOrder = new long[dirtyHandles.size() * 2];
+			}
+			for (int i = 0; i < dirtyHandles.size(); i++) {
+				Handle handle = dirtyHandles.get(i);
+				if (handle.slot != -1) {
+					if (keys[handle.slot] == RenderQueue.NO_KEY) {
+						keys[handle.slot] = batchKeys.applyAsLong(entities[handle.slot].getModel());
+					}
+					dirtyOrder[dirtyCount++] = RenderQueue.withIndex(keys[handle.slot], i);
+				}
+			}
+			Arrays.sort(dirtyOrder, 0, dirtyCount);
+			if (mergedHandles.length < size) {
+				mergedHandles = new Handle[entities.length];
+			}
+			int merged = 0;
+			int dirty = 0;
+			for (int i = 0; i < sortedSize; i++) {
+				Handle handle = sortedHandles[i];
+				if (handle.dirty) {
+					continue; //sorted again with the other dirty handles, or removed
+				}
+				long key = keys[handle.slot];
+				while (dirty < dirtyCount && RenderQueue.withIndex(dirtyOrder[dirty], 0) < key) {
+					mergedHandles[merged++] = dirtyHandles.get(RenderQueue.getIndex(dirtyOrder[dirty++]));
+				}
+				mergedHandles[merged++] = handle;
+			}
+			while (dirty < dirtyCount) {
+				mergedHandles[merged++] = dirtyHandles.get(RenderQueue.getIndex(dirtyOrder[dirty++]));
+			}
+			for (Handle handle : dirtyHandles) {
+				handle.dirty = false;
+			}
+			dirtyHandles.clear();
+			Arrays.fill(sortedHandles, 0, sortedSize, null); //the old order, so that the removed handles can be garbage collected
+			Handle[] swap = sortedHandles;
+			sortedHandles = mergedHandles;
+			mergedHandles = swap;
+			sortedSize = merged;
+		}
+
+		/**
+		 * @return amount of handles sorted by the last updateOrder, the same as the amount of entities after it
+		 */
+		int getSortedSize() {
+			return sortedSize;
+		}
+
+		/**
+		 * @param handle of an entity of the group, not removed
+		 * @return position of the entity in the arrays of the group
+		 */
+		static int getSlot(Handle handle) {
+			return handle.slot;
+		}
+
+		/**
+		 * Method that computes the bounding sphere of an entity in the world. The bounding sphere of the model is
+		 * centered on its origin, so it stays valid whatever the rotation of the entity is, we only have to scale it. A
+		 * model without bounds is never culled.
+		 * @param slot of the entity
+		 */
+		private void updateBounds(int slot) {
+			Entity entity = entities[slot];
+			Vector3f position = entity.getPosition();
+			BoundingVolume bounds = entity.getModel().getRawModel().getBounds();
+			int i = slot * 4;
+			spheres[i] = position.x;
+			spheres[i + 1] = position.y;
+			spheres[i + 2] = position.z;
+			spheres[i + 3] = bounds == null ? Float.POSITIVE_INFINITY : bounds.getRadius() * entity.getScale();
+		}
+
+	}
+
+}
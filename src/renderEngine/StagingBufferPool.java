@@ -0,0 +1,92 @@
+package renderEngine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class that hands out direct buffers in which decoded textures are stored until they are sent to openGL. Allocating
+ * a direct buffer is slow and its memory is only given back when the garbage collector runs, so released buffers are
+ * kept and given again to the next texture that fits in them. It can be used from several threads at the same time:
+ * worker threads decode textures while the render thread uploads them and releases their buffers.
+ */
+public class StagingBufferPool {
+
+	private final List<ByteBuffer> freeBuffers = new ArrayList<>();
+	private final Set<ByteBuffer> usedBuffers = Collections.newSetFromMap(new IdentityHashMap<>()); //buffers compare their content, not their identity
+	private long allocatedBytes; //direct memory of all the buffers of the pool, free or not
+	private long bytesInUse;
+	private long peakBytesInUse;
+
+	/**
+	 * Method that gives a buffer big enough for some data. The smallest free buffer that fits is used, otherwise a new
+	 * one is allocated.
+	 * @param size in bytes of the data
+	 * @return a buffer whose limit is the size of the data, in native byte order
+	 */
+	public synchronized ByteBuffer acquire(int size) {
+		int best = -1;
+		for (int i = 0; i < freeBuffers.size(); i++) {
+			int capacity = freeBuffers.get(i).capacity();
+			if (capacity >= size && (best == -1 || capacity < freeBuffers.get(best).capacity())) {
+				best = i;
+			}
+		}
+		ByteBuffer buffer;
+		if (best != -1) {
+			buffer = freeBuffers.remove(best); //removed by index: ByteBuffer.equals compares the content
+		} else {
+			buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+			allocatedBytes += size;
+		}
+		usedBuffers.add(buffer);
+		bytesInUse += buffer.capacity();
+		peakBytesInUse = Math.max(peakBytesInUse, bytesInUse);
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+
+	/**
+	 * Method that gives back a buffer once its data has been sent to openGL, so that it can be reused. Buffers that
+	 * don't come from the pool are ignored.
+	 * @param buffer given by acquire
+	 */
+	public synchronized void release(ByteBuffer buffer) {
+		if (!usedBuffers.remove(buffer)) {
+			return;
+		}
+		bytesInUse -= buffer.capacity();
+		freeBuffers.add(buffer);
+	}
+
+	/**
+	 * Method that forgets the free buffers, so that the garbage collector can free their memory once nothing else is
+	 * loaded for a while.
+	 */
+	public synchronized void trim() {
+		for (ByteBuffer buffer : freeBuffers) {
+			allocatedBytes -= buffer.capacity();
+		}
+		freeBuffers.clear();
+	}
+
+	/**
+	 * @return the direct memory allocated by the pool, in bytes
+	 */
+	public synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the largest amount of memory that was held by decoded textures at the same time, in bytes
+	 */
+	public synchronized long getPeakBytesInUse() {
+		return peakBytesInUse;
+	}
+
+}
@@ -5,91 +5,129 @@ import java.util.List;
 import models.RawModel;
 
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
+import shaders.ShaderPermutations;
 import shaders.TerrainShader;
 import terrains.Terrain;
+import terrains.TerrainLod;
+import terrains.TerrainQuadtree;
 import textures.TerrainTexturePack;
+import toolbox.Frustum;
 import toolbox.Maths;
 
 /**
- * Class responsible for rendering the terrain.
+ * Class responsible for rendering the terrain, chunk by chunk, each chunk at the level of detail its distance to the
+ * camera needs.
  */
 public class TerrainRenderer {
 
-	private final TerrainShader shader;
+	private final ShaderPermutations<TerrainShader> shaders;
+	private TerrainShader shader; //variant used during the current frame
+	private int drawnChunks;
+	private int drawnTriangles;
 
 	/**
-	 * Constructor that passes the projection matrix to the shaders, and connects the texture units. The texture units
-	 * are units where the textures are stored.
-	 * @param shader in question
-	 * @param projectionMatrix in question
+	 * Constructor that prepares the variants of the shader: each one connects the texture units the first time it is
+	 * used. The texture units are units where the textures are stored. The camera and the lights are read by the
+	 * shaders from the FrameData block (see FrameUniformBuffer).
 	 */
-	public TerrainRenderer(TerrainShader shader, Matrix4f projectionMatrix) {
-		this.shader = shader;
-		shader.start();
-		shader.loadProjectionMatrix(projectionMatrix);
-		shader.connectTextureUnits(); //only need to connect the textures once, when we load the game, and the samplers will stay connected to these texture units.
-		shader.stop();
+	public TerrainRenderer() {
+		shaders = new ShaderPermutations<>(TerrainShader::new, TerrainShader::connectTextureUnits); //only need to connect the textures once, and the samplers will stay connected to these texture units.
 	}
 
 	/**
-	 * Method that prepares each terrain and renders it. Then, we load the transformation matrix for that terrain and
-	 * draw it on the screen.
+	 * @param lightCount amount of lights of the scene
+	 * @return the key of the variant of the shader that draws the terrains
+	 */
+	private static int getPermutation(int lightCount) {
+		return ShaderPermutations.getKey(lightCount, false, false, true);
+	}
+
+	/**
+	 * Method that creates the variant of the shader needed for a scene before the first frame, so that it is compiled
+	 * at the same time as the other shaders.
+	 * @param lightCount amount of lights of the scene
+	 */
+	public void submitShaders(int lightCount) {
+		shaders.submit(getPermutation(lightCount));
+	}
+
+	/**
+	 * Method that starts the variant of the shader for the amount of lights. Then, it prepares each terrain and
+	 * renders its chunks: we load the transformation matrix for that terrain, the quadtree of the terrain selects the
+	 * chunks inside the frustum with their level of detail, and each chunk is drawn from the part of the shared index
+	 * buffer of its level (see TerrainLod), starting at its first vertex.
 	 * @param terrains list of all the terrains we have to render
+	 * @param lightCount amount of lights of the scene
+	 * @param frustum of the camera, to skip the chunks it can't see
+	 * @param cameraPosition position of the camera, which chooses the level of detail of the chunks
 	 */
-	public void render(List<Terrain> terrains) {
+	public void render(List<Terrain> terrains, int lightCount, Frustum frustum, Vector3f cameraPosition) {
+		shader = shaders.start(getPermutation(lightCount));
+		GLState.setCulling(true);
+		drawnChunks = 0;
+		drawnTriangles = 0;
 		for (Terrain terrain : terrains) {
 			prepareTerrain(terrain);
 			loadTransformationMatrix(terrain);
-			GL11.glDrawElements(GL11.GL_TRIANGLES, terrain.getModel().getVertexCount(),
-					GL11.GL_UNSIGNED_INT, 0);
-			unbindTexturedModel();
+			TerrainQuadtree quadtree = terrain.getQuadtree();
+			int count = quadtree.select(frustum, cameraPosition, terrain.getX(), terrain.getZ());
+			for (int i = 0; i < count; i++) {
+				int level = quadtree.getSelectedLevel(i);
+				GL32.glDrawElementsBaseVertex(GL11.GL_TRIANGLES, TerrainLod.getIndexCount(level), TerrainLod.INDEX_TYPE,
+						TerrainLod.getIndexOffset(level), quadtree.getSelectedChunk(i) * TerrainLod.VERTICES_PER_CHUNK);
+				drawnTriangles += TerrainLod.getIndexCount(level) / 3;
+			}
+			drawnChunks += count;
 		}
 	}
 
+	/**
+	 * @return amount of terrain chunks drawn during the last frame
+	 */
+	public int getDrawnChunks() {
+		return drawnChunks;
+	}
+
+	/**
+	 * @return amount of terrain triangles drawn during the last frame, skirts included
+	 */
+	public int getDrawnTriangles() {
+		return drawnTriangles;
+	}
+
+	public void cleanUp() {
+		shaders.cleanUp();
+	}
+
 	/**
 	 * Method that binds the model and bind the texture of the model to a VAO, and sets the specular light parameters.
 	 * @param terrain to render
 	 */
 	private void prepareTerrain(Terrain terrain) {
 		RawModel rawModel = terrain.getModel();
-		GL30.glBindVertexArray(rawModel.getVaoID()); //to render or process any vao, we have to bind it first
-		GL20.glEnableVertexAttribArray(0);//we also need to enable the attribute array our data is in
-		GL20.glEnableVertexAttribArray(1);
-		GL20.glEnableVertexAttribArray(2);
+		GLState.bindVertexArray(rawModel.getVaoID()); //to render or process any vao, we have to bind it first. Its attributes are enabled in the VAO by the Loader
+		shader.loadVertexEncoding(rawModel);
 		bindTextures(terrain);
 		shader.loadShineVariables(1, 0); //everytime we load up an entity, we have to get those 2 shine variables. I think it determines whether the entity will shine
 	}
 
 	/**
 	 * Method that binds all the textures we want to use as well as the blend map to texture units. We first retrieve
-	 * the different textures for the terrain, then we bind them. Here, we have 4 different textures.
+	 * the different textures for the terrain, then we bind them. Here, we have 4 different textures. Terrains sharing
+	 * their texture pack only bind their blend map.
 	 * @param terrain to render
 	 */
 	private void bindTextures(Terrain terrain){
 		TerrainTexturePack texturePack = terrain.getTexturePack();
-		GL13.glActiveTexture(GL13.GL_TEXTURE0); //we tell openGL which texture we want to render //sampler2D uses by default texture0
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texturePack.getBackgroundTexture().getTextureID()); //binds a 2D texture on an object
-		GL13.glActiveTexture(GL13.GL_TEXTURE1);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texturePack.getrTexture().getTextureID());
-		GL13.glActiveTexture(GL13.GL_TEXTURE2);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texturePack.getgTexture().getTextureID());
-		GL13.glActiveTexture(GL13.GL_TEXTURE3);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texturePack.getbTexture().getTextureID());
-		GL13.glActiveTexture(GL13.GL_TEXTURE4);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, terrain.getBlendMap().getTextureID());
-	}
-
-	private void unbindTexturedModel() {
-		GL20.glDisableVertexAttribArray(0);
-		GL20.glDisableVertexAttribArray(1);
-		GL20.glDisableVertexAttribArray(2);
-		GL30.glBindVertexArray(0);
+		GLState.bindTexture(0, GL11.GL_TEXTURE_2D, texturePack.getBackgroundTexture().getTextureID()); //sampler2D uses by default texture0
+		GLState.bindTexture(1, GL11.GL_TEXTURE_2D, texturePack.getrTexture().getTextureID());
+		GLState.bindTexture(2, GL11.GL_TEXTURE_2D, texturePack.getgTexture().getTextureID());
+		GLState.bindTexture(3, GL11.GL_TEXTURE_2D, texturePack.getbTexture().getTextureID());
+		GLState.bindTexture(4, GL11.GL_TEXTURE_2D, terrain.getBlendMap().getTextureID());
 	}
 
 	/**
@@ -0,0 +1,68 @@
+package renderEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import textures.ModelTexture;
+import textures.TextureContainer;
+import textures.TextureData;
+
+/**
+ * Class that packs the textures of entity materials into texture arrays at load time. Textures that have the same size
+ * and format become the layers of the same GL_TEXTURE_2D_ARRAY: the EntityRenderer then binds the array once for all
+ * of them, and entities whose models only differ by their texture are drawn together, each one reading its own layer.
+ * A texture that can't share an array with any other one is loaded as a usual 2D texture.
+ */
+public class TextureArrayPacker {
+
+	private static final int MAX_LAYERS = 256; //the smallest maximum amount of layers openGL 3 allows
+
+	private final Map<String, List<TextureData>> groups = new LinkedHashMap<>();
+
+	/**
+	 * Method that adds a decoded texture to pack. It is grouped with the textures it can share an array with.
+	 * @param data decoded texture, with the name of its file
+	 */
+	public void add(TextureData data) {
+		groups.computeIfAbsent(getGroupKey(data), key -> new ArrayList<>()).add(data);
+	}
+
+	/**
+	 * Method that sends the added textures to openGL, each group as a texture array, and forgets them.
+	 * @param loader used to create the textures
+	 * @return the texture made for each file name
+	 */
+	public Map<String, ModelTexture> pack(Loader loader) {
+		Map<String, ModelTexture> packed = new HashMap<>();
+		for (List<TextureData> group : groups.values()) {
+			for (int start = 0; start < group.size(); start += MAX_LAYERS) {
+				List<TextureData> layers = group.subList(start, Math.min(group.size(), start + MAX_LAYERS));
+				if (layers.size() == 1) {
+					TextureData data = layers.get(0);
+					packed.put(data.getName(), new ModelTexture(loader.loadTexture(data.getName(), data)));
+					continue;
+				}
+				int textureArray = loader.loadTextureArray(layers.toArray(new TextureData[layers.size()]));
+				for (int layer = 0; layer < layers.size(); layer++) {
+					packed.put(layers.get(layer).getName(), new ModelTexture(textureArray, layer));
+				}
+			}
+		}
+		groups.clear();
+		return packed;
+	}
+
+	/**
+	 * @param data decoded texture
+	 * @return a key that is the same for every texture that can be a layer of the same array
+	 */
+	private static String getGroupKey(TextureData data) {
+		TextureContainer container = data.getContainer();
+		String format = container == null ? "png" : container.getFormat() + " " + container.getLevels().length;
+		return data.getWidth() + "x" + data.getHeight() + " " + format;
+	}
+
+}
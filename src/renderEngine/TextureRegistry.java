@@ -0,0 +1,114 @@
+package renderEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that keeps track of the textures the Loader sent to openGL. Textures loaded from a file are registered under
+ * the name of the file, so that loading the same file again gives back the same texture instead of a copy. Every
+ * texture counts how many times it was loaded (its references): it is only deleted once each of them was released,
+ * which lets scenes sharing materials be loaded and unloaded independently.
+ * The registry only stores IDs, openGL calls are made by the Loader.
+ */
+public class TextureRegistry {
+
+	private final Map<String, Entry> byName = new HashMap<>();
+	private final Map<Integer, Entry> byID = new HashMap<>();
+
+	/**
+	 * Method that gives the texture registered under a name, adding a reference to it.
+	 * @param name of the texture
+	 * @return the ID of the texture, or -1 if no texture is registered under that name
+	 */
+	public int acquire(String name) {
+		Entry entry = byName.get(name);
+		if (entry == null) {
+			return -1;
+		}
+		entry.references++;
+		return entry.textureID;
+	}
+
+	/**
+	 * Method that registers a texture that has just been created, with one reference.
+	 * @param name of the texture, or null if it wasn't loaded from a file and can't be shared
+	 * @param textureID of the texture
+	 */
+	public void register(String name, int textureID) {
+		Entry entry = new Entry(name, textureID);
+		if (name != null) {
+			byName.put(name, entry);
+		}
+		byID.put(textureID, entry);
+	}
+
+	/**
+	 * Method that removes a reference to a texture.
+	 * @param textureID of the texture
+	 * @return true if it was the last reference, in which case the texture is unregistered and has to be deleted
+	 */
+	public boolean release(int textureID) {
+		Entry entry = byID.get(textureID);
+		if (entry == null) {
+			System.err.println("Tried to release texture " + textureID + ", which isn't loaded");
+			return false;
+		}
+		entry.references--;
+		if (entry.references > 0) {
+			return false;
+		}
+		byID.remove(textureID);
+		if (entry.name != null) {
+			byName.remove(entry.name);
+		}
+		return true;
+	}
+
+	/**
+	 * @param name of a texture file
+	 * @return whether a texture is registered under that name
+	 */
+	public boolean contains(String name) {
+		return byName.containsKey(name);
+	}
+
+	/**
+	 * @param textureID of a texture
+	 * @return how many times the texture was loaded and not released, 0 if it isn't loaded
+	 */
+	public int getReferenceCount(int textureID) {
+		Entry entry = byID.get(textureID);
+		return entry != null ? entry.references : 0;
+	}
+
+	/**
+	 * @return the IDs of all the textures still loaded
+	 */
+	public List<Integer> getTextureIDs() {
+		return new ArrayList<>(byID.keySet());
+	}
+
+	/**
+	 * Method that forgets every texture, once they have all been deleted.
+	 */
+	public void clear() {
+		byName.clear();
+		byID.clear();
+	}
+
+	private static class Entry {
+
+		private final String name;
+		private final int textureID;
+		private int references = 1;
+
+		private Entry(String name, int textureID) {
+			this.name = name;
+			this.textureID = textureID;
+		}
+
+	}
+
+}
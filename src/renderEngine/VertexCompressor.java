@@ -0,0 +1,166 @@
+package renderEngine;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import models.BoundingVolume;
+
+import org.lwjgl.BufferUtils;
+
+/**
+ * Class that packs interleaved float vertices into smaller formats before they are sent to openGL:
+ * - positions become 3 unsigned shorts (plus one for alignment) covering the bounding box of the model. The shaders
+ * get the bounding box as a uniform to turn them back into model coordinates.
+ * - texture coordinates become 2 unsigned shorts covering [0, 1] if they all fit in it, or 2 half floats otherwise.
+ * - normals and tangents are projected on an octahedron, which turns a unit vector into 2 numbers between -1 and 1,
+ * stored as 2 signed shorts. The shaders unfold the octahedron to get the vector back.
+ * openGL converts the shorts to floats itself when they are read (they are "normalized").
+ */
+public class VertexCompressor {
+
+	public static final int VERTEX_SIZE = 16; //bytes of a packed vertex: position (8), texture coordinates (4), normal (4)
+	public static final int VERTEX_SIZE_WITH_TANGENTS = 20; //same, followed by the tangent (4)
+	public static final int MAX_SHORT_INDEX_VERTICES = 65536; //indices up to 65535 fit in an unsigned short
+
+	/**
+	 * Method that checks whether all the texture coordinates of a model are between 0 and 1, in which case they can be
+	 * stored as normalized unsigned shorts, which are more precise than half floats.
+	 * @param vertices interleaved float vertices
+	 * @param vertexSize amount of floats per vertex
+	 * @return true if every texture coordinate is between 0 and 1
+	 */
+	public static boolean areTextureCoordsInUnitRange(FloatBuffer vertices, int vertexSize) {
+		int start = vertices.position();
+		for (int i = start + 3; i < vertices.limit(); i += vertexSize) {
+			float u = vertices.get(i);
+			float v = vertices.get(i + 1);
+			if (u < 0 || u > 1 || v < 0 || v > 1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Method that packs interleaved float vertices (position, texture coordinates, normal and maybe tangent).
+	 * @param vertices interleaved float vertices, read from their position to their limit
+	 * @param hasTangents whether each vertex ends with a tangent
+	 * @param keepTangents whether the tangents are packed, false to leave them out
+	 * @param bounds of the model, used to quantize the positions
+	 * @param unitTextureCoords true to store the texture coordinates as unsigned shorts, false as half floats
+	 * @return the packed vertices, ready to be read
+	 */
+	public static ByteBuffer packVertices(FloatBuffer vertices, boolean hasTangents, boolean keepTangents,
+			BoundingVolume bounds, boolean unitTextureCoords) {
+		int floatSize = hasTangents ? Loader.VERTEX_SIZE_WITH_TANGENTS : Loader.VERTEX_SIZE;
+		int vertexCount = vertices.remaining() / floatSize;
+		ByteBuffer buffer = BufferUtils.createByteBuffer(vertexCount
+				* (keepTangents ? VERTEX_SIZE_WITH_TANGENTS : VERTEX_SIZE));
+		float minX = bounds.getMin().x, minY = bounds.getMin().y, minZ = bounds.getMin().z;
+		float scaleX = inverseRange(minX, bounds.getMax().x);
+		float scaleY = inverseRange(minY, bounds.getMax().y);
+		float scaleZ = inverseRange(minZ, bounds.getMax().z);
+		int start = vertices.position();
+		for (int i = 0; i < vertexCount; i++) {
+			int pointer = start + i * floatSize;
+			buffer.putShort(toUnsignedShort((vertices.get(pointer) - minX) * scaleX));
+			buffer.putShort(toUnsignedShort((vertices.get(pointer + 1) - minY) * scaleY));
+			buffer.putShort(toUnsignedShort((vertices.get(pointer + 2) - minZ) * scaleZ));
+			buffer.putShort((short) 0); //keeps every attribute aligned on 4 bytes
+			if (unitTextureCoords) {
+				buffer.putShort(toUnsignedShort(vertices.get(pointer + 3)));
+				buffer.putShort(toUnsignedShort(vertices.get(pointer + 4)));
+			} else {
+				buffer.putShort(toHalfFloat(vertices.get(pointer + 3)));
+				buffer.putShort(toHalfFloat(vertices.get(pointer + 4)));
+			}
+			putOctahedral(buffer, vertices.get(pointer + 5), vertices.get(pointer + 6), vertices.get(pointer + 7));
+			if (keepTangents) {
+				putOctahedral(buffer, vertices.get(pointer + 8), vertices.get(pointer + 9), vertices.get(pointer + 10));
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Method that stores indices as unsigned shorts. Only possible if the model has at most 65536 vertices.
+	 * @param indices to pack, read from their position to their limit
+	 * @return the packed indices, ready to be read
+	 */
+	public static ShortBuffer packIndices(IntBuffer indices) {
+		ShortBuffer buffer = BufferUtils.createShortBuffer(indices.remaining());
+		for (int i = indices.position(); i < indices.limit(); i++) {
+			buffer.put((short) indices.get(i));
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Method that projects a vector on an octahedron and stores its 2 coordinates as normalized signed shorts. The
+	 * vector is first divided by the sum of the absolute values of its coordinates, which puts it on the octahedron. The
+	 * upper half of the octahedron is then flattened on the x-y plane as it is, and the lower half is folded over the
+	 * corners of the upper one.
+	 * @param buffer in which the coordinates are stored
+	 * @param x coordinate of the vector
+	 * @param y coordinate of the vector
+	 * @param z coordinate of the vector
+	 */
+	private static void putOctahedral(ByteBuffer buffer, float x, float y, float z) {
+		float sum = Math.abs(x) + Math.abs(y) + Math.abs(z);
+		if (sum == 0) {
+			buffer.putShort((short) 0).putShort((short) 0);
+			return;
+		}
+		float octX = x / sum;
+		float octY = y / sum;
+		if (z < 0) {
+			float foldedX = (1 - Math.abs(octY)) * (octX >= 0 ? 1 : -1);
+			float foldedY = (1 - Math.abs(octX)) * (octY >= 0 ? 1 : -1);
+			octX = foldedX;
+			octY = foldedY;
+		}
+		buffer.putShort(toSignedShort(octX));
+		buffer.putShort(toSignedShort(octY));
+	}
+
+	private static float inverseRange(float min, float max) {
+		return max > min ? 1 / (max - min) : 0;
+	}
+
+	private static short toUnsignedShort(float value) {
+		return (short) Math.round(Math.max(0, Math.min(1, value)) * 65535);
+	}
+
+	private static short toSignedShort(float value) {
+		return (short) Math.round(Math.max(-1, Math.min(1, value)) * 32767);
+	}
+
+	/**
+	 * Method that converts a float to a half float (1 sign bit, 5 exponent bits, 10 mantissa bits), rounding to the
+	 * nearest value. Numbers too big become infinity, numbers too small become 0.
+	 * @param value to convert
+	 * @return the bits of the half float
+	 */
+	public static short toHalfFloat(float value) {
+		int bits = Float.floatToIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+		int mantissa = bits & 0x7fffff;
+		if (exponent >= 31) {
+			return (short) (sign | 0x7c00 | (((bits >>> 23) & 0xff) == 0xff && mantissa != 0 ? 0x200 : 0)); //infinity or NaN
+		}
+		if (exponent <= 0) {
+			if (exponent < -10) {
+				return (short) sign; //too small, becomes 0
+			}
+			mantissa = (mantissa | 0x800000) >> (1 - exponent); //subnormal half float
+			return (short) (sign | ((mantissa + 0x1000) >> 13));
+		}
+		return (short) (sign | ((exponent << 10) + ((mantissa + 0x1000) >> 13))); //the rounding can carry into the exponent, which is correct
+	}
+
+}
@@ -0,0 +1,171 @@
+package shaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL41;
+import org.lwjgl.opengl.GLContext;
+
+/**
+ * Class that stores linked shader programs on disk, as the binaries given by the driver, so that the next runs load
+ * them instead of compiling the GLSL source again. Each binary is stored under a key made from the source of the
+ * program and from the driver that compiled it: changing a shader, or updating the driver, uses a new key. A driver
+ * can still refuse a binary it made (the program then doesn't link), in which case the program is compiled from
+ * source and its binary replaced.
+ * The cache can be disabled with -DshaderCache=false.
+ */
+public class ProgramBinaryCache {
+
+	private static final File DIRECTORY = new File("cache/shaders");
+	private static final String EXTENSION = ".bin";
+
+	private static boolean enabled = !"false".equals(System.getProperty("shaderCache"));
+	private static Boolean supported;
+	private static String driver;
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		ProgramBinaryCache.enabled = enabled;
+	}
+
+	/**
+	 * @return whether programs can be cached: the cache is enabled, and the driver gives program binaries in at least
+	 * one format
+	 */
+	public static boolean isAvailable() {
+		if (!enabled) {
+			return false;
+		}
+		if (supported == null) {
+			ContextCapabilities capabilities = GLContext.getCapabilities();
+			supported = (capabilities.OpenGL41 || capabilities.GL_ARB_get_program_binary)
+					&& GL11.glGetInteger(GL41.GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+		}
+		return supported;
+	}
+
+	/**
+	 * Method that computes the key under which a program is stored.
+	 * @param sources everything the program is made from (source of its shaders, its attributes)
+	 * @return SHA-1 of the sources and of the driver, in hexadecimal
+	 */
+	public static String getKey(String... sources) {
+		if (driver == null) {
+			driver = GL11.glGetString(GL11.GL_VENDOR) + "\n" + GL11.glGetString(GL11.GL_RENDERER) + "\n"
+					+ GL11.glGetString(GL11.GL_VERSION);
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(driver.getBytes(StandardCharsets.UTF_8));
+			for (String source : sources) {
+				digest.update((byte) 0); //so that moving text from a source to the next gives another key
+				digest.update(source.getBytes(StandardCharsets.UTF_8));
+			}
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest.digest()) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); //every java platform has SHA-1
+		}
+	}
+
+	/**
+	 * Method that gives a program the binary stored under a key, if there is one. Like glLinkProgram, whether it
+	 * worked is known from the link status of the program, which isn't read here so that the driver doesn't have to
+	 * wait for it.
+	 * @param programID of the program, with no shader attached
+	 * @param key of the program
+	 * @return whether a binary was found and given to the program
+	 */
+	public static boolean load(int programID, String key) {
+		File file = new File(DIRECTORY, key + EXTENSION);
+		if (!file.isFile()) {
+			return false;
+		}
+		try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+			if (channel.size() <= 4) {
+				return false;
+			}
+			ByteBuffer data = BufferUtils.createByteBuffer((int) channel.size());
+			while (data.hasRemaining()) {
+				if (channel.read(data) < 0) {
+					return false;
+				}
+			}
+			data.flip();
+			int format = data.order(ByteOrder.LITTLE_ENDIAN).getInt();
+			GL41.glProgramBinary(programID, format, data.slice());
+			return true;
+		} catch (IOException e) {
+			System.err.println("Couldn't read " + file + ", the program will be compiled");
+			return false;
+		}
+	}
+
+	/**
+	 * Method that stores the binary of a program that has just been linked. The file is first written under a
+	 * temporary name, then renamed, so that a partly written binary is never loaded.
+	 * @param programID of the program, linked with the GL_PROGRAM_BINARY_RETRIEVABLE_HINT
+	 * @param key of the program
+	 */
+	public static void store(int programID, String key) {
+		int length = GL20.glGetProgrami(programID, GL41.GL_PROGRAM_BINARY_LENGTH);
+		if (length <= 0) {
+			return;
+		}
+		ByteBuffer binary = BufferUtils.createByteBuffer(length);
+		IntBuffer written = BufferUtils.createIntBuffer(1);
+		IntBuffer format = BufferUtils.createIntBuffer(1);
+		GL41.glGetProgramBinary(programID, written, format, binary);
+		binary.limit(written.get(0));
+		ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(format.get(0));
+		header.flip();
+		File file = new File(DIRECTORY, key + EXTENSION);
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		try {
+			Files.createDirectories(DIRECTORY.toPath());
+			try (FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+				while (binary.hasRemaining()) {
+					channel.write(binary);
+				}
+			}
+			Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Couldn't write " + file + ", the program will be compiled again next time");
+		}
+	}
+
+	/**
+	 * Method that deletes the binary stored under a key, once the driver refused it.
+	 * @param key of the program
+	 */
+	public static void delete(String key) {
+		new File(DIRECTORY, key + EXTENSION).delete();
+	}
+
+}
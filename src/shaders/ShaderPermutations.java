@@ -0,0 +1,141 @@
+package shaders;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Class that holds the variants of a shader program, each one compiled with its own #define lines instead of
+ * branching on uniforms at runtime. A variant is identified by a key made by getKey: how many lights it adds up, and
+ * which optional features it has. The shaders only loop over the lights of their variant, and skip the code of the
+ * features that aren't defined (the discard of the alpha test, for example), so that most materials run a shorter
+ * shader.
+ * Variants are created the first time they are asked for, or beforehand with submit, so that their compilation can
+ * overlap (see ShaderProgram).
+ * @param <T> type of the shader program
+ */
+public class ShaderPermutations<T extends ShaderProgram> {
+
+	public static final int MAX_LIGHTS = 4;
+
+	private static final int LIGHT_COUNT_MASK = 0x7; //the first 3 bits of a key hold the amount of lights
+	private static final int FAKE_LIGHTING = 1 << 3; //normals point up, for flat models such as grass
+	private static final int ALPHA_TEST = 1 << 4; //fragments whose texture is transparent are discarded
+	private static final int FOG = 1 << 5; //colours fade into the colour of the sky with the distance
+
+	private final IntFunction<T> factory;
+	private final Consumer<T> setup;
+	private final Map<Integer, T> variants = new HashMap<>();
+	private final Set<T> initialized = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * @param factory that creates the variant of a key
+	 * @param setup that loads the uniforms that never change into a variant (texture units), called
+	 * the first time the variant is started
+	 */
+	public ShaderPermutations(IntFunction<T> factory, Consumer<T> setup) {
+		this.factory = factory;
+		this.setup = setup;
+	}
+
+	/**
+	 * Method that computes the key of a variant.
+	 * @param lightCount amount of lights the shader adds up, between 1 and MAX_LIGHTS (it is clamped)
+	 * @param fakeLighting whether normals point up
+	 * @param alphaTest whether transparent fragments are discarded
+	 * @param fog whether colours fade into the sky with the distance
+	 * @return the key of the variant
+	 */
+	public static int getKey(int lightCount, boolean fakeLighting, boolean alphaTest, boolean fog) {
+		int key = Math.max(1, Math.min(MAX_LIGHTS, lightCount)); //GLSL arrays can't be empty: without lights, a single black light is used
+		if (fakeLighting) {
+			key |= FAKE_LIGHTING;
+		}
+		if (alphaTest) {
+			key |= ALPHA_TEST;
+		}
+		if (fog) {
+			key |= FOG;
+		}
+		return key;
+	}
+
+	/**
+	 * @param key of a variant
+	 * @return amount of lights of the variant
+	 */
+	public static int getLightCount(int key) {
+		return key & LIGHT_COUNT_MASK;
+	}
+
+	/**
+	 * @param key of a variant
+	 * @return the defines the shaders of the variant are compiled with, without "#define"
+	 */
+	public static String[] getDefines(int key) {
+		List<String> defines = new ArrayList<>();
+		defines.add("LIGHT_COUNT " + getLightCount(key));
+		if ((key & FAKE_LIGHTING) != 0) {
+			defines.add("FAKE_LIGHTING");
+		}
+		if ((key & ALPHA_TEST) != 0) {
+			defines.add("ALPHA_TEST");
+		}
+		if ((key & FOG) != 0) {
+			defines.add("FOG");
+		}
+		return defines.toArray(new String[defines.size()]);
+	}
+
+	/**
+	 * Method that creates variants before they are used, so that they are compiled at the same time.
+	 * @param keys of the variants
+	 */
+	public void submit(int... keys) {
+		for (int key : keys) {
+			get(key);
+		}
+	}
+
+	/**
+	 * @param key of a variant
+	 * @return the variant, created if it didn't exist yet
+	 */
+	public T get(int key) {
+		T variant = variants.get(key);
+		if (variant == null) {
+			variant = factory.apply(key);
+			variants.put(key, variant);
+		}
+		return variant;
+	}
+
+	/**
+	 * Method that starts a variant, loading the uniforms that never change the first time.
+	 * @param key of the variant
+	 * @return the variant
+	 */
+	public T start(int key) {
+		T variant = get(key);
+		variant.start();
+		if (initialized.add(variant)) {
+			setup.accept(variant);
+		}
+		return variant;
+	}
+
+	public void cleanUp() {
+		for (T variant : variants.values()) {
+			variant.cleanUp();
+		}
+		variants.clear();
+		initialized.clear();
+	}
+
+}
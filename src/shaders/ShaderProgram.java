@@ -4,10 +4,16 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import models.RawModel;
+import renderEngine.GLState;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL41;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
@@ -16,44 +22,170 @@ import org.lwjgl.util.vector.Vector4f;
 /**
  * abstract class that represents a generic shader program containing all the attributes and methods every shader
  * program would have.
+ * A program can be compiled with #define lines, added after the #version line of both of its shaders, so that the
+ * same source gives several specialised variants (see ShaderPermutations).
+ * Creating a program only submits its work to the driver: the program is loaded from the ProgramBinaryCache, or its
+ * shaders are compiled and linked, but nothing waits for the result until the program is first used. Creating every
+ * program before using any of them lets drivers that compile in parallel overlap the work.
+ * The uniforms shared by every program during a frame (camera, lights, fog, clip plane) aren't loaded into each
+ * program: shaders read them from the FrameData block, which they #include, and which is bound to the uniform buffer
+ * written once per frame by the FrameUniformBuffer.
  */
 public abstract class ShaderProgram {
 	
+	public static final String FRAME_DATA_BLOCK = "FrameData";
+	public static final int FRAME_DATA_BINDING = 0; //binding point of the uniform buffer holding the FrameData block
+	
 	private final int programID;
-	private final int vertexShaderID;
-	private final int fragmentShaderID;
+	private int vertexShaderID;
+	private int fragmentShaderID;
+	private final String vertexFile;
+	private final String fragmentFile;
+	private final String vertexSource;
+	private final String fragmentSource;
+	private final StringBuilder attributes = new StringBuilder(); //attributes bound by the subclass, part of the cache key
+	private final String cacheKey; //null when the program isn't cached
+	private boolean fromCache;
+	private boolean linked;
+	private final long submitTime;
 	
 	private static final FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16); //(4x4 matrix)
+
+	private float[][] uniformValues = new float[16][]; //shadow copy of the values loaded into the uniforms, by location, so that loading the same value again is skipped
+	private static long issuedUploads;
+	private static long skippedUploads;
+	private static int compiledPrograms; //programs made ready, and the longest time one of them took, for the statistics
+	private static int cachedPrograms;
+	private static long longestReadyTime;
+
+	private int location_positionOffset; //uniforms used to decode the vertices of compressed models (see VertexCompressor)
+	private int location_positionScale;
+	private int location_octahedralNormals;
 	
-	public ShaderProgram(String vertexFile,String fragmentFile){
-		vertexShaderID = loadShader(vertexFile,GL20.GL_VERTEX_SHADER);
-		fragmentShaderID = loadShader(fragmentFile,GL20.GL_FRAGMENT_SHADER);
-		programID = GL20.glCreateProgram();
-		GL20.glAttachShader(programID, vertexShaderID); //we will use the programID whenever we need to use the shader
-		GL20.glAttachShader(programID, fragmentShaderID);
+	/**
+	 * @param vertexFile source of the vertex shader
+	 * @param fragmentFile source of the fragment shader
+	 * @param defines names (and values) to define in both shaders, without "#define"
+	 */
+	public ShaderProgram(String vertexFile,String fragmentFile,String... defines){
+		submitTime = System.nanoTime();
+		this.vertexFile = vertexFile;
+		this.fragmentFile = fragmentFile;
+		vertexSource = addDefines(readSource(vertexFile), defines);
+		fragmentSource = addDefines(readSource(fragmentFile), defines);
+		programID = GL20.glCreateProgram(); //we will use the programID whenever we need to use the shader
 		bindAttributes();
+		if (ProgramBinaryCache.isAvailable()) {
+			cacheKey = ProgramBinaryCache.getKey(vertexSource, fragmentSource, attributes.toString());
+			fromCache = ProgramBinaryCache.load(programID, cacheKey);
+		} else {
+			cacheKey = null;
+		}
+		if (!fromCache) {
+			compileAndLink();
+		}
+	}
+
+	/**
+	 * Method that compiles the shaders of the program and links it, without checking whether it worked yet.
+	 */
+	private void compileAndLink() {
+		vertexShaderID = loadShader(vertexSource,GL20.GL_VERTEX_SHADER);
+		fragmentShaderID = loadShader(fragmentSource,GL20.GL_FRAGMENT_SHADER);
+		GL20.glAttachShader(programID, vertexShaderID);
+		GL20.glAttachShader(programID, fragmentShaderID);
+		if (cacheKey != null) {
+			GL41.glProgramParameteri(programID, GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE); //the driver has to keep the binary so that we can store it
+		}
 		GL20.glLinkProgram(programID);
+	}
+
+	/**
+	 * Method called the first time the program is used, which waits for it to be linked. A binary refused by the
+	 * driver is deleted and the program compiled from source instead; compile and link errors are printed, and stop
+	 * the game. A program compiled from source is then stored in the cache. Finally, we connect the FrameData block of
+	 * the program (if it has one) to its binding point, and get the locations of the uniforms.
+	 */
+	private void finishLinking() {
+		linked = true;
+		if (fromCache && GL20.glGetProgrami(programID, GL20.GL_LINK_STATUS) == GL11.GL_FALSE) {
+			System.err.println(vertexFile + " + " + fragmentFile + ": cached binary refused by the driver, compiling the source");
+			ProgramBinaryCache.delete(cacheKey);
+			fromCache = false;
+			compileAndLink();
+		}
+		if (!fromCache) {
+			checkCompileStatus(vertexShaderID, vertexFile);
+			checkCompileStatus(fragmentShaderID, fragmentFile);
+			if (GL20.glGetProgrami(programID, GL20.GL_LINK_STATUS) == GL11.GL_FALSE) {
+				System.out.println(GL20.glGetProgramInfoLog(programID, 500));
+				System.err.println("Could not link shader program!");
+				System.exit(-1);
+			}
+			if (cacheKey != null) {
+				ProgramBinaryCache.store(programID, cacheKey);
+			}
+		}
 		GL20.glValidateProgram(programID);
+		int frameDataIndex = GL31.glGetUniformBlockIndex(programID, FRAME_DATA_BLOCK);
+		if (frameDataIndex != GL31.GL_INVALID_INDEX) {
+			GL31.glUniformBlockBinding(programID, frameDataIndex, FRAME_DATA_BINDING);
+		}
 		getAllUniformLocations(); //we have to get all the locations before using them
+		location_positionOffset = getUniformLocation("positionOffset");
+		location_positionScale = getUniformLocation("positionScale");
+		location_octahedralNormals = getUniformLocation("octahedralNormals");
+		if (fromCache) {
+			cachedPrograms++;
+		} else {
+			compiledPrograms++;
+		}
+		longestReadyTime = Math.max(longestReadyTime, System.nanoTime() - submitTime);
 	}
 	
 	protected abstract void getAllUniformLocations();
 
+	/**
+	 * Method that tells the vertex shader how the vertices of a model are stored. The positions of a compressed model are
+	 * between 0 and 1 in its bounding box, so they are scaled and moved back, and its normals and tangents are unfolded
+	 * from an octahedron. The vertices of other models are used as they are. Shaders that don't read models loaded by
+	 * Loader.loadToVAO with indices don't have these uniforms, and the values are ignored.
+	 * @param model about to be rendered
+	 */
+	public void loadVertexEncoding(RawModel model) {
+		if (model.isCompressed()) {
+			Vector3f min = model.getBounds().getMin();
+			Vector3f max = model.getBounds().getMax();
+			loadVector(location_positionOffset, min.x, min.y, min.z);
+			loadVector(location_positionScale, max.x - min.x, max.y - min.y, max.z - min.z);
+		} else {
+			loadVector(location_positionOffset, 0, 0, 0);
+			loadVector(location_positionScale, 1, 1, 1);
+		}
+		loadBoolean(location_octahedralNormals, model.isCompressed());
+	}
+
 	/**
 	 * Method that gets the location of the uniform values in the shader code, so we can access them and modify them.
 	 * @param uniformName name of the uniform to access
 	 * @return the location of the uniform to access
 	 */
 	protected int getUniformLocation(String uniformName){
+		if (!linked) {
+			finishLinking();
+		}
 		return GL20.glGetUniformLocation(programID,uniformName);
 	}
 	
 	public void start(){
-		GL20.glUseProgram(programID); //we have to start the program when we want to use it
+		if (!linked) {
+			finishLinking();
+		}
+		GLState.useProgram(programID); //we have to start the program when we want to use it
 	}
 	
 	public void stop(){
-		GL20.glUseProgram(0);
+		GLState.useProgram(0);
 	}
 
 	/**
@@ -61,16 +193,20 @@ public abstract class ShaderProgram {
 	 */
 	public void cleanUp(){
 		stop();
-		GL20.glDetachShader(programID, vertexShaderID);
-		GL20.glDetachShader(programID, fragmentShaderID);
-		GL20.glDeleteShader(vertexShaderID);
-		GL20.glDeleteShader(fragmentShaderID);
+		if (vertexShaderID != 0) { //a program loaded from the cache has no shaders
+			GL20.glDetachShader(programID, vertexShaderID);
+			GL20.glDetachShader(programID, fragmentShaderID);
+			GL20.glDeleteShader(vertexShaderID);
+			GL20.glDeleteShader(fragmentShaderID);
+		}
 		GL20.glDeleteProgram(programID);
+		GLState.programDeleted(programID);
 	}
 	
 	protected abstract void bindAttributes(); //will link up the inputs to the shader programs to one of the attributes of the vao we're going to pass in
 	
 	protected void bindAttribute(int attribute, String variableName){
+		attributes.append(attribute).append(' ').append(variableName).append('\n');
 		GL20.glBindAttribLocation(programID, attribute, variableName);
 	}
 
@@ -80,22 +216,41 @@ public abstract class ShaderProgram {
 	 * @param value to put in the uniform
 	 */
 	protected void loadFloat(int location, float value){
+		if(isUnchanged(location, 1, value, 0, 0, 0)){
+			return;
+		}
 		GL20.glUniform1f(location, value);
 	}
 	
 	protected void loadInt(int location, int value){
+		if(isUnchanged(location, 1, value, 0, 0, 0)){
+			return;
+		}
 		GL20.glUniform1i(location, value);
 	}
 	
 	protected void loadVector(int location, Vector3f vector){
-		GL20.glUniform3f(location,vector.x,vector.y,vector.z);
+		loadVector(location, vector.x, vector.y, vector.z);
+	}
+	
+	protected void loadVector(int location, float x, float y, float z){
+		if(isUnchanged(location, 3, x, y, z, 0)){
+			return;
+		}
+		GL20.glUniform3f(location, x, y, z);
 	}
 	
 	protected void loadVector(int location, Vector4f vector){
+		if(isUnchanged(location, 4, vector.x, vector.y, vector.z, vector.w)){
+			return;
+		}
 		GL20.glUniform4f(location,vector.x,vector.y,vector.z, vector.w);
 	}
 	
 	protected void load2DVector(int location, Vector2f vector){
+		if(isUnchanged(location, 2, vector.x, vector.y, 0, 0)){
+			return;
+		}
 		GL20.glUniform2f(location,vector.x,vector.y);
 	}
 	
@@ -104,30 +259,149 @@ public abstract class ShaderProgram {
 		if(value){
 			toLoad = 1;
 		}
-		GL20.glUniform1f(location, toLoad);
+		loadFloat(location, toLoad);
 	}
 	
 	protected void loadMatrix(int location, Matrix4f matrix){
 		matrix.store(matrixBuffer); //to pass a matrix to the uniforms of the shader, we first have to put it in a float buffer
 		matrixBuffer.flip();
+		if(isUnchanged(location, matrixBuffer)){
+			return;
+		}
 		GL20.glUniformMatrix4(location, false, matrixBuffer);  //the second argument says whether we transpose the matrix or not
 	}
 
 	/**
-	 * Method that loads up shader source code files. Type indicates if vertex or fragment shader. Opens the source
-	 * files, reads lines in it, collects them into one long string, before creating a new vertex or fragment shader
-	 * depending on the type we gave it, attaching the string of source code to it, compiling it, and printing errors
-	 * found in the code. Returns the ID of the newly created shader.
+	 * Method that compares a value about to be loaded into a uniform with the last value loaded into it, kept in the
+	 * shadow copy of the program. If it is the same, the upload can be skipped: the program still holds it. Otherwise,
+	 * the shadow copy is updated. Uniforms that don't exist in the shaders (location -1) are always skipped, without
+	 * being counted in the statistics.
+	 * @param location of the uniform
+	 * @param size amount of floats of the value (1 to 4), the components it doesn't have are 0
+	 * @return true if the upload can be skipped
+	 */
+	private boolean isUnchanged(int location, int size, float x, float y, float z, float w){
+		if(location < 0){
+			return true; //not counted as a skipped upload: the program doesn't use the uniform, the cache saved nothing
+		}
+		float[] values = getShadowValues(location, size);
+		if(values[4] != 0 && values[0] == x && values[1] == y && values[2] == z && values[3] == w){
+			skippedUploads++;
+			return true;
+		}
+		values[0] = x;
+		values[1] = y;
+		values[2] = z;
+		values[3] = w;
+		values[4] = 1; //the value after the components tells that the uniform was loaded at least once
+		issuedUploads++;
+		return false;
+	}
+
+	/**
+	 * Same as isUnchanged, for a matrix.
+	 * @param location of the uniform
+	 * @param matrix the 16 values of the matrix, from its position to its limit
+	 * @return true if the upload can be skipped
+	 */
+	private boolean isUnchanged(int location, FloatBuffer matrix){
+		if(location < 0){
+			return true; //not counted as a skipped upload: the program doesn't use the uniform, the cache saved nothing
+		}
+		float[] values = getShadowValues(location, 16);
+		boolean unchanged = values[16] != 0;
+		for(int i = 0; i < 16; i++){
+			float value = matrix.get(matrix.position() + i);
+			if(values[i] != value){
+				unchanged = false;
+				values[i] = value;
+			}
+		}
+		if(unchanged){
+			skippedUploads++;
+			return true;
+		}
+		values[16] = 1;
+		issuedUploads++;
+		return false;
+	}
+
+	/**
+	 * @param location of a uniform
+	 * @param size amount of floats of its value
+	 * @return the shadow copy of the uniform: its last loaded value (4 floats for vectors, 16 for matrices), followed
+	 * by 1 once it was loaded
+	 */
+	private float[] getShadowValues(int location, int size){
+		if(location >= uniformValues.length){
+			uniformValues = Arrays.copyOf(uniformValues, Math.max(location + 1, uniformValues.length * 2));
+		}
+		float[] values = uniformValues[location];
+		if(values == null){
+			values = new float[Math.max(4, size) + 1];
+			uniformValues[location] = values;
+		}
+		return values;
+	}
+
+	/**
+	 * @return how many uniform uploads were sent to openGL by all the programs, since the last reset
+	 */
+	public static long getIssuedUploads(){
+		return issuedUploads;
+	}
+
+	/**
+	 * @return how many uniform uploads were skipped by all the programs since the last reset, because the uniform
+	 * already held the value (or doesn't exist)
+	 */
+	public static long getSkippedUploads(){
+		return skippedUploads;
+	}
+
+	/**
+	 * @return how many programs were compiled from their sources
+	 */
+	public static int getCompiledPrograms(){
+		return compiledPrograms;
+	}
+
+	/**
+	 * @return how many programs were loaded from the binary cache instead of being compiled
+	 */
+	public static int getCachedPrograms(){
+		return cachedPrograms;
+	}
+
+	/**
+	 * @return the longest time a program took to be ready after being submitted, in nanoseconds
+	 */
+	public static long getLongestReadyTime(){
+		return longestReadyTime;
+	}
+
+	public static void resetUploadCounters(){
+		issuedUploads = 0;
+		skippedUploads = 0;
+	}
+
+	/**
+	 * Method that loads up shader source code files. Opens the source file, reads lines in it and collects them into
+	 * one long string. An #include "file" line is replaced by the source of that file, so that shaders can share
+	 * declarations such as the FrameData block.
 	 * @param file to load as a shader
-	 * @param type of shader (vertex or fragment)
-	 * @return ID of the newly created shader
+	 * @return source code of the shader
 	 */
-	private static int loadShader(String file, int type){
+	private static String readSource(String file){
 		StringBuilder shaderSource = new StringBuilder();
 		try{
 			BufferedReader reader = new BufferedReader(new FileReader(file));
 			String line;
 			while((line = reader.readLine())!=null){
+				if(line.trim().startsWith("#include")){
+					shaderSource.append(readSource(line.substring(line.indexOf('"') + 1, line.lastIndexOf('"'))));
+					continue;
+				}
 				shaderSource.append(line).append("//\n");
 			}
 			reader.close();
@@ -135,15 +409,54 @@ public abstract class ShaderProgram {
 			e.printStackTrace();
 			System.exit(-1);
 		}
+		return shaderSource.toString();
+	}
+
+	/**
+	 * Method that adds #define lines to the source of a shader, right after its #version line (which has to come
+	 * first).
+	 * @param source of the shader
+	 * @param defines names (and values) to define
+	 * @return the source with the defines
+	 */
+	private static String addDefines(String source, String[] defines){
+		if(defines.length == 0){
+			return source;
+		}
+		StringBuilder lines = new StringBuilder();
+		for(String define : defines){
+			lines.append("#define ").append(define).append('\n');
+		}
+		int versionEnd = source.startsWith("#version") ? source.indexOf('\n') + 1 : 0;
+		return source.substring(0, versionEnd) + lines + source.substring(versionEnd);
+	}
+
+	/**
+	 * Method that creates a new vertex or fragment shader depending on the type we gave it, attaches the source code
+	 * to it and compiles it. Errors are only checked once the program is used (see checkCompileStatus), so that the
+	 * driver can compile other shaders meanwhile. Returns the ID of the newly created shader.
+	 * @param source code of the shader
+	 * @param type of shader (vertex or fragment)
+	 * @return ID of the newly created shader
+	 */
+	private static int loadShader(String source, int type){
 		int shaderID = GL20.glCreateShader(type);
-		GL20.glShaderSource(shaderID, shaderSource);
+		GL20.glShaderSource(shaderID, source);
 		GL20.glCompileShader(shaderID);
+		return shaderID;
+	}
+
+	/**
+	 * Method that prints the errors found in the code of a shader, and stops the game if it didn't compile.
+	 * @param shaderID of the shader
+	 * @param file the shader was loaded from
+	 */
+	private static void checkCompileStatus(int shaderID, String file){
 		if(GL20.glGetShaderi(shaderID, GL20.GL_COMPILE_STATUS )== GL11.GL_FALSE){
 			System.out.println(GL20.glGetShaderInfoLog(shaderID, 500));
-			System.err.println("Could not compile shader!");
+			System.err.println("Could not compile shader " + file + "!");
 			System.exit(-1);
 		}
-		return shaderID;
 	}
 
 }
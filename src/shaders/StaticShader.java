@@ -1,39 +1,23 @@
 package shaders;
 
-import java.util.List;
-
-import org.lwjgl.util.vector.Matrix4f;
-import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
-import org.lwjgl.util.vector.Vector4f;
-
-import toolbox.Maths;
-import entities.Camera;
-import entities.Light;
-
 public class StaticShader extends ShaderProgram{
 	
-	private static final int MAX_LIGHTS = 4;
-	
 	private static final String VERTEX_FILE = "src/shaders/vertexShader.glsl";
 	private static final String FRAGMENT_FILE = "src/shaders/fragmentShader.glsl";
 	
-	private int location_transformationMatrix;
-	private int location_projectionMatrix;
-	private int location_viewMatrix;
-	private int[] location_lightPosition;
-	private int[] location_lightColour;
-	private int[] location_attenuation;
 	private int location_shineDamper;
 	private int location_reflectivity;
-	private int location_useFakeLighting;
-	private int location_skyColour;
 	private int location_numberOfRows;
-	private int location_offset;
-	private int location_plane;
+	private int location_modelTexture;
+	private int location_modelTextureArray;
+	private int location_useTextureArray;
 
-	public StaticShader() {
-		super(VERTEX_FILE, FRAGMENT_FILE);
+	/**
+	 * The camera, lights, sky colour and clip plane are read from the FrameData block (see FrameUniformBuffer).
+	 * @param permutation key of the variant to compile (see ShaderPermutations)
+	 */
+	public StaticShader(int permutation) {
+		super(VERTEX_FILE, FRAGMENT_FILE, ShaderPermutations.getDefines(permutation));
 	}
 
 	@Override
@@ -41,49 +25,35 @@ public class StaticShader extends ShaderProgram{
 		super.bindAttribute(0, "position");
 		super.bindAttribute(1, "textureCoordinates");
 		super.bindAttribute(2, "normal");
+		super.bindAttribute(3, "transformationMatrix"); //per-instance attribute, a matrix takes up the attributes 3 to 6
+		super.bindAttribute(7, "offset");
 	}
 
 	@Override
 	protected void getAllUniformLocations() {
-		location_transformationMatrix = super.getUniformLocation("transformationMatrix");
-		location_projectionMatrix = super.getUniformLocation("projectionMatrix");
-		location_viewMatrix = super.getUniformLocation("viewMatrix");
 		location_shineDamper = super.getUniformLocation("shineDamper");
 		location_reflectivity = super.getUniformLocation("reflectivity");
-		location_useFakeLighting = super.getUniformLocation("useFakeLighting");
-		location_skyColour = super.getUniformLocation("skyColour");
 		location_numberOfRows = super.getUniformLocation("numberOfRows");
-		location_offset = super.getUniformLocation("offset");
-		location_plane = super.getUniformLocation("plane");
-		
-		location_lightPosition = new int[MAX_LIGHTS];
-		location_lightColour = new int[MAX_LIGHTS];
-		location_attenuation = new int[MAX_LIGHTS];
-		for(int i=0;i<MAX_LIGHTS;i++){
-			location_lightPosition[i] = super.getUniformLocation("lightPosition[" + i + "]");
-			location_lightColour[i] = super.getUniformLocation("lightColour[" + i + "]");
-			location_attenuation[i] = super.getUniformLocation("attenuation[" + i + "]");
-		}
-	}
-	
-	public void loadClipPlane(Vector4f plane){
-		super.loadVector(location_plane, plane);
-	}
-	
-	public void loadNumberOfRows(int numberOfRows){
-		super.loadFloat(location_numberOfRows, numberOfRows);
+		location_modelTexture = super.getUniformLocation("modelTexture");
+		location_modelTextureArray = super.getUniformLocation("modelTextureArray");
+		location_useTextureArray = super.getUniformLocation("useTextureArray");
 	}
 	
-	public void loadOffset(float x, float y){
-		super.load2DVector(location_offset, new Vector2f(x,y));
+	/**
+	 * Method that tells the samplers which texture unit they read: 2D textures are bound to the unit 0, texture arrays
+	 * to the unit 1.
+	 */
+	public void connectTextureUnits(){
+		super.loadInt(location_modelTexture, 0);
+		super.loadInt(location_modelTextureArray, 1);
 	}
 	
-	public void loadSkyColour(float r, float g, float b){
-		super.loadVector(location_skyColour, new Vector3f(r,g,b));
+	public void loadUseTextureArray(boolean useTextureArray){
+		super.loadBoolean(location_useTextureArray, useTextureArray);
 	}
 	
-	public void loadFakeLightingVariable(boolean useFake){
-		super.loadBoolean(location_useFakeLighting, useFake);
+	public void loadNumberOfRows(int numberOfRows){
+		super.loadFloat(location_numberOfRows, numberOfRows);
 	}
 	
 	public void loadShineVariables(float damper,float reflectivity){
@@ -91,33 +61,6 @@ public class StaticShader extends ShaderProgram{
 		super.loadFloat(location_reflectivity, reflectivity);
 	}
 	
-	public void loadTransformationMatrix(Matrix4f matrix){
-		super.loadMatrix(location_transformationMatrix, matrix);
-	}
-	
-	public void loadLights(List<Light> lights){
-		for(int i=0;i<MAX_LIGHTS;i++){
-			if(i<lights.size()){
-				super.loadVector(location_lightPosition[i], lights.get(i).getPosition());
-				super.loadVector(location_lightColour[i], lights.get(i).getColour());
-				super.loadVector(location_attenuation[i], lights.get(i).getAttenuation());
-			}else{
-				super.loadVector(location_lightPosition[i], new Vector3f(0, 0, 0));
-				super.loadVector(location_lightColour[i], new Vector3f(0, 0, 0));
-				super.loadVector(location_attenuation[i], new Vector3f(1, 0, 0));
-			}
-		}
-	}
-	
-	public void loadViewMatrix(Camera camera){
-		Matrix4f viewMatrix = Maths.createViewMatrix(camera);
-		super.loadMatrix(location_viewMatrix, viewMatrix);
-	}
-	
-	public void loadProjectionMatrix(Matrix4f projection){
-		super.loadMatrix(location_projectionMatrix, projection);
-	}
-	
 	
 
 }
@@ -1,39 +1,27 @@
 package shaders;
 
-import java.util.List;
-
 import org.lwjgl.util.vector.Matrix4f;
-import org.lwjgl.util.vector.Vector3f;
-import org.lwjgl.util.vector.Vector4f;
-
-import toolbox.Maths;
-import entities.Camera;
-import entities.Light;
 
 public class TerrainShader extends ShaderProgram{
 	
-	private static final int MAX_LIGHTS = 4;
 	private static final String VERTEX_FILE = "src/shaders/terrainVertexShader.glsl";
 	private static final String FRAGMENT_FILE = "src/shaders/terrainFragmentShader.glsl";
 	
 	private int location_transformationMatrix;
-	private int location_projectionMatrix;
-	private int location_viewMatrix;
-	private int[] location_lightPosition;
-	private int[] location_lightColour;
 	private int location_shineDamper;
-	private int[] location_attenuation;
 	private int location_reflectivity;
-	private int location_skyColour;
 	private int location_backgroundTexture;
 	private int location_rTexture;
 	private int location_gTexture;
 	private int location_bTexture;
 	private int location_blendMap;
-	private int location_plane;
 
-	public TerrainShader() {
-		super(VERTEX_FILE, FRAGMENT_FILE);
+	/**
+	 * The camera, lights, sky colour and clip plane are read from the FrameData block (see FrameUniformBuffer).
+	 * @param permutation key of the variant to compile (see ShaderPermutations)
+	 */
+	public TerrainShader(int permutation) {
+		super(VERTEX_FILE, FRAGMENT_FILE, ShaderPermutations.getDefines(permutation));
 	}
 
 	@Override
@@ -46,26 +34,13 @@ public class TerrainShader extends ShaderProgram{
 	@Override
 	protected void getAllUniformLocations() {
 		location_transformationMatrix = super.getUniformLocation("transformationMatrix");
-		location_projectionMatrix = super.getUniformLocation("projectionMatrix");
-		location_viewMatrix = super.getUniformLocation("viewMatrix");
 		location_shineDamper = super.getUniformLocation("shineDamper");
 		location_reflectivity = super.getUniformLocation("reflectivity");
-		location_skyColour = super.getUniformLocation("skyColour");
 		location_backgroundTexture = super.getUniformLocation("backgroundTexture");
 		location_rTexture = super.getUniformLocation("rTexture");
 		location_gTexture = super.getUniformLocation("gTexture");
 		location_bTexture = super.getUniformLocation("bTexture");
 		location_blendMap = super.getUniformLocation("blendMap");
-		location_plane = super.getUniformLocation("plane");
-		
-		location_lightPosition = new int[MAX_LIGHTS];
-		location_lightColour = new int[MAX_LIGHTS];
-		location_attenuation = new int[MAX_LIGHTS];
-		for(int i=0;i<MAX_LIGHTS;i++){
-			location_lightPosition[i] = super.getUniformLocation("lightPosition[" + i + "]");
-			location_lightColour[i] = super.getUniformLocation("lightColour[" + i + "]");
-			location_attenuation[i] = super.getUniformLocation("attenuation[" + i + "]");
-		}
 	}
 
 	/**
@@ -79,14 +54,6 @@ public class TerrainShader extends ShaderProgram{
 		super.loadInt(location_blendMap, 4);
 	}
 	
-	public void loadClipPlane(Vector4f clipPlane){
-		super.loadVector(location_plane, clipPlane);
-	}
-	
-	public void loadSkyColour(float r, float g, float b){
-		super.loadVector(location_skyColour, new Vector3f(r,g,b));
-	}
-	
 	public void loadShineVariables(float damper,float reflectivity){
 		super.loadFloat(location_shineDamper, damper);
 		super.loadFloat(location_reflectivity, reflectivity);
@@ -96,28 +63,5 @@ public class TerrainShader extends ShaderProgram{
 		super.loadMatrix(location_transformationMatrix, matrix);
 	}
 	
-	public void loadLights(List<Light> lights){
-		for(int i=0;i<MAX_LIGHTS;i++){
-			if(i<lights.size()){
-				super.loadVector(location_lightPosition[i], lights.get(i).getPosition());
-				super.loadVector(location_lightColour[i], lights.get(i).getColour());
-				super.loadVector(location_attenuation[i], lights.get(i).getAttenuation());
-			}else{
-				super.loadVector(location_lightPosition[i], new Vector3f(0, 0, 0));
-				super.loadVector(location_lightColour[i], new Vector3f(0, 0, 0));
-				super.loadVector(location_attenuation[i], new Vector3f(1, 0, 0));
-			}
-		}
-	}
-	
-	public void loadViewMatrix(Camera camera){
-		Matrix4f viewMatrix = Maths.createViewMatrix(camera);
-		super.loadMatrix(location_viewMatrix, viewMatrix);
-	}
-	
-	public void loadProjectionMatrix(Matrix4f projection){
-		super.loadMatrix(location_projectionMatrix, projection);
-	}
-	
 
 }
@@ -1,19 +1,22 @@
 #version 140
 
 in vec2 pass_textureCoordinates;
+flat in float pass_layer;
 in vec3 surfaceNormal;
-in vec3 toLightVector[4];
+in vec3 toLightVector[LIGHT_COUNT];
 in vec3 toCameraVector;
+#ifdef FOG
 in float visibility;
+#endif
 
 out vec4 out_Color;
 
 uniform sampler2D modelTexture;  //represents the texture we use
-uniform vec3 lightColour[4];
-uniform vec3 attenuation[4];  //we need an attenuation vector for each of the light sources
+uniform sampler2DArray modelTextureArray; //used instead when the texture is a layer of a texture array
+uniform float useTextureArray;
+#include "src/shaders/frameData.glsl"
 uniform float shineDamper;
 uniform float reflectivity;
-uniform vec3 skyColour;
 
 void main(void){
 	//convert the input colour into an output colour
@@ -24,7 +27,7 @@ void main(void){
 	vec3 totalDiffuse = vec3(0.0);
 	vec3 totalSpecular = vec3(0.0);
 	
-	for(int i=0;i<4;i++){
+	for(int i=0;i<LIGHT_COUNT;i++){
 		float distance = length(toLightVector[i]); //the tolight vector is a vector from the object to the light. Its length = distance from the light
 		float attFactor = attenuation[i].x + (attenuation[i].y * distance) + (attenuation[i].z * distance * distance);
 		vec3 unitLightVector = normalize(toLightVector[i]);	
@@ -37,18 +40,27 @@ void main(void){
 		float specularFactor = dot(reflectedLightDirection , unitVectorToCamera);  //indicates how bright, without any dampening, the pixel should be
 		specularFactor = max(specularFactor,0.0); //has to stay positive
 		float dampedFactor = pow(specularFactor,shineDamper); //we apply the damping of the material. EQUATION FOR SPECULAR LIGHT
-		totalDiffuse = totalDiffuse + (brightness * lightColour[i])/attFactor;
+		totalDiffuse = totalDiffuse + (brightness * lightColour[i].rgb)/attFactor;
 
 		//now, we can multiply the damped factor factor by the light colour, so that the specular light is the colour of the light source
-		totalSpecular = totalSpecular + (dampedFactor * reflectivity * lightColour[i])/attFactor;
+		totalSpecular = totalSpecular + (dampedFactor * reflectivity * lightColour[i].rgb)/attFactor;
 	}
 	totalDiffuse = max(totalDiffuse, 0.2);
 	
-	vec4 textureColour = texture(modelTexture,pass_textureCoordinates);
+	vec4 textureColour;
+	if(useTextureArray > 0.5){
+		textureColour = texture(modelTextureArray, vec3(pass_textureCoordinates, pass_layer));
+	}else{
+		textureColour = texture(modelTexture,pass_textureCoordinates);
+	}
+#ifdef ALPHA_TEST
 	if(textureColour.a<0.5){ //the transparency is given by the alpha component of the colour. If the opacity is below 0.5, then we don't render.
 		discard;
 	}
+#endif
 	//to make the pixel colour bright, we multiply the brightness of the texture by the colour of the texture at one pixel
 	out_Color =  vec4(totalDiffuse,1.0) * textureColour + vec4(totalSpecular,1.0); //returns the color of the pixel on the texture at the coords we give it. samples the texture that we give it in the sampler2D, sample it at defined texture coordinates(pass_textureCoords) --> get the colour of the pixel that it finds at those texture coords and return it. We output the returned colour to the pixel that is currently being processed.
-	out_Color = mix(vec4(skyColour,1.0),out_Color, visibility); //compute the colour of the pixel by mixing it with the colour of the sky and the colour of the object to simulate fog. Mix allows us to mix 2 values(sky colour and out colour) and determine how(visibility factor).
+#ifdef FOG
+	out_Color = mix(vec4(skyColour.rgb,1.0),out_Color, visibility); //compute the colour of the pixel by mixing it with the colour of the sky and the colour of the object to simulate fog. Mix allows us to mix 2 values(sky colour and out colour) and determine how(visibility factor).
+#endif
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+//uniforms that are the same for every program during a frame, written once per frame by the MasterRenderer into a
+//uniform buffer (see FrameUniformBuffer) instead of being loaded into each program. Included by the shaders with
+//#include, the layout has to stay the same as the one FrameUniformBuffer writes.
+layout(std140) uniform FrameData {
+	mat4 projectionMatrix;
+	mat4 viewMatrix;
+	vec4 cameraPosition; //xyz, position of the camera in the world
+	vec4 skyColour; //rgb, colour of the fog
+	vec4 plane; //clip plane, used to render the reflection and refraction of water
+	vec4 lightPosition[4]; //xyz, one per light up to ShaderPermutations.MAX_LIGHTS, the variants only read LIGHT_COUNT of them
+	vec4 lightPositionEyeSpace[4]; //xyz, position of the lights relative to the camera
+	vec4 lightColour[4]; //rgb
+	vec4 attenuation[4]; //xyz
+};
@@ -2,9 +2,11 @@
 
 in vec2 pass_textureCoordinates;
 in vec3 surfaceNormal;
-in vec3 toLightVector[4];
+in vec3 toLightVector[LIGHT_COUNT];
 in vec3 toCameraVector;
+#ifdef FOG
 in float visibility;
+#endif
 
 out vec4 out_Color;
 
@@ -14,11 +16,9 @@ uniform sampler2D gTexture;
 uniform sampler2D bTexture;
 uniform sampler2D blendMap;
 
-uniform vec3 lightColour[4];
-uniform vec3 attenuation[4];
+#include "src/shaders/frameData.glsl"
 uniform float shineDamper;
 uniform float reflectivity;
-uniform vec3 skyColour;
 
 void main(void){
 
@@ -39,7 +39,7 @@ void main(void){
 	vec3 totalDiffuse = vec3(0.0);
 	vec3 totalSpecular = vec3(0.0);
 
-	for(int i=0;i<4;i++){
+	for(int i=0;i<LIGHT_COUNT;i++){
 		float distance = length(toLightVector[i]);
 		float attFactor = attenuation[i].x + (attenuation[i].y * distance) + (attenuation[i].z * distance * distance);
 		vec3 unitLightVector = normalize(toLightVector[i]);
@@ -50,11 +50,13 @@ void main(void){
 		float specularFactor = dot(reflectedLightDirection , unitVectorToCamera);
 		specularFactor = max(specularFactor,0.0);
 		float dampedFactor = pow(specularFactor,shineDamper);
-		totalDiffuse = totalDiffuse + (brightness * lightColour[i])/attFactor;
-		totalSpecular = totalSpecular + (dampedFactor * reflectivity * lightColour[i])/attFactor;
+		totalDiffuse = totalDiffuse + (brightness * lightColour[i].rgb)/attFactor;
+		totalSpecular = totalSpecular + (dampedFactor * reflectivity * lightColour[i].rgb)/attFactor;
 	}
 	totalDiffuse = max(totalDiffuse, 0.2);
 
 	out_Color =  vec4(totalDiffuse,1.0) * totalColour + vec4(totalSpecular,1.0);
-	out_Color = mix(vec4(skyColour,1.0),out_Color, visibility);
+#ifdef FOG
+	out_Color = mix(vec4(skyColour.rgb,1.0),out_Color, visibility);
+#endif
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 #version 150
 
+//LIGHT_COUNT is defined by the ShaderProgram, as well as FOG for the variants that need it (see ShaderPermutations)
+
 //light calculations are all calculated in the shader program, need position and colour of the light
 //the normals calculate how bright a point on an object should be. Normals are vectors which indicate which direction the light goes to. It points to the exact direction the surface which is hit by the light faces the light.
 //every point of a surface has a normal vector, and always pointing directly out of the face (perpendicular to the face)
@@ -9,24 +11,44 @@ in vec3 normal; //in : what we retrieve from the VAO
 
 out vec2 pass_textureCoordinates; //out : what is sent  to the fragment shader
 out vec3 surfaceNormal;
-out vec3 toLightVector[4];
+out vec3 toLightVector[LIGHT_COUNT];
 out vec3 toCameraVector;
+#ifdef FOG
 out float visibility;
+#endif
 
 uniform mat4 transformationMatrix;
-uniform mat4 projectionMatrix;
-uniform mat4 viewMatrix;
-uniform vec3 lightPosition[4];
+#include "src/shaders/frameData.glsl"
 
 //such small values for fog allows to create some nice faze, which allows entities to fade in the distance when we can't render them anymore
 const float density = 0.0035;
 const float gradient = 5.0;
 
-uniform vec4 plane;
+//vertices of compressed models are stored in a smaller format (see VertexCompressor)
+uniform vec3 positionOffset;
+uniform vec3 positionScale;
+uniform float octahedralNormals;
+
+vec3 decodeOctahedral(vec2 e){
+	//unfolds a unit vector stored on an octahedron: the lower half of the octahedron was folded over the corners of the upper one
+	vec3 v = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+	if(v.z < 0.0){
+		v.xy = (1.0 - abs(v.yx)) * vec2(v.x >= 0.0 ? 1.0 : -1.0, v.y >= 0.0 ? 1.0 : -1.0);
+	}
+	return normalize(v);
+}
+
+vec3 decodeDirection(vec3 direction){
+	if(octahedralNormals > 0.5){
+		return decodeOctahedral(direction.xy);
+	}
+	return direction;
+}
 
 void main(void){
 
-	vec4 worldPosition = transformationMatrix * vec4(position,1.0);
+	vec3 modelPosition = positionOffset + position * positionScale;
+	vec4 worldPosition = transformationMatrix * vec4(modelPosition,1.0);
 
 	gl_ClipDistance[0] = dot(worldPosition, plane);
 
@@ -34,13 +56,15 @@ void main(void){
 	gl_Position = projectionMatrix * positionRelativeToCam;
 	pass_textureCoordinates = textureCoordinates;
 
-	surfaceNormal = (transformationMatrix * vec4(normal,0.0)).xyz;
-	for(int i=0;i<4;i++){
-		toLightVector[i] = lightPosition[i] - worldPosition.xyz;
+	surfaceNormal = (transformationMatrix * vec4(decodeDirection(normal),0.0)).xyz;
+	for(int i=0;i<LIGHT_COUNT;i++){
+		toLightVector[i] = lightPosition[i].xyz - worldPosition.xyz;
 	}
-	toCameraVector = (inverse(viewMatrix) * vec4(0.0,0.0,0.0,1.0)).xyz - worldPosition.xyz;
+	toCameraVector = cameraPosition.xyz - worldPosition.xyz;
 
+#ifdef FOG
 	float distance = length(positionRelativeToCam.xyz);
 	visibility = exp(-pow((distance*density),gradient));
 	visibility = clamp(visibility,0.0,1.0);
+#endif
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 #version 150
 
+//LIGHT_COUNT is defined by the ShaderProgram, as well as FAKE_LIGHTING, ALPHA_TEST and FOG for the variants that need them (see ShaderPermutations)
+
 //light calculations are all calculated in the shader program, need position and colour of the light
 //the normals calculate how bright a point on an object should be. Normals are vectors which indicate which direction the light goes to. It points to the exact direction the surface which is hit by the light faces the light.
 //every point of a surface has a normal vector, and always pointing directly out of the face (perpendicular to the face)
@@ -7,52 +9,74 @@
 in vec3 position;
 in vec2 textureCoordinates;
 in vec3 normal;
+in mat4 transformationMatrix; //per-instance attributes: every entity drawn by the same draw call has its own
+in vec3 offset; //texture atlas offset, followed by the layer of the texture in the texture array
 
 out vec2 pass_textureCoordinates;
+flat out float pass_layer;
 out vec3 surfaceNormal;
-out vec3 toLightVector[4];
+out vec3 toLightVector[LIGHT_COUNT];
 out vec3 toCameraVector;
+#ifdef FOG
 out float visibility;
+#endif
 
-uniform mat4 transformationMatrix;
-uniform mat4 projectionMatrix;
-uniform mat4 viewMatrix;
-uniform vec3 lightPosition[4];
-
-uniform float useFakeLighting;
+#include "src/shaders/frameData.glsl"
 
 uniform float numberOfRows;
-uniform vec2 offset;
 
 const float density = 0.0035;
 const float gradient = 3.0;
 
-uniform vec4 plane;
+//vertices of compressed models are stored in a smaller format (see VertexCompressor)
+uniform vec3 positionOffset;
+uniform vec3 positionScale;
+uniform float octahedralNormals;
+
+vec3 decodeOctahedral(vec2 e){
+	//unfolds a unit vector stored on an octahedron: the lower half of the octahedron was folded over the corners of the upper one
+	vec3 v = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+	if(v.z < 0.0){
+		v.xy = (1.0 - abs(v.yx)) * vec2(v.x >= 0.0 ? 1.0 : -1.0, v.y >= 0.0 ? 1.0 : -1.0);
+	}
+	return normalize(v);
+}
+
+vec3 decodeDirection(vec3 direction){
+	if(octahedralNormals > 0.5){
+		return decodeOctahedral(direction.xy);
+	}
+	return direction;
+}
 
 void main(void){
 	//method that runs everytime a vertex is processed by the shader
-	vec4 worldPosition = transformationMatrix * vec4(position,1.0); //position of the vertex in the world
+	vec3 modelPosition = positionOffset + position * positionScale;
+	vec4 worldPosition = transformationMatrix * vec4(modelPosition,1.0); //position of the vertex in the world
 	
 	gl_ClipDistance[0] = dot(worldPosition, plane);
 	
 	vec4 positionRelativeToCam = viewMatrix * worldPosition; //We need the position of a vertex to the camera tod etermine how much it is affected by fog
 	gl_Position = projectionMatrix * positionRelativeToCam;  //we tell openGL where to render the vertex on the screen
-	pass_textureCoordinates = (textureCoordinates/numberOfRows) + offset;
+	pass_textureCoordinates = (textureCoordinates/numberOfRows) + offset.xy;
+	pass_layer = offset.z;
 	
-	vec3 actualNormal = normal;
-	if(useFakeLighting > 0.5){
-		actualNormal = vec3(0.0,1.0,0.0);  //normal points directly up if dealing with selected objects, such as grass
-	}
+	vec3 actualNormal = decodeDirection(normal);
+#ifdef FAKE_LIGHTING
+	actualNormal = vec3(0.0,1.0,0.0);  //normal points directly up if dealing with selected objects, such as grass
+#endif
 	
 	surfaceNormal = (transformationMatrix * vec4(actualNormal,0.0)).xyz; //sometimes we rotate our model, so normal is not always = to surface normal, because its direction is rotated when the model is rotated. We transform our normal into a vec4 so that we can multiply it by the tranfo matrix
-	for(int i=0;i<4;i++){
-		toLightVector[i] = lightPosition[i] - worldPosition.xyz; //we need the difference between the light position and the position of the vertex on the model. but the pos will change if we used a transformation on the position, so we have to first multiply it by the transformation matrix
+	for(int i=0;i<LIGHT_COUNT;i++){
+		toLightVector[i] = lightPosition[i].xyz - worldPosition.xyz; //we need the difference between the light position and the position of the vertex on the model. but the pos will change if we used a transformation on the position, so we have to first multiply it by the transformation matrix
 	}
-	toCameraVector = (inverse(viewMatrix) * vec4(0.0,0.0,0.0,1.0)).xyz - worldPosition.xyz; //viewmatrix contains negative position of the camera position (reminder). we multiply by an empty vec4 vector to transform everything into a 4D vector and we obtain the camera position
+	toCameraVector = cameraPosition.xyz - worldPosition.xyz;
 	
+#ifdef FOG
 	float distance = length(positionRelativeToCam.xyz);
 	visibility = exp(-pow((distance*density),gradient)); //equation of fog
 	visibility = clamp(visibility,0.0,1.0); //We want the visibility to stay between 0 and 1
+#endif
 
 	
 }
\ No newline at end of file
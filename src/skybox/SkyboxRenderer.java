@@ -4,13 +4,9 @@ import models.RawModel;
 
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
-import org.lwjgl.util.vector.Matrix4f;
 
-import renderEngine.DisplayManager;
+import renderEngine.GLState;
 import renderEngine.Loader;
-import entities.Camera;
 
 /**
  * Class that renders a skybox. It has its vertices, the size of the skybox,and the texture files it should use for its
@@ -64,7 +60,7 @@ public class SkyboxRenderer {
 	     SIZE, -SIZE,  SIZE
 	};
 	
-	private static final String[] TEXTURE_FILES = {"right", "left", "top", "bottom", "back", "front"};
+	public static final String[] TEXTURE_FILES = {"right", "left", "top", "bottom", "back", "front"};
 	
 	private final RawModel cube;
 	private final int texture;
@@ -72,38 +68,54 @@ public class SkyboxRenderer {
 	private float time =0;
 
 	/**
-	 * Constructor that loads to the VAO the specified vertices, loads the texture files for the skybox, connects the
-	 * textures to the texture unit and loads the projection matrix to the shader.
+	 * Constructor that loads to the VAO the specified vertices, loads the texture files for the skybox and connects the
+	 * textures to the texture unit. The projection matrix is read by the shader from the FrameData block.
 	 * @param loader required to load objects to VAOs
-	 * @param projectionMatrix loaded in the shader
 	 */
-	public SkyboxRenderer(Loader loader, Matrix4f projectionMatrix){
+	public SkyboxRenderer(Loader loader){
+		this(loader, loader.loadCubeMap(TEXTURE_FILES));
+	}
+
+	/**
+	 * Constructor used when the cube map of the skybox has already been loaded (for example by the asset pipeline).
+	 * @param loader required to load objects to VAOs
+	 * @param texture id of the cube map made from the texture files
+	 */
+	public SkyboxRenderer(Loader loader, int texture){
+		this(loader, texture, new SkyboxShader());
+	}
+
+	/**
+	 * Constructor used when the shader was created beforehand, along with the other shaders, so that they could be
+	 * compiled at the same time.
+	 * @param loader required to load objects to VAOs
+	 * @param texture id of the cube map made from the texture files
+	 * @param shader of the skybox
+	 */
+	public SkyboxRenderer(Loader loader, int texture, SkyboxShader shader){
 		cube = loader.loadToVAO(VERTICES, 3);
-		texture = loader.loadCubeMap(TEXTURE_FILES);
-		shader = new SkyboxShader();
+		this.texture = texture;
+		this.shader = shader;
 		shader.start();
 		shader.connectTextureUnits(); //we call th connectTextureUnits method to tell the shader which textures it has to be sampling
-		shader.loadProjectionMatrix(projectionMatrix);
 		shader.stop();
 	}
 
 	/**
-	 * Method that shows the skybox on the screen.
-	 * @param camera looking at the scene
-	 * @param r value for the fog
-	 * @param g value for the fog
-	 * @param b value for the fog
+	 * Method that shows the skybox on the screen. The camera and the colour of the fog are read by the shader from the
+	 * FrameData block.
 	 */
-	public void render(Camera camera, float r, float g, float b){
+	public void render(){
 		shader.start();
-		shader.loadViewMatrix(camera);
-		shader.loadFogColour(r, g, b);
-		GL30.glBindVertexArray(cube.getVaoID());
-		GL20.glEnableVertexAttribArray(0);
+		shader.loadRotation();
+		GLState.bindVertexArray(cube.getVaoID());
+		GLState.bindTexture(0, GL13.GL_TEXTURE_CUBE_MAP, texture);
+		GLState.setCulling(true);
 		GL11.glDrawArrays(GL11.GL_TRIANGLES, 0, cube.getVertexCount());
-		GL20.glDisableVertexAttribArray(0);
-		GL30.glBindVertexArray(0);
-		shader.stop();
+	}
+
+	public void cleanUp(){
+		shader.cleanUp();
 	}
 
 }
@@ -5,8 +5,6 @@ import org.lwjgl.util.vector.Vector3f;
 
 import renderEngine.DisplayManager;
 import shaders.ShaderProgram;
-import toolbox.Maths;
-import entities.Camera;
  
 public class SkyboxShader extends ShaderProgram{
  
@@ -15,35 +13,31 @@ public class SkyboxShader extends ShaderProgram{
     
     private static final float ROTATE_SPEED = 1f;
      
-    private int location_projectionMatrix;
-    private int location_viewMatrix;
-    private int location_fogColour;
+    private int location_rotationMatrix;
     private int location_cubeMap;
     private int location_cubeMap2;
 
     
     private float rotation = 0;
+    private final Matrix4f rotationMatrix = new Matrix4f();
      
+    /**
+     * The projection and view matrices, as well as the colour of the fog, are read from the FrameData block (see
+     * FrameUniformBuffer). The translation of the view matrix is removed in the vertex shader, as the skybox is never
+     * supposed to move.
+     */
     public SkyboxShader() {
         super(VERTEX_FILE, FRAGMENT_FILE);
     }
-     
-    public void loadProjectionMatrix(Matrix4f matrix){
-        super.loadMatrix(location_projectionMatrix, matrix);
-    }
  
-    public void loadViewMatrix(Camera camera){
-        Matrix4f matrix = Maths.createViewMatrix(camera);
-        matrix.m30 = 0; //in a view matrix, the translation is determined by the last column (4x4 matrix). So we have to set this last column to 0,0,0, so that it never moves, as the skybox is never supposed to move.
-        matrix.m31 = 0;
-        matrix.m32 = 0;
+    /**
+     * Method that turns the skybox around the y-axis to simulate the clouds moving.
+     */
+    public void loadRotation(){
         rotation += ROTATE_SPEED * DisplayManager.getFrameTimeSeconds(); //as the rotation of the skybox is an animation, we multiply it by the elapsed seconds
-        Matrix4f.rotate((float) Math.toRadians(rotation), new Vector3f(0,1,0), matrix, matrix); //0,1,0: we rotate around the y-axis to simulate the clouds moving
-        super.loadMatrix(location_viewMatrix, matrix);
-    }
-    
-    public void loadFogColour(float r, float g, float b){
-    	super.loadVector(location_fogColour, new Vector3f(r, g, b));
+        rotationMatrix.setIdentity();
+        Matrix4f.rotate((float) Math.toRadians(rotation), new Vector3f(0,1,0), rotationMatrix, rotationMatrix); //0,1,0: we rotate around the y-axis
+        super.loadMatrix(location_rotationMatrix, rotationMatrix);
     }
     
     public void connectTextureUnits(){
@@ -53,9 +47,7 @@ public class SkyboxShader extends ShaderProgram{
      
     @Override
     protected void getAllUniformLocations() {
-        location_projectionMatrix = super.getUniformLocation("projectionMatrix");
-        location_viewMatrix = super.getUniformLocation("viewMatrix");
-        location_fogColour = super.getUniformLocation("fogColour");
+        location_rotationMatrix = super.getUniformLocation("rotationMatrix");
         location_cubeMap = super.getUniformLocation("cubeMap");
         location_cubeMap2 = super.getUniformLocation("cubeMap2");
     }
@@ -3,12 +3,14 @@
 in vec3 position;
 out vec3 textureCoords;
 
-uniform mat4 projectionMatrix;
-uniform mat4 viewMatrix;
+#include "src/shaders/frameData.glsl"
+uniform mat4 rotationMatrix; //rotation of the clouds around the y-axis
 
 void main(void){
 	
-	gl_Position = projectionMatrix * viewMatrix * vec4(position, 1.0);   //we want a rotation (sky needs to turn when we turn the camera) but doesn't translate (doesn't move when we move the camera)
+	mat4 skyViewMatrix = viewMatrix;
+	skyViewMatrix[3] = vec4(0.0, 0.0, 0.0, 1.0); //in a view matrix, the translation is determined by the last column. We set it to 0,0,0 so that the skybox never moves, as it is never supposed to move
+	gl_Position = projectionMatrix * skyViewMatrix * rotationMatrix * vec4(position, 1.0);   //we want a rotation (sky needs to turn when we turn the camera) but doesn't translate (doesn't move when we move the camera)
 	textureCoords = position;
 	
 }
\ No newline at end of file
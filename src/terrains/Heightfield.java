@@ -0,0 +1,26 @@
+package terrains;
+
+/**
+ * Interface of everything that can give the height of the ground at any point of the world, whether the heights are
+ * kept in an array on the heap (Terrain) or read from a memory-mapped file (MappedHeightfield). Collision and placement
+ * only go through it, so they don't depend on where the heights are stored.
+ */
+public interface Heightfield {
+
+	/**
+	 * @param worldX X coordinate
+	 * @param worldZ Z coordinate
+	 * @return height of the ground at this point, or 0 outside of the heightfield
+	 */
+	float getHeightOfTerrain(float worldX, float worldZ);
+
+	/**
+	 * Method that finds the height of the ground for many points at once.
+	 * @param worldX X coordinates of the points
+	 * @param worldZ Z coordinates of the points
+	 * @param heights in which the height of each point is stored, at the same index as its coordinates
+	 * @param count amount of points, from the start of the arrays
+	 */
+	void getHeightsOfTerrain(float[] worldX, float[] worldZ, float[] heights, int count);
+
+}
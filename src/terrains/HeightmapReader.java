@@ -0,0 +1,220 @@
+package terrains;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Class that reads the heights of a terrain from a file of the res folder into a flat array, row by row, each sample
+ * being read once. Three formats are read, the first file found being used:
+ * - .raw: 16-bit unsigned samples, little endian, without header, for a square height map;
+ * - .pgm: binary grey map (P5), with 8-bit samples or 16-bit big endian ones;
+ * - .png: the colour of each pixel is a height, like before. The pixels are read straight from the raster of the image
+ * when its layout is a known one, instead of going through BufferedImage.getRGB for each of them.
+ * Every format gives heights between -MAX_HEIGHT and MAX_HEIGHT. The samples are converted in parallel, by bands of
+ * rows.
+ */
+public class HeightmapReader {
+
+	public static final float MAX_HEIGHT = 40;
+	private static final float MAX_PIXEL_COLOUR = 256 * 256 * 256; //there are 3 colour channels, each one has a value between 0 and 255 (256 possibilities).
+	private static final int BAND_ROWS = 32; //rows converted by each task
+
+	/**
+	 * Method that reads a height map.
+	 * @param file name of the height map in the res folder, without extension
+	 * @return the height of each sample, row by row; the height map is square
+	 */
+	public static float[] read(String file) {
+		try {
+			File raw = new File("res/" + file + ".raw");
+			if (raw.exists()) {
+				return readRaw(Files.readAllBytes(raw.toPath()));
+			}
+			File pgm = new File("res/" + file + ".pgm");
+			if (pgm.exists()) {
+				return readPgm(Files.readAllBytes(pgm.toPath()));
+			}
+			return readImage(ImageIO.read(new File("res/" + file + ".png")));
+		} catch (IOException e) {
+			System.err.println("Couldn't read the height map " + file);
+			e.printStackTrace();
+			System.exit(-1);
+			return null;
+		}
+	}
+
+	/**
+	 * @param bytes of a .raw file: square, 16-bit unsigned little endian samples
+	 * @return the heights of the samples
+	 */
+	private static float[] readRaw(byte[] bytes) {
+		int size = (int) Math.sqrt(bytes.length / 2);
+		if (size * size * 2 != bytes.length) {
+			throw new IllegalArgumentException("A .raw height map has to be square, " + bytes.length + " bytes isn't");
+		}
+		ByteBuffer samples = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		return convert16Bit(samples, 0, size, 65535);
+	}
+
+	/**
+	 * @param bytes of a binary .pgm file (P5)
+	 * @return the heights of the samples
+	 */
+	private static float[] readPgm(byte[] bytes) {
+		int[] header = new int[3]; //width, height, maximum value
+		int position = 2;
+		if (bytes.length < 2 || bytes[0] != 'P' || bytes[1] != '5') {
+			throw new IllegalArgumentException("Only binary .pgm height maps (P5) can be read");
+		}
+		for (int i = 0; i < header.length; i++) {
+			while (Character.isWhitespace(bytes[position]) || bytes[position] == '#') {
+				if (bytes[position] == '#') {
+					while (bytes[position] != '\n') { //comments go to the end of the line
+						position++;
+					}
+				}
+				position++;
+			}
+			int value = 0;
+			while (Character.isDigit(bytes[position])) {
+				value = value * 10 + bytes[position++] - '0';
+			}
+			header[i] = value;
+		}
+		position++; //a single whitespace separates the header from the samples
+		int size = header[0];
+		if (header[1] != size) {
+			throw new IllegalArgumentException("A .pgm height map has to be square, not " + size + "x" + header[1]);
+		}
+		int maxValue = header[2];
+		if (maxValue > 255) {
+			ByteBuffer samples = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN);
+			return convert16Bit(samples, position, size, maxValue);
+		}
+		float[] heights = new float[size * size];
+		int start = position;
+		forEachBand(size, (first, last) -> {
+			for (int i = first * size; i < last * size; i++) {
+				heights[i] = sampleToHeight((bytes[start + i] & 0xff) / (float) maxValue);
+			}
+		});
+		return heights;
+	}
+
+	/**
+	 * @param samples buffer holding 16-bit samples, in the byte order of the file
+	 * @param start position of the first sample in the buffer, in bytes
+	 * @param size amount of samples on each side of the height map
+	 * @param maxValue value of the highest sample
+	 * @return the heights of the samples
+	 */
+	private static float[] convert16Bit(ByteBuffer samples, int start, int size, int maxValue) {
+		float[] heights = new float[size * size];
+		forEachBand(size, (first, last) -> {
+			for (int i = first * size; i < last * size; i++) {
+				heights[i] = sampleToHeight((samples.getShort(start + i * 2) & 0xffff) / (float) maxValue); //absolute reads, so that the bands can share the buffer
+			}
+		});
+		return heights;
+	}
+
+	/**
+	 * Method that reads the heights of an image. The colour of a pixel, as an ARGB int, is turned into a height the
+	 * same way as before: for opaque pixels, the height grows with the 24-bit RGB value. Images whose pixels are stored
+	 * as 3 or 4 bytes, or as ints, are read straight from their raster; the others through a single getRGB call per band.
+	 * @param image of the height map
+	 * @return the heights of the pixels
+	 */
+	private static float[] readImage(BufferedImage image) {
+		int size = image.getHeight();
+		float[] heights = new float[size * size];
+		int type = image.getType();
+		if (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR) {
+			byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			int pixelSize = type == BufferedImage.TYPE_3BYTE_BGR ? 3 : 4;
+			int width = image.getWidth();
+			forEachBand(size, (first, last) -> {
+				for (int z = first; z < last; z++) {
+					for (int x = 0; x < size; x++) {
+						int pixel = (z * width + x) * pixelSize;
+						int alpha = pixelSize == 4 ? pixels[pixel++] & 0xff : 0xff; //ABGR: the alpha comes first
+						int rgb = (alpha << 24) | ((pixels[pixel + 2] & 0xff) << 16) | ((pixels[pixel + 1] & 0xff) << 8)
+								| (pixels[pixel] & 0xff);
+						heights[z * size + x] = colourToHeight(rgb);
+					}
+				}
+			});
+		} else if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+			int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			int width = image.getWidth();
+			int alpha = type == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0; //the alpha of RGB images is never stored
+			forEachBand(size, (first, last) -> {
+				for (int z = first; z < last; z++) {
+					for (int x = 0; x < size; x++) {
+						heights[z * size + x] = colourToHeight(pixels[z * width + x] | alpha);
+					}
+				}
+			});
+		} else {
+			forEachBand(size, (first, last) -> {
+				int[] row = new int[size];
+				for (int z = first; z < last; z++) {
+					image.getRGB(0, z, size, 1, row, 0, size);
+					for (int x = 0; x < size; x++) {
+						heights[z * size + x] = colourToHeight(row[x]);
+					}
+				}
+			});
+		}
+		return heights;
+	}
+
+	/**
+	 * @param argb colour of a pixel, as given by BufferedImage.getRGB
+	 * @return the height of the pixel
+	 */
+	private static float colourToHeight(int argb) {
+		float height = argb; //the pixel colour of the height map, a value representing the colour of the pixel, which we have to convert into a height value
+		height += MAX_PIXEL_COLOUR/2f; //we divide by 2 to make sure the height is reasonable
+		height /= MAX_PIXEL_COLOUR/2f;  //We do this to obtain a value between 1 and -1
+		height *= MAX_HEIGHT;  //we convert the height to a value between maxheight and -maxheight
+		return height;
+	}
+
+	/**
+	 * @param sample value between 0 and 1
+	 * @return the height of the sample, between -MAX_HEIGHT and MAX_HEIGHT
+	 */
+	static float sampleToHeight(float sample) {
+		return (sample * 2 - 1) * MAX_HEIGHT;
+	}
+
+	/**
+	 * Method that runs a task for each band of BAND_ROWS rows, in parallel.
+	 * @param rows amount of rows
+	 * @param band task to run for the rows from first (included) to last (excluded)
+	 */
+	static void forEachBand(int rows, Band band) {
+		int bands = (rows + BAND_ROWS - 1) / BAND_ROWS;
+		IntStream.range(0, bands).parallel().forEach(i -> band.process(i * BAND_ROWS, Math.min(rows, (i + 1) * BAND_ROWS)));
+	}
+
+	/**
+	 * Task processing a band of rows.
+	 */
+	interface Band {
+
+		void process(int first, int last);
+
+	}
+
+}
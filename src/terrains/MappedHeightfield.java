@@ -0,0 +1,269 @@
+package terrains;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class that gives the heights of a heightfield too big to be held on the heap, like the map of a whole world, by
+ * reading them from a memory-mapped .raw file: 16-bit unsigned samples, little endian, without header, for a square
+ * heightfield (the same format as HeightmapReader). Each sample only takes 2 bytes, quantized between -MAX_HEIGHT and
+ * MAX_HEIGHT, and none of them is on the heap.
+ * The file is mapped by pages of PAGE_ROWS rows, the first time a point of the page is queried, and the system only
+ * loads the parts of a page that are read, so only the areas where something is queried (around the player, the
+ * agents...) take memory. Each page also maps the first row of the next one, so that the 4 corners of a grid square
+ * are always in the same page. The pages can be queried from several threads.
+ */
+public class MappedHeightfield implements Heightfield {
+
+	private static final int PAGE_ROWS = 256; //rows of samples mapped at once: 8MB for a 16k by 16k heightfield
+	private static final float MAX_SAMPLE = 65535;
+
+	private final FileChannel channel;
+	private final int vertexCount; //amount of samples on each side of the heightfield
+	private final float x;
+	private final float z;
+	private final float gridSquareSize; //distance between 2 samples in the world
+	private final float inverseGridSquareSize;
+	private final AtomicReferenceArray<ShortBuffer> pages; //null until the page is first queried
+
+	/**
+	 * Constructor that maps a heightfield, without reading any sample yet.
+	 * @param file name of the .raw file in the res folder, without extension
+	 * @param x position of the first sample in the world
+	 * @param z position of the first sample in the world
+	 * @param gridSquareSize distance between 2 samples in the world, the size of the heightfield depending on how many
+	 * samples the file holds
+	 */
+	public MappedHeightfield(String file, float x, float z, float gridSquareSize) {
+		this.channel = open(file);
+		long samples = getFileSize(channel) / 2;
+		this.vertexCount = (int) Math.sqrt(samples);
+		if ((long) vertexCount * vertexCount != samples || vertexCount < 2) {
+			throw new IllegalArgumentException("A .raw heightfield has to be square, " + samples * 2 + " bytes isn't");
+		}
+		this.x = x;
+		this.z = z;
+		this.gridSquareSize = gridSquareSize;
+		this.inverseGridSquareSize = 1 / gridSquareSize;
+		this.pages = new AtomicReferenceArray<>((vertexCount - 2) / PAGE_ROWS + 1); //a page for every PAGE_ROWS rows of grid squares
+	}
+
+	/**
+	 * Method that quantizes heights to 16-bit samples and writes them as a .raw file that can be mapped, for example to
+	 * convert a height map read by HeightmapReader. The samples are written to a temporary file, which then replaces
+	 * the .raw file, so that a write that is interrupted doesn't leave a truncated heightfield behind.
+	 * @param file name of the .raw file in the res folder, without extension
+	 * @param heights of the samples, row by row, between -MAX_HEIGHT and MAX_HEIGHT
+	 * @param vertexCount amount of samples on each side of the heightfield
+	 */
+	public static void write(String file, float[] heights, int vertexCount) {
+		Path path = Paths.get("res/" + file + ".raw");
+		Path temporaryPath = null;
+		ByteBuffer row = ByteBuffer.allocate(vertexCount * 2).order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			temporaryPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+			try (FileChannel output = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+				for (int z = 0; z < vertexCount; z++) {
+					row.clear();
+					for (int x = 0; x < vertexCount; x++) {
+						float sample = (heights[z * vertexCount + x] / HeightmapReader.MAX_HEIGHT + 1) / 2; //the inverse of HeightmapReader.sampleToHeight
+						row.putShort((short) Math.round(Math.max(0, Math.min(1, sample)) * MAX_SAMPLE));
+					}
+					row.flip();
+					while (row.hasRemaining()) {
+						output.write(row);
+					}
+				}
+			}
+			Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Couldn't write the heightfield " + file);
+			e.printStackTrace();
+			if (temporaryPath != null) {
+				temporaryPath.toFile().delete();
+			}
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Method that finds the height of the heightfield for any x or z coordinates, interpolated on the plane of the
+	 * triangle of the grid square the point is in, like Terrain does. The first query of a page maps it.
+	 * @param worldX X coordinate
+	 * @param worldZ Z coordinate
+	 * @return Y coordinate, or 0 outside of the heightfield
+	 */
+	@Override
+	public float getHeightOfTerrain(float worldX, float worldZ) {
+		return getHeight((worldX - x) * inverseGridSquareSize, (worldZ - z) * inverseGridSquareSize);
+	}
+
+	@Override
+	public void getHeightsOfTerrain(float[] worldX, float[] worldZ, float[] heights, int count) {
+		for (int i = 0; i < count; i++) {
+			heights[i] = getHeight((worldX[i] - x) * inverseGridSquareSize, (worldZ[i] - z) * inverseGridSquareSize);
+		}
+	}
+
+	/**
+	 * Method that copies the heights of a square part of the heightfield, for example to build the mesh of a terrain
+	 * that covers it. The samples past the edges of the heightfield are clamped to them.
+	 * @param firstX x coordinate of the first sample to copy
+	 * @param firstZ z coordinate of the first sample to copy
+	 * @param side amount of samples on each side of the part to copy
+	 * @return the heights of the samples, row by row
+	 */
+	public float[] getHeights(int firstX, int firstZ, int side) {
+		float[] heights = new float[side * side];
+		int last = vertexCount - 1;
+		for (int z = 0; z < side; z++) {
+			int gz = Math.max(0, Math.min(firstZ + z, last));
+			int page = Math.min(gz / PAGE_ROWS, pages.length() - 1); //the last row is only in the last page
+			ShortBuffer samples = getPage(page);
+			int rowStart = (gz - page * PAGE_ROWS) * vertexCount;
+			for (int x = 0; x < side; x++) {
+				int gx = Math.max(0, Math.min(firstX + x, last));
+				heights[z * side + x] = toHeight(samples.get(rowStart + gx));
+			}
+		}
+		return heights;
+	}
+
+	/**
+	 * @return amount of samples on each side of the heightfield
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	public float getX() {
+		return x;
+	}
+
+	public float getZ() {
+		return z;
+	}
+
+	public float getGridSquareSize() {
+		return gridSquareSize;
+	}
+
+	/**
+	 * @return size of the heightfield in the world
+	 */
+	public float getSize() {
+		return (vertexCount - 1) * gridSquareSize;
+	}
+
+	/**
+	 * Method that closes the file. The pages are unmapped once they are garbage collected.
+	 */
+	public void cleanUp() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param gridPositionX position relative to the heightfield, in grid squares
+	 * @param gridPositionZ position relative to the heightfield, in grid squares
+	 * @return the height of the heightfield at this position, or 0 outside of it
+	 */
+	private float getHeight(float gridPositionX, float gridPositionZ) {
+		int lastSquare = vertexCount - 1;
+		if (!(gridPositionX >= 0 && gridPositionZ >= 0 && gridPositionX < lastSquare && gridPositionZ < lastSquare)) {
+			return 0; //the point isn't on the heightfield (written so that NaN coordinates aren't either)
+		}
+		int gridX = (int) gridPositionX;
+		int gridZ = (int) gridPositionZ;
+		float xCoord = gridPositionX - gridX; //where the point is in the grid square, between 0 and 1
+		float zCoord = gridPositionZ - gridZ;
+		int page = gridZ / PAGE_ROWS;
+		ShortBuffer samples = getPage(page);
+		int topLeft = (gridZ - page * PAGE_ROWS) * vertexCount + gridX;
+		float heightTopRight = toHeight(samples.get(topLeft + 1));
+		float heightBottomLeft = toHeight(samples.get(topLeft + vertexCount));
+		if (xCoord <= 1 - zCoord) {
+			float heightTopLeft = toHeight(samples.get(topLeft));
+			return heightTopLeft + (heightTopRight - heightTopLeft) * xCoord + (heightBottomLeft - heightTopLeft) * zCoord;
+		}
+		float heightBottomRight = toHeight(samples.get(topLeft + vertexCount + 1));
+		return heightTopRight + (heightBottomRight - heightTopRight) * zCoord
+				+ (heightBottomLeft - heightBottomRight) * (1 - xCoord);
+	}
+
+	/**
+	 * @param sample 16-bit sample, as read from the file
+	 * @return the height of the sample, the same one HeightmapReader gives for it
+	 */
+	private static float toHeight(short sample) {
+		return HeightmapReader.sampleToHeight((sample & 0xffff) / MAX_SAMPLE);
+	}
+
+	/**
+	 * @param index of a page
+	 * @return the samples of the page, mapped the first time it is needed
+	 */
+	private ShortBuffer getPage(int index) {
+		ShortBuffer page = pages.get(index);
+		return page != null ? page : mapPage(index);
+	}
+
+	/**
+	 * Method that maps a page of the file: PAGE_ROWS rows, and the first row of the next page. Only one thread maps a
+	 * given page, the others waiting for it.
+	 * @param index of the page
+	 * @return the samples of the page
+	 */
+	private synchronized ShortBuffer mapPage(int index) {
+		ShortBuffer page = pages.get(index);
+		if (page != null) {
+			return page; //mapped by another thread in the meantime
+		}
+		int firstRow = index * PAGE_ROWS;
+		int rows = Math.min(PAGE_ROWS + 1, vertexCount - firstRow);
+		try {
+			page = channel.map(FileChannel.MapMode.READ_ONLY, (long) firstRow * vertexCount * 2, (long) rows * vertexCount * 2)
+					.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+		} catch (IOException e) {
+			System.err.println("Couldn't map the rows " + firstRow + " to " + (firstRow + rows) + " of a heightfield");
+			e.printStackTrace();
+			System.exit(-1);
+		}
+		pages.set(index, page);
+		return page;
+	}
+
+	private static FileChannel open(String file) {
+		try {
+			return FileChannel.open(Paths.get("res/" + file + ".raw"), StandardOpenOption.READ);
+		} catch (IOException e) {
+			System.err.println("Couldn't open the heightfield " + file);
+			e.printStackTrace();
+			System.exit(-1);
+			return null;
+		}
+	}
+
+	private static long getFileSize(FileChannel channel) {
+		try {
+			return channel.size();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+			return 0;
+		}
+	}
+
+}
@@ -1,38 +1,30 @@
 package terrains;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
-
 import models.RawModel;
 
-import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
-
 import renderEngine.Loader;
 import textures.TerrainTexture;
 import textures.TerrainTexturePack;
-import toolbox.Maths;
 
 /**
  *  Class that represents terrains. They need different rendering requirements, such as multi texturing, tiling...
  *  Therefore, we need another shader program for rendering the terrains, and a new renderer class.
  */
-public class Terrain {
+public class Terrain implements Heightfield {
 
-	private static final float SIZE = 1600;
-	private static final float MAX_HEIGHT = 40;
-	private static final float MAX_PIXEL_COLOUR = 256 * 256 * 256; //there are 3 colour channels, each one has a value between 0 and 255 (256 possibilities).
+	public static final float SIZE = 1600;
 
 	private final float x;
 	private final float z;
 	private final RawModel model;
+	private final TerrainQuadtree quadtree; //bounds of the chunks of the terrain, to choose which ones are drawn
+	private final int fullDetailTriangles;
 	private final TerrainTexturePack texturePack;
 	private final TerrainTexture blendMap;
 	
-	private float[][] heights; //we store the height of each vertex on the terrain.We have to detect the y coordinate of the terrain of each pixel.
+	private final float[] heights; //we store the height of each vertex on the terrain, row by row.We have to detect the y coordinate of the terrain of each pixel.
+	private final int vertexCount; //amount of vertices on each side of the terrain
+	private final float inverseGridSquareSize; //1 / size of each gridsquare: (a terrain is made of multiple gridsquares) = size of terrain dividied by (amount of vertices on one côté -1). -1 because if the terrain has 4 vertices, the terrain had 3 gridsquares. |1|2|3| (there are 4 |). Multiplying by it is cheaper than dividing by the size
 
 	/**
 	 * Constructor that generate the raw model ourselves.
@@ -44,11 +36,29 @@ public class Terrain {
 	 * @param heightMap required to create a terrain with hills and variations
 	 */
 	public Terrain(int gridX, int gridZ, Loader loader, TerrainTexturePack texturePack, TerrainTexture blendMap, String heightMap) {
+		this(gridX, gridZ, TerrainMesh.generate(heightMap).loadToVAO(loader), texturePack, blendMap);
+	}
+
+	/**
+	 * Constructor used when the mesh of the terrain has been generated and loaded beforehand (for example by the asset
+	 * pipeline, which generates it on a worker thread).
+	 * @param gridX
+	 * @param gridZ
+	 * @param mesh of the terrain, already loaded to a VAO
+	 * @param texturePack required for multi texturing the terrain
+	 * @param blendMap required for multi texturing the terrain
+	 */
+	public Terrain(int gridX, int gridZ, TerrainMesh mesh, TerrainTexturePack texturePack, TerrainTexture blendMap) {
 		this.texturePack = texturePack;
 		this.blendMap = blendMap;
 		this.x = gridX * SIZE;
 		this.z = gridZ * SIZE;
-		this.model = generateTerrain(loader, heightMap);
+		this.model = mesh.getModel();
+		this.heights = mesh.getHeights();
+		this.vertexCount = mesh.getVertexCount();
+		this.inverseGridSquareSize = (vertexCount - 1) / SIZE;
+		this.quadtree = mesh.getQuadtree();
+		this.fullDetailTriangles = mesh.getFullDetailTriangles();
 	}
 
 	public float getX() {
@@ -63,6 +73,17 @@ public class Terrain {
 		return model;
 	}
 
+	public TerrainQuadtree getQuadtree() {
+		return quadtree;
+	}
+
+	/**
+	 * @return the amount of triangles the terrain would have if every chunk was drawn at full detail
+	 */
+	public int getFullDetailTriangles() {
+		return fullDetailTriangles;
+	}
+
 	public TerrainTexturePack getTexturePack() {
 		return texturePack;
 	}
@@ -73,168 +94,88 @@ public class Terrain {
 
 	/**
 	 * Method that finds the height of the terrain for any x or z coordinates with the barrycentric equation used to
-	 * interpolate Y coordinates for which we don't have a number for in the height map.
+	 * interpolate Y coordinates for which we don't have a number for in the height map. Each grid square is made of 2
+	 * triangles, and the height is interpolated on the plane of the triangle the point is in. It doesn't allocate
+	 * anything, so it can be called for every entity at every frame.
 	 * @param worldX X coordinate
 	 * @param worldZ Z coordinate
-	 * @return Y coordinate
+	 * @return Y coordinate, or 0 outside of the terrain
 	 */
-	
-    public float getHeightOfTerrain(float worldX, float worldZ) {
-        float terrainX = worldX - this.x; //we convert the world coord into a position relative to the terrain
-        float terrainZ = worldZ - this.z;
-        float gridSquareSize = SIZE / ((float) heights.length - 1); //Calculate the size of each gridsquare: (a terrain is made of multiple gridsquares) = size of terrain dividied by (amount of vertices on one côté -1). -1 because if the terrain has 4 vertices, the terrain had 3 gridsquares. |1|2|3| (there are 4 |)
-        int gridX = (int) Math.floor(terrainX / gridSquareSize); //we find out which grid square the x coordinate is in
-        int gridZ = (int) Math.floor(terrainZ / gridSquareSize);//we find out which grid squar	e the x coordinate is in
-         
-        if(gridX >= heights.length - 1 || gridZ >= heights.length - 1 || gridX < 0 || gridZ < 0) {
-			//we test if the grid square is actually correct. if it's on the terrain, if it's not too big, if it's not on the edge of the terrain to the right or the bottom, to the left/above the terrain
-            return 0; //if so, we exit
-        }
-         
-        float xCoord = (terrainX % gridSquareSize)/gridSquareSize; //now that we found in which grid square the player is, we have to find out where in the grid square the player is. For this, we retrieve the distance of the player from the top left corner
-        float zCoord = (terrainZ % gridSquareSize)/gridSquareSize; //divide by gridsquaresize to obtain a coordinate between 0 and 1.
-        float answer; //where the player is in the square
-         
-        if (xCoord <= (1-zCoord)) {
-            answer = Maths.barryCentric(new Vector3f(0, heights[gridX][gridZ], 0), new Vector3f(1,
-                            heights[gridX + 1][gridZ], 0), new Vector3f(0,
-                            heights[gridX][gridZ + 1], 1), new Vector2f(xCoord, zCoord));
-        } else {
-            answer = Maths.barryCentric(new Vector3f(1, heights[gridX + 1][gridZ], 0), new Vector3f(1,
-                            heights[gridX + 1][gridZ + 1], 1), new Vector3f(0,
-                            heights[gridX][gridZ + 1], 1), new Vector2f(xCoord, zCoord));
-        }
-         
-        return answer;
-    }
+	@Override
+	public float getHeightOfTerrain(float worldX, float worldZ) {
+		return getHeight(heights, vertexCount, (worldX - this.x) * inverseGridSquareSize,
+				(worldZ - this.z) * inverseGridSquareSize); //we convert the world coord into a position relative to the terrain, in grid squares
+	}
 
 	/**
-	 * Method that allows reconstructing normal, texture coodinates and vertices lists of the terrain and pass it to the
-	 * VAO.
-	 * @param loader required to pass objects to the VAO
-	 * @param file path of the heightmap
-	 * @return raw model of the terrain after it got loaded to the VAO.
+	 * Method that finds the height of the terrain for many points at once, for example to place a lot of entities or
+	 * particles. Points outside of the terrain get a height of 0. Everything that doesn't depend on the point (the
+	 * fields of the terrain, the offset of the terrain in grid squares, its bounds) is worked out once, before going
+	 * through the points, and the heights are read from the array directly. The triangle of the grid square is chosen
+	 * without a branch, which random points would mispredict half of the time: the height is interpolated from the
+	 * height of the plane of the triangle above the top left corner of the square, which is the corner itself for the
+	 * first triangle, and is moved by (int) (xCoord + zCoord), 0 or 1, for the second one.
+	 * @param worldX X coordinates of the points
+	 * @param worldZ Z coordinates of the points
+	 * @param heights in which the height of each point is stored, at the same index as its coordinates
+	 * @param count amount of points, from the start of the arrays
 	 */
-	private RawModel generateTerrain(Loader loader, String file) {
-		
-		BufferedImage heightmap = null;
-		try {
-			heightmap = ImageIO.read(new File("res/" + file + ".png"));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		assert heightmap != null;
-		int VERTEX_COUNT = heightmap.getHeight();
-
-		int count = VERTEX_COUNT * VERTEX_COUNT;
-		heights = new float[VERTEX_COUNT][VERTEX_COUNT];
-		float[] vertices = new float[count * 3];
-		float[] normals = new float[count * 3];
-		float[] textureCoords = new float[count * 2];
-		int[] indices = new int[6 * (VERTEX_COUNT - 1) * (VERTEX_COUNT)];
-		int vertexPointer = 0;
-		for (int i = 0; i < VERTEX_COUNT; i++) {
-			for (int j = 0; j < VERTEX_COUNT; j++) {
-				vertexPointer = updateNormalsAndTextCoords(heightmap, (float) VERTEX_COUNT, vertices, normals, textureCoords, vertexPointer, i, j);
+	@Override
+	public void getHeightsOfTerrain(float[] worldX, float[] worldZ, float[] heights, int count) {
+		float[] terrainHeights = this.heights;
+		int vertexCount = this.vertexCount;
+		float inverseGridSquareSize = this.inverseGridSquareSize;
+		float offsetX = this.x * inverseGridSquareSize; //position of the terrain in grid squares, so that a point only takes a multiplication and a subtraction
+		float offsetZ = this.z * inverseGridSquareSize;
+		float lastSquare = vertexCount - 1;
+		for (int i = 0; i < count; i++) {
+			float gridPositionX = worldX[i] * inverseGridSquareSize - offsetX;
+			float gridPositionZ = worldZ[i] * inverseGridSquareSize - offsetZ;
+			if (!(gridPositionX >= 0 && gridPositionZ >= 0 && gridPositionX < lastSquare && gridPositionZ < lastSquare)) {
+				heights[i] = 0; //the point isn't on the terrain (written so that NaN coordinates aren't either)
+				continue;
 			}
+			int gridX = (int) gridPositionX;
+			int gridZ = (int) gridPositionZ;
+			float xCoord = gridPositionX - gridX;
+			float zCoord = gridPositionZ - gridZ;
+			int topLeft = gridZ * vertexCount + gridX;
+			float heightTopLeft = terrainHeights[topLeft];
+			float heightTopRight = terrainHeights[topLeft + 1];
+			float heightBottomLeft = terrainHeights[topLeft + vertexCount];
+			float heightBottomRight = terrainHeights[topLeft + vertexCount + 1];
+			float origin = heightTopLeft + (int) (xCoord + zCoord)
+					* (heightTopRight + heightBottomLeft - heightBottomRight - heightTopLeft); //height of the plane of the triangle above the top left corner
+			heights[i] = origin + (heightTopRight - origin) * xCoord + (heightBottomLeft - origin) * zCoord;
 		}
-		int pointer = 0;
-		for (int gz = 0; gz < VERTEX_COUNT - 1; gz++) {
-			for (int gx = 0; gx < VERTEX_COUNT - 1; gx++) {
-				pointer = updateIndices(VERTEX_COUNT, indices, pointer, gz, gx);
-			}
-		}
-		return loader.loadToVAO(vertices, textureCoords, normals, indices);
-	}
-
-	/**
-	 * Method that allows to update indices for the currently processed terrain.
-	 * @param VERTEX_COUNT amount of vertexes in the object
-	 * @param indices list of indices
-	 * @param pointer where the appending should continue in the list
-	 * @param gz z coordinate
-	 * @param gx x coordinate
-	 * @return where the appending should continue in the list
-	 */
-	private static int updateIndices(int VERTEX_COUNT, int[] indices, int pointer, int gz, int gx) {
-		int topLeft = (gz * VERTEX_COUNT) + gx;
-		int topRight = topLeft + 1;
-		int bottomLeft = ((gz + 1) * VERTEX_COUNT) + gx;
-		int bottomRight = bottomLeft + 1;
-		indices[pointer++] = topLeft;
-		indices[pointer++] = bottomLeft;
-		indices[pointer++] = topRight;
-
-		indices[pointer++] = topRight;
-		indices[pointer++] = bottomLeft;
-		indices[pointer++] = bottomRight;
-		return pointer;
-	}
-
-	/**
-	 * Method that allows to reconstruct vertices, normals and texture coordinates lists in the right order, upon
-	 * loading a terrain.
-	 * @param heightmap taken into consideration to know the y position of vertices and calculate the normals
-	 * @param VERTEX_COUNT amount of vertices in the object
-	 * @param vertices list of all the vertices in the object
-	 * @param normals list of normals affecting the object
-	 * @param textureCoords of the object
-	 * @param vertexPointer pointer used to know where to add vertexes in the lists
-	 * @param i number of the vertex we are currently processing
-	 * @param j number of the vertex we are currently processing
-	 * @return the position where the appending in the lists should continue
-	 */
-	private int updateNormalsAndTextCoords(BufferedImage heightmap, float VERTEX_COUNT, float[] vertices, float[] normals, float[] textureCoords, int vertexPointer, int i, int j) {
-		vertices[vertexPointer * 3] = (float) j / (VERTEX_COUNT - 1) * SIZE;
-		float height = getHeight(j, i, heightmap);
-		vertices[vertexPointer * 3 + 1] = height;
-		heights[j][i] = height;
-		vertices[vertexPointer * 3 + 2] = (float) i / (VERTEX_COUNT - 1) * SIZE;
-		Vector3f normal = calculateNormal(j, i, heightmap);
-		normals[vertexPointer * 3] = normal.x;
-		normals[vertexPointer * 3 + 1] = normal.y;
-		normals[vertexPointer * 3 + 2] = normal.z;
-		textureCoords[vertexPointer * 2] = (float) j / (VERTEX_COUNT - 1);
-		textureCoords[vertexPointer * 2 + 1] = (float) i / (VERTEX_COUNT - 1);
-		vertexPointer++;
-		return vertexPointer;
 	}
 
 	/**
-	 * Method that computes the normal vector for a specified vertex.
-	 * @param x coordinate of the vertex we want to calculate the normal for
-	 * @param z coordinate of the vertex we want to calculate the normal for
-	 * @param heightmap map containing all the heights across the terrain
-	 * @return normal vector for the specified vertex
+	 * @param heights of the vertices of the terrain, row by row
+	 * @param vertexCount amount of vertices on each side of the terrain
+	 * @param gridPositionX position relative to the terrain, in grid squares
+	 * @param gridPositionZ position relative to the terrain, in grid squares
+	 * @return the height of the terrain at this position, or 0 outside of the terrain
 	 */
-	private Vector3f calculateNormal(int x, int z, BufferedImage heightmap){
-		float heightL = getHeight(x-1, z, heightmap); //to calculate the normal, we have to calculate the height of all the neighbour vertices.
-		float heightR = getHeight(x+1, z, heightmap);
-		float heightD = getHeight(x, z-1, heightmap);
-		float heightU = getHeight(x, z+1, heightmap);
-		Vector3f normal = new Vector3f(heightL-heightR, 2f, heightD - heightU);
-		normal.normalise();
-		return normal;
-	}
-
-	/**
-	 *
-	 * @param x coordinate of the pixel on the terrain
-	 * @param z coordinate of the pixel on the terrain
-	 * @param heightmap containing all the heights across the terrain
-	 * @return height of a certain pixel on the mam
-	 */
-	private float getHeight(int x, int z, BufferedImage heightmap){
-		if(x<0 || x>=heightmap.getHeight() || z<0 || z>=heightmap.getHeight()){
-			//check if the coord is in range and lies on the height map. If so, we're out of bounds
-			return 0;
+	private static float getHeight(float[] heights, int vertexCount, float gridPositionX, float gridPositionZ) {
+		int lastSquare = vertexCount - 1;
+		if (!(gridPositionX >= 0 && gridPositionZ >= 0 && gridPositionX < lastSquare && gridPositionZ < lastSquare)) {
+			return 0; //the point isn't on the terrain (written so that NaN coordinates aren't either)
 		}
-		float height = heightmap.getRGB(x, z); //if we're in range, we get the pixel colour of the height map, and we retrieve a value representing the colour of the pixel, which we will have to convert into a height value
-		height += MAX_PIXEL_COLOUR/2f; //we divide by 2 to make sure the height is reasonable
-		height /= MAX_PIXEL_COLOUR/2f;  //We do this to obtain a value between 1 and -1
-		height *= MAX_HEIGHT;  //we convert the height to a value between maxheight and -maxheight
-		return height;
+		int gridX = (int) gridPositionX; //we find out which grid square the coordinates are in, rounding down as they're positive
+		int gridZ = (int) gridPositionZ;
+		float xCoord = gridPositionX - gridX; //where the point is in the grid square, between 0 and 1
+		float zCoord = gridPositionZ - gridZ;
+		int topLeft = gridZ * vertexCount + gridX;
+		float heightTopRight = heights[topLeft + 1];
+		float heightBottomLeft = heights[topLeft + vertexCount];
+		if (xCoord <= 1 - zCoord) {
+			float heightTopLeft = heights[topLeft];
+			return heightTopLeft + (heightTopRight - heightTopLeft) * xCoord + (heightBottomLeft - heightTopLeft) * zCoord;
+		}
+		float heightBottomRight = heights[topLeft + vertexCount + 1];
+		return heightTopRight + (heightBottomRight - heightTopRight) * zCoord
+				+ (heightBottomLeft - heightBottomRight) * (1 - xCoord);
 	}
 
-	
 }
@@ -0,0 +1,146 @@
+package terrains;
+
+import java.nio.ShortBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+import renderEngine.Loader;
+
+/**
+ * Class that holds the levels of detail of the terrain chunks (geomipmapping). Every chunk is a square of CHUNK_QUADS
+ * by CHUNK_QUADS quads, whose vertices are stored in the same order in the VBO of its terrain (see TerrainMesh): the
+ * grid of vertices row by row, followed by the vertices of its skirt. Each level of detail only uses one vertex out
+ * of 2^level on each side, so the indices of a level are the same for every chunk of every terrain, and a single index
+ * buffer holding all the levels is shared by all of them: a chunk is drawn by choosing the part of the buffer of its
+ * level, starting from its first vertex.
+ * Two neighbour chunks drawn at different levels don't have the same vertices along their common edge, which opens
+ * cracks between them. The skirt of a chunk, a strip of triangles hanging down from its edges, fills these cracks.
+ */
+public class TerrainLod {
+
+	public static final int CHUNK_QUADS = 32; //quads on each side of a chunk, a power of 2 so that every level divides it
+	public static final int LEVELS = 6; //the last level draws a chunk with 2 triangles
+	static final int CHUNK_SIDE = CHUNK_QUADS + 1; //vertices on each side of a chunk
+	static final int SKIRT_VERTICES = 4 * CHUNK_SIDE; //a copy of the vertices of each edge, lowered by the skirt depth
+	public static final int VERTICES_PER_CHUNK = CHUNK_SIDE * CHUNK_SIDE + SKIRT_VERTICES;
+	public static final int INDEX_TYPE = GL11.GL_UNSIGNED_SHORT; //a chunk has less than 65536 vertices
+
+	private static final int[] indexOffsets = new int[LEVELS]; //first index of each level in the shared buffer
+	private static final int[] indexCounts = new int[LEVELS];
+	private static final short[] indices = createIndices();
+	private static int indexBuffer;
+
+	/**
+	 * @param level of detail
+	 * @return the amount of indices drawn for a chunk at this level
+	 */
+	public static int getIndexCount(int level) {
+		return indexCounts[level];
+	}
+
+	/**
+	 * @param level of detail
+	 * @return where the indices of the level start in the shared index buffer, in bytes
+	 */
+	public static long getIndexOffset(int level) {
+		return indexOffsets[level] * 2L;
+	}
+
+	/**
+	 * Method that gives the index buffer shared by all the terrains, created the first time a terrain is loaded to a
+	 * VAO. It belongs to the loader that created it.
+	 * @param loader used to create the buffer
+	 * @return the id of the index buffer
+	 */
+	public static int getIndexBuffer(Loader loader) {
+		if (indexBuffer == 0) {
+			ShortBuffer buffer = BufferUtils.createShortBuffer(indices.length);
+			buffer.put(indices);
+			buffer.flip();
+			indexBuffer = loader.loadIndexBuffer(buffer);
+		}
+		return indexBuffer;
+	}
+
+	/**
+	 * @param edge of the chunk: 0 for the top one (z = 0), 1 for the bottom one, 2 for the left one (x = 0), 3 for the
+	 * right one
+	 * @param k position of the vertex along the edge
+	 * @return the index of the vertex of the grid of the chunk at this position of the edge
+	 */
+	static int getEdgeVertex(int edge, int k) {
+		switch (edge) {
+		case 0:
+			return k;
+		case 1:
+			return CHUNK_QUADS * CHUNK_SIDE + k;
+		case 2:
+			return k * CHUNK_SIDE;
+		default:
+			return k * CHUNK_SIDE + CHUNK_QUADS;
+		}
+	}
+
+	/**
+	 * @param edge of the chunk
+	 * @param k position of the vertex along the edge
+	 * @return the index of the vertex of the skirt under this vertex of the edge
+	 */
+	static int getSkirtVertex(int edge, int k) {
+		return CHUNK_SIDE * CHUNK_SIDE + edge * CHUNK_SIDE + k;
+	}
+
+	/**
+	 * Method that creates the indices of every level, one after the other. A level whose step is 2^level has
+	 * (CHUNK_QUADS / step)² quads, made of 2 triangles in the same order as the triangles of the full terrain, and a
+	 * quad of skirt under each of these quads along the edges. The skirt quads are drawn on both sides, as a crack can
+	 * be seen from either side of the edge.
+	 * @return the indices of all the levels
+	 */
+	private static short[] createIndices() {
+		int total = 0;
+		for (int level = 0; level < LEVELS; level++) {
+			int quads = CHUNK_QUADS >> level;
+			indexOffsets[level] = total;
+			indexCounts[level] = quads * quads * 6 + 4 * quads * 12;
+			total += indexCounts[level];
+		}
+		short[] indices = new short[total];
+		int pointer = 0;
+		for (int level = 0; level < LEVELS; level++) {
+			int step = 1 << level;
+			for (int z = 0; z < CHUNK_QUADS; z += step) {
+				for (int x = 0; x < CHUNK_QUADS; x += step) {
+					int topLeft = z * CHUNK_SIDE + x;
+					int topRight = topLeft + step;
+					int bottomLeft = (z + step) * CHUNK_SIDE + x;
+					int bottomRight = bottomLeft + step;
+					pointer = putTriangle(indices, pointer, topLeft, bottomLeft, topRight);
+					pointer = putTriangle(indices, pointer, topRight, bottomLeft, bottomRight);
+				}
+			}
+			for (int edge = 0; edge < 4; edge++) {
+				for (int k = 0; k < CHUNK_QUADS; k += step) {
+					int a = getEdgeVertex(edge, k);
+					int b = getEdgeVertex(edge, k + step);
+					int skirtA = getSkirtVertex(edge, k);
+					int skirtB = getSkirtVertex(edge, k + step);
+					pointer = putTriangle(indices, pointer, a, skirtA, b);
+					pointer = putTriangle(indices, pointer, b, skirtA, skirtB);
+					pointer = putTriangle(indices, pointer, a, b, skirtA);
+					pointer = putTriangle(indices, pointer, b, skirtB, skirtA);
+				}
+			}
+		}
+		return indices;
+	}
+
+	private static int putTriangle(short[] indices, int pointer, int a, int b, int c) {
+		indices[pointer++] = (short) a;
+		indices[pointer++] = (short) b;
+		indices[pointer++] = (short) c;
+		return pointer;
+	}
+
+}
@@ -0,0 +1,259 @@
+package terrains;
+
+import java.nio.FloatBuffer;
+import java.util.stream.IntStream;
+
+import models.BoundingVolume;
+import models.RawModel;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.util.vector.Vector3f;
+
+import renderEngine.Loader;
+
+/**
+ * Class that contains the mesh of a terrain generated from a height map, split in chunks (see TerrainLod): the
+ * interleaved vertices of every chunk and its skirt, which will be loaded to a VAO, the quadtree of the bounds of the
+ * chunks, as well as the height of every vertex, which the terrain keeps to know the height of any point on it.
+ * Generating the mesh and loading it to a VAO are done separately, so that the first step can be done by a worker
+ * thread. The indices are the ones shared by every terrain.
+ */
+public class TerrainMesh {
+
+	private static final float SKIRT_DEPTH = 10; //how far the skirts hang under the edges of the chunks, more than the height a coarser level can miss
+
+	private final FloatBuffer vertices;
+	private final BoundingVolume bounds;
+	private final float[] heights; //row by row: the height of the vertex (x, z) is at z * vertexCount + x
+	private final int vertexCount;
+	private final TerrainQuadtree quadtree;
+	private final int fullDetailTriangles;
+	private long buildTime;
+	private RawModel model;
+
+	private TerrainMesh(FloatBuffer vertices, BoundingVolume bounds, float[] heights, int vertexCount,
+			TerrainQuadtree quadtree, int fullDetailTriangles) {
+		this.vertices = vertices;
+		this.bounds = bounds;
+		this.heights = heights;
+		this.vertexCount = vertexCount;
+		this.quadtree = quadtree;
+		this.fullDetailTriangles = fullDetailTriangles;
+	}
+
+	/**
+	 * Method that loads the mesh to a VAO, which reads the index buffer shared by the terrains. It has to be called
+	 * from the render thread.
+	 * @param loader required to pass objects to the VAO
+	 * @return this mesh, now holding the raw model of the terrain
+	 */
+	public TerrainMesh loadToVAO(Loader loader) {
+		model = loader.loadToVAO(vertices, TerrainLod.getIndexBuffer(loader), TerrainLod.INDEX_TYPE, bounds);
+		return this;
+	}
+
+	/**
+	 * @return the raw model of the terrain, or null if the mesh hasn't been loaded to a VAO yet
+	 */
+	public RawModel getModel() {
+		return model;
+	}
+
+	/**
+	 * @return the height of every vertex, row by row
+	 */
+	public float[] getHeights() {
+		return heights;
+	}
+
+	/**
+	 * @return amount of vertices on each side of the terrain
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	public TerrainQuadtree getQuadtree() {
+		return quadtree;
+	}
+
+	/**
+	 * @return the time it took to build the mesh from the heights, in nanoseconds
+	 */
+	public long getBuildTime() {
+		return buildTime;
+	}
+
+	/**
+	 * @return the amount of triangles of the terrain at full detail, without the skirts
+	 */
+	public int getFullDetailTriangles() {
+		return fullDetailTriangles;
+	}
+
+	/**
+	 * Method that allows reconstructing normal, texture coodinates and vertices lists of the terrain from a height map
+	 * (see HeightmapReader for the formats it can be read from). It doesn't use openGL, so it can be called from any
+	 * thread.
+	 * @param file name of the heightmap in the res folder, without extension
+	 * @return the mesh of the terrain, which still has to be loaded to a VAO
+	 */
+	public static TerrainMesh generate(String file) {
+		float[] heights = HeightmapReader.read(file);
+		return generate(heights, (int) Math.sqrt(heights.length));
+	}
+
+	/**
+	 * Method that builds the mesh of a terrain from the height of each of its vertices, however they were obtained.
+	 * The normals of every vertex are computed first, then the vertices of each chunk are copied from the heights and
+	 * normals, both in parallel by bands of rows. It doesn't use openGL, so it can be called from any thread.
+	 * @param heights of the vertices, row by row, which the mesh keeps
+	 * @param VERTEX_COUNT amount of vertices on each side of the terrain
+	 * @return the mesh of the terrain, which still has to be loaded to a VAO
+	 */
+	public static TerrainMesh generate(float[] heights, int VERTEX_COUNT) {
+		long start = System.nanoTime();
+		float[] normals = new float[VERTEX_COUNT * VERTEX_COUNT * 3];
+		HeightmapReader.forEachBand(VERTEX_COUNT, (first, last) -> {
+			for (int z = first; z < last; z++) {
+				for (int x = 0; x < VERTEX_COUNT; x++) {
+					calculateNormal(x, z, heights, VERTEX_COUNT, normals);
+				}
+			}
+		});
+		TerrainMesh mesh = createChunks(heights, normals, VERTEX_COUNT);
+		mesh.buildTime = System.nanoTime() - start;
+		return mesh;
+	}
+
+	/**
+	 * Method that splits the terrain in chunks of TerrainLod.CHUNK_QUADS quads. The last chunks of a row or column go
+	 * past the edge of the height map when its amount of quads isn't a multiple of the size of a chunk: their vertices
+	 * are clamped to the edge, which only adds flat triangles. Each chunk is followed by its skirt, a copy of the
+	 * vertices of its edges lowered by SKIRT_DEPTH.
+	 * @param heights of each vertex of the terrain, row by row
+	 * @param normals of each vertex of the terrain, row by row
+	 * @param VERTEX_COUNT amount of vertices on each side of the terrain
+	 * @return the mesh of the terrain
+	 */
+	private static TerrainMesh createChunks(float[] heights, float[] normals, int VERTEX_COUNT) {
+		int quads = VERTEX_COUNT - 1;
+		int chunksPerSide = (quads + TerrainLod.CHUNK_QUADS - 1) / TerrainLod.CHUNK_QUADS;
+		int chunkCount = chunksPerSide * chunksPerSide;
+		FloatBuffer vertices = BufferUtils.createFloatBuffer(chunkCount * TerrainLod.VERTICES_PER_CHUNK * Loader.VERTEX_SIZE);
+		float[] chunkMinHeights = new float[chunkCount];
+		float[] chunkMaxHeights = new float[chunkCount];
+		IntStream.range(0, chunksPerSide).parallel().forEach(cz -> {
+			FloatBuffer row = vertices.duplicate(); //each row of chunks writes its own part of the buffer, through its own position
+			row.position(cz * chunksPerSide * TerrainLod.VERTICES_PER_CHUNK * Loader.VERTEX_SIZE);
+			float[] chunk = new float[TerrainLod.VERTICES_PER_CHUNK * Loader.VERTEX_SIZE]; //a chunk is built in an array, then copied to the buffer at once
+			for (int cx = 0; cx < chunksPerSide; cx++) {
+				int pointer = 0;
+				int firstX = cx * TerrainLod.CHUNK_QUADS;
+				int firstZ = cz * TerrainLod.CHUNK_QUADS;
+				float minHeight = Float.POSITIVE_INFINITY;
+				float maxHeight = Float.NEGATIVE_INFINITY;
+				for (int z = 0; z < TerrainLod.CHUNK_SIDE; z++) {
+					for (int x = 0; x < TerrainLod.CHUNK_SIDE; x++) {
+						int gx = Math.min(firstX + x, quads);
+						int gz = Math.min(firstZ + z, quads);
+						pointer = putVertex(chunk, pointer, heights, normals, VERTEX_COUNT, gx, gz, 0);
+						float height = heights[gz * VERTEX_COUNT + gx];
+						minHeight = Math.min(minHeight, height);
+						maxHeight = Math.max(maxHeight, height);
+					}
+				}
+				for (int edge = 0; edge < 4; edge++) {
+					for (int k = 0; k < TerrainLod.CHUNK_SIDE; k++) {
+						int vertex = TerrainLod.getEdgeVertex(edge, k); //the skirt vertices follow the same order as TerrainLod.getSkirtVertex
+						int gx = Math.min(firstX + vertex % TerrainLod.CHUNK_SIDE, quads);
+						int gz = Math.min(firstZ + vertex / TerrainLod.CHUNK_SIDE, quads);
+						pointer = putVertex(chunk, pointer, heights, normals, VERTEX_COUNT, gx, gz, SKIRT_DEPTH);
+					}
+				}
+				row.put(chunk);
+				chunkMinHeights[cz * chunksPerSide + cx] = minHeight - SKIRT_DEPTH; //the skirt hangs under the chunk, and can be all that is seen of it
+				chunkMaxHeights[cz * chunksPerSide + cx] = maxHeight;
+			}
+		});
+		vertices.position(0); //filled through duplicates, so its own position never moved
+		float minHeight = Float.POSITIVE_INFINITY;
+		float maxHeight = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < chunkCount; i++) {
+			minHeight = Math.min(minHeight, chunkMinHeights[i]);
+			maxHeight = Math.max(maxHeight, chunkMaxHeights[i]);
+		}
+		float highest = Math.max(Math.abs(minHeight), Math.abs(maxHeight));
+		BoundingVolume bounds = new BoundingVolume(new Vector3f(0, minHeight, 0), new Vector3f(Terrain.SIZE, maxHeight,
+				Terrain.SIZE), (float) Math.sqrt(2 * Terrain.SIZE * Terrain.SIZE + highest * highest));
+		float chunkSize = Terrain.SIZE / quads * TerrainLod.CHUNK_QUADS;
+		TerrainQuadtree quadtree = new TerrainQuadtree(chunksPerSide, chunkSize, Terrain.SIZE, chunkMinHeights,
+				chunkMaxHeights);
+		return new TerrainMesh(vertices, bounds, heights, VERTEX_COUNT, quadtree, quads * quads * 2);
+	}
+
+	/**
+	 * Method that adds a vertex of the height map to the interleaved vertices of a chunk: its position, texture
+	 * coordinates and normal.
+	 * @param vertices of the chunk, in which the vertex is added
+	 * @param pointer position in the vertices where the vertex has to be stored
+	 * @param heights of each vertex of the terrain, row by row
+	 * @param normals of each vertex of the terrain, row by row
+	 * @param VERTEX_COUNT amount of vertices on each side of the terrain
+	 * @param gx x coordinate of the vertex in the height map
+	 * @param gz z coordinate of the vertex in the height map
+	 * @param depth how far under the terrain the vertex is moved, 0 except for the skirts
+	 * @return the position where the next vertex has to be stored
+	 */
+	private static int putVertex(float[] vertices, int pointer, float[] heights, float[] normals, int VERTEX_COUNT,
+			int gx, int gz, float depth) {
+		float quads = VERTEX_COUNT - 1;
+		int index = gz * VERTEX_COUNT + gx;
+		vertices[pointer++] = gx / quads * Terrain.SIZE;
+		vertices[pointer++] = heights[index] - depth;
+		vertices[pointer++] = gz / quads * Terrain.SIZE;
+		vertices[pointer++] = gx / quads;
+		vertices[pointer++] = gz / quads;
+		vertices[pointer++] = normals[index * 3];
+		vertices[pointer++] = normals[index * 3 + 1];
+		vertices[pointer++] = normals[index * 3 + 2];
+		return pointer;
+	}
+
+	/**
+	 * Method that computes the normal vector for a specified vertex.
+	 * @param x coordinate of the vertex we want to calculate the normal for
+	 * @param z coordinate of the vertex we want to calculate the normal for
+	 * @param heights of all the vertices of the terrain, row by row
+	 * @param VERTEX_COUNT amount of vertices on each side of the terrain
+	 * @param normals in which the normal of the vertex is stored
+	 */
+	private static void calculateNormal(int x, int z, float[] heights, int VERTEX_COUNT, float[] normals){
+		float heightL = getHeight(x-1, z, heights, VERTEX_COUNT); //to calculate the normal, we have to calculate the height of all the neighbour vertices.
+		float heightR = getHeight(x+1, z, heights, VERTEX_COUNT);
+		float heightD = getHeight(x, z-1, heights, VERTEX_COUNT);
+		float heightU = getHeight(x, z+1, heights, VERTEX_COUNT);
+		float normalX = heightL - heightR;
+		float normalZ = heightD - heightU;
+		float length = (float) Math.sqrt(normalX * normalX + 4 + normalZ * normalZ); //the normal is (normalX, 2, normalZ), normalised
+		int pointer = (z * VERTEX_COUNT + x) * 3;
+		normals[pointer] = normalX / length;
+		normals[pointer + 1] = 2 / length;
+		normals[pointer + 2] = normalZ / length;
+	}
+
+	/**
+	 * @param x coordinate of the vertex
+	 * @param z coordinate of the vertex
+	 * @param heights of all the vertices of the terrain, row by row
+	 * @param VERTEX_COUNT amount of vertices on each side of the terrain
+	 * @return the height of the vertex, or 0 outside of the terrain, like the pixels outside of the height map
+	 */
+	private static float getHeight(int x, int z, float[] heights, int VERTEX_COUNT) {
+		if (x < 0 || x >= VERTEX_COUNT || z < 0 || z >= VERTEX_COUNT) {
+			return 0;
+		}
+		return heights[z * VERTEX_COUNT + x];
+	}
+
+}
@@ -0,0 +1,172 @@
+package terrains;
+
+import java.util.Arrays;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import toolbox.Frustum;
+
+/**
+ * Class that holds the bounds of the chunks of a terrain in a quadtree, to choose every frame which chunks are drawn
+ * and at which level of detail. The leaves are the chunks; each node above them covers 2 by 2 nodes of the level
+ * under it, and keeps the lowest and highest heights of the chunks it covers. A node that is outside of the frustum is
+ * skipped with all the chunks under it, so culling doesn't test every chunk of a big terrain.
+ * The nodes of a level are stored in a grid, like the levels of a mipmap: the grid of the leaves is rounded up to a
+ * power of 2, and the nodes that cover no chunk are empty.
+ */
+public class TerrainQuadtree {
+
+	private static final float LOD_DISTANCE = 100; //chunks closer than this are drawn at full detail, the distance doubles for each level after that
+
+	private final int chunksPerSide;
+	private final float chunkSize; //size of a chunk in the world
+	private final float terrainSize;
+	private final int leafSide; //side of the grid of the first level, the grid of each level being half as big as the one under it
+	private final float[][] minHeights; //one grid per level of the tree, the first one for the chunks
+	private final float[][] maxHeights;
+
+	private int[] selectedChunks = new int[64];
+	private int[] selectedLevels = new int[64];
+	private int selectedCount;
+
+	/**
+	 * Constructor that builds the levels of the tree from the heights of the chunks.
+	 * @param chunksPerSide amount of chunks on each side of the terrain
+	 * @param chunkSize size of a chunk in the world
+	 * @param terrainSize size of the terrain in the world, the last chunks being cut by its edge
+	 * @param chunkMinHeights lowest height of each chunk, row by row, bottom of its skirt included
+	 * @param chunkMaxHeights highest height of each chunk, row by row
+	 */
+	public TerrainQuadtree(int chunksPerSide, float chunkSize, float terrainSize, float[] chunkMinHeights,
+			float[] chunkMaxHeights) {
+		this.chunksPerSide = chunksPerSide;
+		this.chunkSize = chunkSize;
+		this.terrainSize = terrainSize;
+		int side = 1; //side of the grid of leaves, rounded up to a power of 2
+		while (side < chunksPerSide) {
+			side <<= 1;
+		}
+		leafSide = side;
+		int levels = Integer.numberOfTrailingZeros(side) + 1;
+		minHeights = new float[levels][];
+		maxHeights = new float[levels][];
+		minHeights[0] = new float[side * side];
+		maxHeights[0] = new float[side * side];
+		Arrays.fill(minHeights[0], Float.POSITIVE_INFINITY); //empty nodes have a lowest height above their highest one
+		Arrays.fill(maxHeights[0], Float.NEGATIVE_INFINITY);
+		for (int z = 0; z < chunksPerSide; z++) {
+			for (int x = 0; x < chunksPerSide; x++) {
+				minHeights[0][z * side + x] = chunkMinHeights[z * chunksPerSide + x];
+				maxHeights[0][z * side + x] = chunkMaxHeights[z * chunksPerSide + x];
+			}
+		}
+		for (int level = 1; level < levels; level++) {
+			int childSide = side >> (level - 1);
+			int levelSide = childSide >> 1;
+			minHeights[level] = new float[levelSide * levelSide];
+			maxHeights[level] = new float[levelSide * levelSide];
+			for (int z = 0; z < levelSide; z++) {
+				for (int x = 0; x < levelSide; x++) {
+					int child = (z * 2) * childSide + x * 2;
+					minHeights[level][z * levelSide + x] = Math.min(
+							Math.min(minHeights[level - 1][child], minHeights[level - 1][child + 1]),
+							Math.min(minHeights[level - 1][child + childSide], minHeights[level - 1][child + childSide + 1]));
+					maxHeights[level][z * levelSide + x] = Math.max(
+							Math.max(maxHeights[level - 1][child], maxHeights[level - 1][child + 1]),
+							Math.max(maxHeights[level - 1][child + childSide], maxHeights[level - 1][child + childSide + 1]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method that selects the chunks of the terrain that are inside the frustum, and the level of detail each one is
+	 * drawn at, which depends on its distance to the camera.
+	 * @param frustum of the camera
+	 * @param cameraPosition position of the camera
+	 * @param terrainX position of the terrain in the world
+	 * @param terrainZ position of the terrain in the world
+	 * @return the amount of selected chunks
+	 */
+	public int select(Frustum frustum, Vector3f cameraPosition, float terrainX, float terrainZ) {
+		selectedCount = 0;
+		selectNode(minHeights.length - 1, 0, 0, frustum, cameraPosition, terrainX, terrainZ);
+		return selectedCount;
+	}
+
+	/**
+	 * @param index of a chunk selected during the last call to select
+	 * @return the number of the chunk in the terrain, row by row
+	 */
+	public int getSelectedChunk(int index) {
+		return selectedChunks[index];
+	}
+
+	/**
+	 * @param index of a chunk selected during the last call to select
+	 * @return the level of detail the chunk is drawn at
+	 */
+	public int getSelectedLevel(int index) {
+		return selectedLevels[index];
+	}
+
+	public int getChunksPerSide() {
+		return chunksPerSide;
+	}
+
+	/**
+	 * Method that tests a node against the frustum, then its children, until the chunks are reached.
+	 * @param level of the node, 0 for the chunks
+	 * @param x position of the node in the grid of its level
+	 * @param z position of the node in the grid of its level
+	 */
+	private void selectNode(int level, int x, int z, Frustum frustum, Vector3f cameraPosition, float terrainX,
+			float terrainZ) {
+		int levelSide = leafSide >> level;
+		float minY = minHeights[level][z * levelSide + x];
+		float maxY = maxHeights[level][z * levelSide + x];
+		if (minY > maxY) {
+			return; //the node covers no chunk
+		}
+		float nodeSize = chunkSize * (1 << level);
+		float minX = terrainX + x * nodeSize;
+		float minZ = terrainZ + z * nodeSize;
+		float maxX = terrainX + Math.min(terrainSize, (x + 1) * nodeSize);
+		float maxZ = terrainZ + Math.min(terrainSize, (z + 1) * nodeSize);
+		if (!frustum.isBoxVisible(minX, minY, minZ, maxX, maxY, maxZ)) {
+			return;
+		}
+		if (level > 0) {
+			for (int child = 0; child < 4; child++) {
+				selectNode(level - 1, x * 2 + (child & 1), z * 2 + (child >> 1), frustum, cameraPosition, terrainX,
+						terrainZ);
+			}
+			return;
+		}
+		float dx = Math.max(0, Math.max(minX - cameraPosition.x, cameraPosition.x - maxX)); //distance to the closest point of the box
+		float dy = Math.max(0, Math.max(minY - cameraPosition.y, cameraPosition.y - maxY));
+		float dz = Math.max(0, Math.max(minZ - cameraPosition.z, cameraPosition.z - maxZ));
+		float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		if (selectedCount == selectedChunks.length) {
+			selectedChunks = Arrays.copyOf(selectedChunks, selectedCount * 2);
+			selectedLevels = Arrays.copyOf(selectedLevels, selectedCount * 2);
+		}
+		selectedChunks[selectedCount] = z * chunksPerSide + x;
+		selectedLevels[selectedCount] = getLevel(distance);
+		selectedCount++;
+	}
+
+	/**
+	 * @param distance between a chunk and the camera
+	 * @return the level of detail of the chunk: 0 closer than LOD_DISTANCE, then one more level each time the distance
+	 * doubles
+	 */
+	private static int getLevel(float distance) {
+		if (distance < LOD_DISTANCE) {
+			return 0;
+		}
+		int level = 1 + (int) (Math.log(distance / LOD_DISTANCE) / Math.log(2));
+		return Math.min(level, TerrainLod.LEVELS - 1);
+	}
+
+}
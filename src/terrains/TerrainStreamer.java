@@ -0,0 +1,223 @@
+package terrains;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import renderEngine.AssetPipeline;
+import renderEngine.Loader;
+import textures.TerrainTexture;
+import textures.TerrainTexturePack;
+
+/**
+ * Class that streams the terrain of a world too big to be loaded at once: the world is a MappedHeightfield, cut in
+ * square tiles of Terrain.SIZE, and only the tiles in a ring around the player are kept as terrains. When a tile comes
+ * into range, its heights are copied from the world and its mesh is built by a worker thread of the asset pipeline,
+ * then its mesh is loaded to a VAO by the render thread, through the upload queue of the pipeline. A tile that goes out
+ * of range is evicted, and its VAO and VBO deleted. Tiles are only evicted one tile further than they are loaded, so
+ * that walking back and forth along the edge of a tile doesn't load and evict the same tiles again and again.
+ * The streamer is also the heightfield of the whole world: the height of a point is read from the loaded tile it is
+ * on, or from the world itself when its tile isn't loaded yet.
+ */
+public class TerrainStreamer implements Heightfield {
+
+	private static final int MAX_UPLOADS_PER_FRAME = 1; //loading a tile to a VAO takes a few ms, so only one is uploaded per frame
+
+	private final MappedHeightfield world;
+	private final Loader loader;
+	private final AssetPipeline pipeline;
+	private final TerrainTexturePack texturePack;
+	private final TerrainTexture blendMap;
+	private final int radius; //tiles loaded on each side of the tile of the player
+	private final int tileQuads; //quads of the world on each side of a tile
+	private final int firstGridX; //grid position of the first tile of the world
+	private final int firstGridZ;
+	private final int tilesPerSide;
+	private final Tile[] tiles; //row by row, null for the tiles that aren't loaded nor being built
+	private final List<Terrain> terrains = new ArrayList<>(); //the loaded tiles, given to the renderer
+	private int builtTiles; //tiles built since the start, and the time their meshes took, for the statistics
+	private long buildTime;
+
+	/**
+	 * Class that represents a tile being built or loaded.
+	 */
+	private static class Tile {
+
+		private Terrain terrain; //null while the tile is being built
+		private boolean evicted; //set if the tile went out of range before it was built
+
+	}
+
+	/**
+	 * Constructor of a streamer, which doesn't load any tile until it is updated.
+	 * @param world heightfield of the whole world. It has to start at a corner of a tile, and a tile has to be made of
+	 * a whole amount of its grid squares
+	 * @param radius amount of tiles loaded on each side of the tile the player is on: 1 for 3 by 3 tiles
+	 * @param loader used to load the tiles to VAOs and delete them
+	 * @param pipeline whose workers build the tiles, and whose upload queue loads them
+	 * @param texturePack of every tile
+	 * @param blendMap of every tile
+	 */
+	public TerrainStreamer(MappedHeightfield world, int radius, Loader loader, AssetPipeline pipeline,
+			TerrainTexturePack texturePack, TerrainTexture blendMap) {
+		this.world = world;
+		this.radius = radius;
+		this.loader = loader;
+		this.pipeline = pipeline;
+		this.texturePack = texturePack;
+		this.blendMap = blendMap;
+		this.tileQuads = Math.round(Terrain.SIZE / world.getGridSquareSize());
+		this.firstGridX = Math.round(world.getX() / Terrain.SIZE);
+		this.firstGridZ = Math.round(world.getZ() / Terrain.SIZE);
+		if (Math.abs(tileQuads * world.getGridSquareSize() - Terrain.SIZE) > 1e-3f
+				|| Math.abs(firstGridX * Terrain.SIZE - world.getX()) > 1e-3f
+				|| Math.abs(firstGridZ * Terrain.SIZE - world.getZ()) > 1e-3f) {
+			throw new IllegalArgumentException("The world has to start at a corner of a tile and fit a whole amount of "
+					+ "grid squares in each tile");
+		}
+		this.tilesPerSide = (world.getVertexCount() - 1 + tileQuads - 1) / tileQuads;
+		this.tiles = new Tile[tilesPerSide * tilesPerSide];
+	}
+
+	/**
+	 * Method called at every frame by the render thread: it starts building the tiles that came into range of the
+	 * player, evicts the ones that went out of range, and loads the tiles that were built since the last frame (see
+	 * AssetPipeline.update).
+	 * @param playerPosition position of the player in the world
+	 */
+	public void update(Vector3f playerPosition) {
+		int centerX = getTileX(playerPosition.x);
+		int centerZ = getTileZ(playerPosition.z);
+		for (int tileZ = 0; tileZ < tilesPerSide; tileZ++) {
+			for (int tileX = 0; tileX < tilesPerSide; tileX++) {
+				int distance = Math.max(Math.abs(tileX - centerX), Math.abs(tileZ - centerZ));
+				Tile tile = tiles[tileZ * tilesPerSide + tileX];
+				if (tile == null && distance <= radius) {
+					build(tileX, tileZ);
+				} else if (tile != null && distance > radius + 1) {
+					evict(tileX, tileZ);
+				}
+			}
+		}
+		pipeline.update(MAX_UPLOADS_PER_FRAME);
+	}
+
+	/**
+	 * @return the loaded tiles, to render
+	 */
+	public List<Terrain> getTerrains() {
+		return terrains;
+	}
+
+	/**
+	 * @return amount of tiles built since the start, including the ones evicted before they were loaded
+	 */
+	public int getBuiltTiles() {
+		return builtTiles;
+	}
+
+	/**
+	 * @return time the workers spent building the meshes of the tiles, in nanoseconds
+	 */
+	public long getBuildTime() {
+		return buildTime;
+	}
+
+	/**
+	 * @param worldX X coordinate
+	 * @param worldZ Z coordinate
+	 * @return the loaded tile this point is on, or null if there is none
+	 */
+	public Terrain getTerrain(float worldX, float worldZ) {
+		int tileX = getTileX(worldX);
+		int tileZ = getTileZ(worldZ);
+		if (tileX < 0 || tileZ < 0 || tileX >= tilesPerSide || tileZ >= tilesPerSide) {
+			return null;
+		}
+		Tile tile = tiles[tileZ * tilesPerSide + tileX];
+		return tile == null ? null : tile.terrain;
+	}
+
+	/**
+	 * Method that finds the height of the world at any point, on the tile the point is on.
+	 * @param worldX X coordinate
+	 * @param worldZ Z coordinate
+	 * @return Y coordinate, or 0 outside of the world
+	 */
+	@Override
+	public float getHeightOfTerrain(float worldX, float worldZ) {
+		Terrain terrain = getTerrain(worldX, worldZ);
+		if (terrain == null) {
+			return world.getHeightOfTerrain(worldX, worldZ); //the same heights, read from the file
+		}
+		return terrain.getHeightOfTerrain(worldX, worldZ);
+	}
+
+	@Override
+	public void getHeightsOfTerrain(float[] worldX, float[] worldZ, float[] heights, int count) {
+		for (int i = 0; i < count; i++) {
+			heights[i] = getHeightOfTerrain(worldX[i], worldZ[i]);
+		}
+	}
+
+	/**
+	 * Method that evicts every tile, to call before the loader is cleaned up.
+	 */
+	public void cleanUp() {
+		for (int i = 0; i < tiles.length; i++) {
+			if (tiles[i] != null) {
+				evict(i % tilesPerSide, i / tilesPerSide);
+			}
+		}
+		world.cleanUp();
+	}
+
+	/**
+	 * Method that submits a tile to the asset pipeline: a worker copies its heights from the world and builds its
+	 * mesh, then the render thread loads it to a VAO, unless the tile was evicted in the meantime. The heights past the
+	 * edge of the world are clamped to it.
+	 * @param tileX position of the tile in the world, in tiles
+	 * @param tileZ position of the tile in the world, in tiles
+	 */
+	private void build(int tileX, int tileZ) {
+		Tile tile = new Tile();
+		tiles[tileZ * tilesPerSide + tileX] = tile;
+		int vertexCount = tileQuads + 1;
+		pipeline.submit(() -> TerrainMesh.generate(world.getHeights(tileX * tileQuads, tileZ * tileQuads, vertexCount),
+				vertexCount), mesh -> {
+			builtTiles++;
+			buildTime += mesh.getBuildTime();
+			if (!tile.evicted) {
+				tile.terrain = new Terrain(firstGridX + tileX, firstGridZ + tileZ, mesh.loadToVAO(loader), texturePack,
+						blendMap);
+				terrains.add(tile.terrain);
+			}
+			return tile.terrain;
+		});
+	}
+
+	/**
+	 * Method that evicts a tile: its VAO and VBO are deleted if it was loaded, otherwise it won't be loaded once built.
+	 * @param tileX position of the tile in the world, in tiles
+	 * @param tileZ position of the tile in the world, in tiles
+	 */
+	private void evict(int tileX, int tileZ) {
+		Tile tile = tiles[tileZ * tilesPerSide + tileX];
+		tiles[tileZ * tilesPerSide + tileX] = null;
+		tile.evicted = true;
+		if (tile.terrain != null) {
+			terrains.remove(tile.terrain);
+			loader.deleteModel(tile.terrain.getModel());
+		}
+	}
+
+	private int getTileX(float worldX) {
+		return (int) Math.floor((worldX - world.getX()) / Terrain.SIZE);
+	}
+
+	private int getTileZ(float worldZ) {
+		return (int) Math.floor((worldZ - world.getZ()) / Terrain.SIZE);
+	}
+
+}
@@ -0,0 +1,376 @@
+package textures;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class that compresses RGBA images into the block formats GPUs can sample directly. The image is cut in blocks of 4x4
+ * pixels, and each block is stored in a fixed amount of bytes:
+ * - BC1 (DXT1): 8 bytes, two colours in 5:6:5 bits and a 2 bits index per pixel choosing among 4 colours interpolated
+ * between them. No alpha, 8 times smaller than RGBA.
+ * - BC3 (DXT5): 16 bytes, a BC1 block for the colours and a similar 8 bytes block for the alpha, with 8 levels.
+ * - BC7: 16 bytes. Only mode 6 is used: two RGBA colours in 7 bits per channel (plus one shared bit per colour) and a
+ * 4 bits index per pixel. Better quality than BC3, especially on smooth gradients.
+ * The colours of a block are chosen along the axis on which its pixels spread the most (principal component), which is
+ * fast and gives good results for the textures of the game, without searching every possible pair of colours.
+ * Used offline by the TextureConverter, not when the game runs.
+ */
+public class BlockCompressor {
+
+	public static final int BC1 = 1;
+	public static final int BC3 = 2;
+	public static final int BC7 = 3;
+
+	private static final int[] BC7_WEIGHTS = {0, 4, 9, 13, 17, 21, 26, 30, 34, 38, 43, 47, 51, 55, 60, 64}; //4 bits indices
+
+	/**
+	 * @param format BC1, BC3 or BC7
+	 * @return the size of a block, in bytes
+	 */
+	public static int getBlockSize(int format) {
+		return format == BC1 ? 8 : 16;
+	}
+
+	/**
+	 * @param format BC1, BC3 or BC7
+	 * @param width of the image
+	 * @param height of the image
+	 * @return the size of the compressed image, in bytes
+	 */
+	public static int getCompressedSize(int format, int width, int height) {
+		return ((width + 3) / 4) * ((height + 3) / 4) * getBlockSize(format);
+	}
+
+	/**
+	 * Method that compresses an image. Blocks overlapping the right or bottom edge repeat the last pixels.
+	 * @param pixels RGBA pixels, 4 bytes per pixel, row after row
+	 * @param width of the image
+	 * @param height of the image
+	 * @param format BC1, BC3 or BC7
+	 * @param output buffer in which the blocks are put, row of blocks after row of blocks
+	 */
+	public static void compress(byte[] pixels, int width, int height, int format, ByteBuffer output) {
+		int[] block = new int[16 * 4];
+		byte[] encoded = new byte[getBlockSize(format)];
+		for (int blockY = 0; blockY < height; blockY += 4) {
+			for (int blockX = 0; blockX < width; blockX += 4) {
+				for (int i = 0; i < 16; i++) {
+					int x = Math.min(blockX + i % 4, width - 1);
+					int y = Math.min(blockY + i / 4, height - 1);
+					for (int channel = 0; channel < 4; channel++) {
+						block[i * 4 + channel] = pixels[(y * width + x) * 4 + channel] & 0xff;
+					}
+				}
+				if (format == BC1) {
+					encodeColours(block, encoded, 0);
+				} else if (format == BC3) {
+					encodeAlpha(block, encoded, 0);
+					encodeColours(block, encoded, 8);
+				} else {
+					encodeBC7(block, encoded);
+				}
+				output.put(encoded);
+			}
+		}
+	}
+
+	/**
+	 * Method that encodes the colours of a block in the BC1 format.
+	 * @param block RGBA values of the 16 pixels
+	 * @param output array in which the 8 bytes are written
+	 * @param offset of the block in the output
+	 */
+	private static void encodeColours(int[] block, byte[] output, int offset) {
+		float[][] endpoints = findEndpoints(block, 3);
+		int colour0 = toRGB565(endpoints[0]);
+		int colour1 = toRGB565(endpoints[1]);
+		if (colour0 < colour1) {
+			int swap = colour0; //the first colour has to be the biggest, otherwise the block has only 3 colours
+			colour0 = colour1;
+			colour1 = swap;
+		}
+		int indices = 0;
+		if (colour0 != colour1) {
+			int[][] palette = new int[4][];
+			palette[0] = fromRGB565(colour0);
+			palette[1] = fromRGB565(colour1);
+			palette[2] = new int[3];
+			palette[3] = new int[3];
+			for (int channel = 0; channel < 3; channel++) {
+				palette[2][channel] = (2 * palette[0][channel] + palette[1][channel]) / 3;
+				palette[3][channel] = (palette[0][channel] + 2 * palette[1][channel]) / 3;
+			}
+			for (int i = 0; i < 16; i++) {
+				indices |= nearest(block, i, palette, 3) << (i * 2);
+			}
+		}
+		putShort(output, offset, colour0);
+		putShort(output, offset + 2, colour1);
+		putInt(output, offset + 4, indices);
+	}
+
+	/**
+	 * Method that encodes the alpha of a block in the BC3 format: the extreme alphas of the block, and 6 levels
+	 * between them.
+	 */
+	private static void encodeAlpha(int[] block, byte[] output, int offset) {
+		int min = 255;
+		int max = 0;
+		for (int i = 0; i < 16; i++) {
+			min = Math.min(min, block[i * 4 + 3]);
+			max = Math.max(max, block[i * 4 + 3]);
+		}
+		long indices = 0;
+		if (max != min) {
+			int[] levels = new int[8];
+			levels[0] = max;
+			levels[1] = min;
+			for (int i = 1; i < 7; i++) {
+				levels[i + 1] = ((7 - i) * max + i * min) / 7;
+			}
+			for (int i = 0; i < 16; i++) {
+				int alpha = block[i * 4 + 3];
+				int best = 0;
+				for (int level = 1; level < 8; level++) {
+					if (Math.abs(levels[level] - alpha) < Math.abs(levels[best] - alpha)) {
+						best = level;
+					}
+				}
+				indices |= (long) best << (i * 3);
+			}
+		}
+		output[offset] = (byte) max;
+		output[offset + 1] = (byte) min;
+		for (int i = 0; i < 6; i++) {
+			output[offset + 2 + i] = (byte) (indices >>> (i * 8));
+		}
+	}
+
+	/**
+	 * Method that encodes a block in mode 6 of the BC7 format.
+	 */
+	private static void encodeBC7(int[] block, byte[] output) {
+		float[][] endpoints = findEndpoints(block, 4);
+		int[][] quantized = new int[2][4]; //7 bits per channel
+		int[] pBits = new int[2];
+		int[][] palette = new int[16][4];
+		int[][] expanded = new int[2][4];
+		for (int e = 0; e < 2; e++) {
+			pBits[e] = choosePBit(endpoints[e], quantized[e]);
+			for (int channel = 0; channel < 4; channel++) {
+				expanded[e][channel] = (quantized[e][channel] << 1) | pBits[e];
+			}
+		}
+		for (int i = 0; i < 16; i++) {
+			for (int channel = 0; channel < 4; channel++) {
+				palette[i][channel] = ((64 - BC7_WEIGHTS[i]) * expanded[0][channel] + BC7_WEIGHTS[i]
+						* expanded[1][channel] + 32) >> 6;
+			}
+		}
+		int[] indices = new int[16];
+		for (int i = 0; i < 16; i++) {
+			indices[i] = nearest(block, i, palette, 4);
+		}
+		if (indices[0] >= 8) {
+			//the index of the first pixel is stored without its highest bit, which has to be 0: swapping the colours
+			//reverses the indices
+			int[] swap = quantized[0];
+			quantized[0] = quantized[1];
+			quantized[1] = swap;
+			int swapBit = pBits[0];
+			pBits[0] = pBits[1];
+			pBits[1] = swapBit;
+			for (int i = 0; i < 16; i++) {
+				indices[i] = 15 - indices[i];
+			}
+		}
+		BitWriter bits = new BitWriter(output);
+		bits.write(1 << 6, 7); //mode 6: six 0 bits followed by a 1
+		for (int channel = 0; channel < 4; channel++) {
+			bits.write(quantized[0][channel], 7);
+			bits.write(quantized[1][channel], 7);
+		}
+		bits.write(pBits[0], 1);
+		bits.write(pBits[1], 1);
+		bits.write(indices[0], 3);
+		for (int i = 1; i < 16; i++) {
+			bits.write(indices[i], 4);
+		}
+	}
+
+	/**
+	 * Method that quantizes a BC7 colour to 7 bits per channel plus a bit shared by the 4 channels, choosing the shared
+	 * bit that gives the closest colour.
+	 * @param colour to quantize, between 0 and 255 per channel
+	 * @param quantized array in which the 7 bits values are stored
+	 * @return the shared bit
+	 */
+	private static int choosePBit(float[] colour, int[] quantized) {
+		int bestBit = 0;
+		float bestError = Float.MAX_VALUE;
+		int[] candidate = new int[4];
+		for (int pBit = 0; pBit < 2; pBit++) {
+			float error = 0;
+			for (int channel = 0; channel < 4; channel++) {
+				candidate[channel] = clamp(Math.round((colour[channel] - pBit) / 2), 0, 127);
+				float difference = ((candidate[channel] << 1) | pBit) - colour[channel];
+				error += difference * difference;
+			}
+			if (error < bestError) {
+				bestError = error;
+				bestBit = pBit;
+				System.arraycopy(candidate, 0, quantized, 0, 4);
+			}
+		}
+		return bestBit;
+	}
+
+	/**
+	 * Method that finds the two colours between which the pixels of a block are interpolated. The pixels are projected
+	 * on their principal axis (found by power iteration on their covariance matrix), and the extremes are moved
+	 * slightly inwards, since the interpolated colours cover the middle of the range.
+	 * @param block RGBA values of the 16 pixels
+	 * @param channels amount of channels to use: 3 for RGB, 4 for RGBA
+	 * @return the two colours
+	 */
+	private static float[][] findEndpoints(int[] block, int channels) {
+		float[] mean = new float[channels];
+		for (int i = 0; i < 16; i++) {
+			for (int c = 0; c < channels; c++) {
+				mean[c] += block[i * 4 + c] / 16f;
+			}
+		}
+		float[][] covariance = new float[channels][channels];
+		for (int i = 0; i < 16; i++) {
+			for (int a = 0; a < channels; a++) {
+				for (int b = 0; b < channels; b++) {
+					covariance[a][b] += (block[i * 4 + a] - mean[a]) * (block[i * 4 + b] - mean[b]);
+				}
+			}
+		}
+		float[] axis = new float[channels];
+		for (int c = 0; c < channels; c++) {
+			axis[c] = 1;
+		}
+		for (int iteration = 0; iteration < 8; iteration++) {
+			float[] next = new float[channels];
+			float length = 0;
+			for (int a = 0; a < channels; a++) {
+				for (int b = 0; b < channels; b++) {
+					next[a] += covariance[a][b] * axis[b];
+				}
+				length = Math.max(length, Math.abs(next[a]));
+			}
+			if (length == 0) {
+				break; //every pixel has the same colour
+			}
+			for (int c = 0; c < channels; c++) {
+				axis[c] = next[c] / length;
+			}
+		}
+		float min = Float.MAX_VALUE;
+		float max = -Float.MAX_VALUE;
+		for (int i = 0; i < 16; i++) {
+			float projection = 0;
+			for (int c = 0; c < channels; c++) {
+				projection += (block[i * 4 + c] - mean[c]) * axis[c];
+			}
+			min = Math.min(min, projection);
+			max = Math.max(max, projection);
+		}
+		float inset = (max - min) / 16;
+		min += inset;
+		max -= inset;
+		float axisLength = 0;
+		for (int c = 0; c < channels; c++) {
+			axisLength += axis[c] * axis[c];
+		}
+		float[][] endpoints = new float[2][4];
+		for (int c = 0; c < 4; c++) {
+			if (c < channels) {
+				float scale = axisLength > 0 ? axis[c] / axisLength : 0;
+				endpoints[0][c] = clamp(mean[c] + max * scale, 0, 255);
+				endpoints[1][c] = clamp(mean[c] + min * scale, 0, 255);
+			} else {
+				endpoints[0][c] = 255;
+				endpoints[1][c] = 255;
+			}
+		}
+		return endpoints;
+	}
+
+	private static int nearest(int[] block, int pixel, int[][] palette, int channels) {
+		int best = 0;
+		int bestError = Integer.MAX_VALUE;
+		for (int i = 0; i < palette.length; i++) {
+			int error = 0;
+			for (int c = 0; c < channels; c++) {
+				int difference = block[pixel * 4 + c] - palette[i][c];
+				error += difference * difference;
+			}
+			if (error < bestError) {
+				bestError = error;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	private static int toRGB565(float[] colour) {
+		int r = Math.round(colour[0] * 31 / 255);
+		int g = Math.round(colour[1] * 63 / 255);
+		int b = Math.round(colour[2] * 31 / 255);
+		return (r << 11) | (g << 5) | b;
+	}
+
+	private static int[] fromRGB565(int colour) {
+		int r = (colour >> 11) & 31;
+		int g = (colour >> 5) & 63;
+		int b = colour & 31;
+		return new int[] {(r << 3) | (r >> 2), (g << 2) | (g >> 4), (b << 3) | (b >> 2)};
+	}
+
+	private static float clamp(float value, float min, float max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	private static void putShort(byte[] output, int offset, int value) {
+		output[offset] = (byte) value; //block formats are little endian
+		output[offset + 1] = (byte) (value >> 8);
+	}
+
+	private static void putInt(byte[] output, int offset, int value) {
+		putShort(output, offset, value);
+		putShort(output, offset + 2, value >>> 16);
+	}
+
+	/**
+	 * Class that writes values bit after bit, starting with the lowest bit of the first byte, as BC7 blocks are stored.
+	 */
+	private static class BitWriter {
+
+		private final byte[] output;
+		private int position;
+
+		private BitWriter(byte[] output) {
+			this.output = output;
+			for (int i = 0; i < output.length; i++) {
+				output[i] = 0;
+			}
+		}
+
+		private void write(int value, int bitCount) {
+			for (int i = 0; i < bitCount; i++) {
+				if (((value >> i) & 1) != 0) {
+					output[position >> 3] |= 1 << (position & 7);
+				}
+				position++;
+			}
+		}
+
+	}
+
+}
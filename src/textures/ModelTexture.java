@@ -15,10 +15,32 @@ public class ModelTexture {
 	private boolean useFakeLighting = false;
 	
 	private int numberOfRows = 1;
+	private int layer = -1; //layer of the texture in a texture array (see TextureArrayPacker), -1 if it is a 2D texture
 	
 	public ModelTexture(int texture){
 		this.textureID = texture;
 	}
+
+	/**
+	 * Constructor used when the texture is a layer of a texture array.
+	 * @param textureArray ID of the texture array
+	 * @param layer of the texture in the array
+	 */
+	public ModelTexture(int textureArray, int layer){
+		this.textureID = textureArray;
+		this.layer = layer;
+	}
+
+	/**
+	 * @return whether the texture is a layer of a texture array, in which case getID() gives the ID of the array
+	 */
+	public boolean isInTextureArray() {
+		return layer >= 0;
+	}
+
+	public int getLayer() {
+		return layer;
+	}
 		
 	public int getNumberOfRows() {
 		return numberOfRows;
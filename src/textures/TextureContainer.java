@@ -0,0 +1,200 @@
+package textures;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.lwjgl.opengl.ARBTextureCompressionBPTC;
+import org.lwjgl.opengl.EXTTextureCompressionS3TC;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Class representing a texture stored in our own container format, written by the TextureConverter next to the .png
+ * file it was made from. The container holds every mipmap level of the texture, already computed, either as RGBA
+ * pixels or compressed in blocks (see BlockCompressor), so the Loader can send them to openGL as they are, without
+ * decoding the png or generating the mipmaps.
+ * The file starts with a 40 bytes header, followed by each level (its size in bytes, then its data), biggest first.
+ * Everything is little endian.
+ */
+public class TextureContainer {
+
+	public static final String EXTENSION = ".tex";
+	public static final int RGBA = 0;
+
+	private static final int MAGIC = 0x43584554; //"TEXC" in little endian
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 40;
+
+	private final int format;
+	private final int width;
+	private final int height;
+	private final ByteBuffer[] levels;
+
+	private TextureContainer(int format, int width, int height, ByteBuffer[] levels) {
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.levels = levels;
+	}
+
+	/**
+	 * Method that gives the container file made from a .png file.
+	 * @param pngFile the container is made from
+	 * @return the container file, next to the .png file
+	 */
+	public static File getFile(File pngFile) {
+		String name = pngFile.getName();
+		if (name.endsWith(".png")) {
+			name = name.substring(0, name.length() - 4);
+		}
+		return new File(pngFile.getParentFile(), name + EXTENSION);
+	}
+
+	/**
+	 * Method that maps the container made from a .png file, if there is one. It is only used if it was written from the
+	 * current version of the .png file (same size and modification date), or if the .png file doesn't exist.
+	 * @param pngFile the container is made from
+	 * @return the mapped container, or null if there is no valid container
+	 */
+	public static TextureContainer map(File pngFile) {
+		File file = getFile(pngFile);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(data, pngFile);
+		} catch (IOException e) {
+			System.err.println("Couldn't read " + file + ", the .png file will be used");
+			return null;
+		}
+	}
+
+	private static TextureContainer read(ByteBuffer data, File pngFile) {
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+			return null;
+		}
+		if (pngFile.isFile() && (data.getLong(24) != pngFile.length() || data.getLong(32) != pngFile.lastModified())) {
+			return null; //the .png file changed since the container was written
+		}
+		int format = data.getInt(8);
+		int width = data.getInt(12);
+		int height = data.getInt(16);
+		int levelCount = data.getInt(20);
+		if (format < RGBA || format > BlockCompressor.BC7 || levelCount < 1 || levelCount > 32) {
+			return null;
+		}
+		ByteBuffer[] levels = new ByteBuffer[levelCount];
+		int position = HEADER_SIZE;
+		for (int i = 0; i < levelCount; i++) {
+			if (position + 4 > data.capacity()) {
+				return null;
+			}
+			int size = data.getInt(position);
+			int levelWidth = Math.max(1, width >> i);
+			int levelHeight = Math.max(1, height >> i);
+			int expected = format == RGBA ? levelWidth * levelHeight * 4
+					: BlockCompressor.getCompressedSize(format, levelWidth, levelHeight);
+			if (size != expected || position + 4 + size > data.capacity()) {
+				return null;
+			}
+			data.limit(position + 4 + size);
+			data.position(position + 4);
+			levels[i] = data.slice().order(ByteOrder.nativeOrder());
+			data.limit(data.capacity());
+			position += 4 + size;
+		}
+		return new TextureContainer(format, width, height, levels);
+	}
+
+	/**
+	 * Method that writes a container next to the .png file it was made from. It is first written under a temporary
+	 * name, then renamed, so that a partly written container is never used.
+	 * @param pngFile the texture was made from
+	 * @param format RGBA, or a format of the BlockCompressor
+	 * @param width of the biggest level
+	 * @param height of the biggest level
+	 * @param levels data of each level, biggest first
+	 * @throws IOException if the file couldn't be written
+	 */
+	public static void write(File pngFile, int format, int width, int height, ByteBuffer[] levels) throws IOException {
+		File file = getFile(pngFile);
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(format).putInt(width).putInt(height).putInt(levels.length);
+		header.putLong(pngFile.length()).putLong(pngFile.lastModified());
+		header.flip();
+		try (FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, header);
+			for (ByteBuffer level : levels) {
+				ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(level.remaining());
+				size.flip();
+				writeFully(channel, size);
+				writeFully(channel, level.duplicate());
+			}
+		}
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+		while (data.hasRemaining()) {
+			channel.write(data);
+		}
+	}
+
+	/**
+	 * @return RGBA, or a format of the BlockCompressor
+	 */
+	public int getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return whether the levels are compressed in blocks
+	 */
+	public boolean isCompressed() {
+		return format != RGBA;
+	}
+
+	/**
+	 * @return the internal format to give to openGL
+	 */
+	public int getGLFormat() {
+		switch (format) {
+		case BlockCompressor.BC1:
+			return EXTTextureCompressionS3TC.GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+		case BlockCompressor.BC3:
+			return EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+		case BlockCompressor.BC7:
+			return ARBTextureCompressionBPTC.GL_COMPRESSED_RGBA_BPTC_UNORM_ARB;
+		default:
+			return GL11.GL_RGBA;
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the data of each mipmap level, biggest first
+	 */
+	public ByteBuffer[] getLevels() {
+		return levels;
+	}
+
+}
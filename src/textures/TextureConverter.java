@@ -0,0 +1,154 @@
+package textures;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import de.matthiasmann.twl.utils.PNGDecoder.Format;
+
+/**
+ * Class that converts the .png textures of the res folder into containers (see TextureContainer), offline. The mipmap
+ * levels are computed here, by averaging each 2x2 pixels of the level above, and every level is compressed in blocks
+ * (see BlockCompressor). Once a texture has a container, the Loader uses it instead of the .png file.
+ * By default, textures without transparency are compressed in BC1 and the other ones in BC3.
+ * Usage: TextureConverter [-bc1 | -bc3 | -bc7 | -rgba] [names of the .png files, without extension]
+ * (all the .png files of res if there are none)
+ */
+public class TextureConverter {
+
+	private static final String RES_LOC = "res/";
+
+	public static void main(String[] args) throws IOException {
+		int forcedFormat = -1;
+		List<String> names = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.equals("-bc1")) {
+				forcedFormat = BlockCompressor.BC1;
+			} else if (arg.equals("-bc3")) {
+				forcedFormat = BlockCompressor.BC3;
+			} else if (arg.equals("-bc7")) {
+				forcedFormat = BlockCompressor.BC7;
+			} else if (arg.equals("-rgba")) {
+				forcedFormat = TextureContainer.RGBA;
+			} else {
+				names.add(arg);
+			}
+		}
+		if (names.isEmpty()) {
+			File[] pngFiles = new File(RES_LOC).listFiles((directory, name) -> name.endsWith(".png"));
+			if (pngFiles == null) {
+				System.err.println("Couldn't find the res folder");
+				System.exit(-1);
+			}
+			for (File pngFile : pngFiles) {
+				names.add(pngFile.getName().substring(0, pngFile.getName().length() - 4));
+			}
+		}
+		for (String name : names) {
+			convert(new File(RES_LOC + name + ".png"), forcedFormat);
+		}
+	}
+
+	/**
+	 * Method that converts a .png file into a container.
+	 * @param pngFile to convert
+	 * @param forcedFormat format to use, or -1 to choose it from the transparency of the texture
+	 */
+	private static void convert(File pngFile, int forcedFormat) throws IOException {
+		long start = System.nanoTime();
+		int width;
+		int height;
+		byte[] pixels;
+		try (FileInputStream in = new FileInputStream(pngFile)) {
+			PNGDecoder decoder = new PNGDecoder(in);
+			width = decoder.getWidth();
+			height = decoder.getHeight();
+			ByteBuffer buffer = ByteBuffer.allocate(4 * width * height);
+			decoder.decode(buffer, width * 4, Format.RGBA);
+			pixels = buffer.array();
+		}
+		int format = forcedFormat >= 0 ? forcedFormat : hasTransparency(pixels) ? BlockCompressor.BC3
+				: BlockCompressor.BC1;
+		List<ByteBuffer> levels = new ArrayList<>();
+		int levelWidth = width;
+		int levelHeight = height;
+		while (true) {
+			levels.add(encode(pixels, levelWidth, levelHeight, format));
+			if (levelWidth == 1 && levelHeight == 1) {
+				break;
+			}
+			int nextWidth = Math.max(1, levelWidth / 2);
+			int nextHeight = Math.max(1, levelHeight / 2);
+			pixels = downsample(pixels, levelWidth, levelHeight, nextWidth, nextHeight);
+			levelWidth = nextWidth;
+			levelHeight = nextHeight;
+		}
+		TextureContainer.write(pngFile, format, width, height, levels.toArray(new ByteBuffer[levels.size()]));
+		long size = 0;
+		for (ByteBuffer level : levels) {
+			size += level.remaining();
+		}
+		System.out.printf("%s: %dx%d %s, %d KB -> %d KB with %d mipmap levels, in %.0f ms%n", pngFile.getName(),
+				width, height, formatName(format), (long) width * height * 4 * 4 / 3 / 1024, size / 1024,
+				levels.size(), (System.nanoTime() - start) / 1e6);
+	}
+
+	private static ByteBuffer encode(byte[] pixels, int width, int height, int format) {
+		if (format == TextureContainer.RGBA) {
+			return ByteBuffer.wrap(pixels, 0, width * height * 4);
+		}
+		ByteBuffer level = ByteBuffer.allocate(BlockCompressor.getCompressedSize(format, width, height));
+		BlockCompressor.compress(pixels, width, height, format, level);
+		level.flip();
+		return level;
+	}
+
+	/**
+	 * Method that computes the next mipmap level: each pixel is the average of the 2x2 pixels it covers in the level
+	 * above (or of the pixels that exist, when a side of the level above is odd or already 1 pixel long).
+	 */
+	private static byte[] downsample(byte[] pixels, int width, int height, int nextWidth, int nextHeight) {
+		byte[] next = new byte[nextWidth * nextHeight * 4];
+		for (int y = 0; y < nextHeight; y++) {
+			for (int x = 0; x < nextWidth; x++) {
+				int x0 = Math.min(x * 2, width - 1), x1 = Math.min(x * 2 + 1, width - 1);
+				int y0 = Math.min(y * 2, height - 1), y1 = Math.min(y * 2 + 1, height - 1);
+				for (int channel = 0; channel < 4; channel++) {
+					int sum = (pixels[(y0 * width + x0) * 4 + channel] & 0xff)
+							+ (pixels[(y0 * width + x1) * 4 + channel] & 0xff)
+							+ (pixels[(y1 * width + x0) * 4 + channel] & 0xff)
+							+ (pixels[(y1 * width + x1) * 4 + channel] & 0xff);
+					next[(y * nextWidth + x) * 4 + channel] = (byte) ((sum + 2) / 4);
+				}
+			}
+		}
+		return next;
+	}
+
+	private static boolean hasTransparency(byte[] pixels) {
+		for (int i = 3; i < pixels.length; i += 4) {
+			if ((pixels[i] & 0xff) != 255) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String formatName(int format) {
+		switch (format) {
+		case BlockCompressor.BC1:
+			return "BC1";
+		case BlockCompressor.BC3:
+			return "BC3";
+		case BlockCompressor.BC7:
+			return "BC7";
+		default:
+			return "RGBA";
+		}
+	}
+
+}
@@ -7,14 +7,76 @@ import java.nio.ByteBuffer;
  */
 public class TextureData {
 	
+	private final String name;
 	private final int width;
 	private final int height;
 	private final ByteBuffer buffer;
+	private final long decodeTime;
+	private final TextureContainer container;
 	
 	public TextureData(ByteBuffer buffer, int width, int height){
+		this(null, buffer, width, height, 0);
+	}
+
+	/**
+	 * @param name of the file the texture was decoded from, used when reporting its loading
+	 * @param buffer containing the RGBA pixels
+	 * @param width of the texture
+	 * @param height of the texture
+	 * @param decodeTime time it took to decode the file, in nanoseconds
+	 */
+	public TextureData(String name, ByteBuffer buffer, int width, int height, long decodeTime){
+		this.name = name;
 		this.buffer = buffer;
 		this.width = width;
 		this.height = height;
+		this.decodeTime = decodeTime;
+		this.container = null;
+	}
+
+	/**
+	 * Constructor used when the texture was read from a container instead of decoded from a png file.
+	 * @param name of the file the texture was made from, used when reporting its loading
+	 * @param container holding the mipmap levels of the texture
+	 * @param decodeTime time it took to read the container, in nanoseconds
+	 */
+	public TextureData(String name, TextureContainer container, long decodeTime){
+		this.name = name;
+		this.buffer = null;
+		this.width = container.getWidth();
+		this.height = container.getHeight();
+		this.decodeTime = decodeTime;
+		this.container = container;
+	}
+
+	/**
+	 * @return the container the texture was read from, or null if it was decoded from a png file (then the buffer
+	 * holds its RGBA pixels)
+	 */
+	public TextureContainer getContainer(){
+		return container;
+	}
+
+	/**
+	 * @return how much video memory the texture takes once loaded with its mipmaps, in bytes
+	 */
+	public long getMemorySize(){
+		if (container == null) {
+			return (long) width * height * 4 * 4 / 3; //the mipmaps add a third to the size of the texture
+		}
+		long size = 0;
+		for (ByteBuffer level : container.getLevels()) {
+			size += level.remaining();
+		}
+		return size;
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public long getDecodeTime(){
+		return decodeTime;
 	}
 	
 	public int getWidth(){
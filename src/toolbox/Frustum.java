@@ -0,0 +1,78 @@
+package toolbox;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * Class representing the volume seen by the camera. It is made of 6 planes (left, right, bottom, top, near, far), which
+ * are extracted from the projection and view matrices once per frame. Anything completely behind one of these planes
+ * can't be seen, so we don't need to render it.
+ */
+public class Frustum {
+
+	private static final int PLANE_COUNT = 6;
+
+	private final float[] planes = new float[PLANE_COUNT * 4]; //a, b, c, d of each plane: a*x + b*y + c*z + d = 0
+	private final Matrix4f projectionView = new Matrix4f();
+
+	/**
+	 * Method that extracts the planes of the frustum from the combined projection and view matrix. Each plane is the
+	 * sum or difference of the 4th row of the matrix and one of the 3 others. The planes are normalised so that the
+	 * plane equation gives the real distance of a point to the plane.
+	 * @param projectionMatrix used to render the scene
+	 * @param viewMatrix of the camera
+	 */
+	public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+		Matrix4f m = Matrix4f.mul(projectionMatrix, viewMatrix, projectionView);
+		setPlane(0, m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30); //left
+		setPlane(1, m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30); //right
+		setPlane(2, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31); //bottom
+		setPlane(3, m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31); //top
+		setPlane(4, m.m03 + m.m02, m.m13 + m.m12, m.m23 + m.m22, m.m33 + m.m32); //near
+		setPlane(5, m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32); //far
+	}
+
+	/**
+	 * Method that tests whether a sphere is at least partly inside the frustum.
+	 * @param x coordinate of the center of the sphere
+	 * @param y coordinate of the center of the sphere
+	 * @param z coordinate of the center of the sphere
+	 * @param radius of the sphere
+	 * @return false if the sphere is completely outside of the frustum
+	 */
+	public boolean isSphereVisible(float x, float y, float z, float radius) {
+		for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+			if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Method that tests whether an axis aligned box is at least partly inside the frustum. For each plane, we only
+	 * need to test the corner of the box that is the furthest in the direction of the plane's normal: if even this
+	 * corner is behind the plane, the whole box is.
+	 * @return false if the box is completely outside of the frustum
+	 */
+	public boolean isBoxVisible(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+			float x = planes[i] >= 0 ? maxX : minX;
+			float y = planes[i + 1] >= 0 ? maxY : minY;
+			float z = planes[i + 2] >= 0 ? maxZ : minZ;
+			if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void setPlane(int plane, float a, float b, float c, float d) {
+		float length = (float) Math.sqrt(a * a + b * b + c * c);
+		int i = plane * 4;
+		planes[i] = a / length;
+		planes[i + 1] = b / length;
+		planes[i + 2] = c / length;
+		planes[i + 3] = d / length;
+	}
+
+}
@@ -8,6 +8,10 @@ import entities.Camera;
 
 public class Maths {
 
+	private static final Vector3f X_AXIS = new Vector3f(1, 0, 0);
+	private static final Vector3f Y_AXIS = new Vector3f(0, 1, 0);
+	private static final Vector3f Z_AXIS = new Vector3f(0, 0, 1);
+
 	/**
 	 * Method that creates a transformation matrix from a 2D position and a 2D scale
 	 * @param translation to apply to a matrix
@@ -24,13 +28,39 @@ public class Maths {
 
 	public static Matrix4f createTransformationMatrix(Vector3f translation, float rx, float ry,
 			float rz, float scale) {
-		Matrix4f matrix = new Matrix4f();
+		return createTransformationMatrix(translation, rx, ry, rz, scale, new Matrix4f());
+	}
+
+	/**
+	 * Same as above, but writes the result in an existing matrix so that we don't create garbage when we have to build
+	 * thousands of transformation matrices every frame.
+	 * @param translation to apply to the matrix
+	 * @param rx rotation around the x-axis, in degrees
+	 * @param ry rotation around the y-axis, in degrees
+	 * @param rz rotation around the z-axis, in degrees
+	 * @param scale to apply uniformly on the 3 axis
+	 * @param matrix in which the transformation is written
+	 * @return the transformation matrix
+	 */
+	public static Matrix4f createTransformationMatrix(Vector3f translation, float rx, float ry,
+			float rz, float scale, Matrix4f matrix) {
 		matrix.setIdentity();
 		Matrix4f.translate(translation, matrix, matrix);
-		Matrix4f.rotate((float) Math.toRadians(rx), new Vector3f(1,0,0), matrix, matrix);
-		Matrix4f.rotate((float) Math.toRadians(ry), new Vector3f(0,1,0), matrix, matrix);
-		Matrix4f.rotate((float) Math.toRadians(rz), new Vector3f(0,0,1), matrix, matrix);
-		Matrix4f.scale(new Vector3f(scale,scale,scale), matrix, matrix);
+		Matrix4f.rotate((float) Math.toRadians(rx), X_AXIS, matrix, matrix);
+		Matrix4f.rotate((float) Math.toRadians(ry), Y_AXIS, matrix, matrix);
+		Matrix4f.rotate((float) Math.toRadians(rz), Z_AXIS, matrix, matrix);
+		matrix.m00 *= scale; //same as Matrix4f.scale, without creating a scale vector
+		matrix.m01 *= scale;
+		matrix.m02 *= scale;
+		matrix.m03 *= scale;
+		matrix.m10 *= scale;
+		matrix.m11 *= scale;
+		matrix.m12 *= scale;
+		matrix.m13 *= scale;
+		matrix.m20 *= scale;
+		matrix.m21 *= scale;
+		matrix.m22 *= scale;
+		matrix.m23 *= scale;
 		return matrix;
 	}
 